@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import javax.annotation.Nullable;
+
+/**
+ * Decoder which collects the parsed tokens of a document and binds them to
+ * the target type once the document is complete. Suitable for the small
+ * metadata responses from KairosDB; large query responses should use
+ * {@link MetricsQueryResponseDecoder} instead.
+ *
+ * @param <T> the type of the decoded value
+ * @author agent (agent at local)
+ */
+/* package private */ final class BufferingJsonDecoder<T> extends JsonStreamDecoder<T> {
+
+    /**
+     * Package private constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and bind values
+     * @param type the type to bind the document to
+     * @param maxBytes the maximum number of bytes to accept before failing
+     * @throws IOException if the parser cannot be created
+     */
+    BufferingJsonDecoder(final ObjectMapper mapper, final JavaType type, final long maxBytes) throws IOException {
+        super(mapper, maxBytes);
+        _type = type;
+    }
+
+    @Override
+    protected void onToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (_buffer == null) {
+            _buffer = new TokenBuffer(parser);
+        }
+        _buffer.copyCurrentEvent(parser);
+    }
+
+    @Override
+    @Nullable
+    protected T complete() throws IOException {
+        if (_buffer == null) {
+            return null;
+        }
+        try (JsonParser parser = _buffer.asParser(getMapper())) {
+            return getMapper().readValue(parser, _type);
+        }
+    }
+
+    private final JavaType _type;
+    private TokenBuffer _buffer;
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pekko.util.ByteString;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * Base class for decoding a JSON document incrementally as chunks of bytes
+ * arrive from the network. Chunks are pushed into a Jackson non-blocking
+ * parser and each available token is handed to the subclass as soon as it
+ * has been parsed, so the raw response body never has to be held in memory.
+ * <p>
+ * Instances are stateful and are intended to decode a single document.
+ *
+ * @param <T> the type of the decoded value
+ * @author agent (agent at local)
+ */
+public abstract class JsonStreamDecoder<T> {
+
+    /**
+     * Feed the next chunk of the document to the decoder.
+     *
+     * @param chunk the bytes to decode
+     * @throws IOException if the bytes cannot be parsed
+     * @throws KairosDbResponseTooLargeException if the document exceeds the maximum size
+     */
+    public void feed(final ByteString chunk) throws IOException {
+        _bytesRead += chunk.size();
+        if (_bytesRead > _maxBytes) {
+            throw new KairosDbResponseTooLargeException(_maxBytes);
+        }
+        for (final ByteBuffer buffer : chunk.getByteBuffers()) {
+            _feeder.feedInput(buffer);
+            drain();
+        }
+    }
+
+    /**
+     * Signal the end of the document and return the decoded value.
+     *
+     * @return the decoded value or {@code null} if the document was empty
+     * @throws IOException if the document is incomplete or cannot be decoded
+     */
+    @Nullable
+    public T finish() throws IOException {
+        _feeder.endOfInput();
+        drain();
+        _parser.close();
+        return complete();
+    }
+
+    public long getBytesRead() {
+        return _bytesRead;
+    }
+
+    /**
+     * Invoked for each token in document order.
+     *
+     * @param parser the parser positioned on the token
+     * @param token the token
+     * @throws IOException if the token cannot be handled
+     */
+    protected abstract void onToken(JsonParser parser, JsonToken token) throws IOException;
+
+    /**
+     * Invoked once all tokens have been delivered.
+     *
+     * @return the decoded value or {@code null} if no tokens were delivered
+     * @throws IOException if the value cannot be constructed
+     */
+    @Nullable
+    protected abstract T complete() throws IOException;
+
+    protected ObjectMapper getMapper() {
+        return _mapper;
+    }
+
+    private void drain() throws IOException {
+        JsonToken token = _parser.nextToken();
+        while (token != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(_parser, token);
+            token = _parser.nextToken();
+        }
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and bind values
+     * @param maxBytes the maximum number of bytes to accept before failing
+     * @throws IOException if the parser cannot be created
+     */
+    protected JsonStreamDecoder(final ObjectMapper mapper, final long maxBytes) throws IOException {
+        _mapper = mapper;
+        _maxBytes = maxBytes;
+        _parser = mapper.getFactory().createNonBlockingByteBufferParser();
+        _feeder = (ByteBufferFeeder) _parser.getNonBlockingInputFeeder();
+    }
+
+    private final ObjectMapper _mapper;
+    private final long _maxBytes;
+    private final JsonParser _parser;
+    private final ByteBufferFeeder _feeder;
+    private long _bytesRead = 0;
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import org.apache.pekko.http.javadsl.Http;
+import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+
+import java.net.URI;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * One KairosDB node and the state used to balance requests across nodes: the
+ * number of outstanding requests, an exponentially weighted moving average of
+ * the time to response headers and recent consecutive failures. A node which
+ * fails {@link #FAILURE_THRESHOLD} requests in a row, by not responding or by
+ * responding with a server error, is unhealthy for {@link #UNHEALTHY_NANOS}.
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class KairosDbBackend {
+
+    /**
+     * Send a request to the node.
+     *
+     * @param request the request with a path relative to the node
+     * @return the response
+     */
+    CompletionStage<HttpResponse> send(final HttpRequest request) {
+        final HttpRequest resolved = request.withUri(_uri.resolve(request.getUri().toString()).toString());
+        final long start = System.nanoTime();
+        _outstanding.incrementAndGet();
+        final CompletionStage<HttpResponse> response = _connectionPool != null
+                ? _connectionPool.send(resolved)
+                : _http.singleRequest(resolved);
+        return response.whenComplete((httpResponse, error) -> {
+            _outstanding.decrementAndGet();
+            if (error != null || httpResponse.status().intValue() >= 500) {
+                recordFailure();
+            } else {
+                recordSuccess(System.nanoTime() - start);
+            }
+        });
+    }
+
+    URI getUri() {
+        return _uri;
+    }
+
+    int getOutstanding() {
+        return _outstanding.get();
+    }
+
+    synchronized double getLatencyEwma() {
+        return _latencyEwma;
+    }
+
+    synchronized boolean isHealthy(final long nowNanos) {
+        return _consecutiveFailures < FAILURE_THRESHOLD || nowNanos - _unhealthySince >= UNHEALTHY_NANOS;
+    }
+
+    private synchronized void recordSuccess(final long latencyNanos) {
+        _consecutiveFailures = 0;
+        _latencyEwma = _latencyEwma == 0 ? latencyNanos : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * _latencyEwma;
+    }
+
+    private synchronized void recordFailure() {
+        ++_consecutiveFailures;
+        if (_consecutiveFailures >= FAILURE_THRESHOLD) {
+            // Restart the unhealthy period so a node which keeps failing its probes stays out
+            _unhealthySince = System.nanoTime();
+        }
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param uri the base URI of the node
+     * @param connectionPool the dedicated pool for the node or {@code null} to use the shared pool
+     * @param http the {@link Http} extension used without a dedicated pool
+     */
+    KairosDbBackend(final URI uri, @Nullable final KairosDbConnectionPool connectionPool, final Http http) {
+        _uri = uri;
+        _connectionPool = connectionPool;
+        _http = http;
+    }
+
+    private final URI _uri;
+    @Nullable
+    private final KairosDbConnectionPool _connectionPool;
+    private final Http _http;
+    private final AtomicInteger _outstanding = new AtomicInteger();
+    private double _latencyEwma;
+    private int _consecutiveFailures;
+    private long _unhealthySince;
+
+    /* package private */ static final int FAILURE_THRESHOLD = 3;
+    /* package private */ static final long UNHEALTHY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double EWMA_ALPHA = 0.2;
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.google.common.collect.ImmutableList;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.Cancellable;
+import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.Materializer;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+
+/**
+ * Routes requests across one or more KairosDB nodes.
+ * <p>
+ * Each request goes to the healthy node with the fewest outstanding
+ * requests, breaking ties by the lower moving average latency; unhealthy
+ * nodes are only used when no node is healthy. When hedging is enabled an
+ * idempotent request which has not received a response after the 95th
+ * percentile of recent response times for its path, bounded by the minimum
+ * and maximum hedge delay, is duplicated to a second node and the first
+ * response wins. The losing response is discarded. Until enough responses
+ * have been observed for a path the maximum hedge delay is used.
+ * <p>
+ * Hedged requests record {@code kairosClient/hedge/sent} and
+ * {@code kairosClient/hedge/won}.
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class KairosDbBackendRouter {
+
+    /**
+     * Send a request to a node.
+     *
+     * @param request the request with a path relative to the node
+     * @param idempotent whether the request may be hedged
+     * @return the response and the base URI of the node which sent it
+     */
+    CompletionStage<Pair<HttpResponse, URI>> send(final HttpRequest request, final boolean idempotent) {
+        if (!idempotent || !_hedgingEnabled || _backends.size() < 2) {
+            final KairosDbBackend backend = select(null);
+            return backend.send(request).thenApply(response -> Pair.create(response, backend.getUri()));
+        }
+        final LatencyWindow window = _windows.computeIfAbsent(request.getUri().path(), path -> new LatencyWindow());
+        final HedgedRequest hedged = new HedgedRequest(request, window, select(null));
+        final Cancellable timer = _actorSystem.scheduler().scheduleOnce(
+                window.getHedgeDelay(_minHedgeDelay, _maxHedgeDelay),
+                hedged::hedge,
+                _actorSystem.dispatcher());
+        hedged._result.whenComplete((response, error) -> timer.cancel());
+        return hedged._result;
+    }
+
+    /* package private */ KairosDbBackend select(@Nullable final KairosDbBackend excluded) {
+        final long now = System.nanoTime();
+        KairosDbBackend best = null;
+        boolean bestHealthy = false;
+        for (final KairosDbBackend backend : _backends) {
+            if (backend == excluded) {
+                continue;
+            }
+            final boolean healthy = backend.isHealthy(now);
+            if (best == null || isPreferred(backend, healthy, best, bestHealthy)) {
+                best = backend;
+                bestHealthy = healthy;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isPreferred(
+            final KairosDbBackend candidate,
+            final boolean candidateHealthy,
+            final KairosDbBackend best,
+            final boolean bestHealthy) {
+        if (candidateHealthy != bestHealthy) {
+            return candidateHealthy;
+        }
+        if (candidate.getOutstanding() != best.getOutstanding()) {
+            return candidate.getOutstanding() < best.getOutstanding();
+        }
+        return candidate.getLatencyEwma() < best.getLatencyEwma();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param backends the nodes to route to
+     * @param hedgingEnabled whether idempotent requests are hedged
+     * @param minHedgeDelay the minimum time to wait before hedging
+     * @param maxHedgeDelay the maximum time to wait before hedging
+     * @param actorSystem the actor system used to schedule hedges
+     * @param metricsFactory the factory for hedging metrics
+     */
+    KairosDbBackendRouter(
+            final ImmutableList<KairosDbBackend> backends,
+            final boolean hedgingEnabled,
+            final Duration minHedgeDelay,
+            final Duration maxHedgeDelay,
+            final ActorSystem actorSystem,
+            final MetricsFactory metricsFactory) {
+        _backends = backends;
+        _hedgingEnabled = hedgingEnabled;
+        _minHedgeDelay = minHedgeDelay;
+        _maxHedgeDelay = maxHedgeDelay;
+        _actorSystem = actorSystem;
+        _materializer = Materializer.matFromSystem(actorSystem);
+        _metricsFactory = metricsFactory;
+    }
+
+    private final ImmutableList<KairosDbBackend> _backends;
+    private final boolean _hedgingEnabled;
+    private final Duration _minHedgeDelay;
+    private final Duration _maxHedgeDelay;
+    private final ActorSystem _actorSystem;
+    private final Materializer _materializer;
+    private final MetricsFactory _metricsFactory;
+    private final ConcurrentMap<String, LatencyWindow> _windows = new ConcurrentHashMap<>();
+
+    private static final int WINDOW_SIZE = 1000;
+    private static final int MIN_SAMPLES = 20;
+    private static final int RECOMPUTE_INTERVAL = 50;
+
+    private final class HedgedRequest {
+        HedgedRequest(final HttpRequest request, final LatencyWindow window, final KairosDbBackend primary) {
+            _request = request;
+            _window = window;
+            _primary = primary;
+            _metrics = _metricsFactory.create();
+            attempt(primary, false);
+        }
+
+        void hedge() {
+            if (_result.isDone()) {
+                return;
+            }
+            final KairosDbBackend backend = select(_primary);
+            if (backend != null) {
+                _hedged = true;
+                attempt(backend, true);
+            }
+        }
+
+        private void attempt(final KairosDbBackend backend, final boolean isHedge) {
+            _attempts.incrementAndGet();
+            final long start = System.nanoTime();
+            backend.send(_request).whenComplete((response, error) -> {
+                if (error == null) {
+                    _window.record(System.nanoTime() - start);
+                    if (_result.complete(Pair.create(response, backend.getUri()))) {
+                        _metrics.incrementCounter("kairosClient/hedge/sent", _hedged ? 1 : 0);
+                        _metrics.incrementCounter("kairosClient/hedge/won", isHedge ? 1 : 0);
+                        _metrics.close();
+                    } else {
+                        response.discardEntityBytes(_materializer);
+                    }
+                } else if (_attempts.decrementAndGet() == 0 && _result.completeExceptionally(error)) {
+                    _metrics.incrementCounter("kairosClient/hedge/sent", _hedged ? 1 : 0);
+                    _metrics.incrementCounter("kairosClient/hedge/won", 0);
+                    _metrics.close();
+                }
+            });
+        }
+
+        private final HttpRequest _request;
+        private final LatencyWindow _window;
+        private final KairosDbBackend _primary;
+        private final Metrics _metrics;
+        private final AtomicInteger _attempts = new AtomicInteger();
+        private final CompletableFuture<Pair<HttpResponse, URI>> _result = new CompletableFuture<>();
+        private volatile boolean _hedged;
+    }
+
+    /**
+     * A sliding window of the most recent response times for one path.
+     */
+    private static final class LatencyWindow {
+        synchronized void record(final long latencyNanos) {
+            _samples[_next] = latencyNanos;
+            _next = (_next + 1) % _samples.length;
+            _count = Math.min(_count + 1, _samples.length);
+            ++_sinceComputed;
+        }
+
+        synchronized Duration getHedgeDelay(final Duration min, final Duration max) {
+            if (_count < MIN_SAMPLES) {
+                return max;
+            }
+            if (_sinceComputed >= RECOMPUTE_INTERVAL || _p95 == null) {
+                final long[] sorted = Arrays.copyOf(_samples, _count);
+                Arrays.sort(sorted);
+                _p95 = Duration.ofNanos(sorted[(int) Math.ceil(0.95 * _count) - 1]);
+                _sinceComputed = 0;
+            }
+            if (_p95.compareTo(min) < 0) {
+                return min;
+            }
+            return _p95.compareTo(max) > 0 ? max : _p95;
+        }
+
+        private final long[] _samples = new long[WINDOW_SIZE];
+        private int _next;
+        private int _count;
+        private int _sinceComputed;
+        private Duration _p95;
+    }
+}
@@ -20,6 +20,7 @@ import com.arpnetworking.kairos.client.models.MetricNamesResponse;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 import com.google.common.collect.ImmutableList;
 
@@ -39,6 +40,16 @@ public interface KairosDbClient {
      */
     CompletionStage<MetricsQueryResponse> queryMetrics(MetricsQuery query);
 
+    /**
+     * Executes a query for datapoints from KairosDB without decoding the
+     * response. The returned stage completes once the response headers have
+     * been received; the body is streamed as it is consumed.
+     *
+     * @param query the query
+     * @return the undecoded response
+     */
+    CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(MetricsQuery query);
+
     /**
      * Queries KairosDB for metric names.
      *
@@ -61,6 +72,13 @@ public interface KairosDbClient {
      */
     CompletionStage<TagNamesResponse> listTagNames();
 
+    /**
+     * Query tag values in KairosDb.
+     *
+     * @return the response
+     */
+    CompletionStage<TagValuesResponse> listTagValues();
+
     /**
      * Persist metric data points.
      *
@@ -21,10 +21,12 @@ import com.arpnetworking.kairos.client.models.MetricNamesResponse;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 import com.arpnetworking.kairos.service.KairosDbServiceImpl;
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.steno.LogBuilder;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
@@ -35,17 +37,26 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotEmpty;
 import net.sf.oval.constraint.NotNull;
+import net.sf.oval.constraint.ValidateWithMethod;
 import org.apache.pekko.actor.ActorSystem;
 import org.apache.pekko.http.javadsl.Http;
+import org.apache.pekko.http.javadsl.model.ContentType;
 import org.apache.pekko.http.javadsl.model.ContentTypes;
 import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.http.javadsl.model.MediaTypes;
 import org.apache.pekko.http.javadsl.model.headers.AcceptEncoding;
 import org.apache.pekko.http.javadsl.model.headers.HttpEncoding;
 import org.apache.pekko.http.javadsl.model.headers.HttpEncodings;
 import org.apache.pekko.http.scaladsl.coding.Coder;
 import org.apache.pekko.http.scaladsl.coding.Coders;
+import org.apache.pekko.japi.Pair;
 import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.util.ByteString;
 import scala.concurrent.duration.FiniteDuration;
 import scala.jdk.javaapi.FutureConverters;
 
@@ -54,8 +65,11 @@ import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 
 /**
  * Client for accessing KairosDB APIs.
@@ -73,10 +87,10 @@ public final class KairosDbClientImpl implements KairosDbClient {
                 .addData("queryUuid", queryUuid)
                 .addData("query", queryJson)
                 .log();
-        final HttpRequest request = HttpRequest.POST(createUri(METRICS_QUERY_PATH).toString())
+        final HttpRequest request = HttpRequest.POST(METRICS_QUERY_PATH.toString())
                 .withEntity(ContentTypes.APPLICATION_JSON, queryJson.toString());
         final Instant startTime = Instant.now();
-        return fireRequest(request, MetricsQueryResponse.class)
+        return fireRequest(request, isIdempotent(query), () -> new MetricsQueryResponseDecoder(_mapper, _maxResponseSize))
                 .whenComplete((response, error) -> {
                     final LogBuilder logBuilder = LOGGER.trace()
                             .setMessage("finished queryMetrics")
@@ -92,10 +106,36 @@ public final class KairosDbClientImpl implements KairosDbClient {
                 });
     }
 
+    @Override
+    public CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(final MetricsQuery query) {
+        final Metrics metrics = _metricsFactory.create();
+        final HttpRequest request = HttpRequest.POST(METRICS_QUERY_PATH.toString())
+                .withEntity(ContentTypes.APPLICATION_JSON, _mapper.valueToTree(query).toString());
+        final Instant startTime = Instant.now();
+        return _router.send(request.addHeader(AcceptEncoding.create(HttpEncodings.GZIP)), isIdempotent(query))
+                .thenCompose(routed -> {
+                    final HttpResponse httpResponse = routed.first();
+                    if (!httpResponse.status().isSuccess()) {
+                        return this.<KairosDbStreamedResponse>failRequest(request, routed, startTime);
+                    }
+                    final HttpEncoding encoding = httpResponse.encoding();
+                    return CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                            .setBody(httpResponse.entity()
+                                    .getDataBytes()
+                                    .completionTimeout(Duration.ofMillis(_readTimeout.toMillis())))
+                            .setContentEncoding(HttpEncodings.IDENTITY.equals(encoding) ? null : encoding.value())
+                            .build());
+                })
+                .whenComplete((response, error) -> {
+                    metrics.incrementCounter("kairosClient/queryMetricsStreamed/success", error == null ? 1 : 0);
+                    metrics.close();
+                });
+    }
+
     @Override
     public CompletionStage<MetricNamesResponse> queryMetricNames() {
-        final HttpRequest request = HttpRequest.GET(createUri(METRICS_NAMES_PATH).toString());
-        return fireRequest(request, MetricNamesResponse.class);
+        final HttpRequest request = HttpRequest.GET(METRICS_NAMES_PATH.toString());
+        return fireRequest(request, true, MetricNamesResponse.class);
     }
 
     @Override
@@ -109,9 +149,9 @@ public final class KairosDbClientImpl implements KairosDbClient {
         // https://kairosdb.github.io/docs/build/html/restapi/QueryMetricTags.html
         // https://kairosdb.github.io/docs/build/html/restapi/QueryMetrics.html
         try {
-            final HttpRequest request = HttpRequest.POST(createUri(TAGS_QUERY_PATH).toString())
+            final HttpRequest request = HttpRequest.POST(TAGS_QUERY_PATH.toString())
                     .withEntity(ContentTypes.APPLICATION_JSON, _mapper.writeValueAsString(query));
-            return fireRequest(request, MetricsQueryResponse.class);
+            return fireRequest(request, true, () -> new MetricsQueryResponseDecoder(_mapper, _maxResponseSize));
         } catch (final JsonProcessingException e) {
             throw new RuntimeException(e);
         }
@@ -119,104 +159,188 @@ public final class KairosDbClientImpl implements KairosDbClient {
 
     @Override
     public CompletionStage<TagNamesResponse> listTagNames() {
-        final HttpRequest request = HttpRequest.GET(createUri(LIST_TAG_NAMES_PATH).toString());
-        return fireRequest(request, TagNamesResponse.class);
+        final HttpRequest request = HttpRequest.GET(LIST_TAG_NAMES_PATH.toString());
+        return fireRequest(request, true, TagNamesResponse.class);
+    }
+
+    @Override
+    public CompletionStage<TagValuesResponse> listTagValues() {
+        final HttpRequest request = HttpRequest.GET(LIST_TAG_VALUES_PATH.toString());
+        return fireRequest(request, true, TagValuesResponse.class);
     }
 
     @Override
     public CompletionStage<Void> addDataPoints(final ImmutableList<MetricDataPoints> metricDataPoints) {
+        if (_writeBatcher != null) {
+            return _writeBatcher.write(metricDataPoints);
+        }
         try {
-            final HttpRequest request = HttpRequest.POST(createUri(ADD_DATA_POINTS_PATH).toString())
+            final HttpRequest request = HttpRequest.POST(ADD_DATA_POINTS_PATH.toString())
                     .withEntity(ContentTypes.APPLICATION_JSON, _mapper.writeValueAsString(metricDataPoints));
-            return fireRequest(request, Void.class);
+            return fireRequest(request, false, Void.class);
         } catch (final JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private <T> CompletionStage<T> fireRequest(final HttpRequest request, final Class<T> responseType) {
-        return fireRequest(request, TypeFactory.defaultInstance().constructType(responseType));
+    private CompletionStage<Void> writeBatch(final ByteString body) {
+        final HttpRequest request = HttpRequest.POST(ADD_DATA_POINTS_PATH.toString())
+                .withEntity(GZIP_CONTENT_TYPE, body);
+        return fireRequest(request, false, Void.class);
+    }
+
+    private <T> CompletionStage<T> fireRequest(
+            final HttpRequest request,
+            final boolean idempotent,
+            final Class<T> responseType) {
+        return fireRequest(request, idempotent, TypeFactory.defaultInstance().constructType(responseType));
+    }
+
+    private <T> CompletionStage<T> fireRequest(
+            final HttpRequest request,
+            final boolean idempotent,
+            final JavaType responseType) {
+        return fireRequest(request, idempotent, () -> new BufferingJsonDecoder<>(_mapper, responseType, _maxResponseSize));
     }
 
-    private <T> CompletionStage<T> fireRequest(final HttpRequest request, final JavaType responseType) {
+    private <T> CompletionStage<T> fireRequest(
+            final HttpRequest request,
+            final boolean idempotent,
+            final DecoderFactory<T> decoderFactory) {
         final Instant startTime = Instant.now();
-        return _http.singleRequest(request.addHeader(AcceptEncoding.create(HttpEncodings.GZIP)))
-                .thenCompose(httpResponse -> {
-                    final HttpEncoding encoding = httpResponse.encoding();
-                    final Coder flow;
-                    if (HttpEncodings.GZIP.equals(encoding)) {
-                        flow = Coders.Gzip();
-                    } else if (HttpEncodings.DEFLATE.equals(encoding)) {
-                        flow = Coders.Deflate();
-                    } else {
-                        flow = Coders.NoCoding();
-                    }
+        return _router.send(request.addHeader(AcceptEncoding.create(HttpEncodings.GZIP)), idempotent)
+                .thenCompose(routed -> {
+                    final HttpResponse httpResponse = routed.first();
                     if (!httpResponse.status().isSuccess()) {
-                        return httpResponse.entity().toStrict(_readTimeout.toMillis(), _materializer)
-                                .thenCompose(strict -> FutureConverters.asJava(flow.decode(strict.getData(), _materializer)))
-                                .thenApply(materializedBody -> {
-                                    final String responseBody = materializedBody.utf8String();
-                                    if (responseBody.isEmpty()) {
-                                        throw new KairosDbRequestException(
-                                                httpResponse.status().intValue(),
-                                                httpResponse.status().reason(),
-                                                URI.create(request.getUri().toString()),
-                                                Duration.between(startTime, Instant.now()));
-                                    }
-                                    throw new KairosDbRequestException(
-                                            responseBody,
-                                            httpResponse.status().intValue(),
-                                            httpResponse.status().reason(),
-                                            URI.create(request.getUri().toString()),
-                                            Duration.between(startTime, Instant.now()));
-                                });
+                        return this.<T>failRequest(request, routed, startTime);
                     }
-                    return httpResponse.entity()
-                            .toStrict(_readTimeout.toMillis(), _materializer)
-                            .thenCompose(strict -> FutureConverters.asJava(flow.decode(strict.getData(), _materializer)));
-                })
-                .thenApply(body -> {
+                    final Coder flow = getCoder(httpResponse.encoding());
+                    // Decode the body as it arrives rather than materializing the compressed
+                    // entity, the decompressed entity and its string form all at once.
+                    final JsonStreamDecoder<T> decoder;
                     try {
-                        if (body.size() > 0) {
-                            return _mapper.readValue(body.utf8String(), responseType);
-                        } else {
-                            return null;
-                        }
+                        decoder = decoderFactory.create();
                     } catch (final IOException e) {
+                        httpResponse.discardEntityBytes(_materializer);
                         throw new RuntimeException(e);
                     }
+                    return httpResponse.entity()
+                            .getDataBytes()
+                            .via(flow.decoderFlow())
+                            .completionTimeout(Duration.ofMillis(_readTimeout.toMillis()))
+                            .runForeach(decoder::feed, _materializer)
+                            .thenApply(done -> {
+                                try {
+                                    return decoder.finish();
+                                } catch (final IOException e) {
+                                    throw new RuntimeException(e);
+                                }
+                            });
                 });
     }
 
-    private URI createUri(final URI relativePath) {
-        return _uri.resolve(relativePath);
+    private <T> CompletionStage<T> failRequest(
+            final HttpRequest request,
+            final Pair<HttpResponse, URI> routed,
+            final Instant startTime) {
+        final HttpResponse httpResponse = routed.first();
+        final URI uri = routed.second().resolve(request.getUri().toString());
+        final Coder flow = getCoder(httpResponse.encoding());
+        return httpResponse.entity().toStrict(_readTimeout.toMillis(), _materializer)
+                .thenCompose(strict -> FutureConverters.asJava(flow.decode(strict.getData(), _materializer)))
+                .thenApply(materializedBody -> {
+                    final String responseBody = materializedBody.utf8String();
+                    if (responseBody.isEmpty()) {
+                        throw new KairosDbRequestException(
+                                httpResponse.status().intValue(),
+                                httpResponse.status().reason(),
+                                uri,
+                                Duration.between(startTime, Instant.now()));
+                    }
+                    throw new KairosDbRequestException(
+                            responseBody,
+                            httpResponse.status().intValue(),
+                            httpResponse.status().reason(),
+                            uri,
+                            Duration.between(startTime, Instant.now()));
+                });
+    }
+
+    private static Coder getCoder(final HttpEncoding encoding) {
+        if (HttpEncodings.GZIP.equals(encoding)) {
+            return Coders.Gzip();
+        } else if (HttpEncodings.DEFLATE.equals(encoding)) {
+            return Coders.Deflate();
+        } else {
+            return Coders.NoCoding();
+        }
+    }
+
+    // Writing the results of a query back with a save_as aggregator is not
+    // safe to duplicate to a second node
+    private static boolean isIdempotent(final MetricsQuery query) {
+        return query.getMetrics()
+                .stream()
+                .flatMap(metric -> metric.getAggregators().stream())
+                .noneMatch(aggregator -> SAVE_AS_AGGREGATOR.equals(aggregator.getName()));
     }
 
     private KairosDbClientImpl(final Builder builder) {
         final ActorSystem actorSystem = builder._actorSystem;
         _mapper = builder._mapper;
-        _uri = builder._uri;
 
-        _http = Http.get(actorSystem);
+        final Http http = Http.get(actorSystem);
+        final ImmutableMap<URI, KairosDbConnectionPool> connectionPools = builder._connectionPools.stream()
+                .collect(ImmutableMap.toImmutableMap(KairosDbConnectionPool::getUri, Function.identity()));
+        _router = new KairosDbBackendRouter(
+                builder._uris.stream()
+                        .map(uri -> new KairosDbBackend(uri, connectionPools.get(uri), http))
+                        .collect(ImmutableList.toImmutableList()),
+                builder._hedgingEnabled,
+                builder._minHedgeDelay,
+                builder._maxHedgeDelay,
+                actorSystem,
+                builder._metricsFactory);
         _materializer = Materializer.createMaterializer(actorSystem);
         _readTimeout = builder._readTimeout;
+        _maxResponseSize = builder._maxResponseSize;
         _metricsFactory = builder._metricsFactory;
+        _writeBatcher = builder._writeBatchSettings == null
+                ? null
+                : new KairosDbWriteBatcher(
+                        builder._writeBatchSettings,
+                        this::writeBatch,
+                        _mapper,
+                        actorSystem,
+                        builder._periodicMetrics);
     }
 
     private final ObjectMapper _mapper;
-    private final Http _http;
+    private final KairosDbBackendRouter _router;
     private final Materializer _materializer;
-    private final URI _uri;
     private final FiniteDuration _readTimeout;
+    private final long _maxResponseSize;
     private final MetricsFactory _metricsFactory;
+    @Nullable
+    private final KairosDbWriteBatcher _writeBatcher;
 
     static final URI METRICS_QUERY_PATH = URI.create("/api/v1/datapoints/query");
     static final URI METRICS_NAMES_PATH = URI.create("/api/v1/metricnames");
     static final URI TAGS_QUERY_PATH = URI.create("/api/v1/datapoints/query/tags");
     static final URI LIST_TAG_NAMES_PATH = URI.create("/api/v1/tagnames");
+    static final URI LIST_TAG_VALUES_PATH = URI.create("/api/v1/tagvalues");
     static final URI ADD_DATA_POINTS_PATH = URI.create("/api/v1/datapoints");
+    private static final String SAVE_AS_AGGREGATOR = "save_as";
+    // KairosDB accepts compressed data points as application/gzip rather than by content encoding
+    private static final ContentType.Binary GZIP_CONTENT_TYPE =
+            ContentTypes.create(MediaTypes.applicationBinary("gzip", MediaTypes.NOT_COMPRESSIBLE));
     private static final Logger LOGGER = LoggerFactory.getLogger(KairosDbClientImpl.class);
 
+    @FunctionalInterface
+    private interface DecoderFactory<T> {
+        JsonStreamDecoder<T> create() throws IOException;
+    }
+
     /**
      * Implementation of the builder pattern for {@link KairosDbClientImpl}.
      *
@@ -253,13 +377,24 @@ public final class KairosDbClientImpl implements KairosDbClient {
         }
 
         /**
-         * Sets the base URI.
+         * Sets the base URI of a single KairosDB node.
          *
          * @param value the base URI
          * @return this Builder
          */
         public Builder setUri(final URI value) {
-            _uri = value;
+            _uris = value == null ? null : ImmutableList.of(value);
+            return this;
+        }
+
+        /**
+         * Sets the base URIs of the KairosDB nodes to balance requests across.
+         *
+         * @param value the base URIs
+         * @return this Builder
+         */
+        public Builder setUris(final ImmutableList<URI> value) {
+            _uris = value;
             return this;
         }
 
@@ -274,6 +409,19 @@ public final class KairosDbClientImpl implements KairosDbClient {
             return this;
         }
 
+        /**
+         * Sets the maximum size in bytes of a decoded response body. Responses
+         * exceeding this size fail with {@link KairosDbResponseTooLargeException}.
+         * Optional. Defaults to 1 GiB.
+         *
+         * @param value the maximum response size in bytes
+         * @return this Builder
+         */
+        public Builder setMaxResponseSize(final Long value) {
+            _maxResponseSize = value;
+            return this;
+        }
+
         /**
          * Sets the {@link MetricsFactory} to use. Cannot be null.
          *
@@ -285,6 +433,86 @@ public final class KairosDbClientImpl implements KairosDbClient {
             return this;
         }
 
+        /**
+         * Sets the dedicated {@link KairosDbConnectionPool} instances requests
+         * are sent through, matched to nodes by URI. Optional. Nodes without a
+         * dedicated pool use the shared Pekko HTTP pool.
+         *
+         * @param value the connection pools
+         * @return this Builder
+         */
+        public Builder setConnectionPools(final ImmutableList<KairosDbConnectionPool> value) {
+            _connectionPools = value;
+            return this;
+        }
+
+        /**
+         * Sets whether idempotent reads are hedged to a second node when the
+         * first has not responded after the recent 95th percentile response
+         * time. Optional. Defaults to false.
+         *
+         * @param value whether to hedge reads
+         * @return this Builder
+         */
+        public Builder setHedgingEnabled(final Boolean value) {
+            _hedgingEnabled = value;
+            return this;
+        }
+
+        /**
+         * Sets the minimum time to wait before hedging a read. Optional.
+         * Defaults to 50 milliseconds.
+         *
+         * @param value the minimum hedge delay
+         * @return this Builder
+         */
+        public Builder setMinHedgeDelay(final Duration value) {
+            _minHedgeDelay = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time to wait before hedging a read; also the delay
+         * used until enough responses have been observed. Optional. Defaults
+         * to 5 seconds.
+         *
+         * @param value the maximum hedge delay
+         * @return this Builder
+         */
+        public Builder setMaxHedgeDelay(final Duration value) {
+            _maxHedgeDelay = value;
+            return this;
+        }
+
+        /**
+         * Sets the settings for batching data point writes across callers.
+         * Optional. Defaults to sending each write on its own. Requires
+         * {@link #setPeriodicMetrics(PeriodicMetrics)}.
+         *
+         * @param value the write batching settings
+         * @return this Builder
+         */
+        public Builder setWriteBatchSettings(@Nullable final KairosDbWriteBatchSettings value) {
+            _writeBatchSettings = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PeriodicMetrics} to publish write batching metrics to.
+         * Required if write batching is enabled.
+         *
+         * @param value the {@link PeriodicMetrics} to use
+         * @return this Builder
+         */
+        public Builder setPeriodicMetrics(@Nullable final PeriodicMetrics value) {
+            _periodicMetrics = value;
+            return this;
+        }
+
+        private boolean validateWriteBatchSettings(final KairosDbWriteBatchSettings writeBatchSettings) {
+            return _periodicMetrics != null;
+        }
+
         @NotNull
         @JacksonInject
         private ActorSystem _actorSystem;
@@ -292,10 +520,25 @@ public final class KairosDbClientImpl implements KairosDbClient {
         @JacksonInject
         private ObjectMapper _mapper;
         @NotNull
-        private URI _uri;
+        @NotEmpty
+        private ImmutableList<URI> _uris;
         @NotNull
         private FiniteDuration _readTimeout = FiniteDuration.apply(1, TimeUnit.HOURS);
         @NotNull
+        @Min(1)
+        private Long _maxResponseSize = 1024L * 1024L * 1024L;
+        @NotNull
         private MetricsFactory _metricsFactory;
+        @NotNull
+        private ImmutableList<KairosDbConnectionPool> _connectionPools = ImmutableList.of();
+        @NotNull
+        private Boolean _hedgingEnabled = false;
+        @NotNull
+        private Duration _minHedgeDelay = Duration.ofMillis(50);
+        @NotNull
+        private Duration _maxHedgeDelay = Duration.ofSeconds(5);
+        @ValidateWithMethod(methodName = "validateWriteBatchSettings", parameterType = KairosDbWriteBatchSettings.class)
+        private KairosDbWriteBatchSettings _writeBatchSettings;
+        private PeriodicMetrics _periodicMetrics;
     }
 }
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.event.Logging;
+import org.apache.pekko.http.javadsl.ClientTransport;
+import org.apache.pekko.http.javadsl.ConnectHttp;
+import org.apache.pekko.http.javadsl.Http;
+import org.apache.pekko.http.javadsl.OutgoingConnection;
+import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.http.javadsl.settings.ClientConnectionSettings;
+import org.apache.pekko.http.javadsl.settings.ConnectionPoolSettings;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.BoundedSourceQueue;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.QueueOfferResult;
+import org.apache.pekko.stream.javadsl.Flow;
+import org.apache.pekko.stream.javadsl.Keep;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+import scala.util.Try;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A dedicated host connection pool for one KairosDB node.
+ * <p>
+ * Requests are offered to a bounded queue in front of a Pekko HTTP
+ * {@code cachedHostConnectionPool} whose settings are taken from
+ * {@code pekko.http.host-connection-pool} and overridden by the builder.
+ * Requests beyond the queue size fail with a
+ * {@link RejectedExecutionException} instead of being buffered without bound.
+ * <p>
+ * The pool publishes the following metrics, where {@code <host>} is the host
+ * and port of the node with non-alphanumeric characters replaced:
+ * <ul>
+ *     <li>{@code kairosClient/pool/<host>/queued} the requests waiting for the pool</li>
+ *     <li>{@code kairosClient/pool/<host>/in_flight} the requests dispatched to the pool without a response</li>
+ *     <li>{@code kairosClient/pool/<host>/open_connections} the open connections</li>
+ *     <li>{@code kairosClient/pool/<host>/connections_opened} the connections opened, to track churn</li>
+ *     <li>{@code kairosClient/pool/<host>/queue_wait} the time each request waited for the pool</li>
+ *     <li>{@code kairosClient/pool/<host>/rejected} the requests rejected because the queue was full</li>
+ * </ul>
+ *
+ * @author agent (agent at local)
+ */
+public final class KairosDbConnectionPool {
+
+    /**
+     * Send a request through the pool.
+     *
+     * @param request the request, with a path relative to the node
+     * @return the response, or a {@link RejectedExecutionException} if the queue is full
+     */
+    public CompletionStage<HttpResponse> send(final HttpRequest request) {
+        final Pending pending = new Pending();
+        _queued.incrementAndGet();
+        // The pool is bound to the node so requests carry only the path and query
+        final QueueOfferResult result = _queue.offer(Pair.create(request.withUri(request.getUri().toRelative()), pending));
+        if (QueueOfferResult.enqueued().equals(result)) {
+            return pending._future;
+        }
+        _queued.decrementAndGet();
+        if (QueueOfferResult.dropped().equals(result)) {
+            _periodicMetrics.recordCounter(_metricPrefix + "/rejected", 1);
+            return CompletableFuture.failedFuture(
+                    new RejectedExecutionException("KairosDB connection pool queue is full; uri=" + _uri));
+        }
+        return CompletableFuture.failedFuture(
+                new IllegalStateException("KairosDB connection pool is not accepting requests; uri=" + _uri));
+    }
+
+    /**
+     * The URI of the node the pool is bound to.
+     *
+     * @return the URI of the node
+     */
+    public URI getUri() {
+        return _uri;
+    }
+
+    private void complete(final Pair<Try<HttpResponse>, Pending> element) {
+        _inFlight.decrementAndGet();
+        final Try<HttpResponse> response = element.first();
+        if (response.isSuccess()) {
+            element.second()._future.complete(response.get());
+        } else {
+            element.second()._future.completeExceptionally(response.failed().get());
+        }
+    }
+
+    private void recordGauges(final PeriodicMetrics periodicMetrics) {
+        periodicMetrics.recordGauge(_metricPrefix + "/queued", _queued.get());
+        periodicMetrics.recordGauge(_metricPrefix + "/in_flight", _inFlight.get());
+        periodicMetrics.recordGauge(_metricPrefix + "/open_connections", _openConnections.get());
+        periodicMetrics.recordCounter(_metricPrefix + "/connections_opened", _connectionsOpened.getAndSet(0));
+    }
+
+    private ConnectionPoolSettings createSettings(final Builder builder) {
+        ConnectionPoolSettings settings = ConnectionPoolSettings.create(builder._actorSystem);
+        if (builder._maxConnections != null) {
+            settings = settings.withMaxConnections(builder._maxConnections);
+        }
+        if (builder._maxOpenRequests != null) {
+            settings = settings.withMaxOpenRequests(builder._maxOpenRequests);
+        }
+        if (builder._pipeliningLimit != null) {
+            settings = settings.withPipeliningLimit(builder._pipeliningLimit);
+        }
+        if (builder._keepAliveTimeout != null) {
+            settings = settings.withKeepAliveTimeout(builder._keepAliveTimeout);
+        }
+        if (builder._idleTimeout != null) {
+            settings = settings.withIdleTimeout(builder._idleTimeout);
+        }
+        if (builder._maxConnectionLifetime != null) {
+            settings = settings.withMaxConnectionLifetime(builder._maxConnectionLifetime);
+        }
+        return settings.withTransport(new CountingTransport(ClientTransport.TCP()));
+    }
+
+    private KairosDbConnectionPool(final Builder builder) {
+        _uri = builder._uri;
+        _periodicMetrics = builder._periodicMetrics;
+        final boolean https = "https".equalsIgnoreCase(_uri.getScheme());
+        final int port = _uri.getPort() < 0 ? (https ? 443 : 80) : _uri.getPort();
+        _metricPrefix = "kairosClient/pool/" + (_uri.getHost() + "_" + port).replaceAll("[^A-Za-z0-9]", "_");
+
+        final ActorSystem actorSystem = builder._actorSystem;
+        final Http http = Http.get(actorSystem);
+        final ConnectHttp connect = https
+                ? ConnectHttp.toHostHttps(_uri.getHost(), port)
+                : ConnectHttp.toHost(_uri.getHost(), port);
+        final Flow<Pair<HttpRequest, Pending>, Pair<Try<HttpResponse>, Pending>, ?> pool = https
+                ? http.cachedHostConnectionPoolHttps(connect, createSettings(builder), Logging.getLogger(actorSystem, this))
+                : http.cachedHostConnectionPool(connect, createSettings(builder), Logging.getLogger(actorSystem, this));
+        _queue = Source.<Pair<HttpRequest, Pending>>queue(builder._queueSize)
+                .map(element -> {
+                    element.second().dispatched();
+                    return element;
+                })
+                .via(pool)
+                .toMat(Sink.foreach(this::complete), Keep.left())
+                .run(Materializer.matFromSystem(actorSystem));
+
+        _periodicMetrics.registerPolledMetric(this::recordGauges);
+    }
+
+    private final URI _uri;
+    private final PeriodicMetrics _periodicMetrics;
+    private final String _metricPrefix;
+    private final BoundedSourceQueue<Pair<HttpRequest, Pending>> _queue;
+    private final AtomicInteger _queued = new AtomicInteger();
+    private final AtomicInteger _inFlight = new AtomicInteger();
+    private final AtomicInteger _openConnections = new AtomicInteger();
+    private final AtomicLong _connectionsOpened = new AtomicLong();
+
+    private final class Pending {
+        void dispatched() {
+            _queued.decrementAndGet();
+            _inFlight.incrementAndGet();
+            _periodicMetrics.recordTimer(
+                    _metricPrefix + "/queue_wait",
+                    System.nanoTime() - _enqueuedAt,
+                    Optional.of(TimeUnit.NANOSECONDS));
+        }
+
+        private final long _enqueuedAt = System.nanoTime();
+        private final CompletableFuture<HttpResponse> _future = new CompletableFuture<>();
+    }
+
+    private final class CountingTransport extends ClientTransport {
+        CountingTransport(final ClientTransport delegate) {
+            _delegate = delegate;
+        }
+
+        @Override
+        public Flow<ByteString, ByteString, CompletionStage<OutgoingConnection>> connectTo(
+                final String host,
+                final int port,
+                final ClientConnectionSettings settings,
+                final ActorSystem system) {
+            return _delegate.connectTo(host, port, settings, system)
+                    .watchTermination((connection, terminated) -> {
+                        _connectionsOpened.incrementAndGet();
+                        _openConnections.incrementAndGet();
+                        terminated.whenComplete((done, error) -> _openConnections.decrementAndGet());
+                        return connection;
+                    });
+        }
+
+        private final ClientTransport _delegate;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link KairosDbConnectionPool}.
+     * Settings which are not set are taken from
+     * {@code pekko.http.host-connection-pool}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<KairosDbConnectionPool> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KairosDbConnectionPool::new);
+        }
+
+        /**
+         * Sets the actor system the pool runs on. Required. Cannot be null.
+         *
+         * @param value the actor system
+         * @return this {@link Builder}
+         */
+        public Builder setActorSystem(final ActorSystem value) {
+            _actorSystem = value;
+            return this;
+        }
+
+        /**
+         * Sets the URI of the node. Required. Cannot be null.
+         *
+         * @param value the URI
+         * @return this {@link Builder}
+         */
+        public Builder setUri(final URI value) {
+            _uri = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PeriodicMetrics} the pool metrics are recorded to.
+         * Required. Cannot be null.
+         *
+         * @param value the periodic metrics
+         * @return this {@link Builder}
+         */
+        public Builder setPeriodicMetrics(final PeriodicMetrics value) {
+            _periodicMetrics = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests waiting for the pool. Optional.
+         * Defaults to 1024. Must be at least one.
+         *
+         * @param value the queue size
+         * @return this {@link Builder}
+         */
+        public Builder setQueueSize(final Integer value) {
+            _queueSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections to the node. Optional.
+         *
+         * @param value the maximum connections
+         * @return this {@link Builder}
+         */
+        public Builder setMaxConnections(@Nullable final Integer value) {
+            _maxConnections = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests the pool accepts before
+         * backpressuring the queue. Optional.
+         *
+         * @param value the maximum open requests; must be a power of two
+         * @return this {@link Builder}
+         */
+        public Builder setMaxOpenRequests(@Nullable final Integer value) {
+            _maxOpenRequests = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests pipelined on one connection.
+         * Optional.
+         *
+         * @param value the pipelining limit
+         * @return this {@link Builder}
+         */
+        public Builder setPipeliningLimit(@Nullable final Integer value) {
+            _pipeliningLimit = value;
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection is kept alive for reuse. Optional.
+         *
+         * @param value the keep alive timeout
+         * @return this {@link Builder}
+         */
+        public Builder setKeepAliveTimeout(@Nullable final Duration value) {
+            _keepAliveTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets how long the pool may be idle before it is shut down. Optional.
+         *
+         * @param value the idle timeout
+         * @return this {@link Builder}
+         */
+        public Builder setIdleTimeout(@Nullable final Duration value) {
+            _idleTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum lifetime of a connection. Optional.
+         *
+         * @param value the maximum connection lifetime
+         * @return this {@link Builder}
+         */
+        public Builder setMaxConnectionLifetime(@Nullable final Duration value) {
+            _maxConnectionLifetime = value;
+            return this;
+        }
+
+        @NotNull
+        private ActorSystem _actorSystem;
+        @NotNull
+        private URI _uri;
+        @NotNull
+        private PeriodicMetrics _periodicMetrics;
+        @NotNull
+        @Min(1)
+        private Integer _queueSize = 1024;
+        @Min(1)
+        private Integer _maxConnections;
+        @Min(1)
+        private Integer _maxOpenRequests;
+        @Min(1)
+        private Integer _pipeliningLimit;
+        private Duration _keepAliveTimeout;
+        private Duration _idleTimeout;
+        private Duration _maxConnectionLifetime;
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.logback.annotations.Loggable;
+
+/**
+ * An exception that represents a KairosDB response whose decoded body exceeded
+ * the configured maximum size.
+ *
+ * @author agent (agent at local)
+ */
+@Loggable
+public class KairosDbResponseTooLargeException extends RuntimeException {
+
+    public long getMaxResponseSize() {
+        return _maxResponseSize;
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param maxResponseSize the maximum response size in bytes
+     */
+    public KairosDbResponseTooLargeException(final long maxResponseSize) {
+        super(String.format("KairosDb response exceeded the maximum size of %d bytes", maxResponseSize));
+        _maxResponseSize = maxResponseSize;
+    }
+
+    private final long _maxResponseSize;
+    private static final long serialVersionUID = 2863370391950207284L;
+}
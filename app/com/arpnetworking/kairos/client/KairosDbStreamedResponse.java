@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.http.javadsl.model.headers.HttpEncodings;
+import org.apache.pekko.http.scaladsl.coding.Coder;
+import org.apache.pekko.http.scaladsl.coding.Coders;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+
+import java.util.Locale;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * A successful KairosDB response whose body has not been read. The body is
+ * exposed exactly as it was received, including any content encoding, so it
+ * can be forwarded without being decoded and re-encoded.
+ * <p>
+ * The body may only be consumed once.
+ *
+ * @author agent (agent at local)
+ */
+public final class KairosDbStreamedResponse {
+
+    /**
+     * The body as received from KairosDB.
+     *
+     * @return the encoded body
+     */
+    public Source<ByteString, ?> getBody() {
+        return _body;
+    }
+
+    /**
+     * The content encoding of the body, if any.
+     *
+     * @return the content encoding, e.g. {@code gzip}
+     */
+    public Optional<String> getContentEncoding() {
+        return _contentEncoding;
+    }
+
+    /**
+     * The body with its content encoding removed.
+     *
+     * @return the decoded body
+     */
+    public Source<ByteString, ?> getDecodedBody() {
+        if (_contentEncoding.isEmpty()) {
+            return _body;
+        }
+        final String encoding = _contentEncoding.get().toLowerCase(Locale.ROOT);
+        final Coder coder;
+        if (HttpEncodings.GZIP.value().equals(encoding)) {
+            coder = Coders.Gzip();
+        } else if (HttpEncodings.DEFLATE.value().equals(encoding)) {
+            coder = Coders.Deflate();
+        } else {
+            coder = Coders.NoCoding();
+        }
+        return _body.via(coder.decoderFlow());
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("contentEncoding", _contentEncoding)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private KairosDbStreamedResponse(final Builder builder) {
+        _body = builder._body;
+        _contentEncoding = Optional.ofNullable(builder._contentEncoding);
+    }
+
+    private final Source<ByteString, ?> _body;
+    private final Optional<String> _contentEncoding;
+
+    /**
+     * Implementation of the builder pattern for {@link KairosDbStreamedResponse}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<KairosDbStreamedResponse> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KairosDbStreamedResponse::new);
+        }
+
+        /**
+         * Sets the body as received. Required. Cannot be null.
+         *
+         * @param value the body
+         * @return this {@link Builder}
+         */
+        public Builder setBody(final Source<ByteString, ?> value) {
+            _body = value;
+            return this;
+        }
+
+        /**
+         * Sets the content encoding of the body. Optional. Defaults to none.
+         *
+         * @param value the content encoding
+         * @return this {@link Builder}
+         */
+        public Builder setContentEncoding(@Nullable final String value) {
+            _contentEncoding = value;
+            return this;
+        }
+
+        @NotNull
+        private Source<ByteString, ?> _body;
+        private String _contentEncoding;
+    }
+}
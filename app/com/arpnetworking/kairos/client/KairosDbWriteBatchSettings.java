@@ -0,0 +1,242 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.steno.LogValueMapFactory;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.time.Duration;
+
+/**
+ * Settings for batching the data points written by {@link KairosDbClientImpl}.
+ * <p>
+ * Writes are queued and grouped into a batch until it holds
+ * {@code maxBatchSeries} series or {@code maxBatchBytes} bytes of serialized
+ * JSON, or until {@code maxBatchDelay} has passed since the first write in the
+ * batch. Up to {@code parallelism} batches are sent at once and a failed batch
+ * is retried up to {@code maxRetries} times with exponential backoff.
+ *
+ * @author agent (agent at local)
+ */
+public final class KairosDbWriteBatchSettings {
+
+    public int getQueueSize() {
+        return _queueSize;
+    }
+
+    public int getMaxBatchSeries() {
+        return _maxBatchSeries;
+    }
+
+    public long getMaxBatchBytes() {
+        return _maxBatchBytes;
+    }
+
+    public Duration getMaxBatchDelay() {
+        return _maxBatchDelay;
+    }
+
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    public int getMaxRetries() {
+        return _maxRetries;
+    }
+
+    public Duration getMinBackoff() {
+        return _minBackoff;
+    }
+
+    public Duration getMaxBackoff() {
+        return _maxBackoff;
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("queueSize", _queueSize)
+                .put("maxBatchSeries", _maxBatchSeries)
+                .put("maxBatchBytes", _maxBatchBytes)
+                .put("maxBatchDelay", _maxBatchDelay)
+                .put("parallelism", _parallelism)
+                .put("maxRetries", _maxRetries)
+                .put("minBackoff", _minBackoff)
+                .put("maxBackoff", _maxBackoff)
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private KairosDbWriteBatchSettings(final Builder builder) {
+        _queueSize = builder._queueSize;
+        _maxBatchSeries = builder._maxBatchSeries;
+        _maxBatchBytes = builder._maxBatchBytes;
+        _maxBatchDelay = builder._maxBatchDelay;
+        _parallelism = builder._parallelism;
+        _maxRetries = builder._maxRetries;
+        _minBackoff = builder._minBackoff;
+        _maxBackoff = builder._maxBackoff;
+    }
+
+    private final int _queueSize;
+    private final int _maxBatchSeries;
+    private final long _maxBatchBytes;
+    private final Duration _maxBatchDelay;
+    private final int _parallelism;
+    private final int _maxRetries;
+    private final Duration _minBackoff;
+    private final Duration _maxBackoff;
+
+    /**
+     * Implementation of the builder pattern for {@link KairosDbWriteBatchSettings}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<KairosDbWriteBatchSettings> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KairosDbWriteBatchSettings::new);
+        }
+
+        /**
+         * Sets the maximum number of series waiting to be batched; further
+         * writes are rejected. Optional. Defaults to 10000.
+         *
+         * @param value the queue size
+         * @return this Builder
+         */
+        public Builder setQueueSize(final Integer value) {
+            _queueSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of series in a batch. Optional. Defaults to 1000.
+         *
+         * @param value the maximum series per batch
+         * @return this Builder
+         */
+        public Builder setMaxBatchSeries(final Integer value) {
+            _maxBatchSeries = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum uncompressed size of a batch in bytes. A single
+         * series larger than this is sent on its own. Optional. Defaults to 4 MiB.
+         *
+         * @param value the maximum batch size in bytes
+         * @return this Builder
+         */
+        public Builder setMaxBatchBytes(final Long value) {
+            _maxBatchBytes = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a write waits for its batch to fill. Optional.
+         * Defaults to 100 milliseconds.
+         *
+         * @param value the maximum batch delay
+         * @return this Builder
+         */
+        public Builder setMaxBatchDelay(final Duration value) {
+            _maxBatchDelay = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batches sent at once. Optional. Defaults to 4.
+         *
+         * @param value the parallelism
+         * @return this Builder
+         */
+        public Builder setParallelism(final Integer value) {
+            _parallelism = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of times a failed batch is retried. Client errors
+         * are not retried. Optional. Defaults to 3.
+         *
+         * @param value the maximum retries
+         * @return this Builder
+         */
+        public Builder setMaxRetries(final Integer value) {
+            _maxRetries = value;
+            return this;
+        }
+
+        /**
+         * Sets the backoff before the first retry. Optional. Defaults to 100 milliseconds.
+         *
+         * @param value the minimum backoff
+         * @return this Builder
+         */
+        public Builder setMinBackoff(final Duration value) {
+            _minBackoff = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum backoff between retries. Optional. Defaults to 10 seconds.
+         *
+         * @param value the maximum backoff
+         * @return this Builder
+         */
+        public Builder setMaxBackoff(final Duration value) {
+            _maxBackoff = value;
+            return this;
+        }
+
+        @NotNull
+        @Min(1)
+        private Integer _queueSize = 10000;
+        @NotNull
+        @Min(1)
+        private Integer _maxBatchSeries = 1000;
+        @NotNull
+        @Min(1)
+        private Long _maxBatchBytes = 4L * 1024L * 1024L;
+        @NotNull
+        private Duration _maxBatchDelay = Duration.ofMillis(100);
+        @NotNull
+        @Min(1)
+        private Integer _parallelism = 4;
+        @NotNull
+        @Min(0)
+        private Integer _maxRetries = 3;
+        @NotNull
+        private Duration _minBackoff = Duration.ofMillis(100);
+        @NotNull
+        private Duration _maxBackoff = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.pattern.Patterns;
+import org.apache.pekko.stream.BoundedSourceQueue;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.QueueOfferResult;
+import org.apache.pekko.stream.javadsl.Keep;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Batches data point writes from all callers of a {@link KairosDbClientImpl}.
+ * <p>
+ * Each series is serialized when it is written and offered to a bounded
+ * queue; series which do not fit are rejected with a
+ * {@link RejectedExecutionException} so callers see backpressure instead of
+ * unbounded buffering. Queued series are grouped as described by
+ * {@link KairosDbWriteBatchSettings}, sent as a single gzip compressed request
+ * and retried with backoff on failure. A batch KairosDB rejects with a client
+ * error is not retried; instead the series of each write in it are resent as
+ * a batch of their own, so only the writes KairosDB rejects fail. A write
+ * completes once every one of its series has been written, or fails if any
+ * of them could not be.
+ * <p>
+ * The batcher publishes the following metrics:
+ * <ul>
+ *     <li>{@code kairosClient/write/queued} the series waiting to be batched</li>
+ *     <li>{@code kairosClient/write/in_flight} the batches being sent</li>
+ *     <li>{@code kairosClient/write/batch_series} the series in each batch</li>
+ *     <li>{@code kairosClient/write/batch_bytes} the compressed size of each batch</li>
+ *     <li>{@code kairosClient/write/dropped} the series rejected because the queue was full</li>
+ *     <li>{@code kairosClient/write/retried} the batches retried</li>
+ *     <li>{@code kairosClient/write/isolated} the batches resent per write after a client error</li>
+ *     <li>{@code kairosClient/write/failed} the series which could not be written</li>
+ * </ul>
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class KairosDbWriteBatcher {
+
+    /**
+     * Queue data points to be written.
+     *
+     * @param metricDataPoints the series to write
+     * @return completes once all of the series have been written
+     */
+    CompletionStage<Void> write(final ImmutableList<MetricDataPoints> metricDataPoints) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[metricDataPoints.size()];
+        final Object write = new Object();
+        int dropped = 0;
+        for (int i = 0; i < futures.length; ++i) {
+            final Pending pending = new Pending(write, serialize(metricDataPoints.get(i)));
+            futures[i] = pending._future;
+            _queued.incrementAndGet();
+            // Once the queue is full the remaining series are rejected without
+            // offering them, the write fails either way
+            if (dropped > 0 || !QueueOfferResult.enqueued().equals(_queue.offer(pending))) {
+                _queued.decrementAndGet();
+                ++dropped;
+                pending._future.completeExceptionally(new RejectedExecutionException("KairosDB write queue is full"));
+            }
+        }
+        if (dropped > 0) {
+            _periodicMetrics.recordCounter("kairosClient/write/dropped", dropped);
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    private byte[] serialize(final MetricDataPoints metricDataPoints) {
+        try {
+            return _mapper.writeValueAsBytes(metricDataPoints);
+        } catch (final JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompletionStage<Void> send(final List<Pending> batch) {
+        _queued.addAndGet(-batch.size());
+        return send(batch, true);
+    }
+
+    private CompletionStage<Void> send(final List<Pending> batch, final boolean isolateClientErrors) {
+        final ByteString body;
+        try {
+            body = compress(batch);
+        } catch (final IOException e) {
+            complete(batch, e);
+            return CompletableFuture.completedFuture(null);
+        }
+        _inFlight.incrementAndGet();
+        _periodicMetrics.recordGauge("kairosClient/write/batch_series", batch.size());
+        _periodicMetrics.recordGauge("kairosClient/write/batch_bytes", body.size());
+        final AtomicInteger attempts = new AtomicInteger();
+        return Patterns.retry(
+                () -> {
+                    if (attempts.getAndIncrement() > 0) {
+                        _periodicMetrics.recordCounter("kairosClient/write/retried", 1);
+                    }
+                    return _writer.apply(body);
+                },
+                (result, error) -> error != null && isRetryable(error),
+                _settings.getMaxRetries(),
+                _settings.getMinBackoff(),
+                _settings.getMaxBackoff(),
+                RANDOM_FACTOR,
+                _actorSystem)
+                .handle((result, error) -> {
+                    _inFlight.decrementAndGet();
+                    if (error != null && isolateClientErrors && !isRetryable(error)) {
+                        final Collection<List<Pending>> writes = batch.stream()
+                                .collect(Collectors.groupingBy(pending -> pending._write, Maps::newLinkedHashMap, Collectors.toList()))
+                                .values();
+                        if (writes.size() > 1) {
+                            // The batch may have been rejected for the series of a single write
+                            _periodicMetrics.recordCounter("kairosClient/write/isolated", 1);
+                            return CompletableFuture.allOf(writes.stream()
+                                    .map(write -> send(write, false).toCompletableFuture())
+                                    .toArray(CompletableFuture<?>[]::new));
+                        }
+                    }
+                    complete(batch, error);
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private void complete(final List<Pending> batch, final Throwable error) {
+        if (error == null) {
+            batch.forEach(pending -> pending._future.complete(null));
+        } else {
+            LOGGER.warn()
+                    .setMessage("Failed to write data points to KairosDB")
+                    .addData("series", batch.size())
+                    .setThrowable(error)
+                    .log();
+            _periodicMetrics.recordCounter("kairosClient/write/failed", batch.size());
+            batch.forEach(pending -> pending._future.completeExceptionally(error));
+        }
+    }
+
+    private void recordGauges(final PeriodicMetrics periodicMetrics) {
+        periodicMetrics.recordGauge("kairosClient/write/queued", _queued.get());
+        periodicMetrics.recordGauge("kairosClient/write/in_flight", _inFlight.get());
+    }
+
+    private static ByteString compress(final List<Pending> batch) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write('[');
+            for (int i = 0; i < batch.size(); ++i) {
+                if (i > 0) {
+                    output.write(',');
+                }
+                output.write(batch.get(i)._json);
+            }
+            output.write(']');
+        }
+        return ByteString.fromArrayUnsafe(compressed.toByteArray());
+    }
+
+    private static boolean isRetryable(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof KairosDbRequestException) {
+            // The request itself is at fault unless KairosDB asked for it to be slowed down
+            final int status = ((KairosDbRequestException) cause).getHttpStatus();
+            return status >= 500 || status == TOO_MANY_REQUESTS;
+        }
+        return true;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param settings the batching settings
+     * @param writer sends one gzip compressed JSON array of series to KairosDB
+     * @param mapper the {@link ObjectMapper} used to serialize series
+     * @param actorSystem the actor system to run the batching stream on
+     * @param periodicMetrics the {@link PeriodicMetrics} to publish metrics to
+     */
+    KairosDbWriteBatcher(
+            final KairosDbWriteBatchSettings settings,
+            final Function<ByteString, CompletionStage<Void>> writer,
+            final ObjectMapper mapper,
+            final ActorSystem actorSystem,
+            final PeriodicMetrics periodicMetrics) {
+        _settings = settings;
+        _writer = writer;
+        _mapper = mapper;
+        _actorSystem = actorSystem;
+        _periodicMetrics = periodicMetrics;
+        _queue = Source.<Pending>queue(settings.getQueueSize())
+                .groupedWeightedWithin(
+                        settings.getMaxBatchBytes(),
+                        settings.getMaxBatchSeries(),
+                        pending -> (long) pending._json.length,
+                        settings.getMaxBatchDelay())
+                .mapAsyncUnordered(settings.getParallelism(), this::send)
+                .toMat(Sink.ignore(), Keep.left())
+                .run(Materializer.matFromSystem(actorSystem));
+
+        _periodicMetrics.registerPolledMetric(this::recordGauges);
+    }
+
+    private final KairosDbWriteBatchSettings _settings;
+    private final Function<ByteString, CompletionStage<Void>> _writer;
+    private final ObjectMapper _mapper;
+    private final ActorSystem _actorSystem;
+    private final PeriodicMetrics _periodicMetrics;
+    private final BoundedSourceQueue<Pending> _queue;
+    private final AtomicInteger _queued = new AtomicInteger();
+    private final AtomicInteger _inFlight = new AtomicInteger();
+
+    private static final double RANDOM_FACTOR = 0.2;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final Logger LOGGER = LoggerFactory.getLogger(KairosDbWriteBatcher.class);
+
+    private static final class Pending {
+        Pending(final Object write, final byte[] json) {
+            _write = write;
+            _json = json;
+        }
+
+        private final Object _write;
+        private final byte[] _json;
+        private final CompletableFuture<Void> _future = new CompletableFuture<>();
+    }
+}
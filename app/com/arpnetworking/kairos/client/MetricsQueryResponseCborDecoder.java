@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a {@link MetricsQueryResponse} from the CBOR encoding served by the
+ * metrics query proxy for {@code Accept: application/cbor}. The CBOR document
+ * has the same structure as the JSON response and is bound with the same
+ * model and modules as the supplied {@link ObjectMapper}.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricsQueryResponseCborDecoder {
+
+    /**
+     * Public constructor.
+     *
+     * @param mapper the {@link ObjectMapper} whose configuration and modules are used to bind the response
+     */
+    public MetricsQueryResponseCborDecoder(final ObjectMapper mapper) {
+        _reader = mapper.copyWith(new CBORFactory()).readerFor(MetricsQueryResponse.class);
+    }
+
+    /**
+     * Decode a response.
+     *
+     * @param bytes the CBOR encoded response
+     * @return the decoded response
+     * @throws IOException if the response cannot be decoded
+     */
+    public MetricsQueryResponse decode(final byte[] bytes) throws IOException {
+        return _reader.readValue(bytes);
+    }
+
+    /**
+     * Decode a response.
+     *
+     * @param stream the CBOR encoded response
+     * @return the decoded response
+     * @throws IOException if the response cannot be decoded
+     */
+    public MetricsQueryResponse decode(final InputStream stream) throws IOException {
+        return _reader.readValue(stream);
+    }
+
+    private final ObjectReader _reader;
+}
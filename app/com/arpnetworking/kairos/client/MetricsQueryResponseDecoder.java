@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Decoder which builds a {@link MetricsQueryResponse} incrementally.
+ * <p>
+ * The envelope of the response ({@code queries} and their {@code sample_size})
+ * is tracked directly from the token stream while each element of a query's
+ * {@code results} array is buffered and bound to a
+ * {@link MetricsQueryResponse.QueryResult} as soon as it is complete. At most
+ * one result's tokens are buffered at any time.
+ * <p>
+ * When a result consumer is provided each result is handed to it as soon as
+ * it has been bound instead of being retained, and the decoded response has
+ * no results. Memory then stays bounded by the largest single result no
+ * matter how many results the response contains.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricsQueryResponseDecoder extends JsonStreamDecoder<MetricsQueryResponse> {
+
+    /**
+     * Public constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and bind values
+     * @param maxBytes the maximum number of bytes to accept before failing
+     * @throws IOException if the parser cannot be created
+     */
+    public MetricsQueryResponseDecoder(final ObjectMapper mapper, final long maxBytes) throws IOException {
+        this(mapper, maxBytes, null);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and bind values
+     * @param maxBytes the maximum number of bytes to accept before failing
+     * @param resultConsumer receives each result as it is decoded instead of it being retained
+     * @throws IOException if the parser cannot be created
+     */
+    public MetricsQueryResponseDecoder(
+            final ObjectMapper mapper,
+            final long maxBytes,
+            @Nullable final Consumer<MetricsQueryResponse.QueryResult> resultConsumer) throws IOException {
+        super(mapper, maxBytes);
+        _resultConsumer = resultConsumer;
+    }
+
+    @Override
+    protected void onToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (_capture != null) {
+            continueCapture(parser, token);
+            return;
+        }
+
+        switch (_state) {
+            case ROOT:
+            case RESPONSE:
+            case RESPONSE_VALUE:
+                onResponseToken(parser, token);
+                break;
+            case QUERIES:
+            case QUERY:
+            case QUERY_VALUE:
+            case RESULTS:
+                onQueryToken(parser, token);
+                break;
+            default:
+                throw new JsonParseException(parser, "Unexpected content after end of response: " + token);
+        }
+    }
+
+    private void continueCapture(final JsonParser parser, final JsonToken token) throws IOException {
+        _capture.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            ++_captureDepth;
+        } else if (token.isStructEnd()) {
+            --_captureDepth;
+        }
+        if (_captureDepth == 0) {
+            final TokenBuffer captured = _capture;
+            _capture = null;
+            _captureHandler.accept(captured);
+        }
+    }
+
+    private void onResponseToken(final JsonParser parser, final JsonToken token) throws IOException {
+        switch (_state) {
+            case ROOT:
+                expect(parser, token, JsonToken.START_OBJECT);
+                _state = State.RESPONSE;
+                break;
+            case RESPONSE:
+                if (token == JsonToken.END_OBJECT) {
+                    _state = State.DONE;
+                } else {
+                    _fieldName = parser.currentName();
+                    _state = State.RESPONSE_VALUE;
+                }
+                break;
+            case RESPONSE_VALUE:
+                if (QUERIES_FIELD.equals(_fieldName)) {
+                    expect(parser, token, JsonToken.START_ARRAY);
+                    _state = State.QUERIES;
+                } else {
+                    final String name = _fieldName;
+                    capture(parser, token, buffer -> _otherArgs.put(name, readValue(buffer, Object.class)));
+                    _state = State.RESPONSE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state: " + _state);
+        }
+    }
+
+    private void onQueryToken(final JsonParser parser, final JsonToken token) throws IOException {
+        switch (_state) {
+            case QUERIES:
+                if (token == JsonToken.END_ARRAY) {
+                    _state = State.RESPONSE;
+                } else {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    _sampleSize = 0L;
+                    _results = Lists.newArrayList();
+                    _queryOtherArgs = Maps.newHashMap();
+                    _state = State.QUERY;
+                }
+                break;
+            case QUERY:
+                if (token == JsonToken.END_OBJECT) {
+                    finishQuery();
+                    _state = State.QUERIES;
+                } else {
+                    _fieldName = parser.currentName();
+                    _state = State.QUERY_VALUE;
+                }
+                break;
+            case QUERY_VALUE:
+                if (SAMPLE_SIZE_FIELD.equals(_fieldName)) {
+                    expect(parser, token, JsonToken.VALUE_NUMBER_INT);
+                    _sampleSize = parser.getLongValue();
+                    _state = State.QUERY;
+                } else if (RESULTS_FIELD.equals(_fieldName)) {
+                    expect(parser, token, JsonToken.START_ARRAY);
+                    _state = State.RESULTS;
+                } else {
+                    final String name = _fieldName;
+                    capture(parser, token, buffer -> _queryOtherArgs.put(name, readValue(buffer, Object.class)));
+                    _state = State.QUERY;
+                }
+                break;
+            case RESULTS:
+                if (token == JsonToken.END_ARRAY) {
+                    _state = State.QUERY;
+                } else {
+                    expect(parser, token, JsonToken.START_OBJECT);
+                    capture(
+                            parser,
+                            token,
+                            buffer -> onResult(readValue(buffer, MetricsQueryResponse.QueryResult.class)));
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected state: " + _state);
+        }
+    }
+
+    @Override
+    @Nullable
+    protected MetricsQueryResponse complete() throws IOException {
+        if (_state == State.ROOT) {
+            return null;
+        }
+        if (_state != State.DONE) {
+            throw new IOException("Incomplete metrics query response; stopped in state " + _state);
+        }
+        return ThreadLocalBuilder.build(MetricsQueryResponse.Builder.class, b -> b
+                .setQueries(_queries.build())
+                .setOtherArgs(ImmutableMap.copyOf(_otherArgs)));
+    }
+
+    private void onResult(final MetricsQueryResponse.QueryResult result) {
+        if (_resultConsumer != null) {
+            _resultConsumer.accept(result);
+        } else {
+            _results.add(result);
+        }
+    }
+
+    private void finishQuery() {
+        final long sampleSize = _sampleSize;
+        final ImmutableList<MetricsQueryResponse.QueryResult> results = ImmutableList.copyOf(_results);
+        final ImmutableMap<String, Object> otherArgs = ImmutableMap.copyOf(_queryOtherArgs);
+        _queries.add(ThreadLocalBuilder.build(MetricsQueryResponse.Query.Builder.class, b -> b
+                .setSampleSize(sampleSize)
+                .setResults(results)
+                .setOtherArgs(otherArgs)));
+        _results = null;
+        _queryOtherArgs = null;
+    }
+
+    private void capture(final JsonParser parser, final JsonToken token, final CaptureHandler handler) throws IOException {
+        final TokenBuffer buffer = new TokenBuffer(parser);
+        buffer.copyCurrentEvent(parser);
+        if (token.isStructStart()) {
+            _capture = buffer;
+            _captureDepth = 1;
+            _captureHandler = handler;
+        } else {
+            handler.accept(buffer);
+        }
+    }
+
+    private <V> V readValue(final TokenBuffer buffer, final Class<V> clazz) throws IOException {
+        try (JsonParser parser = buffer.asParser(getMapper())) {
+            return getMapper().readValue(parser, clazz);
+        }
+    }
+
+    private static void expect(final JsonParser parser, final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(
+                    parser,
+                    String.format("Unexpected token in metrics query response; expected %s but found %s", expected, actual));
+        }
+    }
+
+    @Nullable
+    private final Consumer<MetricsQueryResponse.QueryResult> _resultConsumer;
+    private State _state = State.ROOT;
+    private String _fieldName;
+    private final Map<String, Object> _otherArgs = Maps.newHashMap();
+    private final ImmutableList.Builder<MetricsQueryResponse.Query> _queries = ImmutableList.builder();
+    private long _sampleSize;
+    private List<MetricsQueryResponse.QueryResult> _results;
+    private Map<String, Object> _queryOtherArgs;
+    private TokenBuffer _capture;
+    private int _captureDepth;
+    private CaptureHandler _captureHandler;
+
+    private static final String QUERIES_FIELD = "queries";
+    private static final String SAMPLE_SIZE_FIELD = "sample_size";
+    private static final String RESULTS_FIELD = "results";
+
+    private enum State {
+        ROOT,
+        RESPONSE,
+        RESPONSE_VALUE,
+        QUERIES,
+        QUERY,
+        QUERY_VALUE,
+        RESULTS,
+        DONE
+    }
+
+    @FunctionalInterface
+    private interface CaptureHandler {
+        void accept(TokenBuffer buffer) throws IOException;
+    }
+}
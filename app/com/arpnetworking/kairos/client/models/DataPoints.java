@@ -0,0 +1,529 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client.models;
+
+import com.arpnetworking.logback.annotations.Loggable;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Columnar representation of the data points of a
+ * {@link MetricsQueryResponse.QueryResult}.
+ * <p>
+ * Timestamps are stored as epoch milliseconds in a {@code long[]} and numeric
+ * values in a parallel {@code double[]}. Values which cannot be represented
+ * as a {@code double} without changing their meaning (e.g. histograms,
+ * strings, nulls or very large integers) are kept in a sparse sidecar array.
+ * Integral values are flagged so that they round-trip as integers.
+ * <p>
+ * The boxed {@link DataPoint} view returned by {@link #asList()} is created
+ * lazily and reproduces the value types produced by untyped Jackson binding;
+ * that is, {@link Integer} or {@link Long} for integers and {@link Double}
+ * for floating point numbers.
+ *
+ * @author agent (agent at local)
+ */
+@Loggable
+@JsonSerialize(using = DataPoints.Serializer.class)
+@JsonDeserialize(using = DataPoints.Deserializer.class)
+public final class DataPoints {
+
+    /**
+     * Create an empty instance.
+     *
+     * @return empty {@link DataPoints}
+     */
+    public static DataPoints empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Create an instance from boxed {@link DataPoint} instances. The list is
+     * retained as the boxed view of the new instance.
+     *
+     * @param values the data points
+     * @return new {@link DataPoints}
+     */
+    public static DataPoints of(final ImmutableList<DataPoint> values) {
+        if (values.isEmpty()) {
+            return EMPTY;
+        }
+        final Builder builder = new Builder(values.size());
+        for (final DataPoint dataPoint : values) {
+            builder.add(dataPoint.getTime().toEpochMilli(), dataPoint.getValue().orElse(null));
+        }
+        final DataPoints dataPoints = builder.build();
+        dataPoints._list = values;
+        return dataPoints;
+    }
+
+    /**
+     * Create an instance containing the data points of each part in order.
+     * The columns are copied directly so no values are boxed.
+     *
+     * @param parts the data points to concatenate
+     * @return new {@link DataPoints}
+     */
+    public static DataPoints concat(final List<DataPoints> parts) {
+        int size = 0;
+        boolean hasObjects = false;
+        for (final DataPoints part : parts) {
+            size += part._size;
+            hasObjects |= part._objects.length > 0;
+        }
+        if (size == 0) {
+            return EMPTY;
+        }
+        final long[] times = new long[size];
+        final double[] values = new double[size];
+        final BitSet integral = new BitSet();
+        final BitSet boxed = new BitSet();
+        final Object[] objects = hasObjects ? new Object[size] : NO_OBJECTS;
+        int offset = 0;
+        for (final DataPoints part : parts) {
+            System.arraycopy(part._times, 0, times, offset, part._size);
+            System.arraycopy(part._values, 0, values, offset, part._size);
+            for (int i = part._integral.nextSetBit(0); i >= 0; i = part._integral.nextSetBit(i + 1)) {
+                integral.set(offset + i);
+            }
+            for (int i = part._boxed.nextSetBit(0); i >= 0; i = part._boxed.nextSetBit(i + 1)) {
+                boxed.set(offset + i);
+            }
+            if (part._objects.length > 0) {
+                System.arraycopy(part._objects, 0, objects, offset, Math.min(part._objects.length, part._size));
+            }
+            offset += part._size;
+        }
+        return new DataPoints(size, times, values, integral, boxed, objects);
+    }
+
+    /**
+     * Return the number of data points.
+     *
+     * @return the number of data points
+     */
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Return the time of a data point in milliseconds since the epoch.
+     *
+     * @param index the index of the data point
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTimeMillis(final int index) {
+        return _times[Objects.checkIndex(index, _size)];
+    }
+
+    /**
+     * Return the time of a data point.
+     *
+     * @param index the index of the data point
+     * @return the time
+     */
+    public Instant getTime(final int index) {
+        return Instant.ofEpochMilli(getTimeMillis(index));
+    }
+
+    /**
+     * Whether the value of a data point is held as a primitive number and
+     * may be read with {@link #getDouble(int)}.
+     *
+     * @param index the index of the data point
+     * @return {@code true} if and only if the value is numeric
+     */
+    public boolean isNumeric(final int index) {
+        return !_boxed.get(Objects.checkIndex(index, _size));
+    }
+
+    /**
+     * Return the numeric value of a data point without boxing.
+     *
+     * @param index the index of the data point
+     * @return the value
+     * @throws IllegalStateException if the value is not numeric
+     */
+    public double getDouble(final int index) {
+        if (!isNumeric(index)) {
+            throw new IllegalStateException("Data point at index " + index + " is not numeric");
+        }
+        return _values[index];
+    }
+
+    /**
+     * Return the value of a data point as it would have been bound to a
+     * {@link DataPoint}.
+     *
+     * @param index the index of the data point
+     * @return the value, if any
+     */
+    public Optional<Object> getValue(final int index) {
+        if (!isNumeric(index)) {
+            return Optional.ofNullable(_objects[index]);
+        }
+        if (_integral.get(index)) {
+            final long value = (long) _values[index];
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return Optional.of((int) value);
+            }
+            return Optional.of(value);
+        }
+        return Optional.of(_values[index]);
+    }
+
+    /**
+     * Return a boxed data point.
+     *
+     * @param index the index of the data point
+     * @return the data point
+     */
+    public DataPoint get(final int index) {
+        return new DataPoint.Builder()
+                .setTime(getTime(index))
+                .setValue(getValue(index).orElse(null))
+                .build();
+    }
+
+    /**
+     * Return the data points as boxed {@link DataPoint} instances. The list is
+     * created on first access and retained.
+     *
+     * @return the data points
+     */
+    public ImmutableList<DataPoint> asList() {
+        ImmutableList<DataPoint> list = _list;
+        if (list == null) {
+            list = materialize();
+            _list = list;
+        }
+        return list;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final DataPoints otherDataPoints = (DataPoints) o;
+        return _size == otherDataPoints._size
+                && Arrays.equals(_times, otherDataPoints._times)
+                && Arrays.equals(_values, otherDataPoints._values)
+                && Objects.equals(_integral, otherDataPoints._integral)
+                && Objects.equals(_boxed, otherDataPoints._boxed)
+                && Arrays.equals(_objects, otherDataPoints._objects);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(
+                _size,
+                Arrays.hashCode(_times),
+                Arrays.hashCode(_values),
+                _integral,
+                _boxed,
+                Arrays.hashCode(_objects));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", _size)
+                .add("values", _list != null ? _list : materialize())
+                .toString();
+    }
+
+    private ImmutableList<DataPoint> materialize() {
+        final ImmutableList.Builder<DataPoint> builder = ImmutableList.builderWithExpectedSize(_size);
+        for (int i = 0; i < _size; ++i) {
+            builder.add(get(i));
+        }
+        return builder.build();
+    }
+
+    private DataPoints(
+            final int size,
+            final long[] times,
+            final double[] values,
+            final BitSet integral,
+            final BitSet boxed,
+            final Object[] objects) {
+        _size = size;
+        _times = times;
+        _values = values;
+        _integral = integral;
+        _boxed = boxed;
+        _objects = objects;
+    }
+
+    private final int _size;
+    private final long[] _times;
+    private final double[] _values;
+    private final BitSet _integral;
+    private final BitSet _boxed;
+    private final Object[] _objects;
+    // Racy initialization is safe; the list is immutable and may be rebuilt
+    private volatile ImmutableList<DataPoint> _list;
+
+    private static final long MAX_EXACT_DOUBLE_INTEGER = 1L << 53;
+    private static final Object[] NO_OBJECTS = new Object[0];
+    private static final DataPoints EMPTY = new DataPoints(
+            0,
+            new long[0],
+            new double[0],
+            new BitSet(),
+            new BitSet(),
+            NO_OBJECTS);
+
+    /**
+     * Accumulates data points in columnar form. Unlike the model builders this
+     * class is an appender: data points are added in order and {@link #build()}
+     * may be called once.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder {
+
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Public constructor.
+         *
+         * @param expectedSize the expected number of data points
+         */
+        public Builder(final int expectedSize) {
+            final int capacity = Math.max(expectedSize, 1);
+            _times = new long[capacity];
+            _values = new double[capacity];
+        }
+
+        /**
+         * Add a floating point value.
+         *
+         * @param time the time in milliseconds since the epoch
+         * @param value the value
+         * @return this {@link Builder}
+         */
+        public Builder addDouble(final long time, final double value) {
+            final int index = next(time);
+            _values[index] = value;
+            return this;
+        }
+
+        /**
+         * Add an integer value.
+         *
+         * @param time the time in milliseconds since the epoch
+         * @param value the value
+         * @return this {@link Builder}
+         */
+        public Builder addLong(final long time, final long value) {
+            if (value > MAX_EXACT_DOUBLE_INTEGER || value < -MAX_EXACT_DOUBLE_INTEGER) {
+                return addObject(time, value);
+            }
+            final int index = next(time);
+            _values[index] = value;
+            _integral.set(index);
+            return this;
+        }
+
+        /**
+         * Add a value which is stored as-is.
+         *
+         * @param time the time in milliseconds since the epoch
+         * @param value the value
+         * @return this {@link Builder}
+         */
+        public Builder addObject(final long time, @Nullable final Object value) {
+            final int index = next(time);
+            if (_objects.length <= index) {
+                _objects = Arrays.copyOf(_objects, _times.length);
+            }
+            _objects[index] = value;
+            _boxed.set(index);
+            return this;
+        }
+
+        /**
+         * Add a value of any type. Values are stored in primitive form when
+         * their boxed representation can be reproduced exactly.
+         *
+         * @param time the time in milliseconds since the epoch
+         * @param value the value
+         * @return this {@link Builder}
+         */
+        public Builder add(final long time, @Nullable final Object value) {
+            if (value instanceof Integer) {
+                return addLong(time, (Integer) value);
+            } else if (value instanceof Long) {
+                final long longValue = (Long) value;
+                // Small longs would come back as integers from the boxed view
+                if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+                    return addLong(time, longValue);
+                }
+            } else if (value instanceof Double) {
+                return addDouble(time, (Double) value);
+            }
+            return addObject(time, value);
+        }
+
+        /**
+         * Create the {@link DataPoints}.
+         *
+         * @return new {@link DataPoints}
+         */
+        public DataPoints build() {
+            if (_size == 0) {
+                return EMPTY;
+            }
+            final boolean trim = _size != _times.length;
+            return new DataPoints(
+                    _size,
+                    trim ? Arrays.copyOf(_times, _size) : _times,
+                    trim ? Arrays.copyOf(_values, _size) : _values,
+                    _integral,
+                    _boxed,
+                    _objects.length == 0 ? NO_OBJECTS : Arrays.copyOf(_objects, _size));
+        }
+
+        private int next(final long time) {
+            if (_size == _times.length) {
+                final int capacity = _times.length + (_times.length >> 1) + 1;
+                _times = Arrays.copyOf(_times, capacity);
+                _values = Arrays.copyOf(_values, capacity);
+            }
+            _times[_size] = time;
+            return _size++;
+        }
+
+        private int _size;
+        private long[] _times;
+        private double[] _values;
+        private final BitSet _integral = new BitSet();
+        private final BitSet _boxed = new BitSet();
+        private Object[] _objects = NO_OBJECTS;
+
+        private static final int DEFAULT_CAPACITY = 16;
+    }
+
+    /**
+     * Writes {@link DataPoints} as an array of {@code [time, value]} arrays
+     * directly from the columnar storage.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Serializer extends JsonSerializer<DataPoints> {
+        @Override
+        public void serialize(
+                final DataPoints value,
+                final JsonGenerator generator,
+                final SerializerProvider provider) throws IOException {
+            generator.writeStartArray(value, value._size);
+            for (int i = 0; i < value._size; ++i) {
+                generator.writeStartArray();
+                generator.writeNumber(value._times[i]);
+                if (value._boxed.get(i)) {
+                    provider.defaultSerializeValue(value._objects[i], generator);
+                } else if (value._integral.get(i)) {
+                    generator.writeNumber((long) value._values[i]);
+                } else {
+                    generator.writeNumber(value._values[i]);
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Reads an array of {@code [time, value]} arrays directly into columnar
+     * storage without creating intermediate {@link DataPoint} instances.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Deserializer extends JsonDeserializer<DataPoints> {
+        @Override
+        public DataPoints deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+            if (!parser.isExpectedStartArrayToken()) {
+                return (DataPoints) context.handleUnexpectedToken(DataPoints.class, parser);
+            }
+            final Builder builder = new Builder();
+            JsonToken token = parser.nextToken();
+            while (token != JsonToken.END_ARRAY) {
+                if (token == JsonToken.START_OBJECT) {
+                    // Object form; rare enough that it is bound as a DataPoint
+                    final DataPoint dataPoint = context.readValue(parser, DataPoint.class);
+                    builder.add(dataPoint.getTime().toEpochMilli(), dataPoint.getValue().orElse(null));
+                    token = parser.nextToken();
+                    continue;
+                }
+                if (token != JsonToken.START_ARRAY) {
+                    return (DataPoints) context.handleUnexpectedToken(DataPoints.class, parser);
+                }
+                parser.nextToken();
+                final long time = parser.getLongValue();
+                token = parser.nextToken();
+                if (token == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER
+                        && !context.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)) {
+                    builder.add(time, parser.getNumberValue());
+                } else if (token == JsonToken.VALUE_NUMBER_FLOAT
+                        && !context.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+                    builder.addDouble(time, parser.getDoubleValue());
+                } else if (token == JsonToken.VALUE_NULL) {
+                    builder.addObject(time, null);
+                } else {
+                    builder.addObject(time, context.readValue(parser, Object.class));
+                }
+                if (parser.nextToken() != JsonToken.END_ARRAY) {
+                    context.reportWrongTokenException(DataPoints.class, JsonToken.END_ARRAY, "Expected [time, value] pair");
+                }
+                token = parser.nextToken();
+            }
+            return builder.build();
+        }
+    }
+}
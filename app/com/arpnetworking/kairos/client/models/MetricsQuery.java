@@ -55,10 +55,9 @@ public final class MetricsQuery {
      *
      * @return the start time in milliseconds
      */
-    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD")
     @JsonProperty("start_relative")
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
-    private Optional<RelativeDateTime> getStartTimeRelative() {
+    public Optional<RelativeDateTime> getStartTimeRelative() {
         return _startTimeRelative;
     }
 
@@ -94,10 +93,9 @@ public final class MetricsQuery {
      *
      * @return the start time in milliseconds
      */
-    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD")
     @JsonProperty("end_relative")
     @JsonInclude(JsonInclude.Include.NON_EMPTY)
-    private Optional<RelativeDateTime> getEndTimeRelative() {
+    public Optional<RelativeDateTime> getEndTimeRelative() {
         return _endTimeRelative;
     }
 
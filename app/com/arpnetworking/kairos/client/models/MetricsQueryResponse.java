@@ -298,8 +298,22 @@ public final class MetricsQueryResponse {
             return _name;
         }
 
+        /**
+         * Return the data points as boxed {@link DataPoint} instances. The list
+         * is created from the columnar data points on first access; consumers
+         * that only need times and numeric values should use
+         * {@link #getDataPoints()} instead.
+         *
+         * @return the data points
+         */
+        @JsonIgnore
         public ImmutableList<DataPoint> getValues() {
-            return _values;
+            return _dataPoints.asList();
+        }
+
+        @JsonProperty("values")
+        public DataPoints getDataPoints() {
+            return _dataPoints;
         }
 
         public ImmutableMultimap<String, String> getTags() {
@@ -325,7 +339,7 @@ public final class MetricsQueryResponse {
                 return false;
             }
             final QueryResult otherQueryResult = (QueryResult) o;
-            return Objects.equals(_values, otherQueryResult._values)
+            return Objects.equals(_dataPoints, otherQueryResult._dataPoints)
                     && Objects.equals(_name, otherQueryResult._name)
                     && Objects.equals(_tags, otherQueryResult._tags)
                     && Objects.equals(_groupBy, otherQueryResult._groupBy)
@@ -334,13 +348,13 @@ public final class MetricsQueryResponse {
 
         @Override
         public int hashCode() {
-            return Objects.hash(_values, _name, _tags, _groupBy, _otherArgs);
+            return Objects.hash(_dataPoints, _name, _tags, _groupBy, _otherArgs);
         }
 
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
-                    .add("values", _values)
+                    .add("values", _dataPoints)
                     .add("name", _name)
                     .add("tags", _tags)
                     .add("groupBy", _groupBy)
@@ -349,14 +363,14 @@ public final class MetricsQueryResponse {
         }
 
         private QueryResult(final Builder builder) {
-            _values = builder._values;
+            _dataPoints = builder._dataPoints;
             _name = builder._name;
             _tags = builder._tags;
             _groupBy = builder._groupBy;
             _otherArgs = ImmutableMap.copyOf(builder._otherArgs);
         }
 
-        private final ImmutableList<DataPoint> _values;
+        private final DataPoints _dataPoints;
         private final String _name;
         private final ImmutableMultimap<String, String> _tags;
         private final ImmutableList<QueryGroupBy> _groupBy;
@@ -381,8 +395,21 @@ public final class MetricsQueryResponse {
              * @param value the values
              * @return this {@link Builder}
              */
+            @JsonIgnore
             public Builder setValues(final ImmutableList<DataPoint> value) {
-                _values = value;
+                _dataPoints = value == null ? null : DataPoints.of(value);
+                return this;
+            }
+
+            /**
+             * Sets the values in columnar form. Optional. Cannot be null.
+             *
+             * @param value the values
+             * @return this {@link Builder}
+             */
+            @JsonProperty("values")
+            public Builder setDataPoints(final DataPoints value) {
+                _dataPoints = value;
                 return this;
             }
 
@@ -448,7 +475,7 @@ public final class MetricsQueryResponse {
             @Override
             public void reset() {
                 _name = null;
-                _values = ImmutableList.of();
+                _dataPoints = DataPoints.empty();
                 _tags = ImmutableMultimap.of();
                 _groupBy = ImmutableList.of();
                 _otherArgs = Maps.newHashMap();
@@ -458,7 +485,7 @@ public final class MetricsQueryResponse {
             @NotEmpty
             private String _name;
             @NotNull
-            private ImmutableList<DataPoint> _values = ImmutableList.of();
+            private DataPoints _dataPoints = DataPoints.empty();
             @NotNull
             private ImmutableMultimap<String, String> _tags = ImmutableMultimap.of();
             @NotNull
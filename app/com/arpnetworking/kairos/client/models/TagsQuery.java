@@ -50,10 +50,9 @@ public final class TagsQuery {
      *
      * @return the start time in milliseconds
      */
-    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD")
     @JsonProperty("start_relative")
     @JsonInclude(JsonInclude.Include.NON_ABSENT)
-    private Optional<RelativeDateTime> getStartTimeRelative() {
+    public Optional<RelativeDateTime> getStartTimeRelative() {
         return _startTimeRelative;
     }
 
@@ -89,10 +88,9 @@ public final class TagsQuery {
      *
      * @return the start time in milliseconds
      */
-    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD")
     @JsonProperty("end_relative")
     @JsonInclude(JsonInclude.Include.NON_ABSENT)
-    private Optional<RelativeDateTime> getEndTimeRelative() {
+    public Optional<RelativeDateTime> getEndTimeRelative() {
         return _endTimeRelative;
     }
 
@@ -17,8 +17,11 @@
 package com.arpnetworking.kairos.config;
 
 import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
 import jakarta.inject.Inject;
 
@@ -30,6 +33,9 @@ import java.util.regex.Pattern;
 
 /**
  * A {@link MetricsQueryConfig} that supports rollup whitelisting.
+ * <p>
+ * Matching a metric name against the configured patterns is memoized since
+ * the same names are looked up on every query which uses them.
  *
  * @author Christian Briones (cbriones at dropbox dot com)
  */
@@ -54,11 +60,15 @@ public class MetricsQueryConfigImpl implements MetricsQueryConfig {
 
     @Override
     public Set<SamplingUnit> getQueryEnabledRollups(final String metricName) {
+        return _queryEnabledRollups.asMap().computeIfAbsent(metricName, this::computeQueryEnabledRollups);
+    }
+
+    private ImmutableSet<SamplingUnit> computeQueryEnabledRollups(final String metricName) {
         if (!areRollupsBeingPopulated(metricName)) {
             return ImmutableSet.of();
         }
         return queryWhitelistEntry(metricName)
-            .map(RollupQueryWhitelistEntry::getPeriods)
+            .map(entry -> Sets.immutableEnumSet(entry.getPeriods()))
             .orElse(ImmutableSet.of());
     }
 
@@ -78,6 +88,10 @@ public class MetricsQueryConfigImpl implements MetricsQueryConfig {
     private final ImmutableSet<Pattern> _rollupWhitelist;
     private final ImmutableSet<Pattern> _rollupBlacklist;
     private final List<RollupQueryWhitelistEntry> _rollupQueryWhitelist;
+    private final Cache<String, ImmutableSet<SamplingUnit>> _queryEnabledRollups = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_METRIC_NAMES)
+            .build();
+    private static final long MAX_CACHED_METRIC_NAMES = 100_000;
     private static final Set<SamplingUnit> ALL_SAMPLING_UNITS = ImmutableSet.copyOf(SamplingUnit.values());
 
     private static RollupQueryWhitelistEntry buildWhitelistEntry(final Config config) {
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricTags;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.rollups.RollupMetric;
+import com.fasterxml.jackson.annotation.JacksonInject;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Estimates the data points scanned by a query from the number of series of
+ * the metric and the interval between their data points.
+ * <p>
+ * The number of series is the largest number of distinct values of any tag
+ * of the metric, as reported by a tags query with the same tag filters over
+ * a recent lookback window. This is a lower bound on the true cardinality,
+ * which avoids over-estimating metrics whose tags are correlated (e.g. host
+ * and cluster). Cardinalities are cached since they change slowly. Raw data
+ * is assumed to be recorded once per raw sample period; rollups hold one data
+ * point per period.
+ *
+ * @author agent (agent at local)
+ */
+public final class CardinalityQueryCostEstimator implements QueryCostEstimator {
+
+    @Override
+    public CompletionStage<Long> estimateDataPoints(final Metric metric, final Instant start, final Instant end) {
+        final Duration interval = RollupMetric.fromRollupMetricName(metric.getName())
+                .map(rollup -> SamplingUnit.toChronoUnit(rollup.getPeriod().getSamplingUnit()).getDuration())
+                .orElse(_rawSamplePeriod);
+        final long range = Math.max(0, Duration.between(start, end).toMillis());
+        final long intervals = Math.max(1, (range + interval.toMillis() - 1) / interval.toMillis());
+        return getSeriesCount(metric).thenApply(series -> series * intervals);
+    }
+
+    private CompletionStage<Long> getSeriesCount(final Metric metric) {
+        final MetricTags key = new MetricTags.Builder()
+                .setName(metric.getName())
+                .setTags(ImmutableMultimap.copyOf(metric.getTags()))
+                .build();
+        try {
+            final CompletableFuture<Long> count = _seriesCounts.get(key, () -> _kairosDbClient.queryMetricTags(
+                    new TagsQuery.Builder()
+                            .setStartTime(_clock.instant().minus(_cardinalityLookback))
+                            .setMetrics(ImmutableList.of(key))
+                            .build())
+                    .thenApply(CardinalityQueryCostEstimator::countSeries)
+                    .toCompletableFuture());
+            // Failed lookups are retried by the next query rather than cached
+            count.whenComplete((result, error) -> {
+                if (error != null) {
+                    _seriesCounts.asMap().remove(key, count);
+                }
+            });
+            return count;
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            return CompletableFuture.failedFuture(e.getCause());
+        }
+    }
+
+    private static long countSeries(final MetricsQueryResponse response) {
+        long series = 1;
+        for (final MetricsQueryResponse.Query query : response.getQueries()) {
+            for (final MetricsQueryResponse.QueryResult result : query.getResults()) {
+                for (final String tag : result.getTags().keySet()) {
+                    series = Math.max(series, result.getTags().get(tag).size());
+                }
+            }
+        }
+        return series;
+    }
+
+    private CardinalityQueryCostEstimator(final Builder builder) {
+        _kairosDbClient = builder._kairosDbClient;
+        _clock = builder._clock;
+        _rawSamplePeriod = builder._rawSamplePeriod;
+        _cardinalityLookback = builder._cardinalityLookback;
+        _seriesCounts = CacheBuilder.newBuilder()
+                .expireAfterWrite(builder._cardinalityTtl)
+                .maximumSize(builder._maxCachedMetrics)
+                .build();
+    }
+
+    private final KairosDbClient _kairosDbClient;
+    private final Clock _clock;
+    private final Duration _rawSamplePeriod;
+    private final Duration _cardinalityLookback;
+    private final Cache<MetricTags, CompletableFuture<Long>> _seriesCounts;
+
+    /**
+     * Implementation of the builder pattern for {@link CardinalityQueryCostEstimator}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<CardinalityQueryCostEstimator> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(CardinalityQueryCostEstimator::new);
+        }
+
+        /**
+         * Sets the {@link KairosDbClient} used to query tag cardinality.
+         * Required. Cannot be null. Injected when deserialized.
+         *
+         * @param value the client
+         * @return this {@link Builder}
+         */
+        public Builder setKairosDbClient(final KairosDbClient value) {
+            _kairosDbClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the clock used to find the cardinality lookback window.
+         * Required. Cannot be null. Injected when deserialized.
+         *
+         * @param value the clock
+         * @return this {@link Builder}
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the interval between raw data points of a series. Optional.
+         * Defaults to one minute. Cannot be null.
+         *
+         * @param value the raw sample period
+         * @return this {@link Builder}
+         */
+        public Builder setRawSamplePeriod(final Duration value) {
+            _rawSamplePeriod = value;
+            return this;
+        }
+
+        /**
+         * Sets how far back tags are queried to find the cardinality of a
+         * metric. Optional. Defaults to one day. Cannot be null.
+         *
+         * @param value the cardinality lookback
+         * @return this {@link Builder}
+         */
+        public Builder setCardinalityLookback(final Duration value) {
+            _cardinalityLookback = value;
+            return this;
+        }
+
+        /**
+         * Sets how long the cardinality of a metric is cached. Optional.
+         * Defaults to one hour. Cannot be null.
+         *
+         * @param value the cardinality time to live
+         * @return this {@link Builder}
+         */
+        public Builder setCardinalityTtl(final Duration value) {
+            _cardinalityTtl = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of metrics whose cardinality is cached.
+         * Optional. Defaults to 10000. Must be at least one.
+         *
+         * @param value the maximum cached metrics
+         * @return this {@link Builder}
+         */
+        public Builder setMaxCachedMetrics(final Long value) {
+            _maxCachedMetrics = value;
+            return this;
+        }
+
+        @NotNull
+        @JacksonInject
+        private KairosDbClient _kairosDbClient;
+        @NotNull
+        @JacksonInject
+        private Clock _clock;
+        @NotNull
+        private Duration _rawSamplePeriod = Duration.ofMinutes(1);
+        @NotNull
+        private Duration _cardinalityLookback = Duration.ofDays(1);
+        @NotNull
+        private Duration _cardinalityTtl = Duration.ofHours(1);
+        @NotNull
+        @Min(1)
+        private Long _maxCachedMetrics = 10_000L;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.JsonStreamDecoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.javadsl.Flow;
+import org.apache.pekko.util.ByteString;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Transcodes a KairosDB metrics query response from JSON to CBOR while it is
+ * being streamed. The document keeps the structure of
+ * {@link com.arpnetworking.kairos.client.models.MetricsQueryResponse}, so it
+ * can be bound with {@link com.arpnetworking.kairos.client.MetricsQueryResponseCborDecoder};
+ * timestamps and values are written as binary integers and doubles instead of
+ * decimal text. Tokens are written as they are parsed and nothing is buffered
+ * beyond the current chunk.
+ *
+ * @author agent (agent at local)
+ */
+public final class CborResultsEncoder extends JsonStreamDecoder<ByteString> {
+
+    /**
+     * The media type of the CBOR produced by the encoder.
+     */
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    /**
+     * Create a {@link Flow} which transcodes the response flowing through it
+     * into CBOR.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser
+     * @return the transcoding flow
+     */
+    public static Flow<ByteString, ByteString, NotUsed> createFlow(final ObjectMapper mapper) {
+        return Flow.of(ByteString.class).statefulMap(
+                () -> new CborResultsEncoder(mapper),
+                (encoder, chunk) -> Pair.create(encoder, encoder.encode(chunk)),
+                encoder -> Optional.ofNullable(encoder.finish()));
+    }
+
+    /**
+     * Encode the next chunk of the response.
+     *
+     * @param chunk the bytes to encode
+     * @return the encoded bytes which are available so far
+     * @throws IOException if the bytes cannot be parsed
+     */
+    ByteString encode(final ByteString chunk) throws IOException {
+        feed(chunk);
+        return takeOutput();
+    }
+
+    @Override
+    protected void onToken(final JsonParser parser, final JsonToken token) throws IOException {
+        _generator.copyCurrentEvent(parser);
+    }
+
+    @Override
+    protected ByteString complete() throws IOException {
+        _generator.close();
+        return takeOutput();
+    }
+
+    private ByteString takeOutput() throws IOException {
+        _generator.flush();
+        final ByteString output = ByteString.fromArrayUnsafe(_output.toByteArray());
+        _output.reset();
+        return output;
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser
+     * @throws IOException if the parser or generator cannot be created
+     */
+    CborResultsEncoder(final ObjectMapper mapper) throws IOException {
+        super(mapper, Long.MAX_VALUE);
+        _generator = CBOR_FACTORY.createGenerator(_output);
+    }
+
+    private final ByteArrayBuilder _output = new ByteArrayBuilder();
+    private final JsonGenerator _generator;
+
+    private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.JsonStreamDecoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.javadsl.Flow;
+import org.apache.pekko.util.ByteString;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Removes excluded tags from a KairosDB metrics query response while it is
+ * being streamed. Tokens are copied from the input to the output as they are
+ * parsed; only the fields of {@code queries[*].results[*].tags} are inspected
+ * and the values of excluded tag names are skipped. Data points are copied
+ * token by token and are never bound to a model.
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class ExcludedTagsFilter extends JsonStreamDecoder<ByteString> {
+
+    /**
+     * Create a {@link Flow} which removes excluded tags from the response
+     * flowing through it.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and generator
+     * @param excludedTagNames the tag names to remove
+     * @param retainedTagNames the tag names to keep even if they are excluded
+     * @return the filtering flow
+     */
+    static Flow<ByteString, ByteString, NotUsed> createFlow(
+            final ObjectMapper mapper,
+            final ImmutableSet<String> excludedTagNames,
+            final ImmutableSet<String> retainedTagNames) {
+        return Flow.of(ByteString.class).statefulMap(
+                () -> new ExcludedTagsFilter(mapper, excludedTagNames, retainedTagNames),
+                (filter, chunk) -> Pair.create(filter, filter.filter(chunk)),
+                filter -> Optional.ofNullable(filter.finish()));
+    }
+
+    /**
+     * Filter the next chunk of the response.
+     *
+     * @param chunk the bytes to filter
+     * @return the filtered bytes which are available so far
+     * @throws IOException if the bytes cannot be parsed
+     */
+    ByteString filter(final ByteString chunk) throws IOException {
+        feed(chunk);
+        return takeOutput();
+    }
+
+    @Override
+    protected void onToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (_skipping) {
+            if (token.isStructStart()) {
+                ++_skipDepth;
+            } else if (token.isStructEnd()) {
+                --_skipDepth;
+            }
+            _skipping = _skipDepth > 0;
+            return;
+        }
+        if (token == JsonToken.FIELD_NAME
+                && isTagsObject(parser.getParsingContext())
+                && _excludedTagNames.contains(parser.currentName())
+                && !_retainedTagNames.contains(parser.currentName())) {
+            _skipping = true;
+            _skipDepth = 0;
+            return;
+        }
+        _generator.copyCurrentEventExact(parser);
+    }
+
+    @Override
+    protected ByteString complete() throws IOException {
+        _generator.close();
+        return takeOutput();
+    }
+
+    private ByteString takeOutput() throws IOException {
+        _generator.flush();
+        final ByteString output = ByteString.fromArrayUnsafe(_output.toByteArray());
+        _output.reset();
+        return output;
+    }
+
+    private static boolean isTagsObject(final JsonStreamContext context) {
+        // Walk outwards from the object holding the field and match it against
+        // {"queries": [{"results": [{"tags": {...}}]}]}
+        JsonStreamContext current = context.getParent();
+        for (final String name : TAGS_PATH) {
+            if (current == null) {
+                return false;
+            }
+            if (name == null) {
+                if (!current.inArray()) {
+                    return false;
+                }
+            } else if (!current.inObject() || !name.equals(current.getCurrentName())) {
+                return false;
+            }
+            current = current.getParent();
+        }
+        return current != null && current.inRoot();
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and generator
+     * @param excludedTagNames the tag names to remove
+     * @param retainedTagNames the tag names to keep even if they are excluded
+     * @throws IOException if the parser or generator cannot be created
+     */
+    ExcludedTagsFilter(
+            final ObjectMapper mapper,
+            final ImmutableSet<String> excludedTagNames,
+            final ImmutableSet<String> retainedTagNames) throws IOException {
+        super(mapper, Long.MAX_VALUE);
+        _excludedTagNames = excludedTagNames;
+        _retainedTagNames = retainedTagNames;
+        _generator = mapper.getFactory().createGenerator(_output);
+    }
+
+    private final ImmutableSet<String> _excludedTagNames;
+    private final ImmutableSet<String> _retainedTagNames;
+    private final ByteArrayBuilder _output = new ByteArrayBuilder();
+    private final JsonGenerator _generator;
+    private boolean _skipping;
+    private int _skipDepth;
+
+    // Field names from the tags object outwards; null denotes an array element
+    private static final String[] TAGS_PATH = {"tags", null, "results", null, "queries"};
+}
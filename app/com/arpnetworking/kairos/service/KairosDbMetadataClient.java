@@ -0,0 +1,366 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbRequestException;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.pattern.CircuitBreaker;
+import org.apache.pekko.pattern.CircuitBreakerOpenException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * {@link KairosDbClient} which protects the KairosDB metadata endpoints with
+ * a circuit breaker.
+ * <p>
+ * Metric name, tag name, tag value and tag queries go through a single
+ * {@link CircuitBreaker} which opens after {@code maxFailures} consecutive
+ * calls fail or take longer than {@code callTimeout}. Requests KairosDB
+ * rejects with a 4xx status are the caller's fault and are not counted as
+ * failures. While it is open calls
+ * are rejected without reaching KairosDB, and after {@code resetTimeout} a
+ * single trial call is let through; the reset timeout doubles on each failed
+ * trial up to {@code maxResetTimeout}. A call which fails while the breaker is
+ * open is answered with the last successful response to the same request, if
+ * there is one; these responses are bounded by their approximate size in
+ * memory. Identical calls made while one is in flight share its result,
+ * so every consumer of the client is fed by a single request.
+ * <p>
+ * Data point queries and writes are passed through unchanged.
+ * <p>
+ * The client records {@code kairosService/metadataBreaker/opened} when the
+ * breaker opens, and {@code kairosService/metadataBreaker/stale} and
+ * {@code kairosService/metadataBreaker/rejected} for failed calls which were
+ * and were not answered with a previous response.
+ *
+ * @author agent (agent at local)
+ */
+public final class KairosDbMetadataClient implements KairosDbClient {
+
+    @Override
+    public CompletionStage<MetricsQueryResponse> queryMetrics(final MetricsQuery query) {
+        return _kairosDbClient.queryMetrics(query);
+    }
+
+    @Override
+    public CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(final MetricsQuery query) {
+        return _kairosDbClient.queryMetricsStreamed(query);
+    }
+
+    @Override
+    public CompletionStage<MetricNamesResponse> queryMetricNames() {
+        return call(METRIC_NAMES, _kairosDbClient::queryMetricNames);
+    }
+
+    @Override
+    public CompletionStage<MetricsQueryResponse> queryMetricTags(final TagsQuery query) {
+        return call(query, () -> _kairosDbClient.queryMetricTags(query));
+    }
+
+    @Override
+    public CompletionStage<TagNamesResponse> listTagNames() {
+        return call(TAG_NAMES, _kairosDbClient::listTagNames);
+    }
+
+    @Override
+    public CompletionStage<TagValuesResponse> listTagValues() {
+        return call(TAG_VALUES, _kairosDbClient::listTagValues);
+    }
+
+    @Override
+    public CompletionStage<Void> addDataPoints(final ImmutableList<MetricDataPoints> metricDataPoints) {
+        return _kairosDbClient.addDataPoints(metricDataPoints);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<T> call(final Object key, final Supplier<CompletionStage<T>> request) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> inFlight = _inFlight.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return (CompletionStage<T>) inFlight;
+        }
+        _breaker.callWithCircuitBreakerCS(
+                        request::get,
+                        (result, error) -> error.map(KairosDbMetadataClient::isFailure).orElse(false))
+                .whenComplete((result, error) -> {
+                    _inFlight.remove(key, future);
+                    if (error == null) {
+                        _lastResponses.put(key, result);
+                        future.complete(result);
+                    } else {
+                        complete(key, future, error);
+                    }
+                });
+        return (CompletionStage<T>) future;
+    }
+
+    private static boolean isFailure(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof KairosDbRequestException) {
+            return ((KairosDbRequestException) cause).getHttpStatus() >= 500;
+        }
+        // Timeouts and failures to reach KairosDB
+        return true;
+    }
+
+    private static int weigh(final Object value) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        if (value instanceof MetricNamesResponse) {
+            bytes += weighStrings(((MetricNamesResponse) value).getResults());
+        } else if (value instanceof TagNamesResponse) {
+            bytes += weighStrings(((TagNamesResponse) value).getResults());
+        } else if (value instanceof TagValuesResponse) {
+            bytes += weighStrings(((TagValuesResponse) value).getResults());
+        } else if (value instanceof MetricsQueryResponse) {
+            for (final MetricsQueryResponse.Query query : ((MetricsQueryResponse) value).getQueries()) {
+                for (final MetricsQueryResponse.QueryResult result : query.getResults()) {
+                    bytes += ENTRY_OVERHEAD_BYTES
+                            + weighStrings(result.getTags().keySet())
+                            + weighStrings(result.getTags().values())
+                            + (long) result.getDataPoints().size() * DATA_POINT_BYTES;
+                }
+            }
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long weighStrings(final Collection<String> strings) {
+        long bytes = 0;
+        for (final String string : strings) {
+            bytes += STRING_OVERHEAD_BYTES + string.length();
+        }
+        return bytes;
+    }
+
+    private void complete(final Object key, final CompletableFuture<Object> future, final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        final Object previous = cause instanceof CircuitBreakerOpenException || _breaker.isOpen()
+                ? _lastResponses.getIfPresent(key)
+                : null;
+        final Metrics metrics = _metricsFactory.create();
+        metrics.incrementCounter("kairosService/metadataBreaker/stale", previous != null ? 1 : 0);
+        metrics.incrementCounter("kairosService/metadataBreaker/rejected", cause instanceof CircuitBreakerOpenException ? 1 : 0);
+        metrics.close();
+        if (previous != null) {
+            future.complete(previous);
+        } else {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    private void onOpen() {
+        LOGGER.warn()
+                .setMessage("KairosDB metadata circuit breaker opened")
+                .log();
+        final Metrics metrics = _metricsFactory.create();
+        metrics.incrementCounter("kairosService/metadataBreaker/opened");
+        metrics.close();
+    }
+
+    private void onClose() {
+        LOGGER.info()
+                .setMessage("KairosDB metadata circuit breaker closed")
+                .log();
+    }
+
+    private KairosDbMetadataClient(final Builder builder) {
+        _kairosDbClient = builder._kairosDbClient;
+        _metricsFactory = builder._metricsFactory;
+        _lastResponses = CacheBuilder.newBuilder()
+                .maximumWeight(builder._maxStaleBytes)
+                .weigher((Object key, Object value) -> weigh(value))
+                .build();
+        _breaker = new CircuitBreaker(
+                builder._actorSystem.dispatcher(),
+                builder._actorSystem.scheduler(),
+                builder._maxFailures,
+                builder._callTimeout,
+                builder._resetTimeout)
+                .withExponentialBackoff(builder._maxResetTimeout)
+                .addOnOpenListener(this::onOpen)
+                .addOnCloseListener(this::onClose);
+    }
+
+    private final KairosDbClient _kairosDbClient;
+    private final MetricsFactory _metricsFactory;
+    private final CircuitBreaker _breaker;
+    private final Cache<Object, Object> _lastResponses;
+    private final ConcurrentMap<Object, CompletableFuture<Object>> _inFlight = new ConcurrentHashMap<>();
+
+    private static final String METRIC_NAMES = "metricNames";
+    private static final String TAG_NAMES = "tagNames";
+    private static final String TAG_VALUES = "tagValues";
+    // Rough per-object costs used to estimate the size of previous responses
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+    private static final long STRING_OVERHEAD_BYTES = 40;
+    private static final long DATA_POINT_BYTES = 16;
+    private static final Logger LOGGER = LoggerFactory.getLogger(KairosDbMetadataClient.class);
+
+    /**
+     * Implementation of the builder pattern for {@link KairosDbMetadataClient}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<KairosDbMetadataClient> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KairosDbMetadataClient::new);
+        }
+
+        /**
+         * Sets the {@link KairosDbClient} to send requests to. Required.
+         * Cannot be null.
+         *
+         * @param value the client
+         * @return this {@link Builder}
+         */
+        public Builder setKairosDbClient(final KairosDbClient value) {
+            _kairosDbClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link MetricsFactory} to use. Required. Cannot be null.
+         *
+         * @param value the {@link MetricsFactory} to use
+         * @return this {@link Builder}
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ActorSystem} which times calls and resets the
+         * breaker. Required. Cannot be null.
+         *
+         * @param value the {@link ActorSystem} to use
+         * @return this {@link Builder}
+         */
+        public Builder setActorSystem(final ActorSystem value) {
+            _actorSystem = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive failed or slow calls which open the
+         * breaker. Optional. Defaults to 5.
+         *
+         * @param value the maximum failures
+         * @return this {@link Builder}
+         */
+        public Builder setMaxFailures(final Integer value) {
+            _maxFailures = value;
+            return this;
+        }
+
+        /**
+         * Sets the time after which a call is failed and counted as a
+         * failure. Optional. Defaults to 1 hour.
+         *
+         * @param value the call timeout
+         * @return this {@link Builder}
+         */
+        public Builder setCallTimeout(final Duration value) {
+            _callTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the time the breaker stays open before a trial call is let
+         * through. Optional. Defaults to 30 seconds.
+         *
+         * @param value the reset timeout
+         * @return this {@link Builder}
+         */
+        public Builder setResetTimeout(final Duration value) {
+            _resetTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the limit the reset timeout doubles up to while trial calls
+         * keep failing. Optional. Defaults to 5 minutes.
+         *
+         * @param value the maximum reset timeout
+         * @return this {@link Builder}
+         */
+        public Builder setMaxResetTimeout(final Duration value) {
+            _maxResetTimeout = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum approximate size in bytes of the previous responses
+         * kept to answer calls while the breaker is open. Optional. Defaults
+         * to 64 MiB. Must be at least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxStaleBytes(final Long value) {
+            _maxStaleBytes = value;
+            return this;
+        }
+
+        @NotNull
+        private KairosDbClient _kairosDbClient;
+        @NotNull
+        private MetricsFactory _metricsFactory;
+        @NotNull
+        private ActorSystem _actorSystem;
+        @NotNull
+        @Min(1)
+        private Integer _maxFailures = 5;
+        @NotNull
+        private Duration _callTimeout = Duration.ofHours(1);
+        @NotNull
+        private Duration _resetTimeout = Duration.ofSeconds(30);
+        @NotNull
+        private Duration _maxResetTimeout = Duration.ofMinutes(5);
+        @NotNull
+        @Min(0)
+        private Long _maxStaleBytes = 64L * 1024 * 1024;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admission control for requests to KairosDB.
+ * <p>
+ * Requests are admitted while fewer than the maximum concurrency are in
+ * flight overall and fewer than the budget of their {@link QueryOrigin} are
+ * in flight for that origin. Other requests wait in a bounded queue per
+ * origin and are rejected with a {@link RejectedExecutionException} once
+ * their queue is full. When a request completes, queued requests are admitted
+ * in priority order: alert evaluation, then external requests, then rollups
+ * and finally consistency checks.
+ * <p>
+ * A streamed query holds its slot until the response headers are received,
+ * which is when KairosDB has finished executing it.
+ *
+ * @author agent (agent at local)
+ */
+public final class KairosDbRequestScheduler {
+
+    /**
+     * Return a client whose requests are scheduled as coming from an origin.
+     *
+     * @param origin the origin of the requests
+     * @return the client
+     */
+    public KairosDbClient forOrigin(final QueryOrigin origin) {
+        return _lanes.get(origin)._client;
+    }
+
+    /**
+     * Return a client whose requests are scheduled as coming from an origin
+     * but sent to a different client than the scheduler's.
+     *
+     * @param origin the origin of the requests
+     * @param client the client the requests are sent to
+     * @return the client
+     */
+    public KairosDbClient forOrigin(final QueryOrigin origin, final KairosDbClient client) {
+        return new ScheduledClient(origin, client);
+    }
+
+    /**
+     * Schedule a request.
+     *
+     * @param origin the origin of the request
+     * @param request starts the request once it is admitted
+     * @param <T> the type of the response
+     * @return the response, or a {@link RejectedExecutionException} if the
+     *     queue for the origin is full
+     */
+    public <T> CompletionStage<T> submit(final QueryOrigin origin, final Supplier<CompletionStage<T>> request) {
+        final Lane lane = _lanes.get(origin);
+        final Pending<T> pending = new Pending<>(lane, request);
+        final boolean admitted;
+        synchronized (_lock) {
+            admitted = lane._queue.isEmpty() && canAdmit(lane);
+            if (admitted) {
+                admit(lane);
+            } else if (lane._queue.size() < lane._maxQueued) {
+                lane._queue.add(pending);
+            } else {
+                _periodicMetrics.recordCounter(lane._metricPrefix + "/rejected", 1);
+                return CompletableFuture.failedFuture(
+                        new RejectedExecutionException("KairosDB request queue is full for origin " + origin));
+            }
+        }
+        if (admitted) {
+            pending.start();
+        }
+        return pending._future;
+    }
+
+    private boolean canAdmit(final Lane lane) {
+        return _inFlight < _maxConcurrency && lane._inFlight < lane._maxConcurrency;
+    }
+
+    private void admit(final Lane lane) {
+        ++_inFlight;
+        ++lane._inFlight;
+    }
+
+    private void release(final Lane lane) {
+        final List<Pending<?>> admitted = new ArrayList<>();
+        synchronized (_lock) {
+            --_inFlight;
+            --lane._inFlight;
+            for (final Lane candidate : _lanesByPriority) {
+                while (!candidate._queue.isEmpty() && canAdmit(candidate)) {
+                    admit(candidate);
+                    admitted.add(candidate._queue.poll());
+                }
+            }
+        }
+        admitted.forEach(Pending::start);
+    }
+
+    private void recordGauges(final PeriodicMetrics periodicMetrics) {
+        synchronized (_lock) {
+            for (final Lane lane : _lanesByPriority) {
+                periodicMetrics.recordGauge(lane._metricPrefix + "/queue_size", lane._queue.size());
+                periodicMetrics.recordGauge(lane._metricPrefix + "/in_flight", lane._inFlight);
+            }
+        }
+    }
+
+    private KairosDbRequestScheduler(final Builder builder) {
+        _maxConcurrency = builder._maxConcurrency;
+        _periodicMetrics = builder._periodicMetrics;
+        final Map<QueryOrigin, Lane> lanes = new EnumMap<>(QueryOrigin.class);
+        final ImmutableList.Builder<Lane> lanesByPriority = ImmutableList.builder();
+        for (final QueryOrigin origin : PRIORITY) {
+            final Lane lane = new Lane(
+                    origin,
+                    builder._originConcurrency.getOrDefault(origin, builder._maxConcurrency),
+                    builder._originQueueSize.getOrDefault(origin, DEFAULT_QUEUE_SIZE),
+                    builder._kairosDbClient);
+            lanes.put(origin, lane);
+            lanesByPriority.add(lane);
+        }
+        _lanes = ImmutableMap.copyOf(lanes);
+        _lanesByPriority = lanesByPriority.build();
+        _periodicMetrics.registerPolledMetric(this::recordGauges);
+    }
+
+    private final int _maxConcurrency;
+    private final PeriodicMetrics _periodicMetrics;
+    private final ImmutableMap<QueryOrigin, Lane> _lanes;
+    private final ImmutableList<Lane> _lanesByPriority;
+    private final Object _lock = new Object();
+    private int _inFlight;
+
+    private static final ImmutableList<QueryOrigin> PRIORITY = ImmutableList.of(
+            QueryOrigin.ALERT_EVALUATION,
+            QueryOrigin.EXTERNAL_REQUEST,
+            QueryOrigin.ROLLUP,
+            QueryOrigin.CONSISTENCY_CHECK);
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private final class Lane {
+        Lane(final QueryOrigin origin, final int maxConcurrency, final int maxQueued, final KairosDbClient client) {
+            _maxConcurrency = maxConcurrency;
+            _maxQueued = maxQueued;
+            _metricPrefix = "kairosScheduler/" + origin.name().toLowerCase(Locale.ROOT);
+            _client = new ScheduledClient(origin, client);
+        }
+
+        private final int _maxConcurrency;
+        private final int _maxQueued;
+        private final String _metricPrefix;
+        private final KairosDbClient _client;
+        private final Queue<Pending<?>> _queue = new ArrayDeque<>();
+        private int _inFlight;
+    }
+
+    private final class Pending<T> {
+        Pending(final Lane lane, final Supplier<CompletionStage<T>> request) {
+            _lane = lane;
+            _request = request;
+        }
+
+        void start() {
+            _periodicMetrics.recordTimer(
+                    _lane._metricPrefix + "/wait",
+                    System.nanoTime() - _enqueuedAt,
+                    Optional.of(TimeUnit.NANOSECONDS));
+            // Start from a completed stage so a synchronous failure still releases the slot
+            CompletableFuture.completedFuture(_request)
+                    .thenCompose(Supplier::get)
+                    .whenComplete((result, error) -> {
+                        release(_lane);
+                        if (error != null) {
+                            _future.completeExceptionally(error);
+                        } else {
+                            _future.complete(result);
+                        }
+                    });
+        }
+
+        private final Lane _lane;
+        private final Supplier<CompletionStage<T>> _request;
+        private final long _enqueuedAt = System.nanoTime();
+        private final CompletableFuture<T> _future = new CompletableFuture<>();
+    }
+
+    private final class ScheduledClient implements KairosDbClient {
+        ScheduledClient(final QueryOrigin origin, final KairosDbClient client) {
+            _origin = origin;
+            _client = client;
+        }
+
+        @Override
+        public CompletionStage<MetricsQueryResponse> queryMetrics(final MetricsQuery query) {
+            return submit(_origin, () -> _client.queryMetrics(query));
+        }
+
+        @Override
+        public CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(final MetricsQuery query) {
+            return submit(_origin, () -> _client.queryMetricsStreamed(query));
+        }
+
+        @Override
+        public CompletionStage<MetricNamesResponse> queryMetricNames() {
+            return submit(_origin, _client::queryMetricNames);
+        }
+
+        @Override
+        public CompletionStage<MetricsQueryResponse> queryMetricTags(final TagsQuery query) {
+            return submit(_origin, () -> _client.queryMetricTags(query));
+        }
+
+        @Override
+        public CompletionStage<TagNamesResponse> listTagNames() {
+            return submit(_origin, _client::listTagNames);
+        }
+
+        @Override
+        public CompletionStage<TagValuesResponse> listTagValues() {
+            return submit(_origin, _client::listTagValues);
+        }
+
+        @Override
+        public CompletionStage<Void> addDataPoints(final ImmutableList<MetricDataPoints> metricDataPoints) {
+            return submit(_origin, () -> _client.addDataPoints(metricDataPoints));
+        }
+
+        private final QueryOrigin _origin;
+        private final KairosDbClient _client;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link KairosDbRequestScheduler}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<KairosDbRequestScheduler> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(KairosDbRequestScheduler::new);
+        }
+
+        /**
+         * Sets the {@link KairosDbClient} requests are sent to. Required.
+         * Cannot be null.
+         *
+         * @param value the client
+         * @return this {@link Builder}
+         */
+        public Builder setKairosDbClient(final KairosDbClient value) {
+            _kairosDbClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PeriodicMetrics} queue sizes, wait times and
+         * rejections are recorded to. Required. Cannot be null.
+         *
+         * @param value the periodic metrics
+         * @return this {@link Builder}
+         */
+        public Builder setPeriodicMetrics(final PeriodicMetrics value) {
+            _periodicMetrics = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight across all origins.
+         * Optional. Defaults to 32. Must be at least one.
+         *
+         * @param value the maximum concurrency
+         * @return this {@link Builder}
+         */
+        public Builder setMaxConcurrency(final Integer value) {
+            _maxConcurrency = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight for each origin.
+         * Origins without a budget may use the whole maximum concurrency.
+         * Optional. Defaults to an empty map. Cannot be null.
+         *
+         * @param value the concurrency budget by origin
+         * @return this {@link Builder}
+         */
+        public Builder setOriginConcurrency(final ImmutableMap<QueryOrigin, Integer> value) {
+            _originConcurrency = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of queued requests for each origin. Origins
+         * without a queue size may queue 1000 requests. Optional. Defaults to
+         * an empty map. Cannot be null.
+         *
+         * @param value the queue size by origin
+         * @return this {@link Builder}
+         */
+        public Builder setOriginQueueSize(final ImmutableMap<QueryOrigin, Integer> value) {
+            _originQueueSize = value;
+            return this;
+        }
+
+        @NotNull
+        private KairosDbClient _kairosDbClient;
+        @NotNull
+        private PeriodicMetrics _periodicMetrics;
+        @NotNull
+        @Min(1)
+        private Integer _maxConcurrency = 32;
+        @NotNull
+        private ImmutableMap<QueryOrigin, Integer> _originConcurrency = ImmutableMap.of();
+        @NotNull
+        private ImmutableMap<QueryOrigin, Integer> _originQueueSize = ImmutableMap.of();
+    }
+}
@@ -16,10 +16,12 @@
 package com.arpnetworking.kairos.service;
 
 
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 
 import java.util.Optional;
@@ -48,6 +50,17 @@ public interface KairosDbService {
      */
     CompletionStage<MetricsQueryResponse> queryMetrics(QueryContext context, MetricsQuery query);
 
+    /**
+     * Executes a query for datapoints from KairosDB and returns the response
+     * body as a stream. Where the response does not need to be modified it is
+     * returned exactly as KairosDB sent it, including its content encoding.
+     *
+     * @param context the context associated with this query
+     * @param query the metrics query
+     * @return the streamed response
+     */
+    CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(QueryContext context, MetricsQuery query);
+
     /**
      * Queries KairosDB for metric names.
      *
@@ -72,4 +85,11 @@ public interface KairosDbService {
      * @return the response
      */
     CompletionStage<TagNamesResponse> listTagNames();
+
+    /**
+     * Query tag values in KairosDb.
+     *
+     * @return the response
+     */
+    CompletionStage<TagValuesResponse> listTagValues();
 }
@@ -17,7 +17,9 @@ package com.arpnetworking.kairos.service;
 
 import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
 import com.arpnetworking.kairos.client.models.Aggregator;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
@@ -27,6 +29,7 @@ import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 import com.arpnetworking.kairos.config.MetricsQueryConfig;
 import com.arpnetworking.metrics.Metrics;
@@ -35,27 +38,26 @@ import com.arpnetworking.metrics.Timer;
 import com.arpnetworking.rollups.RollupMetric;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
 import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
 
 import java.util.EnumSet;
-import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 
 /**
  * Defines a service provider that augments calls to a KairosDB backend server.
@@ -77,9 +79,13 @@ public final class KairosDbServiceImpl implements KairosDbService {
                 .flatMap(m -> m.getTags().keySet().stream())
                 .collect(ImmutableSet.toImmutableSet());
         // Filter out rollup metric overrides and forward the query
-        return filterRollupOverrides(tagsQuery)
-                .thenCompose(_kairosDbClient::queryMetricTags)
-                .thenApply(response -> filterExcludedTags(response, requestedTags))
+        final Function<TagsQuery, CompletionStage<MetricsQueryResponse>> execute = query -> filterRollupOverrides(query)
+                .thenCompose(getClient(QueryOrigin.EXTERNAL_REQUEST)::queryMetricTags)
+                .thenApply(response -> filterExcludedTags(response, requestedTags));
+        final CompletionStage<MetricsQueryResponse> response = _tagMetadataCache != null
+                ? _tagMetadataCache.getTags(tagsQuery, execute)
+                : execute.apply(tagsQuery);
+        return response
                 .whenComplete((result, error) -> {
                     timer.stop();
                     metrics.incrementCounter("kairosService/queryMetricTags/success", error == null ? 1 : 0);
@@ -97,17 +103,14 @@ public final class KairosDbServiceImpl implements KairosDbService {
                 .flatMap(m -> m.getTags().keySet().stream())
                 .collect(ImmutableSet.toImmutableSet());
 
-        final boolean rollupsEnabledForOrigin = _rollupEnabledOrigins.contains(context.getOrigin());
-        return getMetricNames(metrics)
-                .thenApply(names -> rollupsEnabledForOrigin
-                        ? useAvailableRollups(names, metricsQuery, _metricsQueryConfig, metrics)
-                        : metricsQuery)
-                .whenComplete((query, throwable) -> {
-                    if (throwable == null) {
-                        _rewrittenQueryConsumer.accept(query);
-                    }
-                })
-                .thenCompose(_kairosDbClient::queryMetrics)
+        final boolean coalesce = _queryCoalescer != null && _coalescedOrigins.contains(context.getOrigin());
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute =
+                createExecutor(context.getOrigin(), coalesce, metrics);
+        return rewriteQuery(context, metricsQuery, metrics)
+                .thenCompose(query -> guardQuery(context, query, "queryMetrics", metrics))
+                .thenCompose(query -> _queryFanOut != null
+                        ? _queryFanOut.queryMetrics(context.getOrigin(), query, execute, metrics)
+                        : execute.apply(query))
                 .thenApply(response -> filterExcludedTags(response, requestedTags))
                 .whenComplete((result, error) -> {
                     timer.stop();
@@ -116,6 +119,55 @@ public final class KairosDbServiceImpl implements KairosDbService {
                 });
     }
 
+    @Override
+    public CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(
+            final QueryContext context,
+            final MetricsQuery metricsQuery) {
+        final Metrics metrics = _metricsFactory.create();
+        metrics.addAnnotation("origin", context.getOrigin().toString());
+        final Timer timer = metrics.createTimer("kairosService/queryMetricsStreamed/request");
+        final ImmutableSet<String> requestedTags = metricsQuery.getMetrics()
+                .stream()
+                .flatMap(m -> m.getTags().keySet().stream())
+                .collect(ImmutableSet.toImmutableSet());
+
+        // The rollup rewrite only changes the request, so the response can be
+        // forwarded untouched unless some of its tags must be removed.
+        final boolean passthrough = Sets.difference(_excludedTagNames, requestedTags).isEmpty();
+        metrics.incrementCounter("kairosService/queryMetricsStreamed/passthrough", passthrough ? 1 : 0);
+        final boolean coalesce = _queryCoalescer != null && _coalescedOrigins.contains(context.getOrigin());
+        // Responses are shared and cached after filtering, which depends only on the query
+        final KairosDbClient client = getClient(context.getOrigin());
+        final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> execute = query ->
+                client.queryMetricsStreamed(query)
+                        .thenApply(response -> passthrough ? response : filterExcludedTags(response, requestedTags));
+        final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> executeOrCoalesce = coalesce
+                ? query -> _queryCoalescer.queryMetricsStreamed(query, execute, metrics)
+                : execute;
+        return rewriteQuery(context, metricsQuery, metrics)
+                .thenCompose(query -> guardQuery(context, query, "queryMetricsStreamed", metrics))
+                .thenCompose(query -> {
+                    if (requiresParsing(context.getOrigin(), query)) {
+                        return queryParsed(context.getOrigin(), query, coalesce, requestedTags, metrics);
+                    }
+                    if (_queryResultCache == null) {
+                        return executeOrCoalesce.apply(query);
+                    }
+                    final MetricsQuery normalizedQuery = _queryResultCache.normalize(query);
+                    final Optional<KairosDbStreamedResponse> cached = _queryResultCache.get(normalizedQuery);
+                    if (cached.isPresent()) {
+                        return CompletableFuture.completedFuture(cached.get());
+                    }
+                    return executeOrCoalesce.apply(normalizedQuery)
+                            .thenApply(response -> _queryResultCache.put(normalizedQuery, response));
+                })
+                .whenComplete((result, error) -> {
+                    timer.stop();
+                    metrics.incrementCounter("kairosService/queryMetricsStreamed/success", error == null ? 1 : 0);
+                    metrics.close();
+                });
+    }
+
     @Override
     public CompletionStage<MetricNamesResponse> queryMetricNames(
             final Optional<String> containing,
@@ -124,8 +176,8 @@ public final class KairosDbServiceImpl implements KairosDbService {
         final Metrics metrics = _metricsFactory.create();
         final Timer timer = metrics.createTimer("kairosService/queryMetricNames/request");
 
-        return getMetricNames(metrics)
-                .thenApply(list -> filterMetricNames(list, containing, prefix, filterRollups))
+        return _metricNamesCatalog.getIndex()
+                .thenApply(index -> index.find(containing, prefix, filterRollups))
                 .thenApply(list -> ThreadLocalBuilder.build(MetricNamesResponse.Builder.class, b -> b.setResults(list)))
                 .whenComplete((result, error) -> {
                     timer.stop();
@@ -143,14 +195,10 @@ public final class KairosDbServiceImpl implements KairosDbService {
         final Metrics metrics = _metricsFactory.create();
         final Timer timer = metrics.createTimer("kairosService/listTagNames/request");
 
-        return _kairosDbClient.listTagNames()
-                .thenApply(response -> ThreadLocalBuilder.<TagNamesResponse, TagNamesResponse.Builder>clone(response)
-                        .setResults(
-                                response.getResults()
-                                        .stream()
-                                        .filter(e -> !_excludedTagNames.contains(e))
-                                        .collect(ImmutableSet.toImmutableSet()))
-                        .build())
+        final CompletionStage<TagNamesResponse> response = _tagMetadataCache != null
+                ? _tagMetadataCache.getTagNames(this::fetchTagNames)
+                : fetchTagNames();
+        return response
                 .whenComplete((result, error) -> {
                     timer.stop();
                     metrics.incrementCounter("kairosService/listTagNames/success", error == null ? 1 : 0);
@@ -161,81 +209,125 @@ public final class KairosDbServiceImpl implements KairosDbService {
                 });
     }
 
-    private static ImmutableList<String> filterMetricNames(
-            final List<String> metricNames,
-            final Optional<String> containing,
-            final Optional<String> prefix,
-            final boolean filterRollups) {
+    @Override
+    public CompletionStage<TagValuesResponse> listTagValues() {
+        final Metrics metrics = _metricsFactory.create();
+        final Timer timer = metrics.createTimer("kairosService/listTagValues/request");
 
-        final Predicate<String> baseFilter;
-        if (filterRollups) {
-            baseFilter = IS_ROLLUP.negate();
-        } else {
-            baseFilter = s -> true;
-        }
+        final KairosDbClient client = getClient(QueryOrigin.EXTERNAL_REQUEST);
+        final CompletionStage<TagValuesResponse> response = _tagMetadataCache != null
+                ? _tagMetadataCache.getTagValues(client::listTagValues)
+                : client.listTagValues();
+        return response
+                .whenComplete((result, error) -> {
+                    timer.stop();
+                    metrics.incrementCounter("kairosService/listTagValues/success", error == null ? 1 : 0);
+                    if (result != null) {
+                        metrics.incrementCounter("kairosService/listTagValues/count", result.getResults().size());
+                    }
+                    metrics.close();
+                });
+    }
 
-        final Predicate<String> containsFilter;
-        if (containing.isPresent() && !containing.get().isEmpty()) {
-            final String lowerContaining = containing.get().toLowerCase(Locale.getDefault());
-            containsFilter = s -> s.toLowerCase(Locale.getDefault()).contains(lowerContaining);
-        } else {
-            containsFilter = s -> true;
-        }
+    private CompletionStage<TagNamesResponse> fetchTagNames() {
+        return getClient(QueryOrigin.EXTERNAL_REQUEST).listTagNames()
+                .thenApply(response -> ThreadLocalBuilder.<TagNamesResponse, TagNamesResponse.Builder>clone(response)
+                        .setResults(
+                                response.getResults()
+                                        .stream()
+                                        .filter(e -> !_excludedTagNames.contains(e))
+                                        .collect(ImmutableSet.toImmutableSet()))
+                        .build());
+    }
 
-        final Predicate<String> prefixFilter;
-        if (prefix.isPresent() && !prefix.get().isEmpty()) {
-            final String lowerPrefix = prefix.get().toLowerCase(Locale.getDefault());
-            prefixFilter = s -> s.toLowerCase(Locale.getDefault()).startsWith(lowerPrefix);
-        } else {
-            prefixFilter = s -> true;
+    private boolean requiresParsing(final QueryOrigin origin, final MetricsQuery query) {
+        if (_queryFanOut != null && _queryFanOut.canFanOut(origin, query)) {
+            return true;
         }
+        return _querySplitter != null && _querySplitter.canSplit(query);
+    }
 
-        return metricNames.stream()
-                .filter(baseFilter)
-                .filter(IS_PT1M.negate())
-                .filter(containsFilter)
-                .filter(prefixFilter)
-                .collect(ImmutableList.toImmutableList());
+    private CompletionStage<KairosDbStreamedResponse> queryParsed(
+            final QueryOrigin origin,
+            final MetricsQuery query,
+            final boolean coalesce,
+            final ImmutableSet<String> requestedTags,
+            final Metrics metrics) {
+        // Split or fanned out responses must be parsed to be merged, so the
+        // response is written out again rather than streamed through
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute = createExecutor(origin, coalesce, metrics);
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> executeOrSplit = _querySplitter != null
+                ? subQuery -> _querySplitter.queryMetrics(subQuery, execute, metrics)
+                : execute;
+        final CompletionStage<MetricsQueryResponse> response = _queryFanOut != null
+                ? _queryFanOut.queryMetrics(origin, query, executeOrSplit, metrics)
+                : executeOrSplit.apply(query);
+        return response.thenApply(merged -> {
+            try {
+                return new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromArray(
+                                _mapper.writeValueAsBytes(filterExcludedTags(merged, requestedTags)))))
+                        .build();
+            } catch (final JsonProcessingException e) {
+                throw new CompletionException(e);
+            }
+        });
     }
 
+    private Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> createExecutor(
+            final QueryOrigin origin,
+            final boolean coalesce,
+            final Metrics metrics) {
+        final KairosDbClient client = getClient(origin);
+        if (coalesce) {
+            return query -> _queryCoalescer.queryMetrics(query, client::queryMetrics, metrics);
+        }
+        return client::queryMetrics;
+    }
 
-    private CompletionStage<List<String>> getMetricNames(final Metrics metrics) {
-        final List<String> metricsNames = _cache.getIfPresent(METRICS_KEY);
+    private KairosDbClient getClient(final QueryOrigin origin) {
+        return _requestScheduler != null ? _requestScheduler.forOrigin(origin) : _kairosDbClient;
+    }
 
-        final CompletionStage<List<String>> response;
-        if (metricsNames != null) {
-            metrics.incrementCounter("kairosService/metricNames/cache", 1);
-            response = CompletableFuture.completedFuture(metricsNames);
-        } else {
-            metrics.incrementCounter("kairosService/metricNames/cache", 0);
-            // TODO(brandon): Investigate refreshing eagerly or in the background
-            // Refresh the cache
-            final Timer timer = metrics.createTimer("kairosService/metricNames/request");
-            final CompletionStage<List<String>> queryResponse = _kairosDbClient.queryMetricNames()
-                    .whenComplete((result, error) -> {
-                        timer.stop();
-                        metrics.incrementCounter("kairosService/metricNames/success", error == null ? 1 : 0);
-                    })
-                    .thenApply(MetricNamesResponse::getResults)
-                    .thenApply(list -> {
-                        _cache.put(METRICS_KEY, list);
-                        _metricsList.set(list);
-                        return list;
-                    });
-
-            final List<String> metricsList = _metricsList.get();
-            if (metricsList != null) {
-                response = CompletableFuture.completedFuture(metricsList);
-            } else {
-                response = queryResponse;
-            }
+    private CompletionStage<MetricsQuery> rewriteQuery(
+            final QueryContext context,
+            final MetricsQuery metricsQuery,
+            final Metrics metrics) {
+        final boolean rollupsEnabledForOrigin = _rollupEnabledOrigins.contains(context.getOrigin());
+        return _metricNamesCatalog.getIndex()
+                .thenApply(index -> rollupsEnabledForOrigin
+                        ? useAvailableRollups(index, metricsQuery, _metricsQueryConfig, metrics)
+                        : metricsQuery)
+                .whenComplete((query, throwable) -> {
+                    if (throwable == null) {
+                        _rewrittenQueryConsumer.accept(query);
+                    }
+                });
+    }
+
+    private CompletionStage<MetricsQuery> guardQuery(
+            final QueryContext context,
+            final MetricsQuery query,
+            final String route,
+            final Metrics metrics) {
+        if (_queryGuardrail == null || !_queryGuardrail.isEnabled(context.getOrigin())) {
+            return CompletableFuture.completedFuture(query);
         }
+        return _metricNamesCatalog.getIndex()
+                .thenCompose(index -> _queryGuardrail.apply(query, index, _metricsQueryConfig, route, metrics));
+    }
 
-        return response;
+    private KairosDbStreamedResponse filterExcludedTags(
+            final KairosDbStreamedResponse originalResponse,
+            final ImmutableSet<String> retainedTags) {
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(originalResponse.getDecodedBody()
+                        .via(ExcludedTagsFilter.createFlow(_mapper, _excludedTagNames, retainedTags)))
+                .build();
     }
 
     /* package private */ static MetricsQuery useAvailableRollups(
-            final List<String> metricNames,
+            final MetricNamesIndex metricNames,
             final MetricsQuery originalQuery,
             final MetricsQueryConfig queryConfig,
             final Metrics metrics) {
@@ -254,19 +346,7 @@ public final class KairosDbServiceImpl implements KairosDbService {
                                 .build();
                     }
                     metrics.incrementCounter("kairosService/useRollups/bypass", 0);
-                    final ImmutableList<String> filteredMetrics = filterMetricNames(
-                            metricNames,
-                            Optional.of(metricName),
-                            Optional.empty(),
-                            false
-                    );
-                    final List<RollupMetric> rollupMetrics = filteredMetrics
-                            .stream()
-                            .map(RollupMetric::fromRollupMetricName)
-                            .filter(Optional::isPresent)
-                            .map(Optional::get)
-                            .filter(rollup -> rollup.getBaseMetricName().equals(metricName))
-                            .collect(Collectors.toList());
+                    final Map<SamplingUnit, RollupMetric> rollupMetrics = metricNames.getRollups(metricName);
 
                     if (rollupMetrics.isEmpty()) {
                         metrics.incrementCounter("kairosService/useRollups/noRollups", 1);
@@ -303,28 +383,28 @@ public final class KairosDbServiceImpl implements KairosDbService {
      * For a metric, find the corresponding rollup metric with the longest period not exceeding some threshold.
      *
      * @param metricName The metric we want to find a rollup for.
-     * @param rollupMetrics A list of all rollup metrics corresponding to the given metric.
+     * @param rollupMetrics All rollup metrics corresponding to the given metric keyed by the sampling unit of their period.
      * @param queryConfig Used to tell which rollup metrics are enabled when querying this metric.
      * @param maxUsableRollupUnit The longest rollup-period we're willing to accept (for fear of changing the query's results).
      * @return The given enabled {@code rollupMetric} with the greatest period not exceeding the threshold (if any).
      */
     /* package private */ static Optional<RollupMetric> getCoarsestUsableRollupMetric(
             final String metricName,
-            final List<RollupMetric> rollupMetrics,
+            final Map<SamplingUnit, RollupMetric> rollupMetrics,
             final MetricsQueryConfig queryConfig,
             final SamplingUnit maxUsableRollupUnit
         ) {
         final Set<SamplingUnit> enabledRollups = queryConfig.getQueryEnabledRollups(metricName);
 
-        final TreeMap<SamplingUnit, RollupMetric> orderedRollups = new TreeMap<>();
-        rollupMetrics.forEach(rollupMetric -> {
-            final SamplingUnit rollupUnit = rollupMetric.getPeriod().getSamplingUnit();
-            if (enabledRollups.contains(rollupUnit)) {
-                orderedRollups.put(rollupUnit, rollupMetric);
+        // Walk down from the threshold; sampling units are declared from finest to coarsest
+        for (int ordinal = maxUsableRollupUnit.ordinal(); ordinal >= 0; --ordinal) {
+            final SamplingUnit unit = SAMPLING_UNITS[ordinal];
+            final RollupMetric rollupMetric = rollupMetrics.get(unit);
+            if (rollupMetric != null && enabledRollups.contains(unit)) {
+                return Optional.of(rollupMetric);
             }
-        });
-
-        return Optional.ofNullable(orderedRollups.floorEntry(maxUsableRollupUnit)).map(Map.Entry::getValue);
+        }
+        return Optional.empty();
     }
 
     /**
@@ -410,11 +490,16 @@ public final class KairosDbServiceImpl implements KairosDbService {
     private MetricsQueryResponse.QueryResult filterQueryResultTags(
             final MetricsQueryResponse.QueryResult originalResult,
             final ImmutableSet<String> retainedTags) {
-        return ThreadLocalBuilder.clone(
-                originalResult,
+        // Copied explicitly rather than cloned so that the columnar data points
+        // are shared instead of being materialized through getValues().
+        return ThreadLocalBuilder.build(
                 MetricsQueryResponse.QueryResult.Builder.class,
-                resultBuilder -> resultBuilder.setTags(
-                        originalResult.getTags()
+                resultBuilder -> resultBuilder
+                        .setName(originalResult.getName())
+                        .setDataPoints(originalResult.getDataPoints())
+                        .setGroupBy(originalResult.getGroupBy())
+                        .setOtherArgs(originalResult.getOtherArgs())
+                        .setTags(originalResult.getTags()
                                 .entries()
                                 .stream()
                                 .filter(e -> !_excludedTagNames.contains(e.getKey()) || retainedTags.contains(e.getKey()))
@@ -427,23 +512,53 @@ public final class KairosDbServiceImpl implements KairosDbService {
         this._kairosDbClient = builder._kairosDbClient;
         this._metricsFactory = builder._metricsFactory;
         this._excludedTagNames = builder._excludedTagNames;
+        this._mapper = builder._mapper;
         this._metricsQueryConfig = builder._metricsQueryConfig;
         this._rewrittenQueryConsumer = builder._rewrittenQueryConsumer;
         this._rollupEnabledOrigins = builder._rollupEnabledOrigins;
+        if (builder._metricNamesCatalog != null) {
+            this._metricNamesCatalog = builder._metricNamesCatalog;
+        } else {
+            this._metricNamesCatalog = new MetricNamesCatalog.Builder()
+                    .setKairosDbClient(builder._kairosDbClient)
+                    .setMetricsFactory(builder._metricsFactory)
+                    .build();
+        }
+        this._queryResultCache = builder._queryResultCache;
+        this._queryCoalescer = builder._queryCoalescer;
+        this._coalescedOrigins = builder._coalescedOrigins;
+        this._querySplitter = builder._querySplitter;
+        this._queryFanOut = builder._queryFanOut;
+        this._requestScheduler = builder._requestScheduler;
+        this._queryGuardrail = builder._queryGuardrail;
+        this._tagMetadataCache = builder._tagMetadataCache;
     }
 
     private final KairosDbClient _kairosDbClient;
     private final MetricsFactory _metricsFactory;
     private final ImmutableSet<String> _excludedTagNames;
+    private final ObjectMapper _mapper;
     private final MetricsQueryConfig _metricsQueryConfig;
     private final Consumer<MetricsQuery> _rewrittenQueryConsumer;
-    private final Cache<String, List<String>> _cache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).build();
-    private final AtomicReference<List<String>> _metricsList = new AtomicReference<>(null);
+    private final MetricNamesCatalog _metricNamesCatalog;
     private final EnumSet<QueryOrigin> _rollupEnabledOrigins;
-    private static final String METRICS_KEY = "METRICNAMES";
+    @Nullable
+    private final QueryResultCache _queryResultCache;
+    @Nullable
+    private final QueryCoalescer _queryCoalescer;
+    private final EnumSet<QueryOrigin> _coalescedOrigins;
+    @Nullable
+    private final QuerySplitter _querySplitter;
+    @Nullable
+    private final QueryFanOut _queryFanOut;
+    @Nullable
+    private final KairosDbRequestScheduler _requestScheduler;
+    @Nullable
+    private final QueryGuardrail _queryGuardrail;
+    @Nullable
+    private final TagMetadataCache _tagMetadataCache;
     private static final String ROLLUP_OVERRIDE = "_!";
-    private static final Predicate<String> IS_PT1M = s -> s.startsWith("PT1M/");
-    private static final Predicate<String> IS_ROLLUP = s -> RollupMetric.fromRollupMetricName(s).isPresent();
+    private static final SamplingUnit[] SAMPLING_UNITS = SamplingUnit.values();
     private static final Logger LOGGER = LoggerFactory.getLogger(KairosDbServiceImpl.class);
 
     /**
@@ -526,6 +641,131 @@ public final class KairosDbServiceImpl implements KairosDbService {
             return this;
         }
 
+        /**
+         * Sets the {@link ObjectMapper} used to parse and write responses which
+         * cannot be streamed through unmodified. Cannot be null. Optional.
+         * Defaults to a new instance from {@link ObjectMapperFactory}.
+         *
+         * @param value the object mapper
+         * @return this {@link Builder}
+         */
+        public Builder setMapper(final ObjectMapper value) {
+            _mapper = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link MetricNamesCatalog} to look up metric names in.
+         * Optional. Defaults to a catalog which is refreshed on demand from
+         * the {@link KairosDbClient}.
+         *
+         * @param value the metric names catalog
+         * @return this {@link Builder}
+         */
+        public Builder setMetricNamesCatalog(@Nullable final MetricNamesCatalog value) {
+            _metricNamesCatalog = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link QueryResultCache} to serve streamed query responses
+         * from. Optional. By default responses are not cached.
+         *
+         * @param value the query result cache
+         * @return this {@link Builder}
+         */
+        public Builder setQueryResultCache(@Nullable final QueryResultCache value) {
+            _queryResultCache = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link TagMetadataCache} to serve tag names, tag values and
+         * tag query responses from. Optional. By default they are not cached.
+         *
+         * @param value the tag metadata cache
+         * @return this {@link Builder}
+         */
+        public Builder setTagMetadataCache(@Nullable final TagMetadataCache value) {
+            _tagMetadataCache = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link QueryCoalescer} used to share identical in-flight
+         * queries. Optional. By default queries are not coalesced.
+         *
+         * @param value the query coalescer
+         * @return this {@link Builder}
+         */
+        public Builder setQueryCoalescer(@Nullable final QueryCoalescer value) {
+            _queryCoalescer = value;
+            return this;
+        }
+
+        /**
+         * Sets the origins of the queries which are coalesced. Cannot be null.
+         * Optional. Default is an empty set.
+         *
+         * @param origins the origins whose queries are coalesced
+         * @return this {@link Builder}
+         */
+        public Builder setCoalescedOrigins(final EnumSet<QueryOrigin> origins) {
+            _coalescedOrigins = origins;
+            return this;
+        }
+
+        /**
+         * Sets the {@link QuerySplitter} used to split long-range streamed
+         * queries into cacheable chunks. Optional. By default queries are
+         * not split.
+         *
+         * @param value the query splitter
+         * @return this {@link Builder}
+         */
+        public Builder setQuerySplitter(@Nullable final QuerySplitter value) {
+            _querySplitter = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link QueryFanOut} used to execute the metrics of a
+         * query separately. Optional. By default queries are executed as-is.
+         *
+         * @param value the query fan out
+         * @return this {@link Builder}
+         */
+        public Builder setQueryFanOut(@Nullable final QueryFanOut value) {
+            _queryFanOut = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link KairosDbRequestScheduler} which admits requests to
+         * KairosDB by origin. Optional. By default requests are sent
+         * directly.
+         *
+         * @param value the request scheduler
+         * @return this {@link Builder}
+         */
+        public Builder setRequestScheduler(@Nullable final KairosDbRequestScheduler value) {
+            _requestScheduler = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link QueryGuardrail} which rejects or rewrites queries
+         * estimated to be too expensive. Optional. By default queries are
+         * not guarded.
+         *
+         * @param value the query guardrail
+         * @return this {@link Builder}
+         */
+        public Builder setQueryGuardrail(@Nullable final QueryGuardrail value) {
+            _queryGuardrail = value;
+            return this;
+        }
+
         @NotNull
         private KairosDbClient _kairosDbClient;
         @NotNull
@@ -540,5 +780,17 @@ public final class KairosDbServiceImpl implements KairosDbService {
         };
         @NotNull
         private EnumSet<QueryOrigin> _rollupEnabledOrigins = EnumSet.noneOf(QueryOrigin.class);
+        @NotNull
+        private ObjectMapper _mapper = ObjectMapperFactory.createInstance();
+        private MetricNamesCatalog _metricNamesCatalog;
+        private QueryResultCache _queryResultCache;
+        private QueryCoalescer _queryCoalescer;
+        @NotNull
+        private EnumSet<QueryOrigin> _coalescedOrigins = EnumSet.noneOf(QueryOrigin.class);
+        private QuerySplitter _querySplitter;
+        private QueryFanOut _queryFanOut;
+        private KairosDbRequestScheduler _requestScheduler;
+        private QueryGuardrail _queryGuardrail;
+        private TagMetadataCache _tagMetadataCache;
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Timer;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.actor.ActorSystem;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Catalog of the metric names known to KairosDB.
+ * <p>
+ * The names are held as a {@link MetricNamesIndex} which is replaced
+ * wholesale on each refresh. At most one refresh is in flight at a time and
+ * callers are served the current index while it runs. When an
+ * {@link ActorSystem} is provided and {@link #start()} is called the catalog
+ * refreshes in the background at a jittered interval; otherwise a refresh is
+ * triggered by the first request made after the index goes stale.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricNamesCatalog {
+
+    /**
+     * Start refreshing the catalog in the background. Requires an
+     * {@link ActorSystem} to have been provided.
+     */
+    public void start() {
+        if (_actorSystem == null) {
+            throw new IllegalStateException("An actor system is required to refresh in the background");
+        }
+        refreshAndReschedule();
+    }
+
+    /**
+     * Get the current index, loading it first if it has never been loaded.
+     *
+     * @return the index
+     */
+    public CompletionStage<MetricNamesIndex> getIndex() {
+        final Snapshot snapshot = _snapshot;
+        if (snapshot == null) {
+            return refresh();
+        }
+        if (snapshot._loadedAt.plus(_staleAfter).isBefore(Instant.now())) {
+            // Serve the stale index while it is refreshed
+            refresh();
+        }
+        return CompletableFuture.completedFuture(snapshot._index);
+    }
+
+    /**
+     * Refresh the index. If a refresh is already in flight its result is
+     * returned instead of starting another one.
+     *
+     * @return the refreshed index
+     */
+    public CompletionStage<MetricNamesIndex> refresh() {
+        final CompletableFuture<MetricNamesIndex> future = new CompletableFuture<>();
+        final CompletableFuture<MetricNamesIndex> inFlight = _inFlight.compareAndExchange(null, future);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        final Metrics metrics = _metricsFactory.create();
+        final Timer timer = metrics.createTimer("kairosService/metricNames/request");
+        // Start from a completed stage so a synchronous failure still clears the in-flight refresh
+        CompletableFuture.completedFuture(_kairosDbClient)
+                .thenCompose(KairosDbClient::queryMetricNames)
+                .thenApply(MetricNamesResponse::getResults)
+                .thenApply(MetricNamesIndex::create)
+                .whenComplete((index, error) -> {
+                    timer.stop();
+                    metrics.incrementCounter("kairosService/metricNames/success", error == null ? 1 : 0);
+                    if (index != null) {
+                        metrics.setGauge("kairosService/metricNames/count", index.size());
+                        _snapshot = new Snapshot(index, Instant.now());
+                    } else {
+                        LOGGER.warn()
+                                .setMessage("Failed to refresh metric names")
+                                .setThrowable(error)
+                                .log();
+                    }
+                    metrics.close();
+                    _inFlight.set(null);
+                    if (index != null) {
+                        future.complete(index);
+                    } else {
+                        future.completeExceptionally(error);
+                    }
+                });
+        return future;
+    }
+
+    private void refreshAndReschedule() {
+        refresh().whenComplete((index, error) -> {
+            final long interval = _refreshInterval.toMillis();
+            final long jitter = (long) (interval * MAX_JITTER);
+            final Duration delay = Duration.ofMillis(
+                    interval + ThreadLocalRandom.current().nextLong(-jitter, jitter + 1));
+            _actorSystem.scheduler().scheduleOnce(delay, this::refreshAndReschedule, _actorSystem.dispatcher());
+        });
+    }
+
+    private MetricNamesCatalog(final Builder builder) {
+        _kairosDbClient = builder._kairosDbClient;
+        _metricsFactory = builder._metricsFactory;
+        _refreshInterval = builder._refreshInterval;
+        _actorSystem = builder._actorSystem;
+        _staleAfter = Duration.ofMillis((long) (_refreshInterval.toMillis() * (1 + MAX_JITTER)));
+    }
+
+    private final KairosDbClient _kairosDbClient;
+    private final MetricsFactory _metricsFactory;
+    private final Duration _refreshInterval;
+    private final Duration _staleAfter;
+    @Nullable
+    private final ActorSystem _actorSystem;
+    private final AtomicReference<CompletableFuture<MetricNamesIndex>> _inFlight = new AtomicReference<>();
+    private volatile Snapshot _snapshot;
+
+    private static final double MAX_JITTER = 0.1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricNamesCatalog.class);
+
+    private static final class Snapshot {
+        Snapshot(final MetricNamesIndex index, final Instant loadedAt) {
+            _index = index;
+            _loadedAt = loadedAt;
+        }
+
+        private final MetricNamesIndex _index;
+        private final Instant _loadedAt;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link MetricNamesCatalog}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<MetricNamesCatalog> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(MetricNamesCatalog::new);
+        }
+
+        /**
+         * Sets the {@link KairosDbClient} to load metric names from. Required. Cannot be null.
+         *
+         * @param value the {@link KairosDbClient} to use
+         * @return this {@link Builder}
+         */
+        public Builder setKairosDbClient(final KairosDbClient value) {
+            _kairosDbClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link MetricsFactory} to use. Required. Cannot be null.
+         *
+         * @param value the {@link MetricsFactory} to use
+         * @return this {@link Builder}
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Sets the interval between refreshes. The interval is randomly
+         * varied by up to 10% on each refresh. Optional. Defaults to one
+         * minute. Cannot be null.
+         *
+         * @param value the refresh interval
+         * @return this {@link Builder}
+         */
+        public Builder setRefreshInterval(final Duration value) {
+            _refreshInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ActorSystem} used to schedule background refreshes.
+         * Optional. Without it the catalog is only refreshed on demand.
+         *
+         * @param value the {@link ActorSystem} to use
+         * @return this {@link Builder}
+         */
+        public Builder setActorSystem(@Nullable final ActorSystem value) {
+            _actorSystem = value;
+            return this;
+        }
+
+        @NotNull
+        private KairosDbClient _kairosDbClient;
+        @NotNull
+        private MetricsFactory _metricsFactory;
+        @NotNull
+        private Duration _refreshInterval = Duration.ofMinutes(1);
+        private ActorSystem _actorSystem;
+    }
+}
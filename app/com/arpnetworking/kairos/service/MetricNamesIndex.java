@@ -0,0 +1,265 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.logback.annotations.LogValue;
+import com.arpnetworking.rollups.RollupMetric;
+import com.arpnetworking.steno.LogValueMapFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, indexed snapshot of the metric names known to KairosDB.
+ * <p>
+ * Lookups by prefix use a sorted array of the lower-cased names and lookups
+ * by substring use a trigram index, so both cost time proportional to the
+ * number of candidates rather than the number of metrics. Rollup metric names
+ * are parsed once and grouped by the name of the metric they roll up, keyed
+ * by the sampling unit of their period.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricNamesIndex {
+
+    /**
+     * Create an index over a list of metric names.
+     *
+     * @param names the metric names
+     * @return the index
+     */
+    public static MetricNamesIndex create(final List<String> names) {
+        return new MetricNamesIndex(ImmutableList.copyOf(names));
+    }
+
+    /**
+     * Returns the empty index.
+     *
+     * @return the empty index
+     */
+    public static MetricNamesIndex empty() {
+        return EMPTY;
+    }
+
+    public ImmutableList<String> getNames() {
+        return _names;
+    }
+
+    /**
+     * Returns the number of metric names in the index.
+     *
+     * @return the number of metric names
+     */
+    public int size() {
+        return _names.size();
+    }
+
+    /**
+     * Find the metric names matching the given filters, in the order in which
+     * they were provided to the index. Names of the form {@code PT1M/...} are
+     * never returned.
+     *
+     * @param containing case-insensitive substring the names must contain
+     * @param prefix case-insensitive prefix the names must start with
+     * @param filterRollups whether rollup metric names should be excluded
+     * @return the matching names
+     */
+    public ImmutableList<String> find(
+            final Optional<String> containing,
+            final Optional<String> prefix,
+            final boolean filterRollups) {
+        final String lowerContaining = containing.filter(s -> !s.isEmpty())
+                .map(s -> s.toLowerCase(Locale.getDefault()))
+                .orElse(null);
+        final String lowerPrefix = prefix.filter(s -> !s.isEmpty())
+                .map(s -> s.toLowerCase(Locale.getDefault()))
+                .orElse(null);
+
+        final IntStream candidates;
+        if (lowerPrefix != null) {
+            candidates = prefixCandidates(lowerPrefix);
+        } else if (lowerContaining != null && lowerContaining.length() >= NGRAM_LENGTH) {
+            candidates = containingCandidates(lowerContaining);
+        } else {
+            candidates = IntStream.range(0, _names.size());
+        }
+
+        return candidates
+                .filter(i -> !_perMinute.get(i))
+                .filter(i -> !filterRollups || !_rollups.get(i))
+                .filter(i -> lowerPrefix == null || _lowerNames[i].startsWith(lowerPrefix))
+                .filter(i -> lowerContaining == null || _lowerNames[i].contains(lowerContaining))
+                .sorted()
+                .mapToObj(_names::get)
+                .collect(ImmutableList.toImmutableList());
+    }
+
+    /**
+     * Returns the rollups available for a metric keyed by the sampling unit
+     * of their period.
+     *
+     * @param baseMetricName the name of the metric which is rolled up
+     * @return the available rollups; empty if there are none
+     */
+    public ImmutableMap<SamplingUnit, RollupMetric> getRollups(final String baseMetricName) {
+        return _rollupsByBaseName.getOrDefault(baseMetricName, ImmutableMap.of());
+    }
+
+    /**
+     * Generate a Steno log compatible representation.
+     *
+     * @return Steno log compatible representation.
+     */
+    @LogValue
+    public Object toLogValue() {
+        return LogValueMapFactory.builder(this)
+                .put("size", _names.size())
+                .put("rollupBaseNames", _rollupsByBaseName.size())
+                .put("ngrams", _ngrams.size())
+                .build();
+    }
+
+    @Override
+    public String toString() {
+        return toLogValue().toString();
+    }
+
+    private IntStream prefixCandidates(final String lowerPrefix) {
+        // Find the first name not less than the prefix; every match follows it contiguously
+        int low = 0;
+        int high = _sorted.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (_lowerNames[_sorted[mid]].compareTo(lowerPrefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < _sorted.length && _lowerNames[_sorted[end]].startsWith(lowerPrefix)) {
+            ++end;
+        }
+        return Arrays.stream(_sorted, low, end);
+    }
+
+    private IntStream containingCandidates(final String lowerContaining) {
+        // Every name containing the string contains each of its n-grams; the
+        // shortest posting list is a superset of the matches.
+        int[] smallest = null;
+        for (int i = 0; i + NGRAM_LENGTH <= lowerContaining.length(); ++i) {
+            final int[] postings = _ngrams.get(lowerContaining.substring(i, i + NGRAM_LENGTH));
+            if (postings == null) {
+                return IntStream.empty();
+            }
+            if (smallest == null || postings.length < smallest.length) {
+                smallest = postings;
+            }
+        }
+        return smallest == null ? IntStream.empty() : Arrays.stream(smallest);
+    }
+
+    private MetricNamesIndex(final ImmutableList<String> names) {
+        _names = names;
+        _lowerNames = new String[names.size()];
+        _perMinute = new BitSet(names.size());
+        _rollups = new BitSet(names.size());
+
+        final Map<String, EnumMap<SamplingUnit, RollupMetric>> rollups = Maps.newHashMap();
+        final Map<String, PostingsBuilder> ngrams = Maps.newHashMap();
+        for (int i = 0; i < names.size(); ++i) {
+            final String name = names.get(i);
+            final String lowerName = name.toLowerCase(Locale.getDefault());
+            _lowerNames[i] = lowerName;
+            if (name.startsWith(PER_MINUTE_PREFIX)) {
+                _perMinute.set(i);
+            }
+            final Optional<RollupMetric> rollup = RollupMetric.fromRollupMetricName(name);
+            if (rollup.isPresent()) {
+                _rollups.set(i);
+                if (!_perMinute.get(i)) {
+                    rollups.computeIfAbsent(rollup.get().getBaseMetricName(), k -> new EnumMap<>(SamplingUnit.class))
+                            .put(rollup.get().getPeriod().getSamplingUnit(), rollup.get());
+                }
+            }
+            for (int j = 0; j + NGRAM_LENGTH <= lowerName.length(); ++j) {
+                ngrams.computeIfAbsent(lowerName.substring(j, j + NGRAM_LENGTH), k -> new PostingsBuilder()).add(i);
+            }
+        }
+
+        final String[] lowerNames = _lowerNames;
+        _sorted = IntStream.range(0, names.size())
+                .boxed()
+                .sorted(Comparator.comparing(i -> lowerNames[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        final ImmutableMap.Builder<String, int[]> ngramsBuilder = ImmutableMap.builderWithExpectedSize(ngrams.size());
+        ngrams.forEach((ngram, postings) -> ngramsBuilder.put(ngram, postings.build()));
+        _ngrams = ngramsBuilder.build();
+
+        final ImmutableMap.Builder<String, ImmutableMap<SamplingUnit, RollupMetric>> rollupsBuilder =
+                ImmutableMap.builderWithExpectedSize(rollups.size());
+        rollups.forEach((baseName, periods) -> rollupsBuilder.put(baseName, Maps.immutableEnumMap(periods)));
+        _rollupsByBaseName = rollupsBuilder.build();
+    }
+
+    private final ImmutableList<String> _names;
+    private final String[] _lowerNames;
+    private final int[] _sorted;
+    private final BitSet _perMinute;
+    private final BitSet _rollups;
+    private final ImmutableMap<String, int[]> _ngrams;
+    private final ImmutableMap<String, ImmutableMap<SamplingUnit, RollupMetric>> _rollupsByBaseName;
+
+    private static final int NGRAM_LENGTH = 3;
+    private static final String PER_MINUTE_PREFIX = "PT1M/";
+    private static final MetricNamesIndex EMPTY = new MetricNamesIndex(ImmutableList.of());
+
+    /**
+     * Accumulates the ascending, distinct ordinals of the names containing an n-gram.
+     */
+    private static final class PostingsBuilder {
+        void add(final int ordinal) {
+            // Ordinals arrive in ascending order so repeats within a name are adjacent
+            if (_size > 0 && _postings[_size - 1] == ordinal) {
+                return;
+            }
+            if (_size == _postings.length) {
+                _postings = Arrays.copyOf(_postings, _postings.length * 2);
+            }
+            _postings[_size++] = ordinal;
+        }
+
+        int[] build() {
+            return Arrays.copyOf(_postings, _size);
+        }
+
+        private int[] _postings = new int[4];
+        private int _size = 0;
+    }
+}
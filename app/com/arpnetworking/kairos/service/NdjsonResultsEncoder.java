@@ -0,0 +1,252 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.JsonStreamDecoder;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pekko.NotUsed;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.javadsl.Flow;
+import org.apache.pekko.util.ByteString;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Converts a KairosDB metrics query response into newline delimited JSON
+ * while it is being streamed. Each element of {@code queries[*].results} is
+ * written on its own line as soon as its closing brace has been parsed:
+ * <pre>
+ * {"query":0,"result":{"name":"foo","tags":{...},"values":[...]}}
+ * </pre>
+ * and each query is terminated by a line carrying its sample size:
+ * <pre>
+ * {"query":0,"sample_size":1234}
+ * </pre>
+ * Result tokens are copied from the input to the output as they are parsed,
+ * so no more than the series being parsed is ever buffered. Fields other than
+ * {@code queries}, {@code results} and {@code sample_size} are dropped.
+ *
+ * @author agent (agent at local)
+ */
+public final class NdjsonResultsEncoder extends JsonStreamDecoder<ByteString> {
+
+    /**
+     * The media type of the newline delimited JSON produced by the encoder.
+     */
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    /**
+     * Create a {@link Flow} which converts the response flowing through it
+     * into newline delimited JSON.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and generator
+     * @return the converting flow
+     */
+    public static Flow<ByteString, ByteString, NotUsed> createFlow(final ObjectMapper mapper) {
+        return Flow.of(ByteString.class).statefulMap(
+                () -> new NdjsonResultsEncoder(mapper),
+                (encoder, chunk) -> Pair.create(encoder, encoder.encode(chunk)),
+                encoder -> Optional.ofNullable(encoder.finish()));
+    }
+
+    /**
+     * Encode the next chunk of the response.
+     *
+     * @param chunk the bytes to encode
+     * @return the lines which are available so far
+     * @throws IOException if the bytes cannot be parsed
+     */
+    ByteString encode(final ByteString chunk) throws IOException {
+        feed(chunk);
+        return takeOutput();
+    }
+
+    @Override
+    protected void onToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (_skipDepth > 0 || _skipNext && token.isStructStart()) {
+            skip(token);
+            return;
+        }
+        _skipNext = false;
+        switch (_state) {
+            case ROOT:
+                expect(token, JsonToken.START_OBJECT);
+                _state = State.RESPONSE;
+                break;
+            case RESPONSE:
+                if (token == JsonToken.FIELD_NAME) {
+                    onField(parser.currentName(), "queries", State.QUERIES_START);
+                } else if (token == JsonToken.END_OBJECT) {
+                    _state = State.DONE;
+                }
+                break;
+            case QUERIES_START:
+            case RESULTS_START:
+                expect(token, JsonToken.START_ARRAY);
+                _state = _state == State.QUERIES_START ? State.QUERIES : State.RESULTS;
+                break;
+            case QUERIES:
+                if (token == JsonToken.START_OBJECT) {
+                    ++_queryIndex;
+                    _sampleSize = null;
+                    _state = State.QUERY;
+                } else {
+                    _state = State.RESPONSE;
+                }
+                break;
+            case QUERY:
+                onQueryToken(parser, token);
+                break;
+            case RESULTS:
+                onResultsToken(parser, token);
+                break;
+            case RESULT:
+                onResultToken(parser, token);
+                break;
+            default:
+                throw new IOException("Unexpected token after end of response; token=" + token);
+        }
+    }
+
+    @Override
+    protected ByteString complete() throws IOException {
+        if (_state != State.ROOT && _state != State.DONE) {
+            throw new IOException("Incomplete response; state=" + _state);
+        }
+        _generator.close();
+        return takeOutput();
+    }
+
+    private void onQueryToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.FIELD_NAME) {
+            onField(parser.currentName(), "results", State.RESULTS_START);
+        } else if (token == JsonToken.VALUE_NUMBER_INT && "sample_size".equals(parser.currentName())) {
+            _sampleSize = parser.getLongValue();
+        } else if (token == JsonToken.END_OBJECT) {
+            _generator.writeStartObject();
+            _generator.writeNumberField("query", _queryIndex);
+            if (_sampleSize != null) {
+                _generator.writeNumberField("sample_size", _sampleSize);
+            }
+            _generator.writeEndObject();
+            endLine();
+            _state = State.QUERIES;
+        }
+    }
+
+    private void onResultsToken(final JsonParser parser, final JsonToken token) throws IOException {
+        if (token == JsonToken.START_OBJECT) {
+            _generator.writeStartObject();
+            _generator.writeNumberField("query", _queryIndex);
+            _generator.writeFieldName("result");
+            _generator.copyCurrentEventExact(parser);
+            _resultDepth = 1;
+            _state = State.RESULT;
+        } else {
+            _state = State.QUERY;
+        }
+    }
+
+    private void onResultToken(final JsonParser parser, final JsonToken token) throws IOException {
+        _generator.copyCurrentEventExact(parser);
+        if (token.isStructStart()) {
+            ++_resultDepth;
+        } else if (token.isStructEnd()) {
+            --_resultDepth;
+            if (_resultDepth == 0) {
+                _generator.writeEndObject();
+                endLine();
+                _state = State.RESULTS;
+            }
+        }
+    }
+
+    private void onField(final String name, final String expected, final State next) {
+        if (expected.equals(name)) {
+            _state = next;
+        } else {
+            // Scalar values of other fields are ignored as they arrive; structured
+            // values are skipped in their entirety
+            _skipNext = true;
+        }
+    }
+
+    private void skip(final JsonToken token) {
+        _skipNext = false;
+        if (token.isStructStart()) {
+            ++_skipDepth;
+        } else if (token.isStructEnd()) {
+            --_skipDepth;
+        }
+    }
+
+    private void endLine() throws IOException {
+        _generator.flush();
+        _output.write('\n');
+    }
+
+    private ByteString takeOutput() throws IOException {
+        _generator.flush();
+        final ByteString output = ByteString.fromArrayUnsafe(_output.toByteArray());
+        _output.reset();
+        return output;
+    }
+
+    private static void expect(final JsonToken actual, final JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected token in response; expected=" + expected + ", actual=" + actual);
+        }
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param mapper the {@link ObjectMapper} used to create the parser and generator
+     * @throws IOException if the parser or generator cannot be created
+     */
+    NdjsonResultsEncoder(final ObjectMapper mapper) throws IOException {
+        super(mapper, Long.MAX_VALUE);
+        _generator = mapper.getFactory().createGenerator(_output);
+        // Lines are terminated explicitly rather than separated by the generator
+        _generator.setRootValueSeparator(null);
+    }
+
+    private final ByteArrayBuilder _output = new ByteArrayBuilder();
+    private final JsonGenerator _generator;
+    private State _state = State.ROOT;
+    private int _queryIndex = -1;
+    private Long _sampleSize;
+    private int _resultDepth;
+    private boolean _skipNext;
+    private int _skipDepth;
+
+    private enum State {
+        ROOT,
+        RESPONSE,
+        QUERIES_START,
+        QUERIES,
+        QUERY,
+        RESULTS_START,
+        RESULTS,
+        RESULT,
+        DONE
+    }
+}
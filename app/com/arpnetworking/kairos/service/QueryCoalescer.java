@@ -0,0 +1,207 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.metrics.Metrics;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Coalesces identical concurrent queries into a single request to KairosDB.
+ * <p>
+ * The first caller for a query executes it and every caller which arrives
+ * with an equal query while it is in flight shares its result. Queries are
+ * compared after rewriting, so queries with relative times only coalesce
+ * with queries made while they are in flight, when they resolve to the same
+ * time range.
+ * <p>
+ * A streamed body can only be read once, so callers sharing a streamed query
+ * receive a copy of the body captured as the first caller reads it. If the
+ * body could not be captured, because it failed, was too large or was not
+ * read within the maximum wait, the sharing callers execute the query
+ * themselves.
+ *
+ * @author agent (agent at local)
+ */
+public final class QueryCoalescer {
+
+    /**
+     * Execute a query unless an equal query is already in flight.
+     *
+     * @param query the query
+     * @param execute executes the query
+     * @param metrics the metrics for the request
+     * @return the response
+     */
+    public CompletionStage<MetricsQueryResponse> queryMetrics(
+            final MetricsQuery query,
+            final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute,
+            final Metrics metrics) {
+        final CompletableFuture<MetricsQueryResponse> future = new CompletableFuture<>();
+        final CompletableFuture<MetricsQueryResponse> inFlight = _inFlight.putIfAbsent(query, future);
+        metrics.incrementCounter(COALESCED_COUNTER, inFlight != null ? 1 : 0);
+        if (inFlight != null) {
+            return inFlight.copy();
+        }
+
+        // Start from a completed stage so a synchronous failure still clears the in-flight query
+        CompletableFuture.completedFuture(query)
+                .thenCompose(execute)
+                .whenComplete((response, error) -> {
+                    _inFlight.remove(query, future);
+                    if (error != null) {
+                        future.completeExceptionally(error);
+                    } else {
+                        future.complete(response);
+                    }
+                });
+        return future.copy();
+    }
+
+    /**
+     * Execute a streamed query unless an equal query is already in flight.
+     *
+     * @param query the query
+     * @param execute executes the query
+     * @param metrics the metrics for the request
+     * @return the response
+     */
+    public CompletionStage<KairosDbStreamedResponse> queryMetricsStreamed(
+            final MetricsQuery query,
+            final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> execute,
+            final Metrics metrics) {
+        final CompletableFuture<Optional<SharedBody>> future = new CompletableFuture<>();
+        final CompletableFuture<Optional<SharedBody>> inFlight = _streamedInFlight.putIfAbsent(query, future);
+        metrics.incrementCounter(COALESCED_COUNTER, inFlight != null ? 1 : 0);
+        if (inFlight != null) {
+            return inFlight.thenCompose(body -> body.isPresent()
+                    ? CompletableFuture.completedFuture(body.get().toResponse())
+                    : execute.apply(query));
+        }
+
+        // The body may never be read, so stop sharing it after the maximum wait
+        future.whenComplete((body, error) -> _streamedInFlight.remove(query, future));
+        future.completeOnTimeout(Optional.empty(), _maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        return CompletableFuture.completedFuture(query)
+                .thenCompose(execute)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        future.completeExceptionally(error);
+                    }
+                })
+                .thenApply(response -> {
+                    final String contentEncoding = response.getContentEncoding().orElse(null);
+                    return ResponseCapture.capture(
+                            response,
+                            _maxSharedBytes,
+                            body -> future.complete(body.map(bytes -> new SharedBody(bytes, contentEncoding))));
+                });
+    }
+
+    private QueryCoalescer(final Builder builder) {
+        _maxSharedBytes = builder._maxSharedBytes;
+        _maxWait = builder._maxWait;
+    }
+
+    private final long _maxSharedBytes;
+    private final Duration _maxWait;
+    private final ConcurrentMap<MetricsQuery, CompletableFuture<MetricsQueryResponse>> _inFlight =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<MetricsQuery, CompletableFuture<Optional<SharedBody>>> _streamedInFlight =
+            new ConcurrentHashMap<>();
+
+    private static final String COALESCED_COUNTER = "kairosService/queryCoalescer/coalesced";
+
+    private static final class SharedBody {
+        SharedBody(final ByteString body, @Nullable final String contentEncoding) {
+            _body = body;
+            _contentEncoding = contentEncoding;
+        }
+
+        KairosDbStreamedResponse toResponse() {
+            return new KairosDbStreamedResponse.Builder()
+                    .setBody(Source.single(_body))
+                    .setContentEncoding(_contentEncoding)
+                    .build();
+        }
+
+        private final ByteString _body;
+        @Nullable
+        private final String _contentEncoding;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link QueryCoalescer}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<QueryCoalescer> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(QueryCoalescer::new);
+        }
+
+        /**
+         * Sets the maximum size in bytes of a streamed body which is shared
+         * between callers. Callers waiting on a larger body execute the query
+         * themselves. Optional. Defaults to 16 MiB. Must be at least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxSharedBytes(final Long value) {
+            _maxSharedBytes = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time callers wait for a streamed body to be read
+         * by the first caller before executing the query themselves.
+         * Optional. Defaults to one minute. Cannot be null.
+         *
+         * @param value the maximum wait
+         * @return this {@link Builder}
+         */
+        public Builder setMaxWait(final Duration value) {
+            _maxWait = value;
+            return this;
+        }
+
+        @NotNull
+        @Min(0)
+        private Long _maxSharedBytes = 16L * 1024 * 1024;
+        @NotNull
+        private Duration _maxWait = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.Metric;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+import java.time.Instant;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Estimates the cost to KairosDB of querying a metric as the number of data
+ * points it must scan.
+ *
+ * @author agent (agent at local)
+ */
+@JsonTypeInfo(
+        use = JsonTypeInfo.Id.CLASS,
+        property = "type"
+)
+public interface QueryCostEstimator {
+    /**
+     * Estimate the number of data points scanned to query a metric over a
+     * time range.
+     *
+     * @param metric the metric as it is sent to KairosDB, after any rollup
+     *     has been selected
+     * @param start the start of the time range
+     * @param end the end of the time range
+     * @return the estimated number of data points
+     */
+    CompletionStage<Long> estimateDataPoints(Metric metric, Instant start, Instant end);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.logback.annotations.Loggable;
+
+/**
+ * An exception that represents a query rejected because its estimated cost
+ * exceeded the configured maximum.
+ *
+ * @author agent (agent at local)
+ */
+@Loggable
+public class QueryCostExceededException extends RuntimeException {
+
+    public long getEstimatedDataPoints() {
+        return _estimatedDataPoints;
+    }
+
+    public long getMaxDataPoints() {
+        return _maxDataPoints;
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param estimatedDataPoints the estimated number of data points scanned
+     * @param maxDataPoints the maximum number of data points allowed
+     */
+    public QueryCostExceededException(final long estimatedDataPoints, final long maxDataPoints) {
+        super(String.format(
+                "Query would scan an estimated %d data points which exceeds the maximum of %d; "
+                        + "narrow the time range or tag filters, or use a coarser sampling",
+                estimatedDataPoints,
+                maxDataPoints));
+        _estimatedDataPoints = estimatedDataPoints;
+        _maxDataPoints = maxDataPoints;
+    }
+
+    private final long _estimatedDataPoints;
+    private final long _maxDataPoints;
+    private static final long serialVersionUID = 6203371498843417310L;
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.sf.oval.constraint.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Executes each metric of a multi-metric query as its own query.
+ * <p>
+ * KairosDB processes the metrics of a query one after another, so the slowest
+ * metric gates the whole response and a failure of any metric fails them all.
+ * Instead, each metric is sent as a separate query, at most the configured
+ * parallelism for the origin at a time, and the results are reassembled in
+ * the original order. A metric which fails is reported in place as a query
+ * with no data points and an {@code error} field; the query as a whole only
+ * fails if every metric fails.
+ *
+ * @author agent (agent at local)
+ */
+public final class QueryFanOut {
+
+    /**
+     * Whether a query from an origin is fanned out.
+     *
+     * @param origin the origin of the query
+     * @param query the query
+     * @return {@code true} if and only if the query has several metrics and
+     *     fan out is enabled for the origin
+     */
+    public boolean canFanOut(final QueryOrigin origin, final MetricsQuery query) {
+        return query.getMetrics().size() > 1 && _parallelism.containsKey(origin);
+    }
+
+    /**
+     * Execute each metric of a query separately and reassemble the results.
+     * If the query cannot be fanned out it is executed as-is.
+     *
+     * @param origin the origin of the query
+     * @param query the query
+     * @param execute executes a query
+     * @param metrics the metrics for the request
+     * @return the reassembled response
+     */
+    public CompletionStage<MetricsQueryResponse> queryMetrics(
+            final QueryOrigin origin,
+            final MetricsQuery query,
+            final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute,
+            final Metrics metrics) {
+        if (!canFanOut(origin, query)) {
+            return execute.apply(query);
+        }
+        final int count = query.getMetrics().size();
+        final List<CompletableFuture<MetricsQueryResponse>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            futures.add(new CompletableFuture<>());
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final int parallelism = Math.max(1, Math.min(_parallelism.get(origin), count));
+        for (int i = 0; i < parallelism; ++i) {
+            executeNext(query, execute, next, futures);
+        }
+        metrics.incrementCounter("kairosService/queryFanOut/subQueries", count);
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> reassemble(query, futures, metrics));
+    }
+
+    private void executeNext(
+            final MetricsQuery query,
+            final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute,
+            final AtomicInteger next,
+            final List<CompletableFuture<MetricsQueryResponse>> futures) {
+        final int index = next.getAndIncrement();
+        if (index >= futures.size()) {
+            return;
+        }
+        final MetricsQuery subQuery = ThreadLocalBuilder.clone(
+                query,
+                MetricsQuery.Builder.class,
+                b -> b.setMetrics(ImmutableList.of(query.getMetrics().get(index))));
+        // Start from a completed stage so a synchronous failure is reported for this metric
+        CompletableFuture.completedFuture(subQuery)
+                .thenCompose(execute)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        futures.get(index).completeExceptionally(error);
+                    } else {
+                        futures.get(index).complete(response);
+                    }
+                    executeNext(query, execute, next, futures);
+                });
+    }
+
+    private MetricsQueryResponse reassemble(
+            final MetricsQuery query,
+            final List<CompletableFuture<MetricsQueryResponse>> futures,
+            final Metrics metrics) {
+        final ImmutableList.Builder<MetricsQueryResponse.Query> queries = ImmutableList.builder();
+        MetricsQueryResponse template = null;
+        Throwable firstError = null;
+        int failed = 0;
+        for (int i = 0; i < futures.size(); ++i) {
+            final Metric metric = query.getMetrics().get(i);
+            try {
+                final MetricsQueryResponse response = futures.get(i).join();
+                if (response.getQueries().size() != 1) {
+                    throw new IllegalStateException(
+                            "Expected one query in response but found " + response.getQueries().size());
+                }
+                template = template == null ? response : template;
+                queries.add(response.getQueries().get(0));
+            // CHECKSTYLE.OFF: IllegalCatch - Any failure is reported for its metric
+            } catch (final RuntimeException e) {
+            // CHECKSTYLE.ON: IllegalCatch
+                final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                firstError = firstError == null ? cause : firstError;
+                ++failed;
+                LOGGER.warn()
+                        .setMessage("Metric query failed")
+                        .addData("metric", metric.getName())
+                        .setThrowable(cause)
+                        .log();
+                queries.add(createErrorQuery(metric, cause));
+            }
+        }
+        metrics.incrementCounter("kairosService/queryFanOut/failed", failed);
+        if (template == null) {
+            throw new CompletionException(firstError);
+        }
+        final MetricsQueryResponse response = template;
+        return ThreadLocalBuilder.clone(response, MetricsQueryResponse.Builder.class, b -> b.setQueries(queries.build()));
+    }
+
+    private static MetricsQueryResponse.Query createErrorQuery(final Metric metric, final Throwable error) {
+        return new MetricsQueryResponse.Query.Builder()
+                .setSampleSize(0L)
+                .setResults(ImmutableList.of(
+                        new MetricsQueryResponse.QueryResult.Builder()
+                                .setName(metric.getName())
+                                .build()))
+                .addOtherArg("error", error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName())
+                .build();
+    }
+
+    private QueryFanOut(final Builder builder) {
+        _parallelism = builder._parallelism;
+    }
+
+    private final ImmutableMap<QueryOrigin, Integer> _parallelism;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryFanOut.class);
+
+    /**
+     * Implementation of the builder pattern for {@link QueryFanOut}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<QueryFanOut> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(QueryFanOut::new);
+        }
+
+        /**
+         * Sets the maximum number of metrics of a query executed at once for
+         * each origin. Queries from origins without a parallelism are not
+         * fanned out. Optional. Defaults to an empty map. Cannot be null.
+         *
+         * @param value the parallelism by origin
+         * @return this {@link Builder}
+         */
+        public Builder setParallelism(final ImmutableMap<QueryOrigin, Integer> value) {
+            _parallelism = value;
+            return this;
+        }
+
+        @NotNull
+        private ImmutableMap<QueryOrigin, Integer> _parallelism = ImmutableMap.of();
+    }
+}
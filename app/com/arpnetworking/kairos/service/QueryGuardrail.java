@@ -0,0 +1,333 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.config.MetricsQueryConfig;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.rollups.RollupMetric;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Estimates the cost of a query before it is sent to KairosDB and rejects or
+ * rewrites queries which would scan too many data points.
+ * <p>
+ * A query whose estimated cost exceeds the maximum is either rejected with a
+ * {@link QueryCostExceededException} or, when rewriting is enabled, has its
+ * most expensive metrics moved to the next coarser rollup one at a time until
+ * it fits. Only metrics whose first range aggregator is sampling aligned, as
+ * determined by {@link KairosDbServiceImpl#getMaxUsableRollupUnit(Metric)},
+ * are moved; raw and unaligned metrics would return different data from a
+ * rollup. A rewritten metric's range aggregators are widened to at least the
+ * rollup period, so the response is downsampled rather than wrong. A query
+ * which does not fit once every eligible metric is on its coarsest rollup is
+ * rejected.
+ *
+ * @author agent (agent at local)
+ */
+public final class QueryGuardrail {
+
+    /**
+     * Whether queries from an origin are guarded.
+     *
+     * @param origin the origin of the query
+     * @return {@code true} if and only if queries from the origin are guarded
+     */
+    public boolean isEnabled(final QueryOrigin origin) {
+        return _enabledOrigins.contains(origin);
+    }
+
+    /**
+     * Estimate the cost of a query and reject or rewrite it if it is too
+     * expensive. The estimated cost is recorded as
+     * {@code kairosService/<route>/estimatedDataPoints}.
+     *
+     * @param query the query, after any rollup has been selected
+     * @param metricNames the metric names used to find coarser rollups
+     * @param queryConfig the configuration of the rollups enabled for queries
+     * @param route the name of the request being guarded
+     * @param metrics the metrics for the request
+     * @return the query to execute, or a {@link QueryCostExceededException}
+     */
+    public CompletionStage<MetricsQuery> apply(
+            final MetricsQuery query,
+            final MetricNamesIndex metricNames,
+            final MetricsQueryConfig queryConfig,
+            final String route,
+            final Metrics metrics) {
+        final Instant now = _clock.instant();
+        final Instant start = query.getStartTime()
+                .orElseGet(() -> QueryResultCache.resolve(query.getStartTimeRelative().get(), now));
+        final Instant end = query.getEndTime()
+                .or(() -> query.getEndTimeRelative().map(relative -> QueryResultCache.resolve(relative, now)))
+                .orElse(now);
+        final List<CompletableFuture<Long>> estimates = new ArrayList<>();
+        for (final Metric metric : query.getMetrics()) {
+            estimates.add(_estimator.estimateDataPoints(metric, start, end).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(estimates.toArray(new CompletableFuture<?>[0]))
+                .thenCompose(ignored -> {
+                    final List<Metric> guarded = new ArrayList<>(query.getMetrics());
+                    final List<Long> costs = new ArrayList<>();
+                    estimates.forEach(estimate -> costs.add(estimate.join()));
+                    final long cost = sum(costs);
+                    metrics.incrementCounter("kairosService/" + route + "/estimatedDataPoints", cost);
+                    if (cost <= _maxDataPoints) {
+                        metrics.incrementCounter("kairosService/queryGuardrail/rejected", 0);
+                        metrics.incrementCounter("kairosService/queryGuardrail/rewritten", 0);
+                        return CompletableFuture.completedFuture(query);
+                    }
+                    if (_action == Action.REJECT) {
+                        return reject(cost, metrics);
+                    }
+                    return coarsen(guarded, costs, metricNames, queryConfig, start, end, metrics)
+                            .thenApply(rewritten -> ThreadLocalBuilder.clone(
+                                    query,
+                                    MetricsQuery.Builder.class,
+                                    b -> b.setMetrics(ImmutableList.copyOf(rewritten))));
+                });
+    }
+
+    private CompletionStage<List<Metric>> coarsen(
+            final List<Metric> guarded,
+            final List<Long> costs,
+            final MetricNamesIndex metricNames,
+            final MetricsQueryConfig queryConfig,
+            final Instant start,
+            final Instant end,
+            final Metrics metrics) {
+        final long cost = sum(costs);
+        if (cost <= _maxDataPoints) {
+            metrics.incrementCounter("kairosService/queryGuardrail/rejected", 0);
+            metrics.incrementCounter("kairosService/queryGuardrail/rewritten", 1);
+            return CompletableFuture.completedFuture(guarded);
+        }
+        // Coarsen the most expensive metric which has a coarser rollup
+        int index = -1;
+        Optional<RollupMetric> coarser = Optional.empty();
+        for (int i = 0; i < guarded.size(); ++i) {
+            final Optional<RollupMetric> candidate = findCoarserRollup(guarded.get(i), metricNames, queryConfig);
+            if (candidate.isPresent() && (index < 0 || costs.get(i) > costs.get(index))) {
+                index = i;
+                coarser = candidate;
+            }
+        }
+        if (coarser.isEmpty()) {
+            return reject(cost, metrics);
+        }
+        final int coarsened = index;
+        final Metric rewritten = rewrite(guarded.get(index), coarser.get());
+        return _estimator.estimateDataPoints(rewritten, start, end)
+                .thenCompose(rewrittenCost -> {
+                    guarded.set(coarsened, rewritten);
+                    costs.set(coarsened, rewrittenCost);
+                    return coarsen(guarded, costs, metricNames, queryConfig, start, end, metrics);
+                });
+    }
+
+    private <T> CompletionStage<T> reject(final long cost, final Metrics metrics) {
+        metrics.incrementCounter("kairosService/queryGuardrail/rejected", 1);
+        metrics.incrementCounter("kairosService/queryGuardrail/rewritten", 0);
+        return CompletableFuture.failedFuture(new QueryCostExceededException(cost, _maxDataPoints));
+    }
+
+    /* package private */ static Optional<RollupMetric> findCoarserRollup(
+            final Metric metric,
+            final MetricNamesIndex metricNames,
+            final MetricsQueryConfig queryConfig) {
+        if (KairosDbServiceImpl.getMaxUsableRollupUnit(metric).isEmpty()) {
+            return Optional.empty();
+        }
+        final Optional<RollupMetric> current = RollupMetric.fromRollupMetricName(metric.getName());
+        final String baseMetricName = current.map(RollupMetric::getBaseMetricName).orElse(metric.getName());
+        final int finerThan = current.map(rollup -> rollup.getPeriod().getSamplingUnit().ordinal()).orElse(-1);
+        final Map<SamplingUnit, RollupMetric> rollups = metricNames.getRollups(baseMetricName);
+        final Set<SamplingUnit> enabledRollups = queryConfig.getQueryEnabledRollups(baseMetricName);
+        // Sampling units are declared from finest to coarsest
+        for (final SamplingUnit unit : SamplingUnit.values()) {
+            if (unit.ordinal() > finerThan && rollups.containsKey(unit) && enabledRollups.contains(unit)) {
+                return Optional.of(rollups.get(unit));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /* package private */ static Metric rewrite(final Metric metric, final RollupMetric rollup) {
+        final SamplingUnit unit = rollup.getPeriod().getSamplingUnit();
+        final Duration period = SamplingUnit.toChronoUnit(unit).getDuration();
+        final ImmutableList<Aggregator> aggregators = metric.getAggregators()
+                .stream()
+                .map(aggregator -> {
+                    final Optional<Sampling> sampling = aggregator.getSampling();
+                    if (sampling.isEmpty()
+                            || SamplingUnit.toChronoUnit(sampling.get().getUnit())
+                                    .getDuration()
+                                    .multipliedBy(sampling.get().getValue())
+                                    .compareTo(period) >= 0) {
+                        return aggregator;
+                    }
+                    return ThreadLocalBuilder.clone(aggregator, Aggregator.Builder.class, b -> b
+                            .setSampling(new Sampling.Builder().setValue(1).setUnit(unit).build())
+                            .setAlignSampling(true));
+                })
+                .collect(ImmutableList.toImmutableList());
+        return ThreadLocalBuilder.clone(metric, Metric.Builder.class, b -> b
+                .setName(rollup.getRollupMetricName())
+                .setAggregators(aggregators));
+    }
+
+    private static long sum(final List<Long> costs) {
+        long sum = 0;
+        for (final long cost : costs) {
+            sum = Math.addExact(sum, cost);
+        }
+        return sum;
+    }
+
+    private QueryGuardrail(final Builder builder) {
+        _estimator = builder._estimator;
+        _clock = builder._clock;
+        _maxDataPoints = builder._maxDataPoints;
+        _action = builder._action;
+        _enabledOrigins = builder._enabledOrigins;
+    }
+
+    private final QueryCostEstimator _estimator;
+    private final Clock _clock;
+    private final long _maxDataPoints;
+    private final Action _action;
+    private final ImmutableSet<QueryOrigin> _enabledOrigins;
+
+    /**
+     * What to do with a query which is too expensive.
+     */
+    public enum Action {
+        /**
+         * Reject the query.
+         */
+        REJECT,
+        /**
+         * Rewrite the query to use coarser rollups, rejecting it if that is
+         * not enough.
+         */
+        REWRITE
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link QueryGuardrail}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<QueryGuardrail> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(QueryGuardrail::new);
+        }
+
+        /**
+         * Sets the {@link QueryCostEstimator}. Required. Cannot be null.
+         *
+         * @param value the cost estimator
+         * @return this {@link Builder}
+         */
+        public Builder setEstimator(final QueryCostEstimator value) {
+            _estimator = value;
+            return this;
+        }
+
+        /**
+         * Sets the clock used to resolve relative times. Optional. Defaults
+         * to the system UTC clock. Cannot be null.
+         *
+         * @param value the clock
+         * @return this {@link Builder}
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated number of data points a query may scan.
+         * Required. Must be at least one.
+         *
+         * @param value the maximum data points
+         * @return this {@link Builder}
+         */
+        public Builder setMaxDataPoints(final Long value) {
+            _maxDataPoints = value;
+            return this;
+        }
+
+        /**
+         * Sets what to do with a query which is too expensive. Optional.
+         * Defaults to {@link Action#REJECT}. Cannot be null.
+         *
+         * @param value the action
+         * @return this {@link Builder}
+         */
+        public Builder setAction(final Action value) {
+            _action = value;
+            return this;
+        }
+
+        /**
+         * Sets the origins whose queries are guarded. Optional. Defaults to
+         * none. Cannot be null.
+         *
+         * @param value the guarded origins
+         * @return this {@link Builder}
+         */
+        public Builder setEnabledOrigins(final ImmutableSet<QueryOrigin> value) {
+            _enabledOrigins = value;
+            return this;
+        }
+
+        @NotNull
+        private QueryCostEstimator _estimator;
+        @NotNull
+        private Clock _clock = Clock.systemUTC();
+        @NotNull
+        @Min(1)
+        private Long _maxDataPoints;
+        @NotNull
+        private Action _action = Action.REJECT;
+        @NotNull
+        private ImmutableSet<QueryOrigin> _enabledOrigins = ImmutableSet.of();
+    }
+}
@@ -30,5 +30,13 @@ public enum QueryOrigin {
     /**
      * Queries which originated from evaluating alert definitions.
      */
-    ALERT_EVALUATION
+    ALERT_EVALUATION,
+    /**
+     * Queries which originated from generating rollups.
+     */
+    ROLLUP,
+    /**
+     * Queries which originated from checking the consistency of rollups.
+     */
+    CONSISTENCY_CHECK
 }
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.RelativeDateTime;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.client.models.TimeUnit;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Caches the bodies of KairosDB query responses in memory.
+ * <p>
+ * Queries are first normalized with {@link #normalize(MetricsQuery)}, which
+ * resolves relative times and, when every metric is sampled into aligned
+ * buckets, widens the time range to whole multiples of the finest sampling
+ * period in the query (capped at the configured alignment). Requests for the
+ * same dashboard made within the same period therefore share a normalized
+ * query, which is both the cache key and the query that must be sent to
+ * KairosDB on a miss. Other queries are keyed on their resolved time range,
+ * since widening it would change the data points they return.
+ * <p>
+ * Responses whose time range ends before the historical threshold cannot
+ * change and are kept for the historical time to live; all others touch the
+ * present and are kept only for the live time to live. The cache is bounded
+ * by the total size of the cached bodies.
+ *
+ * @author agent (agent at local)
+ */
+public final class QueryResultCache {
+
+    /**
+     * Resolve the relative times of a query and, if its results do not
+     * depend on the exact range, align its time range.
+     *
+     * @param query the query to normalize
+     * @return the normalized query
+     */
+    public MetricsQuery normalize(final MetricsQuery query) {
+        final Instant now = _clock.instant();
+        final Instant start = query.getStartTime()
+                .orElseGet(() -> resolve(query.getStartTimeRelative().get(), now));
+        final Instant end = query.getEndTime()
+                .or(() -> query.getEndTimeRelative().map(relative -> resolve(relative, now)))
+                .orElse(now);
+
+        final Optional<Duration> period = getAlignment(query);
+        if (period.isEmpty()) {
+            return ThreadLocalBuilder.clone(query, MetricsQuery.Builder.class, b -> b
+                    .setStartTimeRelative(null)
+                    .setEndTimeRelative(null)
+                    .setStartTime(start)
+                    .setEndTime(end));
+        }
+        final long alignment = period.get().toMillis();
+        final Instant alignedStart = Instant.ofEpochMilli(Math.floorDiv(start.toEpochMilli(), alignment) * alignment);
+        // The end time is inclusive so extend it to the last millisecond of its period
+        final Instant alignedEnd = Instant.ofEpochMilli(
+                Math.floorDiv(end.toEpochMilli(), alignment) * alignment + alignment - 1);
+        return ThreadLocalBuilder.clone(query, MetricsQuery.Builder.class, b -> b
+                .setStartTimeRelative(null)
+                .setEndTimeRelative(null)
+                .setStartTime(alignedStart)
+                .setEndTime(alignedEnd));
+    }
+
+    /**
+     * Look up the cached response to a normalized query.
+     *
+     * @param normalizedQuery the query returned by {@link #normalize(MetricsQuery)}
+     * @return the cached response, if any
+     */
+    public Optional<KairosDbStreamedResponse> get(final MetricsQuery normalizedQuery) {
+        final Metrics metrics = _metricsFactory.create();
+        Entry entry = _cache.getIfPresent(normalizedQuery);
+        if (entry != null && entry._expiresAt.isBefore(_clock.instant())) {
+            _cache.invalidate(normalizedQuery);
+            entry = null;
+        }
+        metrics.incrementCounter("kairosService/queryResultCache/hit", entry != null ? 1 : 0);
+        metrics.incrementCounter("kairosService/queryResultCache/miss", entry != null ? 0 : 1);
+        if (entry != null) {
+            metrics.incrementCounter("kairosService/queryResultCache/bytes", entry._body.size());
+        }
+        metrics.close();
+
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new KairosDbStreamedResponse.Builder()
+                .setBody(Source.single(entry._body))
+                .setContentEncoding(entry._contentEncoding)
+                .build());
+    }
+
+    /**
+     * Cache a response once its body has been read. The body of the returned
+     * response must be consumed in place of the original. The response is
+     * only cached if its body is read to completion and is no larger than
+     * the maximum entry size.
+     *
+     * @param normalizedQuery the query returned by {@link #normalize(MetricsQuery)}
+     * @param response the response to the query
+     * @return a response with the same body which caches it as it is read
+     */
+    public KairosDbStreamedResponse put(final MetricsQuery normalizedQuery, final KairosDbStreamedResponse response) {
+        final String contentEncoding = response.getContentEncoding().orElse(null);
+        return ResponseCapture.capture(
+                response,
+                _maxEntryBytes,
+                body -> body.ifPresent(bytes -> store(normalizedQuery, bytes, contentEncoding)));
+    }
+
+    // Widening the range only leaves the results unchanged if every metric
+    // is sampled and every sampling is aligned to multiples of the alignment
+    private Optional<Duration> getAlignment(final MetricsQuery query) {
+        if (query.getMetrics().stream().anyMatch(metric -> metric.getAggregators().stream()
+                .noneMatch(aggregator -> aggregator.getSampling().isPresent()))) {
+            return Optional.empty();
+        }
+        final List<Aggregator> rangeAggregators = query.getMetrics()
+                .stream()
+                .flatMap(metric -> metric.getAggregators().stream())
+                .filter(aggregator -> aggregator.getSampling().isPresent())
+                .collect(ImmutableList.toImmutableList());
+        final Duration alignment = rangeAggregators.stream()
+                .map(QueryResultCache::getPeriod)
+                .filter(period -> period.compareTo(_alignment) < 0)
+                .min(Duration::compareTo)
+                .orElse(_alignment);
+        if (alignment.toMillis() <= 0) {
+            return Optional.empty();
+        }
+        final boolean aligned = rangeAggregators.stream().allMatch(aggregator ->
+                aggregator.getAlignSampling().orElse(false)
+                        && getPeriod(aggregator).toMillis() % alignment.toMillis() == 0);
+        return aligned ? Optional.of(alignment) : Optional.empty();
+    }
+
+    private static Duration getPeriod(final Aggregator aggregator) {
+        final Sampling sampling = aggregator.getSampling().get();
+        return SamplingUnit.toChronoUnit(sampling.getUnit()).getDuration().multipliedBy(sampling.getValue());
+    }
+
+    /* package private */ static Instant resolve(final RelativeDateTime relative, final Instant now) {
+        return ZonedDateTime.ofInstant(now, ZoneOffset.UTC)
+                .minus(relative.getValue().longValue(), TimeUnit.toChronoUnit(relative.getUnit()))
+                .toInstant();
+    }
+
+    private void store(final MetricsQuery normalizedQuery, final ByteString body, @Nullable final String contentEncoding) {
+        final Instant now = _clock.instant();
+        final boolean historical = normalizedQuery.getEndTime()
+                .map(end -> end.plus(_historicalAfter).isBefore(now))
+                .orElse(false);
+        final Instant expiresAt = now.plus(historical ? _historicalTtl : _liveTtl);
+        _cache.put(normalizedQuery, new Entry(body, contentEncoding, expiresAt));
+
+        final Metrics metrics = _metricsFactory.create();
+        metrics.incrementCounter("kairosService/queryResultCache/stored", body.size());
+        metrics.incrementCounter("kairosService/queryResultCache/historical", historical ? 1 : 0);
+        metrics.close();
+    }
+
+    private QueryResultCache(final Builder builder) {
+        _metricsFactory = builder._metricsFactory;
+        _clock = builder._clock;
+        _alignment = builder._alignment;
+        _liveTtl = builder._liveTtl;
+        _historicalTtl = builder._historicalTtl;
+        _historicalAfter = builder._historicalAfter;
+        _maxEntryBytes = builder._maxEntryBytes;
+        _cache = CacheBuilder.newBuilder()
+                .maximumWeight(builder._maxBytes)
+                .weigher((MetricsQuery query, Entry entry) -> entry._body.size())
+                .expireAfterWrite(_liveTtl.compareTo(_historicalTtl) > 0 ? _liveTtl : _historicalTtl)
+                .build();
+    }
+
+    private final MetricsFactory _metricsFactory;
+    private final Clock _clock;
+    private final Duration _alignment;
+    private final Duration _liveTtl;
+    private final Duration _historicalTtl;
+    private final Duration _historicalAfter;
+    private final long _maxEntryBytes;
+    private final Cache<MetricsQuery, Entry> _cache;
+
+    private static final class Entry {
+        Entry(final ByteString body, @Nullable final String contentEncoding, final Instant expiresAt) {
+            _body = body;
+            _contentEncoding = contentEncoding;
+            _expiresAt = expiresAt;
+        }
+
+        private final ByteString _body;
+        @Nullable
+        private final String _contentEncoding;
+        private final Instant _expiresAt;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link QueryResultCache}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<QueryResultCache> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(QueryResultCache::new);
+        }
+
+        /**
+         * Sets the {@link MetricsFactory} to use. Required. Cannot be null.
+         *
+         * @param value the {@link MetricsFactory} to use
+         * @return this {@link Builder}
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Sets the clock used to resolve relative times and expire entries.
+         * Optional. Defaults to the system UTC clock. Cannot be null.
+         *
+         * @param value the clock
+         * @return this {@link Builder}
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the coarsest period query time ranges are aligned to. Queries
+         * sampled more finely are aligned to their finest sampling period.
+         * Optional. Defaults to one minute. Cannot be null.
+         *
+         * @param value the alignment period
+         * @return this {@link Builder}
+         */
+        public Builder setAlignment(final Duration value) {
+            _alignment = value;
+            return this;
+        }
+
+        /**
+         * Sets how long responses to queries touching the present are cached.
+         * Optional. Defaults to ten seconds. Cannot be null.
+         *
+         * @param value the time to live
+         * @return this {@link Builder}
+         */
+        public Builder setLiveTtl(final Duration value) {
+            _liveTtl = value;
+            return this;
+        }
+
+        /**
+         * Sets how long responses to historical queries are cached. Optional.
+         * Defaults to one hour. Cannot be null.
+         *
+         * @param value the time to live
+         * @return this {@link Builder}
+         */
+        public Builder setHistoricalTtl(final Duration value) {
+            _historicalTtl = value;
+            return this;
+        }
+
+        /**
+         * Sets how far in the past a query must end for it to be considered
+         * historical. Optional. Defaults to five minutes. Cannot be null.
+         *
+         * @param value the historical threshold
+         * @return this {@link Builder}
+         */
+        public Builder setHistoricalAfter(final Duration value) {
+            _historicalAfter = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size of the cached bodies in bytes. Optional.
+         * Defaults to 256 MiB. Must be at least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxBytes(final Long value) {
+            _maxBytes = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a single cached body in bytes. Larger
+         * responses are not cached. Optional. Defaults to 16 MiB. Must be at
+         * least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxEntryBytes(final Long value) {
+            _maxEntryBytes = value;
+            return this;
+        }
+
+        @NotNull
+        private MetricsFactory _metricsFactory;
+        @NotNull
+        private Clock _clock = Clock.systemUTC();
+        @NotNull
+        private Duration _alignment = Duration.ofMinutes(1);
+        @NotNull
+        private Duration _liveTtl = Duration.ofSeconds(10);
+        @NotNull
+        private Duration _historicalTtl = Duration.ofHours(1);
+        @NotNull
+        private Duration _historicalAfter = Duration.ofMinutes(5);
+        @NotNull
+        @Min(0)
+        private Long _maxBytes = 256L * 1024 * 1024;
+        @NotNull
+        @Min(0)
+        private Long _maxEntryBytes = 16L * 1024 * 1024;
+    }
+}
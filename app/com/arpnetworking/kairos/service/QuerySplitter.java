@@ -0,0 +1,449 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.DataPoints;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.metrics.Metrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Splits long-range queries into chunks aligned to a fixed period so that the
+ * chunks which have closed can be cached and only the open tail re-queried.
+ * <p>
+ * A query can only be split if splitting cannot change its results. Every
+ * metric must be eligible for rollups as determined by
+ * {@link KairosDbServiceImpl#getMaxUsableRollupUnit(Metric)} and, further,
+ * every aggregator must be a sampling-aligned range aggregator whose period
+ * lines up with the chunk boundaries. Queries in a time zone other than UTC
+ * or which limit or reorder their data points are never split.
+ * <p>
+ * At most the configured number of chunks of a query are executed at a
+ * time. The chunk responses are merged back into a single response by
+ * concatenating the data points of matching groups in time order.
+ *
+ * @author agent (agent at local)
+ */
+public final class QuerySplitter {
+
+    /**
+     * Whether a query can be split. A query is only split if it is eligible
+     * and at least one of its chunks can be cached.
+     *
+     * @param query the query
+     * @return {@code true} if and only if the query can be split
+     */
+    public boolean canSplit(final MetricsQuery query) {
+        return plan(query).isPresent();
+    }
+
+    /**
+     * Execute a query as chunks, serving closed chunks from the cache. If
+     * the query cannot be split it is executed as-is.
+     *
+     * @param query the query
+     * @param execute executes a query
+     * @param metrics the metrics for the request
+     * @return the merged response
+     */
+    public CompletionStage<MetricsQueryResponse> queryMetrics(
+            final MetricsQuery query,
+            final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute,
+            final Metrics metrics) {
+        final Optional<ImmutableList<Chunk>> plan = plan(query);
+        if (!plan.isPresent()) {
+            return execute.apply(query);
+        }
+
+        final List<CompletableFuture<MetricsQueryResponse>> futures = new ArrayList<>(plan.get().size());
+        final List<Chunk> uncached = new ArrayList<>();
+        final List<CompletableFuture<MetricsQueryResponse>> uncachedFutures = new ArrayList<>();
+        for (final Chunk chunk : plan.get()) {
+            final MetricsQueryResponse response = chunk._closed ? _cache.getIfPresent(chunk._query) : null;
+            if (response != null) {
+                futures.add(CompletableFuture.completedFuture(response));
+            } else {
+                final CompletableFuture<MetricsQueryResponse> future = new CompletableFuture<>();
+                futures.add(future);
+                uncached.add(chunk);
+                uncachedFutures.add(future);
+            }
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final int inFlight = Math.min(_maxInFlight, uncached.size());
+        for (int i = 0; i < inFlight; ++i) {
+            executeNext(uncached, execute, next, uncachedFutures);
+        }
+        metrics.incrementCounter("kairosService/querySplitter/chunks", futures.size());
+        metrics.incrementCounter("kairosService/querySplitter/cached", futures.size() - uncached.size());
+        metrics.incrementCounter("kairosService/querySplitter/executed", uncached.size());
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> merge(futures.stream().map(CompletableFuture::join).collect(ImmutableList.toImmutableList())));
+    }
+
+    private void executeNext(
+            final List<Chunk> chunks,
+            final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute,
+            final AtomicInteger next,
+            final List<CompletableFuture<MetricsQueryResponse>> futures) {
+        final int index = next.getAndIncrement();
+        if (index >= chunks.size()) {
+            return;
+        }
+        final Chunk chunk = chunks.get(index);
+        // Start from a completed stage so a synchronous failure is reported for this chunk
+        CompletableFuture.completedFuture(chunk._query)
+                .thenCompose(execute)
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        futures.get(index).completeExceptionally(error);
+                        // The merged response fails anyway so the chunks not yet started are not executed
+                        for (int i = next.getAndSet(chunks.size()); i < chunks.size(); ++i) {
+                            futures.get(i).completeExceptionally(error);
+                        }
+                        return;
+                    }
+                    if (chunk._closed) {
+                        _cache.put(chunk._query, response);
+                    }
+                    futures.get(index).complete(response);
+                    executeNext(chunks, execute, next, futures);
+                });
+    }
+
+    private Optional<ImmutableList<Chunk>> plan(final MetricsQuery query) {
+        if (query.getOtherArgs().containsKey("time_zone") || !query.getMetrics().stream().allMatch(this::canSplit)) {
+            return Optional.empty();
+        }
+        final Instant now = _clock.instant();
+        final long start = query.getStartTime()
+                .orElseGet(() -> QueryResultCache.resolve(query.getStartTimeRelative().get(), now))
+                .toEpochMilli();
+        final long end = query.getEndTime()
+                .or(() -> query.getEndTimeRelative().map(relative -> QueryResultCache.resolve(relative, now)))
+                .orElse(now)
+                .toEpochMilli();
+        if (end < start || (end - start) / _chunkMillis >= _maxChunks) {
+            return Optional.empty();
+        }
+        final long closedBefore = now.minus(_settleTime).toEpochMilli();
+
+        // Chunks are [from, to] inclusive; only whole closed chunks are cached,
+        // since the partial chunk at the start moves with relative queries
+        final ImmutableList.Builder<Chunk> chunks = ImmutableList.builder();
+        boolean cacheable = false;
+        long from = start;
+        while (from <= end) {
+            final long boundary = Math.floorDiv(from, _chunkMillis) * _chunkMillis + _chunkMillis;
+            final long to = Math.min(boundary - 1, end);
+            final boolean closed = from == boundary - _chunkMillis && to == boundary - 1 && to < closedBefore;
+            cacheable |= closed;
+            chunks.add(new Chunk(withTimeRange(query, from, to), closed));
+            from = boundary;
+        }
+        return cacheable ? Optional.of(chunks.build()) : Optional.empty();
+    }
+
+    private boolean canSplit(final Metric metric) {
+        if (!KairosDbServiceImpl.getMaxUsableRollupUnit(metric).isPresent()
+                || metric.getLimit().isPresent()
+                || metric.getOrder().filter(order -> order != Metric.Order.ASC).isPresent()) {
+            return false;
+        }
+        for (final Aggregator aggregator : metric.getAggregators()) {
+            if (!aggregator.getAlignSampling().orElse(false) || !aggregator.getSampling().isPresent()) {
+                return false;
+            }
+            // Aligned buckets start at the top of the hour (or day), so they
+            // only line up with every chunk if the period divides both
+            final long period = getPeriodMillis(aggregator.getSampling().get());
+            if (period <= 0 || _chunkMillis % period != 0) {
+                return false;
+            }
+            if (HOUR_MILLIS % period != 0 && period != DAY_MILLIS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long getPeriodMillis(final Sampling sampling) {
+        if (sampling.getUnit().compareTo(SamplingUnit.DAYS) > 0) {
+            return -1;
+        }
+        return SamplingUnit.toChronoUnit(sampling.getUnit()).getDuration().multipliedBy(sampling.getValue()).toMillis();
+    }
+
+    private static MetricsQuery withTimeRange(final MetricsQuery query, final long from, final long to) {
+        return ThreadLocalBuilder.clone(query, MetricsQuery.Builder.class, b -> b
+                .setStartTimeRelative(null)
+                .setEndTimeRelative(null)
+                .setStartTime(Instant.ofEpochMilli(from))
+                .setEndTime(Instant.ofEpochMilli(to)));
+    }
+
+    /* package private */ static MetricsQueryResponse merge(final List<MetricsQueryResponse> responses) {
+        final MetricsQueryResponse first = responses.get(0);
+        final ImmutableList.Builder<MetricsQueryResponse.Query> queries = ImmutableList.builder();
+        for (int i = 0; i < first.getQueries().size(); ++i) {
+            final List<MetricsQueryResponse.Query> parts = new ArrayList<>(responses.size());
+            for (final MetricsQueryResponse response : responses) {
+                if (response.getQueries().size() != first.getQueries().size()) {
+                    throw new IllegalStateException("Chunk responses contain different numbers of queries");
+                }
+                parts.add(response.getQueries().get(i));
+            }
+            queries.add(mergeQuery(parts));
+        }
+        return ThreadLocalBuilder.clone(first, MetricsQueryResponse.Builder.class, b -> b.setQueries(queries.build()));
+    }
+
+    private static MetricsQueryResponse.Query mergeQuery(final List<MetricsQueryResponse.Query> parts) {
+        final Map<List<MetricsQueryResponse.QueryGroupBy>, List<MetricsQueryResponse.QueryResult>> groups =
+                new LinkedHashMap<>();
+        long sampleSize = 0;
+        for (final MetricsQueryResponse.Query part : parts) {
+            sampleSize += part.getSampleSize();
+            for (final MetricsQueryResponse.QueryResult result : part.getResults()) {
+                groups.computeIfAbsent(result.getGroupBy(), key -> new ArrayList<>()).add(result);
+            }
+        }
+
+        final List<MetricsQueryResponse.QueryResult> merged = new ArrayList<>(groups.size());
+        for (final List<MetricsQueryResponse.QueryResult> group : groups.values()) {
+            merged.add(mergeResult(group));
+        }
+        // A chunk without data reports an empty ungrouped result which should
+        // not appear alongside the groups found in other chunks
+        if (merged.stream().anyMatch(result -> !result.getDataPoints().isEmpty())) {
+            merged.removeIf(result -> result.getDataPoints().isEmpty());
+        } else if (merged.size() > 1) {
+            merged.subList(1, merged.size()).clear();
+        }
+        final long totalSampleSize = sampleSize;
+        return ThreadLocalBuilder.clone(parts.get(0), MetricsQueryResponse.Query.Builder.class, b -> b
+                .setSampleSize(totalSampleSize)
+                .setResults(ImmutableList.copyOf(merged)));
+    }
+
+    private static MetricsQueryResponse.QueryResult mergeResult(final List<MetricsQueryResponse.QueryResult> parts) {
+        final MetricsQueryResponse.QueryResult first = parts.get(0);
+        if (parts.size() == 1) {
+            return first;
+        }
+        final ImmutableSetMultimap.Builder<String, String> tags = ImmutableSetMultimap.builder();
+        final List<DataPoints> dataPoints = new ArrayList<>(parts.size());
+        for (final MetricsQueryResponse.QueryResult part : parts) {
+            tags.putAll(part.getTags());
+            dataPoints.add(part.getDataPoints());
+        }
+        return ThreadLocalBuilder.build(
+                MetricsQueryResponse.QueryResult.Builder.class,
+                b -> b.setName(first.getName())
+                        .setDataPoints(DataPoints.concat(dataPoints))
+                        .setGroupBy(first.getGroupBy())
+                        .setOtherArgs(first.getOtherArgs())
+                        .setTags(tags.build()));
+    }
+
+    private QuerySplitter(final Builder builder) {
+        _clock = builder._clock;
+        _chunkMillis = Math.max(1, builder._chunkPeriod.toMillis());
+        _settleTime = builder._settleTime;
+        _maxChunks = builder._maxChunks;
+        _maxInFlight = builder._maxInFlight;
+        _cache = CacheBuilder.newBuilder()
+                .maximumWeight(builder._maxDataPoints)
+                .weigher((MetricsQuery query, MetricsQueryResponse response) -> countDataPoints(response))
+                .expireAfterWrite(builder._ttl)
+                .build();
+    }
+
+    private static int countDataPoints(final MetricsQueryResponse response) {
+        int count = 1;
+        for (final MetricsQueryResponse.Query query : response.getQueries()) {
+            for (final MetricsQueryResponse.QueryResult result : query.getResults()) {
+                count += result.getDataPoints().size();
+            }
+        }
+        return count;
+    }
+
+    private final Clock _clock;
+    private final long _chunkMillis;
+    private final Duration _settleTime;
+    private final int _maxChunks;
+    private final int _maxInFlight;
+    private final Cache<MetricsQuery, MetricsQueryResponse> _cache;
+
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+    private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+
+    private static final class Chunk {
+        Chunk(final MetricsQuery query, final boolean closed) {
+            _query = query;
+            _closed = closed;
+        }
+
+        private final MetricsQuery _query;
+        private final boolean _closed;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link QuerySplitter}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<QuerySplitter> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(QuerySplitter::new);
+        }
+
+        /**
+         * Sets the clock used to resolve relative times and find the closed
+         * chunks. Optional. Defaults to the system UTC clock. Cannot be null.
+         *
+         * @param value the clock
+         * @return this {@link Builder}
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the period queries are split on. Chunks start at whole
+         * multiples of the period since the epoch. Optional. Defaults to one
+         * day. Cannot be null.
+         *
+         * @param value the chunk period
+         * @return this {@link Builder}
+         */
+        public Builder setChunkPeriod(final Duration value) {
+            _chunkPeriod = value;
+            return this;
+        }
+
+        /**
+         * Sets how long after its end a chunk is considered closed and may be
+         * cached, to allow for late data. Optional. Defaults to five minutes.
+         * Cannot be null.
+         *
+         * @param value the settle time
+         * @return this {@link Builder}
+         */
+        public Builder setSettleTime(final Duration value) {
+            _settleTime = value;
+            return this;
+        }
+
+        /**
+         * Sets how long closed chunks are cached. Optional. Defaults to one
+         * hour. Cannot be null.
+         *
+         * @param value the time to live
+         * @return this {@link Builder}
+         */
+        public Builder setTtl(final Duration value) {
+            _ttl = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total number of data points in the cached chunks.
+         * Optional. Defaults to ten million. Must be at least zero.
+         *
+         * @param value the maximum number of data points
+         * @return this {@link Builder}
+         */
+        public Builder setMaxDataPoints(final Long value) {
+            _maxDataPoints = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chunks a query is split into. Queries
+         * spanning more chunks are executed as-is. Optional. Defaults to 400.
+         * Must be at least one.
+         *
+         * @param value the maximum number of chunks
+         * @return this {@link Builder}
+         */
+        public Builder setMaxChunks(final Integer value) {
+            _maxChunks = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of chunks of a query which are executed at
+         * the same time. Optional. Defaults to four. Must be at least one.
+         *
+         * @param value the maximum number of chunks in flight
+         * @return this {@link Builder}
+         */
+        public Builder setMaxInFlight(final Integer value) {
+            _maxInFlight = value;
+            return this;
+        }
+
+        @NotNull
+        private Clock _clock = Clock.systemUTC();
+        @NotNull
+        private Duration _chunkPeriod = Duration.ofDays(1);
+        @NotNull
+        private Duration _settleTime = Duration.ofMinutes(5);
+        @NotNull
+        private Duration _ttl = Duration.ofHours(1);
+        @NotNull
+        @Min(0)
+        private Long _maxDataPoints = 10_000_000L;
+        @NotNull
+        @Min(1)
+        private Integer _maxChunks = 400;
+        @NotNull
+        @Min(1)
+        private Integer _maxInFlight = 4;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.util.ByteString;
+import org.apache.pekko.util.ByteStringBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Captures the body of a streamed response as it is read by its consumer,
+ * without delaying or otherwise changing what the consumer sees.
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class ResponseCapture {
+
+    /**
+     * Wrap a response so its body is captured as it is read. The callback is
+     * invoked once the body terminates with the complete body, or with empty
+     * if the body failed, was cancelled or exceeded the maximum size. It is
+     * never invoked if the body is not read.
+     *
+     * @param response the response to capture
+     * @param maxBytes the maximum number of bytes to capture
+     * @param callback invoked with the captured body
+     * @return a response with the same body and content encoding
+     */
+    static KairosDbStreamedResponse capture(
+            final KairosDbStreamedResponse response,
+            final long maxBytes,
+            final Consumer<Optional<ByteString>> callback) {
+        final ResponseCapture capture = new ResponseCapture(maxBytes, callback);
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(response.getBody()
+                        .map(capture::append)
+                        // Only reached once the body completes successfully
+                        .concatLazy(Source.lazySource(() -> {
+                            capture.succeed();
+                            return Source.<ByteString>empty();
+                        }))
+                        .watchTermination((materialized, done) -> {
+                            done.whenComplete((ignored, error) -> capture.fail());
+                            return materialized;
+                        }))
+                .setContentEncoding(response.getContentEncoding().orElse(null))
+                .build();
+    }
+
+    private ByteString append(final ByteString bytes) {
+        if (_buffer != null) {
+            if (_buffer.length() + bytes.size() > _maxBytes) {
+                // Too large to capture; stop buffering and just forward the rest
+                _buffer = null;
+            } else {
+                _buffer.append(bytes);
+            }
+        }
+        return bytes;
+    }
+
+    private void succeed() {
+        if (_completed.compareAndSet(false, true)) {
+            final ByteStringBuilder buffer = _buffer;
+            _buffer = null;
+            _callback.accept(buffer == null ? Optional.empty() : Optional.of(buffer.result()));
+        }
+    }
+
+    private void fail() {
+        if (_completed.compareAndSet(false, true)) {
+            _buffer = null;
+            _callback.accept(Optional.empty());
+        }
+    }
+
+    private ResponseCapture(final long maxBytes, final Consumer<Optional<ByteString>> callback) {
+        _maxBytes = maxBytes;
+        _callback = callback;
+    }
+
+    private final long _maxBytes;
+    private final Consumer<Optional<ByteString>> _callback;
+    private final AtomicBoolean _completed = new AtomicBoolean(false);
+    @Nullable
+    private ByteStringBuilder _buffer = ByteString.createBuilder();
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Caches tag names, tag values and tag query responses in memory.
+ * <p>
+ * Tag queries are keyed by their metrics and their time range, which is
+ * resolved and widened to whole multiples of the bucket period so requests
+ * made within the same bucket share an entry; the widened query is the one
+ * sent to KairosDB on a miss.
+ * <p>
+ * Entries are served stale while they are revalidated: an entry younger than
+ * the time to live is returned as is, an older entry is returned immediately
+ * while a single background load replaces it, and an entry older than the
+ * maximum staleness is discarded and must be loaded before the request
+ * completes. Failed loads leave the stale entry in place. Concurrent loads of
+ * the same key share one request to KairosDB. The cache is bounded by the
+ * serialized size of the cached responses.
+ * <p>
+ * Each lookup records {@code kairosService/tagCache/<type>/hit},
+ * {@code kairosService/tagCache/<type>/stale} and
+ * {@code kairosService/tagCache/<type>/miss}, where {@code <type>} is one of
+ * {@code tagNames}, {@code tagValues} or {@code queryTags}.
+ *
+ * @author agent (agent at local)
+ */
+public final class TagMetadataCache {
+
+    /**
+     * Get the tag names.
+     *
+     * @param loader loads the tag names from KairosDB
+     * @return the tag names
+     */
+    public CompletionStage<TagNamesResponse> getTagNames(final Supplier<CompletionStage<TagNamesResponse>> loader) {
+        return get(new Key(TAG_NAMES, null), loader);
+    }
+
+    /**
+     * Get the tag values.
+     *
+     * @param loader loads the tag values from KairosDB
+     * @return the tag values
+     */
+    public CompletionStage<TagValuesResponse> getTagValues(final Supplier<CompletionStage<TagValuesResponse>> loader) {
+        return get(new Key(TAG_VALUES, null), loader);
+    }
+
+    /**
+     * Get the response to a tag query.
+     *
+     * @param query the tag query
+     * @param loader loads the response to the normalized query from KairosDB
+     * @return the response
+     */
+    public CompletionStage<MetricsQueryResponse> getTags(
+            final TagsQuery query,
+            final Function<TagsQuery, CompletionStage<MetricsQueryResponse>> loader) {
+        final TagsQuery normalized = normalize(query);
+        return get(new Key(QUERY_TAGS, normalized), () -> loader.apply(normalized));
+    }
+
+    /* package private */ TagsQuery normalize(final TagsQuery query) {
+        final Instant now = _clock.instant();
+        final long bucket = Math.max(1, _bucket.toMillis());
+        final Instant start = query.getStartTime()
+                .orElseGet(() -> QueryResultCache.resolve(query.getStartTimeRelative().get(), now));
+        final Instant end = query.getEndTime()
+                .or(() -> query.getEndTimeRelative().map(relative -> QueryResultCache.resolve(relative, now)))
+                .orElse(now);
+        // The end time is inclusive so extend it to the last millisecond of its bucket
+        return ThreadLocalBuilder.clone(query, TagsQuery.Builder.class, b -> b
+                .setStartTimeRelative(null)
+                .setEndTimeRelative(null)
+                .setStartTime(Instant.ofEpochMilli(Math.floorDiv(start.toEpochMilli(), bucket) * bucket))
+                .setEndTime(Instant.ofEpochMilli(Math.floorDiv(end.toEpochMilli(), bucket) * bucket + bucket - 1)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<T> get(final Key key, final Supplier<CompletionStage<T>> loader) {
+        final Entry entry = _cache.getIfPresent(key);
+        final Instant now = _clock.instant();
+        final boolean fresh = entry != null && entry._loadedAt.plus(_ttl).isAfter(now);
+        final boolean stale = entry != null && !fresh && entry._loadedAt.plus(_maxStale).isAfter(now);
+
+        final Metrics metrics = _metricsFactory.create();
+        metrics.incrementCounter("kairosService/tagCache/" + key._type + "/hit", fresh ? 1 : 0);
+        metrics.incrementCounter("kairosService/tagCache/" + key._type + "/stale", stale ? 1 : 0);
+        metrics.incrementCounter("kairosService/tagCache/" + key._type + "/miss", fresh || stale ? 0 : 1);
+        metrics.close();
+
+        if (fresh) {
+            return CompletableFuture.completedFuture((T) entry._value);
+        }
+        final CompletionStage<T> load = load(key, loader);
+        if (stale) {
+            return CompletableFuture.completedFuture((T) entry._value);
+        }
+        return load;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletionStage<T> load(final Key key, final Supplier<CompletionStage<T>> loader) {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = _loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return (CompletionStage<T>) existing;
+        }
+        CompletableFuture.completedFuture(loader)
+                .thenCompose(Supplier::get)
+                .whenComplete((value, error) -> {
+                    _loading.remove(key, future);
+                    if (error != null) {
+                        LOGGER.warn()
+                                .setMessage("Failed to load tag metadata")
+                                .addData("type", key._type)
+                                .setThrowable(error)
+                                .log();
+                        future.completeExceptionally(error);
+                    } else {
+                        store(key, value);
+                        future.complete(value);
+                    }
+                });
+        return (CompletionStage<T>) future;
+    }
+
+    private void store(final Key key, final Object value) {
+        final long size;
+        try {
+            size = _mapper.writeValueAsBytes(value).length;
+        } catch (final JsonProcessingException e) {
+            LOGGER.warn()
+                    .setMessage("Unable to size tag metadata; not caching")
+                    .addData("type", key._type)
+                    .setThrowable(e)
+                    .log();
+            return;
+        }
+        if (size > _maxEntryBytes) {
+            _cache.invalidate(key);
+            return;
+        }
+        _cache.put(key, new Entry(value, _clock.instant(), (int) size));
+    }
+
+    private TagMetadataCache(final Builder builder) {
+        _metricsFactory = builder._metricsFactory;
+        _mapper = builder._mapper;
+        _clock = builder._clock;
+        _bucket = builder._bucket;
+        _ttl = builder._ttl;
+        _maxStale = builder._maxStale;
+        _maxEntryBytes = Math.min(builder._maxEntryBytes, Integer.MAX_VALUE);
+        _cache = CacheBuilder.newBuilder()
+                .maximumWeight(builder._maxBytes)
+                .weigher((Key key, Entry entry) -> entry._size)
+                .expireAfterWrite(_maxStale.compareTo(_ttl) > 0 ? _maxStale : _ttl)
+                .build();
+    }
+
+    private final MetricsFactory _metricsFactory;
+    private final ObjectMapper _mapper;
+    private final Clock _clock;
+    private final Duration _bucket;
+    private final Duration _ttl;
+    private final Duration _maxStale;
+    private final long _maxEntryBytes;
+    private final Cache<Key, Entry> _cache;
+    private final ConcurrentMap<Key, CompletableFuture<Object>> _loading = new ConcurrentHashMap<>();
+
+    private static final String TAG_NAMES = "tagNames";
+    private static final String TAG_VALUES = "tagValues";
+    private static final String QUERY_TAGS = "queryTags";
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagMetadataCache.class);
+
+    private static final class Key {
+        Key(final String type, final Object query) {
+            _type = type;
+            _query = query;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return _type.equals(other._type) && Objects.equals(_query, other._query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_type, _query);
+        }
+
+        private final String _type;
+        private final Object _query;
+    }
+
+    private static final class Entry {
+        Entry(final Object value, final Instant loadedAt, final int size) {
+            _value = value;
+            _loadedAt = loadedAt;
+            _size = size;
+        }
+
+        private final Object _value;
+        private final Instant _loadedAt;
+        private final int _size;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link TagMetadataCache}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<TagMetadataCache> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(TagMetadataCache::new);
+        }
+
+        /**
+         * Sets the {@link MetricsFactory} to use. Required. Cannot be null.
+         *
+         * @param value the {@link MetricsFactory} to use
+         * @return this {@link Builder}
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ObjectMapper} used to measure the size of cached
+         * responses. Required. Cannot be null.
+         *
+         * @param value the {@link ObjectMapper} to use
+         * @return this {@link Builder}
+         */
+        public Builder setMapper(final ObjectMapper value) {
+            _mapper = value;
+            return this;
+        }
+
+        /**
+         * Sets the clock used to resolve relative times and age entries.
+         * Optional. Defaults to the system UTC clock. Cannot be null.
+         *
+         * @param value the clock
+         * @return this {@link Builder}
+         */
+        public Builder setClock(final Clock value) {
+            _clock = value;
+            return this;
+        }
+
+        /**
+         * Sets the period tag query time ranges are aligned to. Optional.
+         * Defaults to five minutes. Cannot be null.
+         *
+         * @param value the bucket period
+         * @return this {@link Builder}
+         */
+        public Builder setBucket(final Duration value) {
+            _bucket = value;
+            return this;
+        }
+
+        /**
+         * Sets how long entries are served without being revalidated.
+         * Optional. Defaults to one minute. Cannot be null.
+         *
+         * @param value the time to live
+         * @return this {@link Builder}
+         */
+        public Builder setTtl(final Duration value) {
+            _ttl = value;
+            return this;
+        }
+
+        /**
+         * Sets how long after being loaded an entry may still be served while
+         * it is revalidated. Optional. Defaults to one hour. Cannot be null.
+         *
+         * @param value the maximum staleness
+         * @return this {@link Builder}
+         */
+        public Builder setMaxStale(final Duration value) {
+            _maxStale = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total serialized size of the cached responses in
+         * bytes. Optional. Defaults to 64 MiB. Must be at least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxBytes(final Long value) {
+            _maxBytes = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum serialized size of a single cached response in
+         * bytes. Larger responses are not cached. Optional. Defaults to 8 MiB.
+         * Must be at least zero.
+         *
+         * @param value the maximum size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxEntryBytes(final Long value) {
+            _maxEntryBytes = value;
+            return this;
+        }
+
+        @NotNull
+        private MetricsFactory _metricsFactory;
+        @NotNull
+        private ObjectMapper _mapper;
+        @NotNull
+        private Clock _clock = Clock.systemUTC();
+        @NotNull
+        private Duration _bucket = Duration.ofMinutes(5);
+        @NotNull
+        private Duration _ttl = Duration.ofMinutes(1);
+        @NotNull
+        private Duration _maxStale = Duration.ofHours(1);
+        @NotNull
+        @Min(0)
+        private Long _maxBytes = 64L * 1024 * 1024;
+        @NotNull
+        @Min(0)
+        private Long _maxEntryBytes = 8L * 1024 * 1024;
+    }
+}
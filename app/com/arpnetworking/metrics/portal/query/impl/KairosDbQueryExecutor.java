@@ -16,6 +16,7 @@
 
 package com.arpnetworking.metrics.portal.query.impl;
 
+import com.arpnetworking.kairos.client.models.DataPoints;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
@@ -220,19 +221,21 @@ public class KairosDbQueryExecutor implements QueryExecutor {
                     .map(MetricsQueryResponse.QueryGroupBy::toInternal)
                     .collect(ImmutableList.toImmutableList());
 
-        final ImmutableList<TimeSeriesResult.DataPoint> values =
-                qr.getValues()
-                    .stream()
-                    .map(v -> new DefaultTimeSeriesResult.DataPoint.Builder()
-                            .setTime(v.getTime())
-                            .setValue(v.getValue()).build())
-                    .collect(ImmutableList.toImmutableList());
+        final DataPoints dataPoints = qr.getDataPoints();
+        final ImmutableList.Builder<TimeSeriesResult.DataPoint> values =
+                ImmutableList.builderWithExpectedSize(dataPoints.size());
+        for (int i = 0; i < dataPoints.size(); ++i) {
+            values.add(new DefaultTimeSeriesResult.DataPoint.Builder()
+                    .setTime(dataPoints.getTime(i))
+                    .setValue(dataPoints.getValue(i))
+                    .build());
+        }
 
         return new DefaultTimeSeriesResult.Result.Builder()
                 .setName(qr.getName())
                 .setTags(qr.getTags())
                 .setGroupBy(groupBys)
-                .setValues(values)
+                .setValues(values.build())
                 .build();
     }
 
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.pekko.util.ByteString;
+import play.http.HttpErrorHandler;
+import play.libs.F;
+import play.libs.streams.Accumulator;
+import play.mvc.BodyParser;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.mvc.Results;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Body parser which binds a JSON request body directly to a model with
+ * Jackson's streaming parser instead of first building a {@code JsonNode}
+ * tree and converting that, as {@link BodyParser.Json} followed by
+ * {@code treeToValue} does. The parsed value is available to the action
+ * through {@code request.body().as(type)}.
+ * <p>
+ * Concrete parsers bind the model type and are referenced from actions with
+ * {@link BodyParser.Of}.
+ *
+ * @param <T> the type of the model
+ * @author agent (agent at local)
+ */
+public abstract class TypedJsonBodyParser<T> extends BodyParser.BufferingBodyParser<T> {
+
+    /**
+     * The error message returned when the request does not declare a JSON body.
+     */
+    public static final String NO_JSON_FOUND_MESSAGE = "no JSON found in request; did you remember to set "
+            + "Content-Type: application/json in the HTTP header?";
+
+    @Override
+    public Accumulator<ByteString, F.Either<Result, T>> apply(final Http.RequestHeader request) {
+        final boolean isJson = request.contentType()
+                .map(contentType -> contentType.toLowerCase(Locale.ROOT))
+                .map(contentType -> contentType.equals("application/json") || contentType.equals("text/json"))
+                .orElse(false);
+        if (!isJson) {
+            return Accumulator.done(F.Either.Left(Results.badRequest(NO_JSON_FOUND_MESSAGE)));
+        }
+        return super.apply(request);
+    }
+
+    @Override
+    protected T parse(final Http.RequestHeader request, final ByteString bytes) throws IOException {
+        // Read the buffered chunks in place rather than copying them into a single array
+        try (InputStream stream = bytes.iterator().asInputStream()) {
+            return _reader.readValue(stream);
+        }
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param maxLength the maximum number of bytes to buffer
+     * @param errorHandler the handler used to render parse errors
+     * @param mapper the {@link ObjectMapper} used to bind the body
+     * @param type the type of the model
+     */
+    protected TypedJsonBodyParser(
+            final long maxLength,
+            final HttpErrorHandler errorHandler,
+            final ObjectMapper mapper,
+            final Class<T> type) {
+        super(maxLength, errorHandler, "Error decoding json body");
+        _reader = mapper.readerFor(type);
+    }
+
+    private final ObjectReader _reader;
+}
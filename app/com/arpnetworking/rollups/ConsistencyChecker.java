@@ -19,6 +19,7 @@ import com.arpnetworking.commons.builder.ThreadLocalBuilder;
 import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.kairos.client.KairosDbClient;
 import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.DataPoints;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
@@ -282,12 +283,15 @@ public final class ConsistencyChecker extends AbstractActorWithTimers {
             }
             final MetricsQueryResponse.QueryResult queryResult = query.getResults().get(0);
 
-            if (queryResult.getValues().isEmpty()) {
+            final DataPoints dataPoints = queryResult.getDataPoints();
+            if (dataPoints.isEmpty()) {
                 countsByMetric.put(queryResult.getName(), 0L);
-            } else if (queryResult.getValues().size() != 1) {
-                throw new MalformedSampleCountResponse("expected 0 or 1 values, got " + queryResult.getValues().size(), response);
+            } else if (dataPoints.size() != 1) {
+                throw new MalformedSampleCountResponse("expected 0 or 1 values, got " + dataPoints.size(), response);
+            } else if (dataPoints.isNumeric(0)) {
+                countsByMetric.put(queryResult.getName(), (long) dataPoints.getDouble(0));
             } else {
-                final Optional<Object> value = queryResult.getValues().get(0).getValue();
+                final Optional<Object> value = dataPoints.getValue(0);
                 if (!value.isPresent()) {
                     throw new MalformedSampleCountResponse("sample count has null value", response);
                 }
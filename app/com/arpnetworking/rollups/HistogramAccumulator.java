@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Merges data points into a single histogram, in the same way as the
+ * KairosDB {@code merge} aggregator.
+ * <p>
+ * Histogram values, as read from KairosDB, have their bins added together
+ * and numeric values are added as a single sample. The count, sum, minimum
+ * and maximum are kept as primitives; a histogram without a minimum or
+ * maximum does not contribute one, and once a histogram without a sum has
+ * been added the merged histogram has no sum or mean, since they would no
+ * longer cover all of its samples. Samples are binned by truncating them to
+ * the precision of the first value added; when histograms of different
+ * precisions are merged the result has the lowest of them.
+ *
+ * @author agent (agent at local)
+ */
+/* package private */ final class HistogramAccumulator {
+
+    /**
+     * Add a data point value.
+     *
+     * @param value a number or a histogram
+     * @throws IllegalArgumentException if the value is neither
+     */
+    void add(final Object value) {
+        if (value instanceof Number) {
+            add(((Number) value).doubleValue());
+        } else if (value instanceof Map) {
+            addHistogram((Map<?, ?>) value);
+        } else {
+            throw new IllegalArgumentException("Cannot roll up data point value: " + value);
+        }
+    }
+
+    /**
+     * Add a numeric data point value.
+     *
+     * @param value the value
+     */
+    void add(final double value) {
+        if (_precision == NO_PRECISION) {
+            _precision = DEFAULT_PRECISION;
+        }
+        addSample(value, 1);
+    }
+
+    long getCount() {
+        return _count;
+    }
+
+    /**
+     * Create the merged histogram in the form KairosDB accepts it.
+     *
+     * @return the histogram
+     */
+    ImmutableMap<String, Object> toHistogram() {
+        final Map<String, Long> bins = new TreeMap<>();
+        _bins.forEach((bin, count) -> bins.put(String.valueOf(bin), count));
+        final ImmutableMap.Builder<String, Object> histogram = ImmutableMap.<String, Object>builder()
+                .put("bins", bins);
+        if (_min <= _max) {
+            histogram.put("min", _min).put("max", _max);
+        }
+        if (_hasSum) {
+            histogram.put("sum", _sum).put("mean", _count == 0 ? 0.0 : _sum / _count);
+        }
+        return histogram
+                .put("precision", _precision == NO_PRECISION ? DEFAULT_PRECISION : _precision)
+                .build();
+    }
+
+    private void addHistogram(final Map<?, ?> histogram) {
+        final Object precisionValue = histogram.get("precision");
+        final int precision = precisionValue instanceof Number ? ((Number) precisionValue).intValue() : DEFAULT_PRECISION;
+        if (_precision == NO_PRECISION) {
+            _precision = precision;
+        } else if (precision < _precision) {
+            setPrecision(precision);
+        }
+        final Object bins = histogram.get("bins");
+        if (!(bins instanceof Map)) {
+            throw new IllegalArgumentException("Histogram has no bins: " + histogram);
+        }
+        long count = 0;
+        for (final Map.Entry<?, ?> bin : ((Map<?, ?>) bins).entrySet()) {
+            final long binCount = ((Number) bin.getValue()).longValue();
+            _bins.merge(truncate(toDouble(bin.getKey())), binCount, Long::sum);
+            count += binCount;
+        }
+        if (count == 0) {
+            return;
+        }
+        _count += count;
+        final Object sum = histogram.get("sum");
+        if (sum != null) {
+            _sum += toDouble(sum);
+        } else {
+            _hasSum = false;
+        }
+        final Object min = histogram.get("min");
+        if (min != null) {
+            _min = Math.min(_min, toDouble(min));
+        }
+        final Object max = histogram.get("max");
+        if (max != null) {
+            _max = Math.max(_max, toDouble(max));
+        }
+    }
+
+    private void addSample(final double value, final long count) {
+        _bins.merge(truncate(value), count, Long::sum);
+        _count += count;
+        _sum += value * count;
+        _min = Math.min(_min, value);
+        _max = Math.max(_max, value);
+    }
+
+    private void setPrecision(final int precision) {
+        _precision = precision;
+        final Map<Double, Long> bins = Maps.newHashMap();
+        _bins.forEach((bin, count) -> bins.merge(truncate(bin), count, Long::sum));
+        _bins = bins;
+    }
+
+    private double truncate(final double value) {
+        // Keep the sign, the exponent and the top precision bits of the mantissa
+        final long mask = 0xfff0000000000000L >> _precision;
+        return Double.longBitsToDouble(Double.doubleToRawLongBits(value) & mask);
+    }
+
+    private static double toDouble(final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble(String.valueOf(value));
+    }
+
+    private Map<Double, Long> _bins = Maps.newHashMap();
+    private long _count;
+    private double _sum;
+    private boolean _hasSum = true;
+    private double _min = Double.POSITIVE_INFINITY;
+    private double _max = Double.NEGATIVE_INFINITY;
+    private int _precision = NO_PRECISION;
+
+    // The precision KairosDB histograms are written with unless specified
+    private static final int DEFAULT_PRECISION = 7;
+    private static final int NO_PRECISION = -1;
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.arpnetworking.logback.annotations.Loggable;
+import com.google.common.collect.ImmutableList;
+import net.sf.oval.constraint.NotNull;
+
+/**
+ * Message containing the last datapoint timestamps of every metric and period in a
+ * {@link MetricBatch}.
+ *
+ * @author agent (agent at local)
+ */
+@Loggable
+public final class LastDataPointsBatchMessage extends FailableMessage {
+
+    public ImmutableList<LastDataPointsMessage> getLastDataPoints() {
+        return _lastDataPoints;
+    }
+
+    private LastDataPointsBatchMessage(final Builder builder) {
+        super(builder);
+        _lastDataPoints = builder._lastDataPoints;
+    }
+
+    private final ImmutableList<LastDataPointsMessage> _lastDataPoints;
+    private static final long serialVersionUID = 3319840225816437209L;
+
+    /**
+     * {@link LastDataPointsBatchMessage} builder static inner class.
+     */
+    public static final class Builder extends FailableMessage.Builder<Builder, LastDataPointsBatchMessage> {
+
+        /**
+         * Creates a Builder for a LastDataPointsBatchMessage.
+         */
+        public Builder() {
+            super(LastDataPointsBatchMessage::new);
+        }
+
+        /**
+         * Sets the {@code _lastDataPoints} and returns a reference to this Builder so that the methods can be chained together.
+         *
+         * @param value the {@code _lastDataPoints} to set
+         * @return a reference to this Builder
+         */
+        public Builder setLastDataPoints(final ImmutableList<LastDataPointsMessage> value) {
+            _lastDataPoints = value;
+            return this;
+        }
+
+        @Override
+        protected void reset() {
+            super.reset();
+            _lastDataPoints = ImmutableList.of();
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @NotNull
+        private ImmutableList<LastDataPointsMessage> _lastDataPoints = ImmutableList.of();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.Serializable;
+
+/**
+ * Message containing a batch of metric names to be rolled up, sent in response to a
+ * {@link MetricBatchFetch}.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricBatch implements Serializable {
+
+    /**
+     * Creates a MetricBatch instance.
+     *
+     * @param metricNames the metric names
+     */
+    public MetricBatch(final ImmutableList<String> metricNames) {
+        _metricNames = metricNames;
+    }
+
+    public ImmutableList<String> getMetricNames() {
+        return _metricNames;
+    }
+
+    private final ImmutableList<String> _metricNames;
+    private static final long serialVersionUID = -6011742373850224581L;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import java.io.Serializable;
+
+/**
+ * Message class used to cause the MetricsDiscovery actor to respond with a {@link MetricBatch}
+ * of metric names that are suitable to be rolled up.
+ *
+ * @author agent (agent at local)
+ */
+public final class MetricBatchFetch implements Serializable {
+
+    /**
+     * Creates a MetricBatchFetch instance.
+     *
+     * @param maxMetrics the maximum number of metric names to respond with
+     */
+    public MetricBatchFetch(final int maxMetrics) {
+        _maxMetrics = maxMetrics;
+    }
+
+    public int getMaxMetrics() {
+        return _maxMetrics;
+    }
+
+    private final int _maxMetrics;
+    private static final long serialVersionUID = 4213390781926127417L;
+}
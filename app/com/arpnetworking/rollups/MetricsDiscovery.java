@@ -15,12 +15,13 @@
  */
 package com.arpnetworking.rollups;
 
-import com.arpnetworking.kairos.client.KairosDbClient;
-import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.kairos.service.MetricNamesCatalog;
+import com.arpnetworking.kairos.service.MetricNamesIndex;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
 import jakarta.inject.Inject;
@@ -48,7 +49,9 @@ import java.util.stream.Stream;
  *
  * This actor maintains an internal set of metric names and acts as a source for downstream
  * actors that perform the actual rollups.  This is intended to be used as a singleton in the
- * cluster.
+ * cluster. Metric names are read through the shared {@link MetricNamesCatalog}, so
+ * a refresh triggered here also refreshes the names served by the proxy and a refresh
+ * already in flight is joined rather than repeated.
  *
  * @author Gilligan Markham (gmarkham at dropbox dot com)
  */
@@ -68,7 +71,7 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
                         RECORD_METRICS_MSG,
                         work -> _periodicMetrics.recordGauge("rollup/discovery/queue_size", _metricsSet.size())
                 )
-                .match(MetricNamesResponse.class, this::updateMetricsSet)
+                .match(MetricNamesIndex.class, this::updateMetricsSet)
                 .match(
                         Status.Failure.class,
                         failure -> LOGGER.warn("Failed to get metrics from Kairos", failure.cause()))
@@ -82,6 +85,22 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
                                 getSender().tell(new NoMoreMetrics(_refreshDeadline), getSelf());
                             }
                         })
+                .match(
+                        MetricBatchFetch.class,
+                        work -> {
+                            final ImmutableList.Builder<String> batch = ImmutableList.builder();
+                            int batchSize = 0;
+                            while (batchSize < work.getMaxMetrics() && _setIterator.hasNext()) {
+                                batch.add(_setIterator.next());
+                                _setIterator.remove();
+                                ++batchSize;
+                            }
+                            if (batchSize > 0) {
+                                getSender().tell(new MetricBatch(batch.build()), getSelf());
+                            } else {
+                                getSender().tell(new NoMoreMetrics(_refreshDeadline), getSelf());
+                            }
+                        })
                 .build();
     }
 
@@ -89,18 +108,18 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
      * Metrics discovery constructor.
      *
      * @param configuration play configuration object
-     * @param kairosDbClient client to use for fetching metric names
+     * @param metricNamesCatalog catalog to use for fetching metric names
      * @param periodicMetrics periodic metrics client
      */
     @Inject
     public MetricsDiscovery(
             final Config configuration,
-            final KairosDbClient kairosDbClient,
+            final MetricNamesCatalog metricNamesCatalog,
             final PeriodicMetrics periodicMetrics) {
         _fetchInterval = ConfigurationHelper.getFiniteDuration(configuration, "rollup.fetch.interval");
         _whiteList = toPredicate(configuration.getStringList("rollup.metric.whitelist"), true);
         _blackList = toPredicate(configuration.getStringList("rollup.metric.blacklist"), false);
-        _kairosDbClient = kairosDbClient;
+        _metricNamesCatalog = metricNamesCatalog;
         _periodicMetrics = periodicMetrics;
         _metricsSet = new LinkedHashSet<>();
         _setIterator = _metricsSet.iterator();
@@ -112,7 +131,7 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
     private void fetchMetricsForRollup() {
         final long startTime = System.nanoTime();
         Patterns.pipe(
-                _kairosDbClient.queryMetricNames()
+                _metricNamesCatalog.refresh()
                 .whenComplete((response, failure) -> {
                     // Record metrics
                     _periodicMetrics.recordCounter("rollup/discovery/metric_names/success", failure == null ? 1 : 0);
@@ -125,9 +144,9 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
                 .to(getSelf());
     }
 
-    private void updateMetricsSet(final MetricNamesResponse response) {
+    private void updateMetricsSet(final MetricNamesIndex index) {
         final Set<String> newMetricsSet = Sets.newLinkedHashSet();
-        filterMetricNames(response.getResults(), _whiteList, _blackList).forEach(newMetricsSet::add);
+        filterMetricNames(index.getNames(), _whiteList, _blackList).forEach(newMetricsSet::add);
         _periodicMetrics.recordCounter("rollup/discovery/discovered", newMetricsSet.size());
         _metricsSet.addAll(newMetricsSet);
         _setIterator = _metricsSet.iterator();
@@ -164,7 +183,7 @@ public final class MetricsDiscovery extends AbstractActorWithTimers {
     }
 
     private final FiniteDuration _fetchInterval;
-    private final KairosDbClient _kairosDbClient;
+    private final MetricNamesCatalog _metricNamesCatalog;
     private final PeriodicMetrics _periodicMetrics;
     private final Set<String> _metricsSet;
     private Iterator<String> _setIterator;
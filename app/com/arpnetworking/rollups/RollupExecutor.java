@@ -20,13 +20,13 @@ import com.arpnetworking.kairos.client.KairosDbClient;
 import com.arpnetworking.kairos.client.models.Aggregator;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
-import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
 import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.logback.annotations.Loggable;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.play.configuration.ConfigurationHelper;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -44,6 +44,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Actor that fetches RollupDefinitions from a RollupManager and performs the specified
@@ -96,7 +97,10 @@ public class RollupExecutor extends AbstractActorWithTimers {
     }
 
 
-    private CompletionStage<MetricsQueryResponse> performRollup(final RollupDefinition rollupDefinition) {
+    private CompletionStage<?> performRollup(final RollupDefinition rollupDefinition) {
+        if (_streamingRollupEngine != null) {
+            return _streamingRollupEngine.rollup(rollupDefinition);
+        }
         final MetricsQuery queryBuilder = buildQueryRollup(rollupDefinition, _ttlSeconds);
         return _kairosDbClient.queryMetrics(queryBuilder);
     }
@@ -171,19 +175,36 @@ public class RollupExecutor extends AbstractActorWithTimers {
      * @param configuration play configuration
      * @param rollupManager actor ref to RollupManager actor
      * @param kairosDbClient kairosdb client
+     * @param mapper object mapper used to decode query results
      * @param metrics periodic metrics instance
      */
     @Inject
     public RollupExecutor(
             final Config configuration,
             @Named("RollupManager") final ActorRef rollupManager,
-            final KairosDbClient kairosDbClient,
+            @Named("RollupKairosDbClient") final KairosDbClient kairosDbClient,
+            final ObjectMapper mapper,
             final PeriodicMetrics metrics) {
         _rollupManager = rollupManager;
         _kairosDbClient = kairosDbClient;
         _metrics = metrics;
         _pollInterval = ConfigurationHelper.getFiniteDuration(configuration, "rollup.executor.pollInterval");
         _ttlSeconds = ConfigurationHelper.getFiniteDuration(configuration, "rollup.ttl").toSeconds();
+        if (configuration.hasPath("rollup.executor.engine")
+                && configuration.getEnum(Engine.class, "rollup.executor.engine") == Engine.STREAMING) {
+            _streamingRollupEngine = new StreamingRollupEngine.Builder()
+                    .setKairosDbClient(kairosDbClient)
+                    .setMapper(mapper)
+                    .setMaxResponseSize(configuration.getBytes("kairosdb.maxResponseSize"))
+                    .setActorSystem(getContext().getSystem())
+                    .setPeriodicMetrics(metrics)
+                    .setTtlSeconds(_ttlSeconds)
+                    .setWriteBatchSize(configuration.getInt("rollup.executor.streaming.writeBatchSize"))
+                    .setWriteParallelism(configuration.getInt("rollup.executor.streaming.writeParallelism"))
+                    .build();
+        } else {
+            _streamingRollupEngine = null;
+        }
     }
 
     private final KairosDbClient _kairosDbClient;
@@ -194,6 +215,22 @@ public class RollupExecutor extends AbstractActorWithTimers {
     static final Object FETCH_ROLLUP = new Object();
     private static final Logger LOGGER = LoggerFactory.getLogger(RollupExecutor.class);
     private final long _ttlSeconds;
+    @Nullable
+    private final StreamingRollupEngine _streamingRollupEngine;
+
+    /**
+     * Where rollups are computed.
+     */
+    public enum Engine {
+        /**
+         * In KairosDB, with the {@code merge} and {@code save_as} aggregators.
+         */
+        KAIROSDB,
+        /**
+         * In the portal, with a {@link StreamingRollupEngine}.
+         */
+        STREAMING
+    }
 
     @Loggable
     static final class FinishRollupMessage extends FailableMessage {
@@ -18,7 +18,6 @@ package com.arpnetworking.rollups;
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
 import com.arpnetworking.kairos.client.KairosDbClient;
 import com.arpnetworking.kairos.client.models.Aggregator;
-import com.arpnetworking.kairos.client.models.DataPoint;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricTags;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
@@ -35,6 +34,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigUtil;
 import jakarta.inject.Inject;
@@ -43,20 +43,25 @@ import org.apache.pekko.actor.AbstractActorWithTimers;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.japi.pf.ReceiveBuilder;
 import org.apache.pekko.pattern.Patterns;
+import scala.concurrent.duration.Deadline;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
 import javax.annotation.Nullable;
 
 /**
@@ -78,10 +83,16 @@ public class RollupGenerator extends AbstractActorWithTimers {
      *
      *     1. Retrieve the tag names for this metric (TagNamesMessage)
      *     2. For each period size:
-     *         2a. Query for the last data point given the maximum backfill and set of tags (LastDataPointsMessage)
+     *         2a. Find the last data point given the maximum backfill and set of tags (LastDataPointsMessage); the
+     *         last rolled up data point is read from the {@link RollupWatermarkStore} when it has one, and KairosDB
+     *         is only queried for what the store does not know
      *         2b. If this datapoint is in the past, generate a backfill job for the period
      *         furthest in the past, and enqueue it by sending to the RollupManager. (FinishRollupMessage)
      *
+     * When rollup.generator.batchSize is greater than one the generator instead requests a batch of metric names
+     * from {@link MetricsDiscovery} (MetricBatch) and, for the whole batch, issues one tags query and one last data
+     * point query covering every period (LastDataPointsBatchMessage) before enqueueing the jobs of every metric.
+     *
      * In particular [2] leaves open the possibility of chunking rollups by tags as a future
      * optimization in order to break down the unit of work. At the moment we forward all tags
      * within a LastDataPointsMessage, meaning that rollups operate on a metric as a whole.
@@ -92,10 +103,13 @@ public class RollupGenerator extends AbstractActorWithTimers {
         return new ReceiveBuilder()
                 .matchEquals(FETCH_METRIC, this::requestMetricsFromDiscovery)
                 .match(String.class, this::fetchMetricTags)
+                .match(MetricBatch.class, this::fetchBatchLastDataPoints)
+                .match(LastDataPointsBatchMessage.class, this::handleLastDataPointsBatchMessage)
                 .match(TagNamesMessage.class, this::handleTagNamesMessage)
                 .match(LastDataPointsMessage.class, this::handleLastDataPointsMessage)
                 .match(FinishRollupMessage.class, this::handleFinishRollupMessage)
                 .match(NoMoreMetrics.class, this::handleNoMoreMetricsMessage)
+                .match(RollupManager.QueueFull.class, this::handleQueueFullMessage)
                 .build();
     }
 
@@ -106,6 +120,7 @@ public class RollupGenerator extends AbstractActorWithTimers {
      * @param metricsDiscovery actor ref to metrics discovery actor
      * @param rollupManager actor ref for rollup manager actor
      * @param kairosDbClient kairosdb client
+     * @param watermarkStore actor ref for the rollup watermark store
      * @param clock clock to use for time calculations
      * @param periodicMetrics periodic metrics instance
      * @param metricsFactory metrics factory instance for instrumentation
@@ -117,7 +132,8 @@ public class RollupGenerator extends AbstractActorWithTimers {
             final Config configuration,
             @Named("RollupMetricsDiscovery") final ActorRef metricsDiscovery,
             @Named("RollupManager") final ActorRef rollupManager,
-            final KairosDbClient kairosDbClient,
+            @Named("RollupKairosDbClient") final KairosDbClient kairosDbClient,
+            @Named("RollupWatermarkStore") final ActorRef watermarkStore,
             final Clock clock,
             final PeriodicMetrics periodicMetrics,
             final MetricsFactory metricsFactory,
@@ -127,11 +143,17 @@ public class RollupGenerator extends AbstractActorWithTimers {
         _metricsDiscovery = metricsDiscovery;
         _rollupManager = rollupManager;
         _kairosDbClient = kairosDbClient;
+        _watermarkStore = watermarkStore;
         _clock = clock;
         _periodicMetrics = periodicMetrics;
         _metricsFactory = metricsFactory;
         _fetchBackoff = ConfigurationHelper.getFiniteDuration(configuration, "rollup.fetch.backoff");
+        _batchSize = configuration.hasPath("rollup.generator.batchSize") ? configuration.getInt("rollup.generator.batchSize") : 1;
         _tagger = tagger;
+        _watermarksEnabled = configuration.getBoolean("rollup.watermarks.enabled");
+        _watermarkTimeout = _watermarksEnabled
+                ? ConfigurationHelper.getJavaDuration(configuration, "rollup.watermarks.timeout")
+                : Duration.ZERO;
 
         final ImmutableMap.Builder<RollupPeriod, Integer> maxBackFillByPeriod = ImmutableMap.builder();
         for (RollupPeriod period : RollupPeriod.values()) {
@@ -151,23 +173,23 @@ public class RollupGenerator extends AbstractActorWithTimers {
     }
 
     private void requestMetricsFromDiscovery(final Object fetch) {
+        if (_queueFullDeadline.hasTimeLeft()) {
+            // The rollup manager is full so hold off generating more work
+            timers().startSingleTimer("sleepTimer", FETCH_METRIC, _queueFullDeadline.timeLeft());
+            return;
+        }
         _periodicMetrics.recordCounter("rollup/generator/metric_names/requested", 1);
-        _metricsDiscovery.tell(MetricFetch.getInstance(), getSelf());
+        if (_batchSize > 1) {
+            _metricsDiscovery.tell(new MetricBatchFetch(_batchSize), getSelf());
+        } else {
+            _metricsDiscovery.tell(MetricFetch.getInstance(), getSelf());
+        }
     }
 
     private void fetchMetricTags(final String metricName) {
         _periodicMetrics.recordCounter("rollup/generator/metric_names_message/received", 1);
         final long startTime = System.nanoTime();
-        final long now = System.currentTimeMillis();
-        final long beginningOfPeriod = now - (now % KAIROSDB_PERIOD_MILLIS);
-        final long startPeriod = beginningOfPeriod - (_tagLookbackPeriods * KAIROSDB_PERIOD_MILLIS);
-        Patterns.pipe(_kairosDbClient.queryMetricTags(
-                new TagsQuery.Builder()
-                        .setStartTime(Instant.ofEpochMilli(startPeriod))
-                        .setMetrics(ImmutableList.of(
-                                ThreadLocalBuilder.build(MetricTags.Builder.class, builder -> builder.setName(metricName))
-                        ))
-                        .build()).handle((response, failure) -> {
+        Patterns.pipe(_kairosDbClient.queryMetricTags(buildTagsQuery(ImmutableList.of(metricName))).handle((response, failure) -> {
                     final String baseMetricName = "rollup/generator/tag_names";
                     _periodicMetrics.recordCounter(baseMetricName + "/success", failure == null ? 1 : 0);
                     _periodicMetrics.recordTimer(
@@ -220,9 +242,19 @@ public class RollupGenerator extends AbstractActorWithTimers {
             if (backfillPeriods > 0) {
                 final String sourceMetricName = getSourceMetricName(metricName, period);
                 final String rollupMetricName = getDestinationMetricName(metricName, period);
+                // Only rollup series have watermarks
+                final ImmutableList<String> watermarkNames = sourceMetricName.equals(metricName)
+                        ? ImmutableList.of(rollupMetricName)
+                        : ImmutableList.of(sourceMetricName, rollupMetricName);
                 Patterns.pipe(
-                    _kairosDbClient.queryMetrics(buildLastDataPointQuery(sourceMetricName, rollupMetricName, period, backfillPeriods))
-                        .handle((response, failure) -> {
+                    getWatermarks(watermarkNames)
+                        .thenCompose(watermarks -> getLastDataPoints(
+                                sourceMetricName,
+                                rollupMetricName,
+                                period,
+                                backfillPeriods,
+                                watermarks))
+                        .handle((lastDataPoints, failure) -> {
                             final String baseMetricName = "rollup/generator/last_data_point_"
                                     + period.name().toLowerCase(Locale.getDefault());
                             _periodicMetrics.recordCounter(baseMetricName + "/success", failure == null ? 1 : 0);
@@ -237,8 +269,8 @@ public class RollupGenerator extends AbstractActorWithTimers {
                                     rollupMetricName,
                                     period,
                                     message.getTags(),
-                                    response,
-                                    failure
+                                    lastDataPoints,
+                                    failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure
                             ));
                         }),
                     getContext().dispatcher()
@@ -291,57 +323,7 @@ public class RollupGenerator extends AbstractActorWithTimers {
                     ),
                     ActorRef.noSender());
         } else {
-            // Example:
-            //
-            // Consider a minutely metric that has just hit 00:00 UTC 3 Jan
-            //
-            //                 22:00         23:00         00:00      startOfLastEligiblePeriod
-            //                   |             |             |
-            // minutely  x x x x x x x x x x x x x x x x x x x                  N/A
-            //   hourly          x             x             |        23:00 2 Jan (1 period  ago)
-            //    daily          |             |             |        00:00 1 Jan (2 periods ago)
-            //
-            // Hourly pulls from the minutely, and sees that the most recently closed period
-            // is before the most recent datapoint in minutely, and so we can roll up.
-            //
-            // Daily pulls from hourly, but the latest hourly datapoint is at 23:00 < 00:00, the end
-            // of the most recent period. Therefore we cannot roll-up just yet.
-            //
-            // Note that this is in a situation where everything behaves as expected. Due to issues with partial success during
-            // the save-as operation, a rollup may see an (incorrect) partial result which this code would then interpret as an OK
-            // to execute the next larger rollup, thus propagating the error.
-
-            final SortedSet<Instant> startTimes = getRollupTimes(
-                    message.getRollupLastDataPointTime(),
-                    message.getSourceLastDataPointTime(),
-                    period
-            );
-
-            if (!startTimes.isEmpty()) {
-                try (Metrics metrics = _metricsFactory.create()) {
-                    metrics.addAnnotations(_tagger.getTags(message.getSourceMetricName()));
-
-                    final String periodName = period.name().toLowerCase(Locale.getDefault());
-                    final Duration backfillAge = Duration.between(startTimes.first(), Instant.now());
-                    metrics.setGauge("rollup/generator/backfill_age/" + periodName, backfillAge.toMillis());
-                }
-            }
-
-            final RollupDefinition.Builder rollupDefBuilder = new RollupDefinition.Builder()
-                    .setSourceMetricName(message.getSourceMetricName())
-                    .setDestinationMetricName(rollupMetricName)
-                    .setPeriod(period)
-                    .setAllMetricTags(message.getTags());
-
-            for (final Instant startTime : startTimes) {
-                final RollupDefinition defn = rollupDefBuilder.setStartTime(startTime).build();
-                _rollupManager.tell(defn, self());
-                LOGGER.debug()
-                        .setMessage("sent task to _rollupManager")
-                        .addData("task", defn)
-                        .log();
-                _periodicMetrics.recordCounter("rollup/generator/task_sent", 1);
-            }
+            sendRollupDefinitions(message);
 
             getSelf().tell(
                     ThreadLocalBuilder.build(FinishRollupMessage.Builder.class, b -> b
@@ -353,6 +335,203 @@ public class RollupGenerator extends AbstractActorWithTimers {
         }
     }
 
+    private void sendRollupDefinitions(final LastDataPointsMessage message) {
+        final String rollupMetricName = message.getRollupMetricName();
+        final RollupPeriod period = message.getPeriod();
+
+        // Example:
+        //
+        // Consider a minutely metric that has just hit 00:00 UTC 3 Jan
+        //
+        //                 22:00         23:00         00:00      startOfLastEligiblePeriod
+        //                   |             |             |
+        // minutely  x x x x x x x x x x x x x x x x x x x                  N/A
+        //   hourly          x             x             |        23:00 2 Jan (1 period  ago)
+        //    daily          |             |             |        00:00 1 Jan (2 periods ago)
+        //
+        // Hourly pulls from the minutely, and sees that the most recently closed period
+        // is before the most recent datapoint in minutely, and so we can roll up.
+        //
+        // Daily pulls from hourly, but the latest hourly datapoint is at 23:00 < 00:00, the end
+        // of the most recent period. Therefore we cannot roll-up just yet.
+        //
+        // Note that this is in a situation where everything behaves as expected. Due to issues with partial success during
+        // the save-as operation, a rollup may see an (incorrect) partial result which this code would then interpret as an OK
+        // to execute the next larger rollup, thus propagating the error.
+
+        final SortedSet<Instant> startTimes = getRollupTimes(
+                message.getRollupLastDataPointTime(),
+                message.getSourceLastDataPointTime(),
+                period
+        );
+
+        if (!startTimes.isEmpty()) {
+            try (Metrics metrics = _metricsFactory.create()) {
+                metrics.addAnnotations(_tagger.getTags(message.getSourceMetricName()));
+
+                final String periodName = period.name().toLowerCase(Locale.getDefault());
+                final Duration backfillAge = Duration.between(startTimes.first(), Instant.now());
+                metrics.setGauge("rollup/generator/backfill_age/" + periodName, backfillAge.toMillis());
+            }
+        }
+
+        final RollupDefinition.Builder rollupDefBuilder = new RollupDefinition.Builder()
+                .setSourceMetricName(message.getSourceMetricName())
+                .setDestinationMetricName(rollupMetricName)
+                .setPeriod(period)
+                .setAllMetricTags(message.getTags());
+
+        for (final Instant startTime : startTimes) {
+            final RollupDefinition defn = rollupDefBuilder.setStartTime(startTime).build();
+            _rollupManager.tell(defn, self());
+            LOGGER.debug()
+                    .setMessage("sent task to _rollupManager")
+                    .addData("task", defn)
+                    .log();
+            _periodicMetrics.recordCounter("rollup/generator/task_sent", 1);
+        }
+    }
+
+    private void fetchBatchLastDataPoints(final MetricBatch batch) {
+        _periodicMetrics.recordCounter("rollup/generator/metric_batch/received", 1);
+        _periodicMetrics.recordGauge("rollup/generator/metric_batch/size", batch.getMetricNames().size());
+        final long startTime = System.nanoTime();
+        Patterns.pipe(
+                _kairosDbClient.queryMetricTags(buildTagsQuery(batch.getMetricNames()))
+                        .thenCompose(response -> {
+                            final ImmutableMap<String, ImmutableMultimap<String, String>> tagsByMetric = response.getQueries()
+                                    .stream()
+                                    .flatMap(query -> query.getResults().stream().limit(1))
+                                    .collect(ImmutableMap.toImmutableMap(
+                                            MetricsQueryResponse.QueryResult::getName,
+                                            MetricsQueryResponse.QueryResult::getTags,
+                                            (first, second) -> first));
+                            // Metrics without data in the tag lookback are skipped, as they are when fetched one at a time
+                            _periodicMetrics.recordCounter(
+                                    "rollup/generator/metric_batch/no_tags",
+                                    batch.getMetricNames().size() - tagsByMetric.size());
+                            return getBatchLastDataPoints(tagsByMetric);
+                        })
+                        .handle((lastDataPoints, failure) -> {
+                            final String baseMetricName = "rollup/generator/metric_batch";
+                            _periodicMetrics.recordCounter(baseMetricName + "/success", failure == null ? 1 : 0);
+                            _periodicMetrics.recordTimer(
+                                    baseMetricName + "/latency",
+                                    System.nanoTime() - startTime,
+                                    Optional.of(TimeUnit.NANOSECONDS));
+                            if (failure != null) {
+                                return ThreadLocalBuilder.build(LastDataPointsBatchMessage.Builder.class, b -> b
+                                        .setFailure(failure instanceof CompletionException && failure.getCause() != null
+                                                ? failure.getCause()
+                                                : failure));
+                            }
+                            return ThreadLocalBuilder.build(LastDataPointsBatchMessage.Builder.class, b -> b
+                                    .setLastDataPoints(lastDataPoints));
+                        }),
+                getContext().dispatcher()
+        ).to(getSelf());
+    }
+
+    private CompletionStage<ImmutableList<LastDataPointsMessage>> getBatchLastDataPoints(
+            final ImmutableMap<String, ImmutableMultimap<String, String>> tagsByMetric
+    ) {
+        final ImmutableList<RollupPeriod> periods = Arrays.stream(RollupPeriod.values())
+                .filter(period -> _maxBackFillByPeriod.getOrDefault(period, 0) > 0)
+                .collect(ImmutableList.toImmutableList());
+        if (tagsByMetric.isEmpty() || periods.isEmpty()) {
+            return CompletableFuture.completedFuture(ImmutableList.of());
+        }
+
+        // Only rollup series have watermarks
+        final Set<String> watermarkNames = Sets.newLinkedHashSet();
+        for (final String metricName : tagsByMetric.keySet()) {
+            for (final RollupPeriod period : periods) {
+                final String sourceMetricName = getSourceMetricName(metricName, period);
+                if (!sourceMetricName.equals(metricName)) {
+                    watermarkNames.add(sourceMetricName);
+                }
+                watermarkNames.add(getDestinationMetricName(metricName, period));
+            }
+        }
+
+        return getWatermarks(ImmutableList.copyOf(watermarkNames)).thenCompose(watermarks -> {
+            // Query every series without a watermark, and the source of every rollup series
+            // with one unless the source has a watermark too
+            final Set<String> queryNames = Sets.newLinkedHashSet();
+            Instant startTime = Instant.MAX;
+            Instant endTime = Instant.MIN;
+            for (final RollupPeriod period : periods) {
+                final Instant periodEndTime = period.recentEndTime(_clock.instant());
+                final Instant periodStartTime = periodEndTime.minus(period.periodCountToDuration(_maxBackFillByPeriod.get(period)));
+                startTime = periodStartTime.isBefore(startTime) ? periodStartTime : startTime;
+                endTime = periodEndTime.isAfter(endTime) ? periodEndTime : endTime;
+                for (final String metricName : tagsByMetric.keySet()) {
+                    final String sourceMetricName = getSourceMetricName(metricName, period);
+                    final String rollupMetricName = getDestinationMetricName(metricName, period);
+                    if (!watermarks.containsKey(rollupMetricName)) {
+                        queryNames.add(sourceMetricName);
+                        queryNames.add(rollupMetricName);
+                    } else if (!watermarks.containsKey(sourceMetricName)) {
+                        queryNames.add(sourceMetricName);
+                    }
+                }
+            }
+            final CompletionStage<ImmutableMap<String, Optional<Instant>>> queried = queryNames.isEmpty()
+                    ? CompletableFuture.completedFuture(ImmutableMap.of())
+                    : queryLastDataPoints(ImmutableList.copyOf(queryNames), startTime, endTime);
+            return queried.thenApply(lastDataPoints -> {
+                final ImmutableList.Builder<LastDataPointsMessage> messages = ImmutableList.builder();
+                for (final Map.Entry<String, ImmutableMultimap<String, String>> entry : tagsByMetric.entrySet()) {
+                    for (final RollupPeriod period : periods) {
+                        final String sourceMetricName = getSourceMetricName(entry.getKey(), period);
+                        final String rollupMetricName = getDestinationMetricName(entry.getKey(), period);
+                        final Optional<Instant> sourceTime = Optional.ofNullable(watermarks.get(sourceMetricName))
+                                .or(() -> lastDataPoints.getOrDefault(sourceMetricName, Optional.empty()));
+                        final Optional<Instant> rollupTime = Optional.ofNullable(watermarks.get(rollupMetricName))
+                                .or(() -> lastDataPoints.getOrDefault(rollupMetricName, Optional.empty()));
+                        if (_watermarksEnabled && !watermarks.containsKey(rollupMetricName)) {
+                            rollupTime.ifPresent(time -> RollupWatermarkStore.advance(_watermarkStore, rollupMetricName, time));
+                        }
+                        messages.add(ThreadLocalBuilder.build(LastDataPointsMessage.Builder.class, b -> b
+                                .setSourceMetricName(sourceMetricName)
+                                .setRollupMetricName(rollupMetricName)
+                                .setPeriod(period)
+                                .setTags(entry.getValue())
+                                .setSourceLastDataPointTime(sourceTime.orElse(null))
+                                .setRollupLastDataPointTime(rollupTime.orElse(null))));
+                    }
+                }
+                return messages.build();
+            });
+        });
+    }
+
+    private void handleLastDataPointsBatchMessage(final LastDataPointsBatchMessage message) {
+        _periodicMetrics.recordCounter("rollup/generator/last_data_points_batch_message/received", 1);
+        _periodicMetrics.recordCounter("rollup/generator/last_data_points_batch_message/success", message.isFailure() ? 0 : 1);
+        if (message.isFailure()) {
+            LOGGER.warn()
+                    .setMessage("Failed to get last data points for metric batch.")
+                    .setThrowable(message.getFailure().get())
+                    .log();
+        } else {
+            message.getLastDataPoints().forEach(this::sendRollupDefinitions);
+        }
+        getSelf().tell(FETCH_METRIC, ActorRef.noSender());
+    }
+
+    private TagsQuery buildTagsQuery(final ImmutableList<String> metricNames) {
+        final long now = System.currentTimeMillis();
+        final long beginningOfPeriod = now - (now % KAIROSDB_PERIOD_MILLIS);
+        final long startPeriod = beginningOfPeriod - (_tagLookbackPeriods * KAIROSDB_PERIOD_MILLIS);
+        return new TagsQuery.Builder()
+                .setStartTime(Instant.ofEpochMilli(startPeriod))
+                .setMetrics(metricNames.stream()
+                        .map(metricName -> ThreadLocalBuilder.build(MetricTags.Builder.class, builder -> builder.setName(metricName)))
+                        .collect(ImmutableList.toImmutableList()))
+                .build();
+    }
+
     /**
      *
      * @param lastRollupDataPointTime the timestamp of the last rolled-up datapoint , so we know what's already done
@@ -414,78 +593,139 @@ public class RollupGenerator extends AbstractActorWithTimers {
         timers().startSingleTimer("sleepTimer", FETCH_METRIC, _fetchBackoff);
     }
 
+    private void handleQueueFullMessage(final RollupManager.QueueFull message) {
+        _periodicMetrics.recordCounter("rollup/generator/queue_full/received", 1);
+        _queueFullDeadline = _fetchBackoff.fromNow();
+    }
+
+    private CompletionStage<ImmutableMap<String, Instant>> getWatermarks(final ImmutableList<String> metricNames) {
+        if (!_watermarksEnabled) {
+            return CompletableFuture.completedFuture(ImmutableMap.of());
+        }
+        return RollupWatermarkStore.get(_watermarkStore, metricNames, _watermarkTimeout)
+                .exceptionally(failure -> {
+                    LOGGER.warn()
+                            .setMessage("Failed to get rollup watermarks, falling back to KairosDB.")
+                            .addData("metricNames", metricNames)
+                            .setThrowable(failure)
+                            .log();
+                    return ImmutableMap.of();
+                });
+    }
+
+    private CompletionStage<ImmutableMap<String, Optional<Instant>>> getLastDataPoints(
+            final String sourceMetricName,
+            final String rollupMetricName,
+            final RollupPeriod period,
+            final int backfillPeriods,
+            final ImmutableMap<String, Instant> watermarks
+    ) {
+        final Instant endTime = period.recentEndTime(_clock.instant());
+        final Instant backfillStartTime = endTime.minus(period.periodCountToDuration(backfillPeriods));
+        final String baseMetricName = "rollup/generator/last_data_point_" + period.name().toLowerCase(Locale.getDefault());
+        final Instant rollupWatermark = watermarks.get(rollupMetricName);
+        _periodicMetrics.recordCounter(baseMetricName + "/from_watermark", rollupWatermark != null ? 1 : 0);
+        if (rollupWatermark == null) {
+            // Cold start: query both series and seed the watermark with the last rolled up data point
+            return queryLastDataPoints(ImmutableList.of(sourceMetricName, rollupMetricName), backfillStartTime, endTime)
+                    .thenApply(lastDataPoints -> {
+                        if (_watermarksEnabled) {
+                            lastDataPoints.get(rollupMetricName).ifPresent(
+                                    time -> RollupWatermarkStore.advance(_watermarkStore, rollupMetricName, time));
+                        }
+                        return lastDataPoints;
+                    });
+        }
+        final Instant sourceWatermark = watermarks.get(sourceMetricName);
+        if (sourceWatermark != null) {
+            return CompletableFuture.completedFuture(ImmutableMap.of(
+                    sourceMetricName, Optional.of(sourceWatermark),
+                    rollupMetricName, Optional.of(rollupWatermark)));
+        }
+        // Only the source needs querying and only for data after the watermark
+        final Instant startTime = rollupWatermark.isAfter(backfillStartTime) ? rollupWatermark : backfillStartTime;
+        return queryLastDataPoints(ImmutableList.of(sourceMetricName), startTime, endTime)
+                .thenApply(lastDataPoints -> ImmutableMap.of(
+                        sourceMetricName, lastDataPoints.get(sourceMetricName),
+                        rollupMetricName, Optional.of(rollupWatermark)));
+    }
+
+    private CompletionStage<ImmutableMap<String, Optional<Instant>>> queryLastDataPoints(
+            final ImmutableList<String> metricNames,
+            final Instant startTime,
+            final Instant endTime
+    ) {
+        return _kairosDbClient.queryMetrics(buildLastDataPointQuery(metricNames, startTime, endTime))
+                .thenApply(response -> {
+                    final ImmutableMap<String, Optional<Instant>> queryResults =
+                            response.getQueries()
+                                    .stream()
+                                    .flatMap(query -> query.getResults().stream())
+                                    .collect(ImmutableMap.toImmutableMap(
+                                            MetricsQueryResponse.QueryResult::getName,
+                                            // The query limits to 1 data point so it's either the last or empty.
+                                            queryResult -> queryResult.getDataPoints().isEmpty()
+                                                    ? Optional.<Instant>empty()
+                                                    : Optional.of(queryResult.getDataPoints().getTime(0))
+                                    ));
+
+                    // Query results should *only* contain the queried metrics.
+                    if (queryResults.size() != metricNames.size() || !queryResults.keySet().containsAll(metricNames)) {
+                        throw new CompletionException(
+                                new UnexpectedQueryResponseException("Unexpected or missing metric names", response));
+                    }
+                    return queryResults;
+                });
+    }
+
     private LastDataPointsMessage.Builder buildLastDataPointResponse(
             final LastDataPointsMessage.Builder builder,
             final String sourceMetricName,
             final String rollupMetricName,
             final RollupPeriod period,
             final ImmutableMultimap<String, String> tags,
-            final MetricsQueryResponse response,
+            @Nullable final ImmutableMap<String, Optional<Instant>> lastDataPoints,
             @Nullable final Throwable failure) {
         builder.setSourceMetricName(sourceMetricName)
                 .setRollupMetricName(rollupMetricName)
                 .setPeriod(period)
                 .setTags(tags);
 
-        if (failure != null) {
+        if (failure != null || lastDataPoints == null) {
             return builder.setFailure(failure);
         }
-        final Map<String, Optional<DataPoint>> queryResults =
-                response.getQueries()
-                        .stream()
-                        .flatMap(query -> query.getResults().stream())
-                        .collect(ImmutableMap.toImmutableMap(
-                                MetricsQueryResponse.QueryResult::getName,
-                                // The query limits to 1 data point so it's either the last or empty.
-                                queryResult -> queryResult.getValues().stream().findFirst()
-                        ));
-
-        // Query results should *only* contain the source and destination metric.
-        if (queryResults.size() != 2 || !queryResults.containsKey(sourceMetricName) || !queryResults.containsKey(rollupMetricName)) {
-            return builder.setFailure(new UnexpectedQueryResponseException("Unexpected or missing metric names", response));
-        }
 
         // Set source time, if any.
-        queryResults.get(sourceMetricName)
-                .map(DataPoint::getTime)
+        lastDataPoints.get(sourceMetricName)
                 .ifPresent(builder::setSourceLastDataPointTime);
 
         // Set rollup time, if any.
-        queryResults.get(rollupMetricName)
-                .map(DataPoint::getTime)
+        lastDataPoints.get(rollupMetricName)
                 .ifPresent(builder::setRollupLastDataPointTime);
 
         return builder;
     }
 
     private MetricsQuery buildLastDataPointQuery(
-            final String sourceMetricName,
-            final String rollupMetricName,
-            final RollupPeriod period,
-            final int backfillPeriods
+            final ImmutableList<String> metricNames,
+            final Instant startTime,
+            final Instant endTime
     ) {
-        final Consumer<Metric.Builder> setCommonFields = builder -> builder
-                .setAggregators(ImmutableList.of(
-                        new Aggregator.Builder()
-                                .setName("count")
-                                .build())
-                )
-                .setLimit(1)
-                .setOrder(Metric.Order.DESC);
-
         return new MetricsQuery.Builder()
-                        .setStartTime(period.recentEndTime(_clock.instant()).minus(period.periodCountToDuration(backfillPeriods)))
-                        .setEndTime(period.recentEndTime(_clock.instant()))
-                        .setMetrics(ImmutableList.of(
-                             ThreadLocalBuilder.build(Metric.Builder.class, b -> {
-                                 setCommonFields.accept(b);
-                                 b.setName(sourceMetricName);
-                             }),
-                             ThreadLocalBuilder.build(Metric.Builder.class, b -> {
-                                 setCommonFields.accept(b);
-                                 b.setName(rollupMetricName);
-                             })
-                        )).build();
+                        .setStartTime(startTime)
+                        .setEndTime(endTime)
+                        .setMetrics(metricNames.stream()
+                                .map(metricName -> ThreadLocalBuilder.build(Metric.Builder.class, b -> b
+                                        .setName(metricName)
+                                        .setAggregators(ImmutableList.of(
+                                                new Aggregator.Builder()
+                                                        .setName("count")
+                                                        .build())
+                                        )
+                                        .setLimit(1)
+                                        .setOrder(Metric.Order.DESC)))
+                                .collect(ImmutableList.toImmutableList()))
+                        .build();
     }
 
     /**
@@ -512,14 +752,19 @@ public class RollupGenerator extends AbstractActorWithTimers {
     private final ActorRef _metricsDiscovery;
     private final ActorRef _rollupManager;
     private final KairosDbClient _kairosDbClient;
+    private final ActorRef _watermarkStore;
+    private final boolean _watermarksEnabled;
+    private final Duration _watermarkTimeout;
     private final Map<RollupPeriod, Integer> _maxBackFillByPeriod;
     private final FiniteDuration _fetchBackoff;
+    private final int _batchSize;
     private final int _tagLookbackPeriods;
     private final Clock _clock;
     private final PeriodicMetrics _periodicMetrics;
     private final MetricsFactory _metricsFactory;
     private final Tagger _tagger;
     private List<RollupPeriod> _periodsInFlight = Collections.emptyList();
+    private Deadline _queueFullDeadline = Deadline.now();
 
     static final Object FETCH_METRIC = new Object();
     private static final Logger LOGGER = LoggerFactory.getLogger(RollupGenerator.class);
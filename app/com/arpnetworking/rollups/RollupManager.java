@@ -15,43 +15,84 @@
  */
 package com.arpnetworking.rollups;
 
+import com.arpnetworking.commons.builder.OvalBuilder;
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.logback.annotations.Loggable;
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.notcommons.pekko.PekkoJsonSerializable;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.typesafe.config.Config;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import org.apache.pekko.actor.AbstractActorWithTimers;
+import net.sf.oval.constraint.NotEmpty;
+import net.sf.oval.constraint.NotNull;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.Props;
 import org.apache.pekko.pattern.Patterns;
+import org.apache.pekko.persistence.AbstractPersistentActorWithTimers;
+import org.apache.pekko.persistence.DeleteMessagesFailure;
+import org.apache.pekko.persistence.DeleteMessagesSuccess;
+import org.apache.pekko.persistence.RecoveryCompleted;
+import org.apache.pekko.persistence.SaveSnapshotFailure;
+import org.apache.pekko.persistence.SaveSnapshotSuccess;
+import org.apache.pekko.persistence.SnapshotOffer;
 
 import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
 /**
  * Actor for holding and dispatching rollup definitions.  This allows for different mechanisms, e.g. automated
  * rollups and manual backfills, to be ordered, staged and de-duplicated before being acted upon.
+ * <p>
+ * The manager runs as a cluster singleton and executors on every node pull work from it, so the queue is shared
+ * by the whole cluster. Queued definitions are journaled and periodically snapshotted, so work survives a restart
+ * or a move of the singleton to another node. Only the key of each definition is persisted; the tags of its source
+ * metric, which every definition of the metric shares, are persisted once per change and once per snapshot. A
+ * definition handed to an executor is leased to it until the executor reports it finished; if that does not happen
+ * within the lease timeout the definition is queued again. Submitted definitions are partitioned by the
+ * {@link RollupPartitioner} before they are queued, and the queue is bounded by the number of jobs that would be
+ * queued or leased; a submission which would exceed the bound is answered with {@link QueueFull}.
  *
  * @author Gilligan Markham (gmarkham at dropbox dot com)
  */
-public final class RollupManager extends AbstractActorWithTimers {
+public final class RollupManager extends AbstractPersistentActorWithTimers {
     private final PeriodicMetrics _periodicMetrics;
     private final MetricsFactory _metricsFactory;
-    private TreeSet<RollupDefinition> _rollupDefinitions;
+    private final TreeSet<QueuedRollup> _rollupDefinitions;
+    private final Map<QueuedRollup, Instant> _leases = Maps.newHashMap();
+    private final Map<String, ImmutableMultimap<String, String>> _metricTags = Maps.newHashMap();
+    // Queued and leased partitions, and partitions given up on, by their unpartitioned job
+    private final Map<QueuedRollup, Integer> _pendingPartitions = Maps.newHashMap();
+    private final Set<QueuedRollup> _failedPeriods = Sets.newHashSet();
     private RollupPartitioner _partitioner;
     private final ActorRef _consistencyChecker;
+    private final ActorRef _watermarkStore;
     private final double _consistencyCheckFractionOfWrites;
-    private Duration _consistencyCheckDelay = Duration.ofSeconds(30);
+    private final int _maxQueueSize;
+    private final Duration _leaseTimeout;
+    private final int _snapshotEvery;
+    private int _eventsSinceSnapshot;
+    private final Duration _consistencyCheckDelay;
 
     private static final Object RECORD_METRICS_MSG = new Object();
     private static final String METRICS_TIMER = "metrics_timer";
@@ -65,9 +106,10 @@ public final class RollupManager extends AbstractActorWithTimers {
      *
      * @param periodicMetrics periodic metrics client
      * @param metricsFactory metrics factory
-     * @param partitioner {@link RollupPartitioner} to split up failed jobs
+     * @param partitioner {@link RollupPartitioner} to split up submitted and failed jobs
      * @param consistencyChecker {@link ConsistencyChecker} ref that should be told to consistency-check completed datapoints
-     * @param consistencyCheckFractionOfWrites fraction of successfully written datapoints to request consistency-checks for
+     * @param watermarkStore {@link RollupWatermarkStore} ref that should be told about successfully written periods
+     * @param configuration play configuration
      * @return A new props to create this actor.
      */
     public static Props props(
@@ -75,7 +117,8 @@ public final class RollupManager extends AbstractActorWithTimers {
             final MetricsFactory metricsFactory,
             final RollupPartitioner partitioner,
             final ActorRef consistencyChecker,
-            final double consistencyCheckFractionOfWrites
+            final ActorRef watermarkStore,
+            final Config configuration
     ) {
         return Props.create(
                 RollupManager.class,
@@ -83,7 +126,8 @@ public final class RollupManager extends AbstractActorWithTimers {
                 metricsFactory,
                 partitioner,
                 consistencyChecker,
-                consistencyCheckFractionOfWrites
+                watermarkStore,
+                configuration
         );
     }
 
@@ -92,15 +136,54 @@ public final class RollupManager extends AbstractActorWithTimers {
             final MetricsFactory metricsFactory,
             final RollupPartitioner partitioner,
             final ActorRef consistencyChecker,
-            final double consistencyCheckFractionOfWrites
+            final ActorRef watermarkStore,
+            final Config configuration
     ) {
         _periodicMetrics = periodicMetrics;
         _metricsFactory = metricsFactory;
         _partitioner = partitioner;
         _consistencyChecker = consistencyChecker;
-        _consistencyCheckFractionOfWrites = consistencyCheckFractionOfWrites;
+        _watermarkStore = watermarkStore;
+        _consistencyCheckFractionOfWrites = configuration.getDouble("rollup.manager.consistency_check_fraction_of_writes");
+        _consistencyCheckDelay = configuration.getDuration("rollup.manager.consistencyCheckDelay");
+        _maxQueueSize = configuration.getInt("rollup.manager.maxQueueSize");
+        _leaseTimeout = configuration.getDuration("rollup.manager.leaseTimeout");
+        _snapshotEvery = configuration.getInt("rollup.manager.snapshotEvery");
         _rollupDefinitions = new TreeSet<>(new RollupComparator());
-        getTimers().startTimerAtFixedRate(METRICS_TIMER, RECORD_METRICS_MSG, METRICS_INTERVAL);
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        timers().startTimerAtFixedRate(METRICS_TIMER, RECORD_METRICS_MSG, METRICS_INTERVAL);
+    }
+
+    @Override
+    public String persistenceId() {
+        return "rollup-manager";
+    }
+
+    @Override
+    public Receive createReceiveRecover() {
+        return receiveBuilder()
+                .match(SnapshotOffer.class, offer -> {
+                    final QueueSnapshot snapshot = (QueueSnapshot) offer.snapshot();
+                    _rollupDefinitions.clear();
+                    _rollupDefinitions.addAll(snapshot.getRollups());
+                    _metricTags.clear();
+                    _metricTags.putAll(snapshot.getMetricTags());
+                    _pendingPartitions.clear();
+                    _rollupDefinitions.forEach(rollup -> _pendingPartitions.merge(unpartitioned(rollup), 1, Integer::sum));
+                    _failedPeriods.clear();
+                    _failedPeriods.addAll(snapshot.getFailedPeriods());
+                })
+                .match(RollupEnqueued.class, this::applyEnqueued)
+                .match(RollupCompleted.class, this::applyCompleted)
+                .match(RecoveryCompleted.class, msg -> LOGGER.info()
+                        .setMessage("recovered rollup queue")
+                        .addData("size", _rollupDefinitions.size())
+                        .log())
+                .build();
     }
 
     @Override
@@ -108,7 +191,12 @@ public final class RollupManager extends AbstractActorWithTimers {
         return receiveBuilder()
                 .matchEquals(
                         RECORD_METRICS_MSG,
-                        work -> _periodicMetrics.recordGauge("rollup/manager/queue_size", _rollupDefinitions.size()))
+                        work -> {
+                            expireLeases();
+                            _periodicMetrics.recordGauge("rollup/manager/queue_size", _rollupDefinitions.size());
+                            _periodicMetrics.recordGauge("rollup/manager/leased", _leases.size());
+                            snapshotIfDue();
+                        })
                 .match(
                         RollupDefinition.class,
                         work -> {
@@ -117,7 +205,7 @@ public final class RollupManager extends AbstractActorWithTimers {
                                     .setMessage("received task")
                                     .addData("task", work)
                                     .log();
-                            _rollupDefinitions.add(work);
+                            submit(work);
                         })
                 .match(
                         RollupExecutor.FinishRollupMessage.class,
@@ -135,31 +223,71 @@ public final class RollupManager extends AbstractActorWithTimers {
                             }
 
                         })
+                .match(SaveSnapshotSuccess.class, msg -> deleteMessages(msg.metadata().sequenceNr()))
+                .match(SaveSnapshotFailure.class, msg -> LOGGER.warn()
+                        .setMessage("failed to save rollup queue snapshot")
+                        .setThrowable(msg.cause())
+                        .log())
+                .match(DeleteMessagesSuccess.class, msg -> { })
+                .match(DeleteMessagesFailure.class, msg -> LOGGER.warn()
+                        .setMessage("failed to delete journaled rollup queue events")
+                        .setThrowable(msg.cause())
+                        .log())
                 .build();
     }
 
+    private void submit(final RollupDefinition definition) {
+        final ImmutableSet<RollupDefinition> jobs = _partitioner.partition(definition);
+        _periodicMetrics.recordCounter("rollup/manager/presplit", jobs.size() - 1);
+        final ImmutableList<RollupEnqueued> events = toEnqueued(jobs);
+        if (events.isEmpty()) {
+            _periodicMetrics.recordCounter("rollup/manager/duplicate", 1);
+            return;
+        }
+        if (_rollupDefinitions.size() + _leases.size() + events.size() > _maxQueueSize) {
+            _periodicMetrics.recordCounter("rollup/manager/rejected", 1);
+            getSender().tell(QueueFull.getInstance(), getSelf());
+            return;
+        }
+        persistAll(events, this::applyEnqueued);
+    }
+
+    private ImmutableList<RollupEnqueued> toEnqueued(final ImmutableSet<RollupDefinition> jobs) {
+        final ImmutableList.Builder<RollupEnqueued> events = ImmutableList.builder();
+        // The tags of a metric are only journaled when they differ from those already recorded for it
+        final Map<String, ImmutableMultimap<String, String>> journaledTags = Maps.newHashMap();
+        for (final RollupDefinition job : jobs) {
+            final QueuedRollup rollup = QueuedRollup.of(job);
+            if (_rollupDefinitions.contains(rollup) || _leases.containsKey(rollup)) {
+                continue;
+            }
+            final String metric = job.getSourceMetricName();
+            final boolean tagsRecorded = job.getAllMetricTags().equals(
+                    journaledTags.getOrDefault(metric, _metricTags.get(metric)));
+            if (!tagsRecorded) {
+                journaledTags.put(metric, job.getAllMetricTags());
+            }
+            events.add(new RollupEnqueued.Builder()
+                    .setRollup(rollup)
+                    .setMetricTags(tagsRecorded ? null : job.getAllMetricTags())
+                    .build());
+        }
+        return events.build();
+    }
+
     private void executorFinished(final RollupExecutor.FinishRollupMessage message) {
         final RollupDefinition definition = message.getRollupDefinition();
-        final double latencyNs = (double) Duration.between(definition.getEndTime(), Instant.now()).toNanos();
+        scheduleConsistencyCheck(message);
 
-        final RollupDefinition defn = message.getRollupDefinition();
-        if (shouldRequestConsistencyCheck(message)) {
-            EXECUTOR.schedule(
-                    () -> RollupManager.requestConsistencyCheck(_consistencyChecker, defn),
-                    _consistencyCheckDelay.toMillis(),
-                    TimeUnit.MILLISECONDS
-            );
-            // ^ "Why delay?" Because KairosDB has an internal write-queue that might take a little while
-            //   to flush to Cassandra, so we don't quite have read-after-write consistency.
-            // (example shelldump: https://pastebin.com/dTq8X5et )
-            // Empirically, in simple tests like that, I see discrepancies get resolved in <1sec,
-            //   but waiting is cheap, and large write-batches might take longer to flush,
-            //   so to be safe, we wait much longer than that 1sec.
+        final QueuedRollup rollup = QueuedRollup.of(definition);
+        if (_leases.remove(rollup) != null) {
+            removePending(rollup);
         }
-
         try (Metrics metrics = _metricsFactory.create()) {
             metrics.incrementCounter("rollup/manager/executor_finished", 1);
-            metrics.setGauge("rollup/manager/executor_finished/latency_sec", latencyNs / 1e9);
+            metrics.setGauge(
+                    "rollup/manager/executor_finished/latency_sec",
+                    Duration.between(definition.getEndTime(), Instant.now()).toNanos() / 1e9);
 
             final Optional<Throwable> failure = message.getFailure();
             if (!failure.isPresent()) {
@@ -168,6 +296,15 @@ public final class RollupManager extends AbstractActorWithTimers {
                         .addData("rollupDefinition", message.getRollupDefinition())
                         .log();
                 metrics.addAnnotation("outcome", "success");
+                persist(completed(rollup, false), event -> {
+                    // A partition only covers some of the series, so the period is rolled up once all of them are
+                    if (applyCompleted(event)) {
+                        RollupWatermarkStore.advance(
+                                _watermarkStore,
+                                definition.getDestinationMetricName(),
+                                definition.getStartTime());
+                    }
+                });
                 return;
             }
 
@@ -179,9 +316,11 @@ public final class RollupManager extends AbstractActorWithTimers {
                         .setThrowable(failure.get())
                         .log();
                 metrics.addAnnotation("outcome", "non_retryable_error");
+                persist(completed(rollup, true), this::applyCompleted);
                 return;
             }
 
+            _partitioner.recordFailure(definition);
             final ImmutableSet<RollupDefinition> children;
             try {
                 children = _partitioner.splitJob(definition);
@@ -192,6 +331,7 @@ public final class RollupManager extends AbstractActorWithTimers {
                         .setThrowable(failure.get())
                         .log();
                 metrics.addAnnotation("outcome", "unable_to_split");
+                persist(completed(rollup, true), this::applyCompleted);
                 return;
             }
 
@@ -202,12 +342,125 @@ public final class RollupManager extends AbstractActorWithTimers {
                     .setThrowable(failure.get())
                     .log();
             metrics.addAnnotation("outcome", "split_and_retry");
-            children.forEach(child -> getSelf().tell(child, getSelf()));
+            replace(rollup, children);
+        }
+    }
+
+    private void replace(final QueuedRollup parent, final ImmutableSet<RollupDefinition> children) {
+        // Children replace their parent so they are queued even when the queue is full; they are queued first so
+        // the period of the parent always has a pending partition
+        persistAll(toEnqueued(children), this::applyEnqueued);
+        persist(completed(parent, false), this::applyCompleted);
+    }
+
+    private static RollupCompleted completed(final QueuedRollup rollup, final boolean failed) {
+        return new RollupCompleted.Builder().setRollup(rollup).setFailed(failed).build();
+    }
+
+    private static QueuedRollup unpartitioned(final QueuedRollup rollup) {
+        return rollup.getFilterTags().isEmpty()
+                ? rollup
+                : new QueuedRollup.Builder()
+                        .setSourceMetricName(rollup.getSourceMetricName())
+                        .setDestinationMetricName(rollup.getDestinationMetricName())
+                        .setPeriod(rollup.getPeriod())
+                        .setStartTime(rollup.getStartTime())
+                        .build();
+    }
+
+    private void removePending(final QueuedRollup rollup) {
+        _pendingPartitions.computeIfPresent(unpartitioned(rollup), (period, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void scheduleConsistencyCheck(final RollupExecutor.FinishRollupMessage message) {
+        final RollupDefinition defn = message.getRollupDefinition();
+        if (shouldRequestConsistencyCheck(message)) {
+            EXECUTOR.schedule(
+                    () -> RollupManager.requestConsistencyCheck(_consistencyChecker, defn),
+                    _consistencyCheckDelay.toMillis(),
+                    TimeUnit.MILLISECONDS
+            );
+            // ^ "Why delay?" Because KairosDB has an internal write-queue that might take a little while
+            //   to flush to Cassandra, so we don't quite have read-after-write consistency.
+            // (example shelldump: https://pastebin.com/dTq8X5et )
+            // Empirically, in simple tests like that, I see discrepancies get resolved in <1sec,
+            //   but waiting is cheap, and large write-batches might take longer to flush,
+            //   so to be safe, we wait much longer than that 1sec.
         }
     }
 
     private Optional<RollupDefinition> getNextRollup() {
-        return Optional.ofNullable(_rollupDefinitions.pollFirst());
+        final Optional<QueuedRollup> next = Optional.ofNullable(_rollupDefinitions.pollFirst());
+        next.ifPresent(rollup -> _leases.put(rollup, Instant.now().plus(_leaseTimeout)));
+        return next.map(rollup -> rollup.toRollupDefinition(
+                _metricTags.getOrDefault(rollup.getSourceMetricName(), ImmutableMultimap.of())));
+    }
+
+    private void expireLeases() {
+        final Instant now = Instant.now();
+        final Iterator<Map.Entry<QueuedRollup, Instant>> iterator = _leases.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<QueuedRollup, Instant> lease = iterator.next();
+            if (lease.getValue().isBefore(now)) {
+                LOGGER.warn()
+                        .setMessage("rollup lease expired, requeueing")
+                        .addData("rollupDefinition", lease.getKey())
+                        .log();
+                _periodicMetrics.recordCounter("rollup/manager/lease_expired", 1);
+                _rollupDefinitions.add(lease.getKey());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void applyEnqueued(final RollupEnqueued event) {
+        final QueuedRollup rollup = event.getRollup();
+        event.getMetricTags().ifPresent(tags -> _metricTags.put(rollup.getSourceMetricName(), tags));
+        if (_rollupDefinitions.add(rollup) && !_leases.containsKey(rollup)) {
+            _pendingPartitions.merge(unpartitioned(rollup), 1, Integer::sum);
+        }
+        eventApplied();
+    }
+
+    // Returns whether the event completed the last pending partition of its period and none of them failed
+    private boolean applyCompleted(final RollupCompleted event) {
+        final QueuedRollup rollup = event.getRollup();
+        if (_rollupDefinitions.remove(rollup)) {
+            removePending(rollup);
+        }
+        final QueuedRollup period = unpartitioned(rollup);
+        if (event.isFailed()) {
+            _failedPeriods.add(period);
+        }
+        eventApplied();
+        return !_pendingPartitions.containsKey(period) && !_failedPeriods.remove(period);
+    }
+
+    private void eventApplied() {
+        if (!recoveryRunning()) {
+            _eventsSinceSnapshot++;
+        }
+    }
+
+    private void snapshotIfDue() {
+        // Snapshots are only taken between commands, when no journaled event is waiting to be applied, so that the
+        // metric tags the pending events rely on are never dropped from the snapshot
+        if (_eventsSinceSnapshot < _snapshotEvery) {
+            return;
+        }
+        // Leased definitions are included so they are queued again if the manager restarts
+        final ImmutableList<QueuedRollup> rollups = ImmutableList.<QueuedRollup>builder()
+                .addAll(_rollupDefinitions)
+                .addAll(_leases.keySet())
+                .build();
+        _metricTags.keySet().retainAll(
+                rollups.stream().map(QueuedRollup::getSourceMetricName).collect(ImmutableSet.toImmutableSet()));
+        saveSnapshot(new QueueSnapshot.Builder()
+                .setRollups(rollups)
+                .setMetricTags(ImmutableMap.copyOf(_metricTags))
+                .setFailedPeriods(ImmutableList.copyOf(_failedPeriods))
+                .build());
+        _eventsSinceSnapshot = 0;
     }
 
     private static void requestConsistencyCheck(final ActorRef consistencyChecker, final RollupDefinition defn) {
@@ -246,17 +499,13 @@ public final class RollupManager extends AbstractActorWithTimers {
         return !message.isFailure() && RANDOM.nextDouble() < _consistencyCheckFractionOfWrites;
     }
 
-    public void setConsistencyCheckDelay(final Duration consistencyCheckDelay) {
-        _consistencyCheckDelay = consistencyCheckDelay;
-    }
-
-    private static final class RollupComparator implements Comparator<RollupDefinition>, Serializable {
+    private static final class RollupComparator implements Comparator<QueuedRollup>, Serializable {
 
         private static final long serialVersionUID = -3992696463296110397L;
 
         @Override
         @SuppressFBWarnings("RV_NEGATING_RESULT_OF_COMPARETO")
-        public int compare(final RollupDefinition def1, final RollupDefinition def2) {
+        public int compare(final QueuedRollup def1, final QueuedRollup def2) {
             if (def1.equals(def2)) {
                 return 0;
             }
@@ -277,8 +526,427 @@ public final class RollupManager extends AbstractActorWithTimers {
                 // shorter period = higher-priority
                 return result;
             }
+            // The remaining comparisons only make the order consistent, so that queued definitions can be found
+            // and removed when their completion is recovered
+            result = def1.getDestinationMetricName().compareTo(def2.getDestinationMetricName());
+            if (result != 0) {
+                return result;
+            }
+            result = def1.getSourceMetricName().compareTo(def2.getSourceMetricName());
+            if (result != 0) {
+                return result;
+            }
+            result = def1.getFilterTags().toString().compareTo(def2.getFilterTags().toString());
+            if (result != 0) {
+                return result;
+            }
 
             return 1;
         }
     }
+
+    /**
+     * Message sent in reply to a {@link RollupDefinition} which could not be queued because the queue is full.
+     */
+    @SuppressFBWarnings(
+            value = "SING_SINGLETON_IMPLEMENTS_SERIALIZABLE",
+            justification = "Optimization. Pekko requires serializable messages.")
+    public static final class QueueFull implements Serializable {
+
+        private static final long serialVersionUID = 5096241861187418711L;
+        private static final QueueFull THE_INSTANCE = new QueueFull();
+
+        private QueueFull() { }
+
+        public static QueueFull getInstance() {
+            return THE_INSTANCE;
+        }
+    }
+
+    /**
+     * The persisted key of a queued {@link RollupDefinition}: everything but the tags of its source metric.
+     */
+    @Loggable
+    public static final class QueuedRollup implements PekkoJsonSerializable {
+
+        public String getSourceMetricName() {
+            return _sourceMetricName;
+        }
+
+        public String getDestinationMetricName() {
+            return _destinationMetricName;
+        }
+
+        public RollupPeriod getPeriod() {
+            return _period;
+        }
+
+        public Instant getStartTime() {
+            return _startTime;
+        }
+
+        public ImmutableMap<String, String> getFilterTags() {
+            return _filterTags;
+        }
+
+        /**
+         * Create the key of a {@link RollupDefinition}.
+         *
+         * @param definition the rollup definition
+         * @return the key
+         */
+        public static QueuedRollup of(final RollupDefinition definition) {
+            return new Builder()
+                    .setSourceMetricName(definition.getSourceMetricName())
+                    .setDestinationMetricName(definition.getDestinationMetricName())
+                    .setPeriod(definition.getPeriod())
+                    .setStartTime(definition.getStartTime())
+                    .setFilterTags(definition.getFilterTags())
+                    .build();
+        }
+
+        /**
+         * Rebuild the {@link RollupDefinition} with this key.
+         *
+         * @param allMetricTags the tags of the source metric
+         * @return the rollup definition
+         */
+        public RollupDefinition toRollupDefinition(final ImmutableMultimap<String, String> allMetricTags) {
+            return new RollupDefinition.Builder()
+                    .setSourceMetricName(_sourceMetricName)
+                    .setDestinationMetricName(_destinationMetricName)
+                    .setPeriod(_period)
+                    .setStartTime(_startTime)
+                    .setFilterTags(_filterTags)
+                    .setAllMetricTags(allMetricTags)
+                    .build();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final QueuedRollup that = (QueuedRollup) o;
+            return _sourceMetricName.equals(that._sourceMetricName)
+                    && _destinationMetricName.equals(that._destinationMetricName)
+                    && _period == that._period
+                    && _startTime.equals(that._startTime)
+                    && _filterTags.equals(that._filterTags);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(_sourceMetricName, _destinationMetricName, _period, _startTime, _filterTags);
+        }
+
+        private QueuedRollup(final Builder builder) {
+            _sourceMetricName = builder._sourceMetricName;
+            _destinationMetricName = builder._destinationMetricName;
+            _period = builder._period;
+            _startTime = builder._startTime;
+            _filterTags = builder._filterTags;
+        }
+
+        private final String _sourceMetricName;
+        private final String _destinationMetricName;
+        private final RollupPeriod _period;
+        private final Instant _startTime;
+        private final ImmutableMap<String, String> _filterTags;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link QueuedRollup}.
+         */
+        public static final class Builder extends OvalBuilder<QueuedRollup> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(QueuedRollup::new);
+            }
+
+            /**
+             * Sets the source metric name. Required. Cannot be null or empty.
+             *
+             * @param value the source metric name
+             * @return this {@link Builder}
+             */
+            public Builder setSourceMetricName(final String value) {
+                _sourceMetricName = value;
+                return this;
+            }
+
+            /**
+             * Sets the destination metric name. Required. Cannot be null or empty.
+             *
+             * @param value the destination metric name
+             * @return this {@link Builder}
+             */
+            public Builder setDestinationMetricName(final String value) {
+                _destinationMetricName = value;
+                return this;
+            }
+
+            /**
+             * Sets the rollup period. Required. Cannot be null.
+             *
+             * @param value the rollup period
+             * @return this {@link Builder}
+             */
+            public Builder setPeriod(final RollupPeriod value) {
+                _period = value;
+                return this;
+            }
+
+            /**
+             * Sets the start time of the period to roll up. Required. Cannot be null.
+             *
+             * @param value the start time
+             * @return this {@link Builder}
+             */
+            public Builder setStartTime(final Instant value) {
+                _startTime = value;
+                return this;
+            }
+
+            /**
+             * Sets the tags the rollup is filtered on. Optional. Defaults to none. Cannot be null.
+             *
+             * @param value the filter tags
+             * @return this {@link Builder}
+             */
+            public Builder setFilterTags(final ImmutableMap<String, String> value) {
+                _filterTags = value;
+                return this;
+            }
+
+            @NotNull
+            @NotEmpty
+            private String _sourceMetricName;
+            @NotNull
+            @NotEmpty
+            private String _destinationMetricName;
+            @NotNull
+            private RollupPeriod _period;
+            @NotNull
+            private Instant _startTime;
+            @NotNull
+            private ImmutableMap<String, String> _filterTags = ImmutableMap.of();
+        }
+    }
+
+    /**
+     * Journal event recording that a {@link RollupDefinition} was queued.
+     */
+    @Loggable
+    public static final class RollupEnqueued implements PekkoJsonSerializable {
+
+        public QueuedRollup getRollup() {
+            return _rollup;
+        }
+
+        /**
+         * The tags of the source metric, if they changed since they were last recorded.
+         *
+         * @return the tags of the source metric
+         */
+        public Optional<ImmutableMultimap<String, String>> getMetricTags() {
+            return Optional.ofNullable(_metricTags);
+        }
+
+        private RollupEnqueued(final Builder builder) {
+            _rollup = builder._rollup;
+            _metricTags = builder._metricTags;
+        }
+
+        private final QueuedRollup _rollup;
+        @Nullable
+        private final ImmutableMultimap<String, String> _metricTags;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link RollupEnqueued}.
+         */
+        public static final class Builder extends OvalBuilder<RollupEnqueued> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(RollupEnqueued::new);
+            }
+
+            /**
+             * Sets the queued rollup. Required. Cannot be null.
+             *
+             * @param value the queued rollup
+             * @return this {@link Builder}
+             */
+            public Builder setRollup(final QueuedRollup value) {
+                _rollup = value;
+                return this;
+            }
+
+            /**
+             * Sets the tags of the source metric. Optional. Defaults to null, meaning they are unchanged.
+             *
+             * @param value the tags of the source metric
+             * @return this {@link Builder}
+             */
+            public Builder setMetricTags(@Nullable final ImmutableMultimap<String, String> value) {
+                _metricTags = value;
+                return this;
+            }
+
+            @NotNull
+            private QueuedRollup _rollup;
+            @Nullable
+            private ImmutableMultimap<String, String> _metricTags;
+        }
+    }
+
+    /**
+     * Journal event recording that a {@link RollupDefinition} no longer needs to be executed.
+     */
+    @Loggable
+    public static final class RollupCompleted implements PekkoJsonSerializable {
+
+        public QueuedRollup getRollup() {
+            return _rollup;
+        }
+
+        public boolean isFailed() {
+            return _failed;
+        }
+
+        private RollupCompleted(final Builder builder) {
+            _rollup = builder._rollup;
+            _failed = builder._failed;
+        }
+
+        private final QueuedRollup _rollup;
+        private final boolean _failed;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link RollupCompleted}.
+         */
+        public static final class Builder extends OvalBuilder<RollupCompleted> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(RollupCompleted::new);
+            }
+
+            /**
+             * Sets the completed rollup. Required. Cannot be null.
+             *
+             * @param value the completed rollup
+             * @return this {@link Builder}
+             */
+            public Builder setRollup(final QueuedRollup value) {
+                _rollup = value;
+                return this;
+            }
+
+            /**
+             * Sets whether the rollup was given up on. Optional. Defaults to false.
+             *
+             * @param value whether the rollup failed
+             * @return this {@link Builder}
+             */
+            public Builder setFailed(final Boolean value) {
+                _failed = value;
+                return this;
+            }
+
+            @NotNull
+            private QueuedRollup _rollup;
+            @NotNull
+            private Boolean _failed = false;
+        }
+    }
+
+    /**
+     * Snapshot of the queued and leased rollups and the tags of their source metrics.
+     */
+    @Loggable
+    public static final class QueueSnapshot implements PekkoJsonSerializable {
+
+        public ImmutableList<QueuedRollup> getRollups() {
+            return _rollups;
+        }
+
+        public ImmutableMap<String, ImmutableMultimap<String, String>> getMetricTags() {
+            return _metricTags;
+        }
+
+        public ImmutableList<QueuedRollup> getFailedPeriods() {
+            return _failedPeriods;
+        }
+
+        private QueueSnapshot(final Builder builder) {
+            _rollups = builder._rollups;
+            _metricTags = builder._metricTags;
+            _failedPeriods = builder._failedPeriods;
+        }
+
+        private final ImmutableList<QueuedRollup> _rollups;
+        private final ImmutableMap<String, ImmutableMultimap<String, String>> _metricTags;
+        private final ImmutableList<QueuedRollup> _failedPeriods;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link QueueSnapshot}.
+         */
+        public static final class Builder extends OvalBuilder<QueueSnapshot> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(QueueSnapshot::new);
+            }
+
+            /**
+             * Sets the queued and leased rollups. Required. Cannot be null.
+             *
+             * @param value the rollups
+             * @return this {@link Builder}
+             */
+            public Builder setRollups(final ImmutableList<QueuedRollup> value) {
+                _rollups = value;
+                return this;
+            }
+
+            /**
+             * Sets the tags of the source metrics, by metric name. Required. Cannot be null.
+             *
+             * @param value the tags of the source metrics
+             * @return this {@link Builder}
+             */
+            public Builder setMetricTags(final ImmutableMap<String, ImmutableMultimap<String, String>> value) {
+                _metricTags = value;
+                return this;
+            }
+
+            /**
+             * Sets the unpartitioned rollups of which a partition was given up on while others are still pending.
+             * Optional. Defaults to none. Cannot be null.
+             *
+             * @param value the failed periods
+             * @return this {@link Builder}
+             */
+            public Builder setFailedPeriods(final ImmutableList<QueuedRollup> value) {
+                _failedPeriods = value;
+                return this;
+            }
+
+            @NotNull
+            private ImmutableList<QueuedRollup> _rollups;
+            @NotNull
+            private ImmutableMap<String, ImmutableMultimap<String, String>> _metricTags;
+            @NotNull
+            private ImmutableList<QueuedRollup> _failedPeriods = ImmutableList.of();
+        }
+    }
 }
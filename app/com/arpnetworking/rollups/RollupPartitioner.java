@@ -16,6 +16,8 @@
 package com.arpnetworking.rollups;
 
 import com.arpnetworking.kairos.client.KairosDbRequestException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
@@ -24,20 +26,115 @@ import java.io.Serializable;
 import java.time.Duration;
 import java.util.Comparator;
 import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
 
 /**
  * Utility class to help split {@link RollupDefinition}s into pieces.
  *
+ * Jobs can be split reactively, after a failure, with {@link #splitJob(RollupDefinition)}, or before they are first
+ * executed with {@link #partition(RollupDefinition)}. The latter splits a job until its estimated number of series
+ * fits a budget and it has at least as many filter tags as the failures recorded for its rollup metric required,
+ * without producing more than a configured number of jobs.
+ *
  * @author Spencer Pearson (spencerpearson@dropbox.com)
  */
 public class RollupPartitioner {
 
     private static final Duration TIMEOUT_HEURISTIC_THRESHOLD = Duration.ofSeconds(30);
+    private static final long MAX_LEARNED_SPLIT_LEVELS = 100000;
+
+    private final double _maxSeriesPerJob;
+    private final int _maxPartitionsPerJob;
+    private final Cache<String, Integer> _splitLevels = CacheBuilder.newBuilder()
+            .maximumSize(MAX_LEARNED_SPLIT_LEVELS)
+            .build();
+
+    /**
+     * Public constructor. Jobs are only split proactively once failures have been recorded for them.
+     */
+    public RollupPartitioner() {
+        this(Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
 
     /**
      * Public constructor.
+     *
+     * @param maxSeriesPerJob the estimated number of series above which a job is split before it is executed
+     * @param maxPartitionsPerJob the most jobs a job is split into before it is executed
+     */
+    public RollupPartitioner(final long maxSeriesPerJob, final int maxPartitionsPerJob) {
+        _maxSeriesPerJob = maxSeriesPerJob;
+        _maxPartitionsPerJob = maxPartitionsPerJob;
+    }
+
+    /**
+     * Split a {@link RollupDefinition} into the jobs which should be executed in its place, before any of them
+     * have failed.
+     *
+     * The number of series a job covers is estimated from the values of the tags it does not filter on, as the
+     * product of their counts; that is an upper bound, since not every combination of tag values need exist. Jobs
+     * over the series budget are split on the tag with the fewest values which brings them under it, or on the
+     * tag with the most values if none does. Jobs are also split until they have as many filter tags as the
+     * failures recorded for their rollup metric with {@link #recordFailure(RollupDefinition)} required. Since the
+     * splits multiply, the jobs with the most series are split first and splitting stops at the first split which
+     * would produce more jobs than the configured maximum; the remaining jobs are returned as they are.
+     *
+     * @param job the {@link RollupDefinition} to partition
+     * @return the jobs which partition the work of the input; just the input if it need not be split
+     */
+    public ImmutableSet<RollupDefinition> partition(final RollupDefinition job) {
+        final ImmutableSet.Builder<RollupDefinition> partitions = ImmutableSet.builder();
+        final PriorityQueue<RollupDefinition> pending = new PriorityQueue<>(
+                Comparator.comparingDouble(RollupPartitioner::estimateSeries).reversed());
+        pending.add(job);
+        int jobs = 1;
+        boolean capped = false;
+        while (!pending.isEmpty()) {
+            final RollupDefinition next = pending.poll();
+            final Optional<String> filterTag = capped ? Optional.empty() : choosePartitionTag(next);
+            if (!filterTag.isPresent()) {
+                partitions.add(next);
+                continue;
+            }
+            final ImmutableSet<RollupDefinition> children = split(next, filterTag.get());
+            if (jobs - 1 + children.size() > _maxPartitionsPerJob) {
+                capped = true;
+                partitions.add(next);
+                continue;
+            }
+            jobs += children.size() - 1;
+            pending.addAll(children);
+        }
+        return partitions.build();
+    }
+
+    private Optional<String> choosePartitionTag(final RollupDefinition job) {
+        final Integer splitLevel = _splitLevels.getIfPresent(job.getDestinationMetricName());
+        final double series = estimateSeries(job);
+        if (series <= _maxSeriesPerJob) {
+            return splitLevel == null || job.getFilterTags().size() >= splitLevel
+                    ? Optional.empty()
+                    : chooseFilterTag(job);
+        }
+        final ImmutableMultimap<String, String> allTags = job.getAllMetricTags();
+        final Optional<String> fewestUnderBudget = splittableTags(job)
+                .filter(tag -> series / allTags.get(tag).size() <= _maxSeriesPerJob)
+                .min(Comparator.comparing(tag -> allTags.get(tag).size()));
+        return fewestUnderBudget.isPresent()
+                ? fewestUnderBudget
+                : splittableTags(job).max(Comparator.comparing(tag -> allTags.get(tag).size()));
+    }
+
+    /**
+     * Record that a {@link RollupDefinition} failed in a way that splitting might fix. Later jobs for the same rollup
+     * metric are split by {@link #partition(RollupDefinition)} into jobs with more filter tags than the failed one.
+     *
+     * @param job the {@link RollupDefinition} that failed
      */
-    public RollupPartitioner() {}
+    public void recordFailure(final RollupDefinition job) {
+        _splitLevels.asMap().merge(job.getDestinationMetricName(), job.getFilterTags().size() + 1, Math::max);
+    }
 
     /**
      * Split a {@link RollupDefinition} into a family of cheaper-to-execute {@link RollupDefinition}s which,
@@ -48,11 +145,18 @@ public class RollupPartitioner {
      * @throws CannotSplitException if there is no way to split the given job into multiple cheaper ones
      */
     public ImmutableSet<RollupDefinition> splitJob(final RollupDefinition job) throws CannotSplitException {
-        final ImmutableMap<String, String> filterTags = job.getFilterTags();
+        final Optional<String> nextFilterTag = chooseFilterTag(job);
+
+        if (!nextFilterTag.isPresent()) {
+            throw new CannotSplitException(job);
+        }
+
+        return split(job, nextFilterTag.get());
+    }
+
+    private static Optional<String> chooseFilterTag(final RollupDefinition job) {
         final ImmutableMultimap<String, String> allTags = job.getAllMetricTags();
-        final Optional<String> nextFilterTag = allTags.keySet().stream()
-                .filter(tag -> !filterTags.containsKey(tag)) // already filtered on
-                .filter(tag -> allTags.get(tag).size() > 1) // no point splitting on a single-value tag
+        return splittableTags(job)
                 .min(Comparator.comparing(
                         // Ad-hoc, not-super-principled attempt to balance the per-query overhead of splitting too much
                         //   against the risk of splitting too little and having the sub-jobs time out:
@@ -60,16 +164,29 @@ public class RollupPartitioner {
                         //     (graph: https://www.desmos.com/calculator/vpr78hofys )
                         tag -> Math.abs(Math.log10(allTags.get(tag).size()) - 1)
                 ));
+    }
 
-        if (!nextFilterTag.isPresent()) {
-            throw new CannotSplitException(job);
-        }
+    private static Stream<String> splittableTags(final RollupDefinition job) {
+        final ImmutableMap<String, String> filterTags = job.getFilterTags();
+        final ImmutableMultimap<String, String> allTags = job.getAllMetricTags();
+        return allTags.keySet().stream()
+                .filter(tag -> !filterTags.containsKey(tag)) // already filtered on
+                .filter(tag -> allTags.get(tag).size() > 1); // no point splitting on a single-value tag
+    }
+
+    private static double estimateSeries(final RollupDefinition job) {
+        final ImmutableMultimap<String, String> allTags = job.getAllMetricTags();
+        return splittableTags(job)
+                .mapToDouble(tag -> allTags.get(tag).size())
+                .reduce(1, (a, b) -> a * b);
+    }
 
-        return allTags.get(nextFilterTag.get()).stream()
+    private static ImmutableSet<RollupDefinition> split(final RollupDefinition job, final String filterTag) {
+        return job.getAllMetricTags().get(filterTag).stream()
                 .map(tagValue -> RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(job)
                         .setFilterTags(ImmutableMap.<String, String>builder()
-                                .putAll(filterTags)
-                                .put(nextFilterTag.get(), tagValue)
+                                .putAll(job.getFilterTags())
+                                .put(filterTag, tagValue)
                                 .build())
                         .build()
                 )
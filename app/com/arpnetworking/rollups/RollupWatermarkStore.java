@@ -0,0 +1,353 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.logback.annotations.Loggable;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.notcommons.pekko.PekkoJsonSerializable;
+import com.arpnetworking.steno.Logger;
+import com.arpnetworking.steno.LoggerFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.Props;
+import org.apache.pekko.pattern.Patterns;
+import org.apache.pekko.persistence.AbstractPersistentActorWithTimers;
+import org.apache.pekko.persistence.DeleteMessagesFailure;
+import org.apache.pekko.persistence.DeleteMessagesSuccess;
+import org.apache.pekko.persistence.RecoveryCompleted;
+import org.apache.pekko.persistence.SaveSnapshotFailure;
+import org.apache.pekko.persistence.SaveSnapshotSuccess;
+import org.apache.pekko.persistence.SnapshotOffer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Durable store of rollup watermarks.
+ * <p>
+ * The watermark of a rollup series is the start time of the latest period
+ * which has been rolled up successfully. It is keyed by the rollup metric
+ * name, which identifies both the source metric and the {@link RollupPeriod}.
+ * The {@link RollupManager} advances the watermark each time a rollup
+ * finishes and the {@link RollupGenerator} reads it in place of probing
+ * KairosDB for the last rolled up data point. Watermarks only move forward.
+ * <p>
+ * Updates are journaled and the watermarks are periodically snapshotted, after
+ * which the journal up to the snapshot is deleted.
+ *
+ * @author agent (agent at local)
+ */
+public final class RollupWatermarkStore extends AbstractPersistentActorWithTimers {
+
+    /**
+     * Creates a {@link Props} for use in Pekko.
+     *
+     * @param periodicMetrics periodic metrics client
+     * @param snapshotInterval interval between snapshots of the watermarks
+     * @return A new props to create this actor.
+     */
+    public static Props props(final PeriodicMetrics periodicMetrics, final Duration snapshotInterval) {
+        return Props.create(RollupWatermarkStore.class, () -> new RollupWatermarkStore(periodicMetrics, snapshotInterval));
+    }
+
+    /**
+     * Retrieve the watermarks of rollup series.
+     *
+     * @param ref the store ref
+     * @param metricNames the rollup metric names
+     * @param timeout the operation timeout
+     * @return A {@link CompletionStage} with the watermark of each series which has one.
+     */
+    public static CompletionStage<ImmutableMap<String, Instant>> get(
+            final ActorRef ref,
+            final Collection<String> metricNames,
+            final Duration timeout
+    ) {
+        return Patterns.ask(
+                ref,
+                new Get.Builder()
+                        .setMetricNames(ImmutableSet.copyOf(metricNames))
+                        .build(),
+                timeout
+        ).thenApply(response -> ((Watermarks) response).getWatermarks());
+    }
+
+    /**
+     * Advance the watermark of a rollup series. Watermarks which are not
+     * ahead of the stored one are ignored.
+     *
+     * @param ref the store ref
+     * @param metricName the rollup metric name
+     * @param watermark the start of the latest period rolled up
+     */
+    public static void advance(final ActorRef ref, final String metricName, final Instant watermark) {
+        ref.tell(
+                new Update.Builder()
+                        .setMetricName(metricName)
+                        .setWatermark(watermark)
+                        .build(),
+                ActorRef.noSender());
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        timers().startTimerAtFixedRate(SNAPSHOT_TIMER_KEY, TAKE_SNAPSHOT, _snapshotInterval);
+    }
+
+    @Override
+    public String persistenceId() {
+        return "rollup-watermarks";
+    }
+
+    @Override
+    public Receive createReceiveRecover() {
+        return receiveBuilder()
+                .match(SnapshotOffer.class, offer -> {
+                    _watermarks.clear();
+                    _watermarks.putAll(((Watermarks) offer.snapshot()).getWatermarks());
+                })
+                .match(Update.class, this::applyUpdate)
+                .match(RecoveryCompleted.class, msg -> LOGGER.info()
+                        .setMessage("recovered rollup watermarks")
+                        .addData("watermarks", _watermarks.size())
+                        .log())
+                .build();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+                .match(Get.class, this::handleGet)
+                .match(Update.class, update -> {
+                    final Instant current = _watermarks.get(update.getMetricName());
+                    if (current == null || update.getWatermark().isAfter(current)) {
+                        persist(update, this::applyUpdate);
+                        _periodicMetrics.recordCounter("rollup/watermarks/advanced", 1);
+                    }
+                })
+                .matchEquals(TAKE_SNAPSHOT, msg -> {
+                    _periodicMetrics.recordGauge("rollup/watermarks/size", _watermarks.size());
+                    if (_dirty) {
+                        saveSnapshot(new Watermarks.Builder().setWatermarks(ImmutableMap.copyOf(_watermarks)).build());
+                        _dirty = false;
+                    }
+                })
+                .match(SaveSnapshotSuccess.class, msg -> deleteMessages(msg.metadata().sequenceNr()))
+                .match(SaveSnapshotFailure.class, msg -> {
+                    _dirty = true;
+                    LOGGER.warn()
+                            .setMessage("failed to save rollup watermarks snapshot")
+                            .setThrowable(msg.cause())
+                            .log();
+                })
+                .match(DeleteMessagesSuccess.class, msg -> { })
+                .match(DeleteMessagesFailure.class, msg -> LOGGER.warn()
+                        .setMessage("failed to delete journaled rollup watermarks")
+                        .setThrowable(msg.cause())
+                        .log())
+                .build();
+    }
+
+    private void handleGet(final Get get) {
+        final ImmutableMap.Builder<String, Instant> watermarks = ImmutableMap.builder();
+        for (final String metricName : get.getMetricNames()) {
+            final Instant watermark = _watermarks.get(metricName);
+            if (watermark != null) {
+                watermarks.put(metricName, watermark);
+            }
+        }
+        final ImmutableMap<String, Instant> found = watermarks.build();
+        _periodicMetrics.recordCounter("rollup/watermarks/hit", found.size());
+        _periodicMetrics.recordCounter("rollup/watermarks/miss", get.getMetricNames().size() - found.size());
+        getSender().tell(new Watermarks.Builder().setWatermarks(found).build(), getSelf());
+    }
+
+    private void applyUpdate(final Update update) {
+        _watermarks.merge(update.getMetricName(), update.getWatermark(), (a, b) -> a.isAfter(b) ? a : b);
+        _dirty = true;
+    }
+
+    private RollupWatermarkStore(final PeriodicMetrics periodicMetrics, final Duration snapshotInterval) {
+        _periodicMetrics = periodicMetrics;
+        _snapshotInterval = snapshotInterval;
+    }
+
+    private final PeriodicMetrics _periodicMetrics;
+    private final Duration _snapshotInterval;
+    private final Map<String, Instant> _watermarks = Maps.newHashMap();
+    private boolean _dirty;
+
+    private static final Object TAKE_SNAPSHOT = new Object();
+    private static final String SNAPSHOT_TIMER_KEY = "snapshot";
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupWatermarkStore.class);
+
+    /**
+     * Requests the watermarks of a set of rollup series. Answered with
+     * {@link Watermarks}.
+     */
+    @Loggable
+    public static final class Get implements PekkoJsonSerializable {
+
+        public ImmutableSet<String> getMetricNames() {
+            return _metricNames;
+        }
+
+        private Get(final Builder builder) {
+            _metricNames = builder._metricNames;
+        }
+
+        private final ImmutableSet<String> _metricNames;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link Get}.
+         */
+        public static final class Builder extends OvalBuilder<Get> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(Get::new);
+            }
+
+            /**
+             * Sets the rollup metric names. Required. Cannot be null.
+             *
+             * @param value the rollup metric names
+             * @return this {@link Builder}
+             */
+            public Builder setMetricNames(final ImmutableSet<String> value) {
+                _metricNames = value;
+                return this;
+            }
+
+            @NotNull
+            private ImmutableSet<String> _metricNames;
+        }
+    }
+
+    /**
+     * Watermarks keyed by rollup metric name.
+     */
+    @Loggable
+    public static final class Watermarks implements PekkoJsonSerializable {
+
+        public ImmutableMap<String, Instant> getWatermarks() {
+            return _watermarks;
+        }
+
+        private Watermarks(final Builder builder) {
+            _watermarks = builder._watermarks;
+        }
+
+        private final ImmutableMap<String, Instant> _watermarks;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link Watermarks}.
+         */
+        public static final class Builder extends OvalBuilder<Watermarks> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(Watermarks::new);
+            }
+
+            /**
+             * Sets the watermarks. Required. Cannot be null.
+             *
+             * @param value the watermarks
+             * @return this {@link Builder}
+             */
+            public Builder setWatermarks(final ImmutableMap<String, Instant> value) {
+                _watermarks = value;
+                return this;
+            }
+
+            @NotNull
+            private ImmutableMap<String, Instant> _watermarks;
+        }
+    }
+
+    /**
+     * Advances the watermark of a rollup series.
+     */
+    @Loggable
+    public static final class Update implements PekkoJsonSerializable {
+
+        public String getMetricName() {
+            return _metricName;
+        }
+
+        public Instant getWatermark() {
+            return _watermark;
+        }
+
+        private Update(final Builder builder) {
+            _metricName = builder._metricName;
+            _watermark = builder._watermark;
+        }
+
+        private final String _metricName;
+        private final Instant _watermark;
+
+        /**
+         * {@link com.arpnetworking.commons.builder.Builder} implementation for {@link Update}.
+         */
+        public static final class Builder extends OvalBuilder<Update> {
+            /**
+             * Creates a builder.
+             */
+            public Builder() {
+                super(Update::new);
+            }
+
+            /**
+             * Sets the rollup metric name. Required. Cannot be null.
+             *
+             * @param value the rollup metric name
+             * @return this {@link Builder}
+             */
+            public Builder setMetricName(final String value) {
+                _metricName = value;
+                return this;
+            }
+
+            /**
+             * Sets the start of the latest period rolled up. Required. Cannot be null.
+             *
+             * @param value the watermark
+             * @return this {@link Builder}
+             */
+            public Builder setWatermark(final Instant value) {
+                _watermark = value;
+                return this;
+            }
+
+            @NotNull
+            private String _metricName;
+            @NotNull
+            private Instant _watermark;
+        }
+    }
+}
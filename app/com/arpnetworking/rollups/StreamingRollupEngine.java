@@ -0,0 +1,375 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.arpnetworking.commons.builder.OvalBuilder;
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.MetricsQueryResponseDecoder;
+import com.arpnetworking.kairos.client.models.DataPoint;
+import com.arpnetworking.kairos.client.models.DataPoints;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import net.sf.oval.constraint.Min;
+import net.sf.oval.constraint.NotNull;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.util.ByteString;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performs rollups in the portal rather than with the KairosDB
+ * {@code save_as} aggregator.
+ * <p>
+ * The raw data points of the source metric are queried grouped by every tag
+ * and the response is decoded one tag group at a time. Each group is merged
+ * into one histogram per rollup period with a {@link HistogramAccumulator}
+ * and the resulting series are written back with
+ * {@link KairosDbClient#addDataPoints(ImmutableList)} in batches of
+ * {@code writeBatchSize} series, at most {@code writeParallelism} batches at
+ * a time. The stream is backpressured by the writes so memory is bounded by
+ * a single tag group and the batches in flight. A rollup only completes once
+ * every series has been written, so a failed rollup is retried as a whole
+ * and never leaves a partially written period behind as complete.
+ * <p>
+ * Each rollup records {@code rollup/streaming/series_read},
+ * {@code rollup/streaming/data_points_read},
+ * {@code rollup/streaming/series_written},
+ * {@code rollup/streaming/data_points_per_second} and
+ * {@code rollup/streaming/latency}.
+ *
+ * @author agent (agent at local)
+ */
+public final class StreamingRollupEngine {
+
+    /**
+     * Perform a rollup.
+     *
+     * @param rollupDefinition the rollup to perform
+     * @return the number of series written
+     */
+    public CompletionStage<Long> rollup(final RollupDefinition rollupDefinition) {
+        final long startTime = System.nanoTime();
+        final Counts counts = new Counts();
+        return _kairosDbClient.queryMetricsStreamed(buildQuery(rollupDefinition))
+                .thenCompose(response -> response.getDecodedBody()
+                        .statefulMap(
+                                this::createReader,
+                                (reader, chunk) -> Pair.create(reader, reader.read(chunk)),
+                                reader -> Optional.of(reader.finish()))
+                        .mapConcat(results -> results)
+                        .map(result -> aggregate(rollupDefinition, result, counts))
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .grouped(_writeBatchSize)
+                        .mapAsync(_writeParallelism, batch -> _kairosDbClient.addDataPoints(ImmutableList.copyOf(batch))
+                                .thenApply(done -> (long) batch.size()))
+                        .runFold(0L, Long::sum, _materializer))
+                .whenComplete((written, error) -> {
+                    final long elapsed = System.nanoTime() - startTime;
+                    final long dataPoints = counts._dataPoints.get();
+                    _periodicMetrics.recordCounter("rollup/streaming/series_read", counts._series.get());
+                    _periodicMetrics.recordCounter("rollup/streaming/data_points_read", dataPoints);
+                    _periodicMetrics.recordCounter("rollup/streaming/series_written", written == null ? 0 : written);
+                    _periodicMetrics.recordGauge(
+                            "rollup/streaming/data_points_per_second",
+                            dataPoints * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed));
+                    _periodicMetrics.recordTimer("rollup/streaming/latency", elapsed, Optional.of(TimeUnit.NANOSECONDS));
+                });
+    }
+
+    /* package private */ static MetricsQuery buildQuery(final RollupDefinition rollupDefinition) {
+        final Metric metric = ThreadLocalBuilder.build(Metric.Builder.class, metricBuilder -> {
+            metricBuilder.setName(rollupDefinition.getSourceMetricName());
+            metricBuilder.setTags(rollupDefinition.getFilterTags().asMultimap());
+            if (!rollupDefinition.getAllMetricTags().isEmpty()) {
+                metricBuilder.setGroupBy(ImmutableList.of(
+                        ThreadLocalBuilder.build(MetricsQuery.QueryTagGroupBy.Builder.class, builder -> builder
+                                .setTags(rollupDefinition.getAllMetricTags().keySet())
+                                .build()
+                        )
+                ));
+            }
+        });
+        return ThreadLocalBuilder.build(MetricsQuery.Builder.class, queryBuilder -> {
+            queryBuilder.setStartTime(rollupDefinition.getStartTime());
+            queryBuilder.setEndTime(rollupDefinition.getEndTime());
+            queryBuilder.setMetrics(ImmutableList.of(metric));
+        });
+    }
+
+    /* package private */ Optional<MetricDataPoints> aggregate(
+            final RollupDefinition rollupDefinition,
+            final MetricsQueryResponse.QueryResult result,
+            final Counts counts) {
+        final DataPoints dataPoints = result.getDataPoints();
+        counts._series.incrementAndGet();
+        counts._dataPoints.addAndGet(dataPoints.size());
+        final RollupPeriod period = rollupDefinition.getPeriod();
+        final Map<Instant, HistogramAccumulator> accumulators = new TreeMap<>();
+        for (int i = 0; i < dataPoints.size(); ++i) {
+            final HistogramAccumulator accumulator = accumulators.computeIfAbsent(
+                    period.mostRecentBoundary(dataPoints.getTime(i)),
+                    time -> new HistogramAccumulator());
+            if (dataPoints.isNumeric(i)) {
+                accumulator.add(dataPoints.getDouble(i));
+            } else {
+                final Optional<Object> value = dataPoints.getValue(i);
+                if (value.isPresent()) {
+                    accumulator.add(value.get());
+                }
+            }
+        }
+
+        final ImmutableList.Builder<DataPoint> rolledUp = ImmutableList.builder();
+        accumulators.forEach((time, accumulator) -> {
+            if (accumulator.getCount() > 0) {
+                rolledUp.add(ThreadLocalBuilder.build(DataPoint.Builder.class, b -> b
+                        .setTime(time)
+                        .setValue(accumulator.toHistogram())));
+            }
+        });
+        final ImmutableList<DataPoint> values = rolledUp.build();
+        if (values.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(ThreadLocalBuilder.build(MetricDataPoints.Builder.class, b -> b
+                .setName(rollupDefinition.getDestinationMetricName())
+                .setTags(groupTags(result))
+                .setTtl(_ttlSeconds > 0 ? (int) _ttlSeconds : null)
+                .setDatapoints(values)));
+    }
+
+    // The tags the result was grouped by are the ones with a single value
+    private static ImmutableMap<String, String> groupTags(final MetricsQueryResponse.QueryResult result) {
+        final ImmutableMap.Builder<String, String> tags = ImmutableMap.builder();
+        for (final Map.Entry<String, Collection<String>> tag : result.getTags().asMap().entrySet()) {
+            if (tag.getValue().size() == 1) {
+                tags.put(tag.getKey(), tag.getValue().iterator().next());
+            }
+        }
+        return tags.build();
+    }
+
+    private ResultReader createReader() throws IOException {
+        return new ResultReader(_mapper, _maxResponseSize);
+    }
+
+    private StreamingRollupEngine(final Builder builder) {
+        _kairosDbClient = builder._kairosDbClient;
+        _mapper = builder._mapper;
+        _maxResponseSize = builder._maxResponseSize;
+        _periodicMetrics = builder._periodicMetrics;
+        _materializer = Materializer.matFromSystem(builder._actorSystem);
+        _ttlSeconds = builder._ttlSeconds;
+        _writeBatchSize = builder._writeBatchSize;
+        _writeParallelism = builder._writeParallelism;
+    }
+
+    private final KairosDbClient _kairosDbClient;
+    private final ObjectMapper _mapper;
+    private final long _maxResponseSize;
+    private final PeriodicMetrics _periodicMetrics;
+    private final Materializer _materializer;
+    private final long _ttlSeconds;
+    private final int _writeBatchSize;
+    private final int _writeParallelism;
+
+    /* package private */ static final class Counts {
+        private final AtomicLong _series = new AtomicLong();
+        private final AtomicLong _dataPoints = new AtomicLong();
+    }
+
+    private static final class ResultReader {
+        ResultReader(final ObjectMapper mapper, final long maxResponseSize) throws IOException {
+            _decoder = new MetricsQueryResponseDecoder(mapper, maxResponseSize, _results::add);
+        }
+
+        List<MetricsQueryResponse.QueryResult> read(final ByteString chunk) throws IOException {
+            // The stream still finishes the reader after a chunk fails to decode; that failure must not be replaced
+            // by the one from finishing an incomplete document
+            _failed = true;
+            _decoder.feed(chunk);
+            _failed = false;
+            return drain();
+        }
+
+        List<MetricsQueryResponse.QueryResult> finish() throws IOException {
+            if (_failed) {
+                return ImmutableList.of();
+            }
+            _decoder.finish();
+            return drain();
+        }
+
+        private List<MetricsQueryResponse.QueryResult> drain() {
+            final List<MetricsQueryResponse.QueryResult> results = new ArrayList<>(_results);
+            _results.clear();
+            return results;
+        }
+
+        private final List<MetricsQueryResponse.QueryResult> _results = new ArrayList<>();
+        private final MetricsQueryResponseDecoder _decoder;
+        private boolean _failed;
+    }
+
+    /**
+     * Implementation of the builder pattern for {@link StreamingRollupEngine}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class Builder extends OvalBuilder<StreamingRollupEngine> {
+        /**
+         * Public constructor.
+         */
+        public Builder() {
+            super(StreamingRollupEngine::new);
+        }
+
+        /**
+         * Sets the {@link KairosDbClient} to read and write data points with.
+         * Required. Cannot be null.
+         *
+         * @param value the client
+         * @return this {@link Builder}
+         */
+        public Builder setKairosDbClient(final KairosDbClient value) {
+            _kairosDbClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ObjectMapper} used to decode query results.
+         * Required. Cannot be null.
+         *
+         * @param value the mapper
+         * @return this {@link Builder}
+         */
+        public Builder setMapper(final ObjectMapper value) {
+            _mapper = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size in bytes of the query response read for a
+         * rollup. Optional. Defaults to 1 GiB.
+         *
+         * @param value the maximum response size in bytes
+         * @return this {@link Builder}
+         */
+        public Builder setMaxResponseSize(final Long value) {
+            _maxResponseSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link ActorSystem} to run the rollup streams on. Required.
+         * Cannot be null.
+         *
+         * @param value the actor system
+         * @return this {@link Builder}
+         */
+        public Builder setActorSystem(final ActorSystem value) {
+            _actorSystem = value;
+            return this;
+        }
+
+        /**
+         * Sets the {@link PeriodicMetrics} to record to. Required. Cannot be null.
+         *
+         * @param value the periodic metrics
+         * @return this {@link Builder}
+         */
+        public Builder setPeriodicMetrics(final PeriodicMetrics value) {
+            _periodicMetrics = value;
+            return this;
+        }
+
+        /**
+         * Sets the time to live of the written data points in seconds; zero
+         * uses the KairosDB default. Optional. Defaults to 0.
+         *
+         * @param value the time to live in seconds
+         * @return this {@link Builder}
+         */
+        public Builder setTtlSeconds(final Long value) {
+            _ttlSeconds = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of series written per request. Optional. Defaults to 100.
+         *
+         * @param value the write batch size
+         * @return this {@link Builder}
+         */
+        public Builder setWriteBatchSize(final Integer value) {
+            _writeBatchSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of write requests in flight per rollup.
+         * Optional. Defaults to 4.
+         *
+         * @param value the write parallelism
+         * @return this {@link Builder}
+         */
+        public Builder setWriteParallelism(final Integer value) {
+            _writeParallelism = value;
+            return this;
+        }
+
+        @NotNull
+        private KairosDbClient _kairosDbClient;
+        @NotNull
+        private ObjectMapper _mapper;
+        @NotNull
+        @Min(1)
+        private Long _maxResponseSize = 1024L * 1024L * 1024L;
+        @NotNull
+        private ActorSystem _actorSystem;
+        @NotNull
+        private PeriodicMetrics _periodicMetrics;
+        @NotNull
+        @Min(0)
+        private Long _ttlSeconds = 0L;
+        @NotNull
+        @Min(1)
+        private Integer _writeBatchSize = 100;
+        @NotNull
+        @Min(1)
+        private Integer _writeParallelism = 4;
+    }
+}
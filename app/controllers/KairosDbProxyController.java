@@ -16,19 +16,25 @@
 package controllers;
 
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
 import com.arpnetworking.kairos.client.models.Aggregator;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.kairos.service.CborResultsEncoder;
 import com.arpnetworking.kairos.service.DefaultQueryContext;
 import com.arpnetworking.kairos.service.KairosDbService;
+import com.arpnetworking.kairos.service.NdjsonResultsEncoder;
 import com.arpnetworking.kairos.service.QueryContext;
+import com.arpnetworking.kairos.service.QueryCostExceededException;
 import com.arpnetworking.kairos.service.QueryOrigin;
 import com.arpnetworking.play.ProxyClient;
+import com.arpnetworking.play.TypedJsonBodyParser;
 import com.arpnetworking.steno.Logger;
 import com.arpnetworking.steno.LoggerFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
@@ -36,7 +42,11 @@ import com.google.common.collect.ImmutableSet;
 import com.typesafe.config.Config;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
+import play.api.http.HttpConfiguration;
+import play.http.HttpEntity;
+import play.http.HttpErrorHandler;
 import play.libs.ws.WSClient;
+import play.mvc.BodyParser;
 import play.mvc.Controller;
 import play.mvc.Http;
 import play.mvc.Result;
@@ -49,6 +59,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import javax.annotation.Nullable;
 
@@ -114,8 +125,7 @@ public class KairosDbProxyController extends Controller {
      */
     public CompletionStage<Result> tagNames(final Http.Request request) {
         return _kairosService.listTagNames()
-                .<JsonNode>thenApply(_mapper::valueToTree)
-                .thenApply(Results::ok);
+                .thenApply(this::toJsonResult);
     }
 
     /**
@@ -125,13 +135,35 @@ public class KairosDbProxyController extends Controller {
      * @return Proxied tagValues response.
      */
     public CompletionStage<Result> tagValues(final Http.Request request) {
-        return proxy(request);
+        return _kairosService.listTagValues()
+                .thenApply(this::toJsonResult);
     }
 
     private static CompletionStage<Result> noJsonFoundResponse() {
-        return CompletableFuture.completedFuture(Results.badRequest(
-                "no JSON found in request; did you remember to set Content-Type: application/json "
-                        + "in the HTTP header?"));
+        return CompletableFuture.completedFuture(Results.badRequest(TypedJsonBodyParser.NO_JSON_FOUND_MESSAGE));
+    }
+
+    private <T> Optional<T> parseBody(final Http.Request request, final Class<T> type) throws IOException {
+        // Routed requests are bound by a TypedJsonBodyParser; requests whose body
+        // was parsed as JSON elsewhere are converted from the tree
+        final T typed = request.body().as(type);
+        if (typed != null) {
+            return Optional.of(typed);
+        }
+        final JsonNode jsonBody = request.body().asJson();
+        if (jsonBody == null) {
+            return Optional.empty();
+        }
+        return Optional.of(_mapper.treeToValue(jsonBody, type));
+    }
+
+    private Result toJsonResult(final Object value) {
+        // Serialize straight to bytes rather than through an intermediate JsonNode
+        try {
+            return Results.ok(_mapper.writeValueAsBytes(value)).as(Http.MimeTypes.JSON);
+        } catch (final JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
     }
 
     /**
@@ -140,17 +172,16 @@ public class KairosDbProxyController extends Controller {
      * @param request Http.Request being handled.
      * @return Proxied queryTags response.
      */
+    @BodyParser.Of(TagsQueryBodyParser.class)
     public CompletionStage<Result> queryTags(final Http.Request request) {
         try {
-            final JsonNode jsonBody = request.body().asJson();
-            if (jsonBody == null) {
+            final Optional<TagsQuery> tagsQuery = parseBody(request, TagsQuery.class);
+            if (tagsQuery.isEmpty()) {
                 return noJsonFoundResponse();
             }
 
-            final TagsQuery metricsQuery = _mapper.treeToValue(jsonBody, TagsQuery.class);
-            return _kairosService.queryMetricTags(metricsQuery)
-                    .<JsonNode>thenApply(_mapper::valueToTree)
-                    .thenApply(Results::ok);
+            return _kairosService.queryMetricTags(tagsQuery.get())
+                    .thenApply(this::toJsonResult);
         } catch (final IOException e) {
             return CompletableFuture.completedFuture(Results.internalServerError(e.getMessage()));
         }
@@ -158,18 +189,26 @@ public class KairosDbProxyController extends Controller {
 
     /**
      * Proxied queryMetrics call.
+     * <p>
+     * Clients which send {@code Accept: application/x-ndjson} or the query
+     * parameter {@code format=ndjson} receive the results as newline delimited
+     * JSON, one line per result, written as each result arrives from KairosDB.
+     * See {@link NdjsonResultsEncoder} for the format. Clients which send
+     * {@code Accept: application/cbor} or {@code format=cbor} receive the
+     * response encoded as CBOR; see {@link CborResultsEncoder}.
      *
      * @param request Http.Request being handled.
      * @return Proxied queryMetrics response.
      */
+    @BodyParser.Of(MetricsQueryBodyParser.class)
     public CompletionStage<Result> queryMetrics(final Http.Request request) {
         try {
-            final JsonNode jsonBody = request.body().asJson();
-            if (jsonBody == null) {
+            final Optional<MetricsQuery> parsedQuery = parseBody(request, MetricsQuery.class);
+            if (parsedQuery.isEmpty()) {
                 return noJsonFoundResponse();
             }
 
-            MetricsQuery metricsQuery = _mapper.treeToValue(jsonBody, MetricsQuery.class);
+            MetricsQuery metricsQuery = parsedQuery.get();
             if (_requireAggregators
                     && metricsQuery.getMetrics().stream().anyMatch(metric -> metric.getAggregators().isEmpty())) {
                 return CompletableFuture.completedFuture(
@@ -186,14 +225,89 @@ public class KairosDbProxyController extends Controller {
                     .setOrigin(QueryOrigin.EXTERNAL_REQUEST)
                     .build();
 
-            return _kairosService.queryMetrics(context, metricsQuery)
-                    .<JsonNode>thenApply(_mapper::valueToTree)
-                    .thenApply(Results::ok);
+            return _kairosService.queryMetricsStreamed(context, metricsQuery)
+                    .thenApply(response -> toResult(request, response))
+                    .exceptionally(KairosDbProxyController::toErrorResult);
         } catch (final IOException e) {
             return CompletableFuture.completedFuture(Results.internalServerError(e.getMessage()));
         }
     }
 
+    private Result toResult(final Http.Request request, final KairosDbStreamedResponse response) {
+        if (acceptsFormat(request, "ndjson", NdjsonResultsEncoder.MEDIA_TYPE)) {
+            return Results.ok()
+                    .sendEntity(new HttpEntity.Streamed(
+                            response.getDecodedBody().via(NdjsonResultsEncoder.createFlow(_mapper)),
+                            Optional.empty(),
+                            Optional.of(NdjsonResultsEncoder.MEDIA_TYPE)))
+                    .withHeader(Http.HeaderNames.VARY, Http.HeaderNames.ACCEPT);
+        }
+        if (acceptsFormat(request, "cbor", CborResultsEncoder.MEDIA_TYPE)) {
+            return Results.ok()
+                    .sendEntity(new HttpEntity.Streamed(
+                            response.getDecodedBody().via(CborResultsEncoder.createFlow(_mapper)),
+                            Optional.empty(),
+                            Optional.of(CborResultsEncoder.MEDIA_TYPE)))
+                    .withHeader(Http.HeaderNames.VARY, Http.HeaderNames.ACCEPT);
+        }
+        // Forward the body in the encoding KairosDB used when the client accepts it;
+        // otherwise remove the encoding and let the filters compress as they see fit.
+        final Optional<String> encoding = response.getContentEncoding();
+        if (encoding.isPresent() && acceptsEncoding(request, encoding.get())) {
+            return Results.ok()
+                    .sendEntity(new HttpEntity.Streamed(response.getBody(), Optional.empty(), Optional.of(Http.MimeTypes.JSON)))
+                    .withHeader(Http.HeaderNames.CONTENT_ENCODING, encoding.get())
+                    .withHeader(Http.HeaderNames.VARY, Http.HeaderNames.ACCEPT_ENCODING);
+        }
+        return Results.ok()
+                .sendEntity(new HttpEntity.Streamed(response.getDecodedBody(), Optional.empty(), Optional.of(Http.MimeTypes.JSON)));
+    }
+
+    private static Result toErrorResult(final Throwable error) {
+        final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof QueryCostExceededException) {
+            return Results.badRequest(cause.getMessage());
+        }
+        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+    }
+
+    /* package private */ static boolean acceptsFormat(final Http.Request request, final String format, final String mediaType) {
+        if (request.queryString("format").map(format::equalsIgnoreCase).orElse(false)) {
+            return true;
+        }
+        // Only an explicit media range selects the format; wildcards keep the JSON response
+        return request.acceptedTypes()
+                .stream()
+                .anyMatch(range -> mediaType.equalsIgnoreCase(range.mediaType() + "/" + range.mediaSubType()));
+    }
+
+    /* package private */ static boolean acceptsEncoding(final Http.Request request, final String encoding) {
+        final Optional<String> acceptEncoding = request.header(Http.HeaderNames.ACCEPT_ENCODING);
+        if (acceptEncoding.isEmpty()) {
+            return false;
+        }
+        for (final String coding : acceptEncoding.get().split(",")) {
+            final String[] parts = coding.split(";");
+            final String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(encoding) && !"*".equals(name)) {
+                continue;
+            }
+            boolean acceptable = true;
+            for (int i = 1; i < parts.length; ++i) {
+                final String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        acceptable = Double.parseDouble(parameter.substring(2)) > 0;
+                    } catch (final NumberFormatException e) {
+                        acceptable = false;
+                    }
+                }
+            }
+            return acceptable;
+        }
+        return false;
+    }
+
     /* package private */ MetricsQuery clampAggregationPeriod(final MetricsQuery metricsQuery) {
         final List<Metric> newMetrics = new ArrayList<>();
         for (final Metric metric : metricsQuery.getMetrics()) {
@@ -286,8 +400,7 @@ public class KairosDbProxyController extends Controller {
      */
     public CompletionStage<Result> metricNames(@Nullable final String containing, @Nullable final String prefix) {
         return _kairosService.queryMetricNames(Optional.ofNullable(containing), Optional.ofNullable(prefix), _filterRollups)
-                .<JsonNode>thenApply(_mapper::valueToTree)
-                .thenApply(Results::ok);
+                .thenApply(this::toJsonResult);
     }
 
     /**
@@ -317,5 +430,48 @@ public class KairosDbProxyController extends Controller {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KairosDbProxyController.class);
 
+    /**
+     * Binds the body of a metrics query request to a {@link MetricsQuery}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class MetricsQueryBodyParser extends TypedJsonBodyParser<MetricsQuery> {
+        /**
+         * Public constructor.
+         *
+         * @param configuration the http configuration which limits the body size
+         * @param errorHandler the handler used to render parse errors
+         * @param mapper the {@link ObjectMapper} used to bind the body
+         */
+        @Inject
+        public MetricsQueryBodyParser(
+                final HttpConfiguration configuration,
+                final HttpErrorHandler errorHandler,
+                final ObjectMapper mapper) {
+            super(configuration.parser().maxMemoryBuffer(), errorHandler, mapper, MetricsQuery.class);
+        }
+    }
+
+    /**
+     * Binds the body of a tags query request to a {@link TagsQuery}.
+     *
+     * @author agent (agent at local)
+     */
+    public static final class TagsQueryBodyParser extends TypedJsonBodyParser<TagsQuery> {
+        /**
+         * Public constructor.
+         *
+         * @param configuration the http configuration which limits the body size
+         * @param errorHandler the handler used to render parse errors
+         * @param mapper the {@link ObjectMapper} used to bind the body
+         */
+        @Inject
+        public TagsQueryBodyParser(
+                final HttpConfiguration configuration,
+                final HttpErrorHandler errorHandler,
+                final ObjectMapper mapper) {
+            super(configuration.parser().maxMemoryBuffer(), errorHandler, mapper, TagsQuery.class);
+        }
+    }
 }
 
@@ -23,14 +23,26 @@ import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.commons.pekko.GuiceActorCreator;
 import com.arpnetworking.kairos.client.KairosDbClient;
 import com.arpnetworking.kairos.client.KairosDbClientImpl;
+import com.arpnetworking.kairos.client.KairosDbConnectionPool;
+import com.arpnetworking.kairos.client.KairosDbWriteBatchSettings;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.config.MetricsQueryConfig;
 import com.arpnetworking.kairos.config.MetricsQueryConfigImpl;
+import com.arpnetworking.kairos.service.KairosDbMetadataClient;
+import com.arpnetworking.kairos.service.KairosDbRequestScheduler;
 import com.arpnetworking.kairos.service.KairosDbService;
 import com.arpnetworking.kairos.service.KairosDbServiceImpl;
+import com.arpnetworking.kairos.service.MetricNamesCatalog;
+import com.arpnetworking.kairos.service.QueryCoalescer;
+import com.arpnetworking.kairos.service.QueryCostEstimator;
+import com.arpnetworking.kairos.service.QueryFanOut;
+import com.arpnetworking.kairos.service.QueryGuardrail;
 import com.arpnetworking.kairos.service.QueryOrigin;
+import com.arpnetworking.kairos.service.QueryResultCache;
+import com.arpnetworking.kairos.service.QuerySplitter;
+import com.arpnetworking.kairos.service.TagMetadataCache;
 import com.arpnetworking.metrics.MetricsFactory;
 import com.arpnetworking.metrics.Sink;
 import com.arpnetworking.metrics.impl.ApacheHttpSink;
@@ -77,6 +89,7 @@ import com.arpnetworking.rollups.RollupExecutor;
 import com.arpnetworking.rollups.RollupGenerator;
 import com.arpnetworking.rollups.RollupManager;
 import com.arpnetworking.rollups.RollupPartitioner;
+import com.arpnetworking.rollups.RollupWatermarkStore;
 import com.arpnetworking.utility.ConfigTypedProvider;
 import com.datastax.oss.driver.api.core.type.codec.registry.CodecRegistry;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
@@ -85,6 +98,7 @@ import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.module.guice7.GuiceAnnotationIntrospector;
 import com.fasterxml.jackson.module.guice7.GuiceInjectableValues;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.AbstractModule;
@@ -145,6 +159,7 @@ import javax.annotation.Nullable;
  */
 public class MainModule extends AbstractModule {
 
+    // CHECKSTYLE.OFF: MethodLength - All the bindings are listed in one place
     @Override
     protected void configure() {
         bind(Global.class).asEagerSingleton();
@@ -217,8 +232,10 @@ public class MainModule extends AbstractModule {
                 .annotatedWith(Names.named("RollupManager"))
                 .toProvider(RollupManagerProvider.class)
                 .asEagerSingleton();
-        bind(RollupPartitioner.class)
-                .toInstance(new RollupPartitioner());
+        bind(ActorRef.class)
+                .annotatedWith(Names.named("RollupWatermarkStore"))
+                .toProvider(RollupWatermarkStoreProvider.class)
+                .asEagerSingleton();
         bind(ActorRef.class)
                 .annotatedWith(Names.named("RollupExecutor"))
                 .toProvider(RollupExecutorProvider.class)
@@ -242,6 +259,7 @@ public class MainModule extends AbstractModule {
         bind(QueryExecutor.class).to(DelegatingQueryExecutor.class).asEagerSingleton();
         bind(BlockingIOExecutionContext.class).asEagerSingleton();
     }
+    // CHECKSTYLE.ON: MethodLength
 
     @Singleton
     @Provides
@@ -263,6 +281,15 @@ public class MainModule extends AbstractModule {
         return new AlertExecutionContext(defaultAlertSchedule, executor, queryOffset, alertNotifier);
     }
 
+    @Singleton
+    @Provides
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private RollupPartitioner provideRollupPartitioner(final Config config) {
+        return new RollupPartitioner(
+                config.getLong("rollup.partitioner.maxSeriesPerJob"),
+                config.getInt("rollup.partitioner.maxPartitionsPerJob"));
+    }
+
     @Provides
     @Named("RollupReadQueryConsistencyChecker")
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
@@ -372,20 +399,171 @@ public class MainModule extends AbstractModule {
     @Singleton
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
     private KairosDbClient provideKairosDbClient(
+            @Named("UnguardedKairosDbClient") final KairosDbClient client,
             final ActorSystem actorSystem,
-            final ObjectMapper mapper,
             final Config configuration,
             final MetricsFactory metricsFactory
     ) {
+        return createKairosDbMetadataClient(client, actorSystem, configuration, metricsFactory);
+    }
+
+    @Provides
+    @Singleton
+    @Named("UnguardedKairosDbClient")
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private KairosDbClient provideUnguardedKairosDbClient(
+            final ActorSystem actorSystem,
+            final ObjectMapper mapper,
+            final Config configuration,
+            final MetricsFactory metricsFactory,
+            final PeriodicMetrics periodicMetrics
+    ) {
+        final ImmutableList<URI> uris = configuration.getStringList("kairosdb.uris")
+                .stream()
+                .map(URI::create)
+                .collect(ImmutableList.toImmutableList());
+        final ImmutableList.Builder<KairosDbConnectionPool> connectionPools = ImmutableList.builder();
+        for (final URI uri : uris) {
+            final KairosDbConnectionPool connectionPool =
+                    createKairosDbConnectionPool(actorSystem, uri, configuration, periodicMetrics);
+            if (connectionPool != null) {
+                connectionPools.add(connectionPool);
+            }
+        }
+        final Config hedging = configuration.getConfig("kairosdb.hedging");
         return new KairosDbClientImpl.Builder()
                 .setActorSystem(actorSystem)
                 .setMapper(mapper)
-                .setUri(URI.create(configuration.getString("kairosdb.uri")))
+                .setUris(uris)
                 .setReadTimeout(ConfigurationHelper.getFiniteDuration(configuration, "kairosdb.timeout"))
+                .setMaxResponseSize(configuration.getBytes("kairosdb.maxResponseSize"))
+                .setMetricsFactory(metricsFactory)
+                .setConnectionPools(connectionPools.build())
+                .setHedgingEnabled(hedging.getBoolean("enabled"))
+                .setMinHedgeDelay(hedging.getDuration("minDelay"))
+                .setMaxHedgeDelay(hedging.getDuration("maxDelay"))
+                .setWriteBatchSettings(createKairosDbWriteBatchSettings(configuration))
+                .setPeriodicMetrics(periodicMetrics)
+                .build();
+    }
+
+    private static KairosDbClient createKairosDbMetadataClient(
+            final KairosDbClient client,
+            final ActorSystem actorSystem,
+            final Config configuration,
+            final MetricsFactory metricsFactory) {
+        final Config breaker = configuration.getConfig("kairosdb.metadataBreaker");
+        if (!breaker.getBoolean("enabled")) {
+            return client;
+        }
+        return new KairosDbMetadataClient.Builder()
+                .setKairosDbClient(client)
+                .setActorSystem(actorSystem)
                 .setMetricsFactory(metricsFactory)
+                .setMaxFailures(breaker.getInt("maxFailures"))
+                .setCallTimeout(breaker.getDuration("callTimeout"))
+                .setResetTimeout(breaker.getDuration("resetTimeout"))
+                .setMaxResetTimeout(breaker.getDuration("maxResetTimeout"))
+                .setMaxStaleBytes(breaker.getBytes("maxStaleSize"))
+                .build();
+    }
+
+    @Nullable
+    private static KairosDbWriteBatchSettings createKairosDbWriteBatchSettings(final Config configuration) {
+        final Config batching = configuration.getConfig("kairosdb.writeBatching");
+        if (!batching.getBoolean("enabled")) {
+            return null;
+        }
+        return new KairosDbWriteBatchSettings.Builder()
+                .setQueueSize(batching.getInt("queueSize"))
+                .setMaxBatchSeries(batching.getInt("maxBatchSeries"))
+                .setMaxBatchBytes(batching.getBytes("maxBatchBytes"))
+                .setMaxBatchDelay(batching.getDuration("maxBatchDelay"))
+                .setParallelism(batching.getInt("parallelism"))
+                .setMaxRetries(batching.getInt("maxRetries"))
+                .setMinBackoff(batching.getDuration("minBackoff"))
+                .setMaxBackoff(batching.getDuration("maxBackoff"))
                 .build();
     }
 
+    @Nullable
+    private static KairosDbConnectionPool createKairosDbConnectionPool(
+            final ActorSystem actorSystem,
+            final URI uri,
+            final Config configuration,
+            final PeriodicMetrics periodicMetrics) {
+        final Config pool = configuration.getConfig("kairosdb.pool");
+        if (!pool.getBoolean("enabled")) {
+            return null;
+        }
+        return new KairosDbConnectionPool.Builder()
+                .setActorSystem(actorSystem)
+                .setUri(uri)
+                .setPeriodicMetrics(periodicMetrics)
+                .setQueueSize(pool.getInt("queueSize"))
+                .setMaxConnections(pool.hasPath("maxConnections") ? pool.getInt("maxConnections") : null)
+                .setMaxOpenRequests(pool.hasPath("maxOpenRequests") ? pool.getInt("maxOpenRequests") : null)
+                .setPipeliningLimit(pool.hasPath("pipeliningLimit") ? pool.getInt("pipeliningLimit") : null)
+                .setKeepAliveTimeout(pool.hasPath("keepAliveTimeout") ? pool.getDuration("keepAliveTimeout") : null)
+                .setIdleTimeout(pool.hasPath("idleTimeout") ? pool.getDuration("idleTimeout") : null)
+                .setMaxConnectionLifetime(pool.hasPath("maxConnectionLifetime") ? pool.getDuration("maxConnectionLifetime") : null)
+                .build();
+    }
+
+    @Provides
+    @Singleton
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private KairosDbRequestScheduler provideKairosDbRequestScheduler(
+            final KairosDbClient kairosDbClient,
+            final PeriodicMetrics periodicMetrics,
+            final Config configuration
+    ) {
+        final Config concurrency = configuration.getConfig("kairosdb.scheduler.concurrency");
+        final Config queueSize = configuration.getConfig("kairosdb.scheduler.queueSize");
+        return new KairosDbRequestScheduler.Builder()
+                .setKairosDbClient(kairosDbClient)
+                .setPeriodicMetrics(periodicMetrics)
+                .setMaxConcurrency(configuration.getInt("kairosdb.scheduler.maxConcurrency"))
+                .setOriginConcurrency(concurrency.root()
+                        .keySet()
+                        .stream()
+                        .collect(ImmutableMap.toImmutableMap(QueryOrigin::valueOf, concurrency::getInt)))
+                .setOriginQueueSize(queueSize.root()
+                        .keySet()
+                        .stream()
+                        .collect(ImmutableMap.toImmutableMap(QueryOrigin::valueOf, queueSize::getInt)))
+                .build();
+    }
+
+    @Provides
+    @Singleton
+    @Named("RollupKairosDbClient")
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private KairosDbClient provideRollupKairosDbClient(
+            // Rollup discovery queries tags over long ranges, so it bypasses the metadata breaker and its call timeout
+            @Named("UnguardedKairosDbClient") final KairosDbClient kairosDbClient,
+            final Provider<KairosDbRequestScheduler> scheduler,
+            final Config configuration
+    ) {
+        return configuration.getBoolean("kairosdb.scheduler.enabled")
+                ? scheduler.get().forOrigin(QueryOrigin.ROLLUP, kairosDbClient)
+                : kairosDbClient;
+    }
+
+    @Provides
+    @Singleton
+    @Named("ConsistencyCheckKairosDbClient")
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private KairosDbClient provideConsistencyCheckKairosDbClient(
+            final KairosDbClient kairosDbClient,
+            final Provider<KairosDbRequestScheduler> scheduler,
+            final Config configuration
+    ) {
+        return configuration.getBoolean("kairosdb.scheduler.enabled")
+                ? scheduler.get().forOrigin(QueryOrigin.CONSISTENCY_CHECK)
+                : kairosDbClient;
+    }
+
     @Provides
     @Singleton
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
@@ -548,12 +726,16 @@ public class MainModule extends AbstractModule {
     @Singleton
     @Provides
     @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    // CHECKSTYLE.OFF: ParameterNumber
     private KairosDbService provideKairosDbService(
             final KairosDbClient kairosDbClient,
             final MetricsQueryConfig metricsQueryConfig,
             final MetricsFactory metricsFactory,
             @Named("RollupReadQueryConsistencyChecker") final Consumer<MetricsQuery> rewrittenQueryConsumer,
-            final Config configuration
+            final Config configuration,
+            final ObjectMapper mapper,
+            final MetricNamesCatalog metricNamesCatalog,
+            final Provider<KairosDbRequestScheduler> requestScheduler
     ) {
         final ImmutableSet<String> excludedTagNames = ImmutableSet.copyOf(
                 configuration.getStringList("kairosdb.proxy.excludedTagNames"));
@@ -571,14 +753,125 @@ public class MainModule extends AbstractModule {
             rollupOrigins = EnumSet.noneOf(QueryOrigin.class);
         }
 
+        QueryResultCache queryResultCache = null;
+        if (configuration.getBoolean("kairosdb.proxy.resultCache.enabled")) {
+            queryResultCache = new QueryResultCache.Builder()
+                    .setMetricsFactory(metricsFactory)
+                    .setAlignment(configuration.getDuration("kairosdb.proxy.resultCache.alignment"))
+                    .setLiveTtl(configuration.getDuration("kairosdb.proxy.resultCache.liveTtl"))
+                    .setHistoricalTtl(configuration.getDuration("kairosdb.proxy.resultCache.historicalTtl"))
+                    .setHistoricalAfter(configuration.getDuration("kairosdb.proxy.resultCache.historicalAfter"))
+                    .setMaxBytes(configuration.getBytes("kairosdb.proxy.resultCache.maxSize"))
+                    .setMaxEntryBytes(configuration.getBytes("kairosdb.proxy.resultCache.maxEntrySize"))
+                    .build();
+        }
+
+        final EnumSet<QueryOrigin> coalescedOrigins = EnumSet.noneOf(QueryOrigin.class);
+        configuration.getStringList("kairosdb.proxy.coalescing.enabledOrigins")
+                .forEach(origin -> coalescedOrigins.add(QueryOrigin.valueOf(origin)));
+        final QueryCoalescer queryCoalescer = new QueryCoalescer.Builder()
+                .setMaxSharedBytes(configuration.getBytes("kairosdb.proxy.coalescing.maxSharedSize"))
+                .setMaxWait(configuration.getDuration("kairosdb.proxy.coalescing.maxWait"))
+                .build();
+
+        QuerySplitter querySplitter = null;
+        if (configuration.getBoolean("kairosdb.proxy.splitting.enabled")) {
+            querySplitter = new QuerySplitter.Builder()
+                    .setChunkPeriod(configuration.getDuration("kairosdb.proxy.splitting.chunkPeriod"))
+                    .setSettleTime(configuration.getDuration("kairosdb.proxy.splitting.settleTime"))
+                    .setTtl(configuration.getDuration("kairosdb.proxy.splitting.ttl"))
+                    .setMaxDataPoints(configuration.getLong("kairosdb.proxy.splitting.maxDataPoints"))
+                    .setMaxChunks(configuration.getInt("kairosdb.proxy.splitting.maxChunks"))
+                    .setMaxInFlight(configuration.getInt("kairosdb.proxy.splitting.maxInFlight"))
+                    .build();
+        }
+
+        final Config fanOutParallelism = configuration.getConfig("kairosdb.proxy.fanOut.parallelism");
+        final QueryFanOut queryFanOut = new QueryFanOut.Builder()
+                .setParallelism(fanOutParallelism.root()
+                        .keySet()
+                        .stream()
+                        .collect(ImmutableMap.toImmutableMap(QueryOrigin::valueOf, fanOutParallelism::getInt)))
+                .build();
+
         return new KairosDbServiceImpl.Builder()
                 .setKairosDbClient(kairosDbClient)
                 .setMetricsFactory(metricsFactory)
                 .setExcludedTagNames(excludedTagNames)
                 .setMetricsQueryConfig(metricsQueryConfig)
                 .setRewrittenQueryConsumer(rewrittenQueryConsumer)
+                .setMapper(mapper)
                 .setRollupEnabledOrigins(rollupOrigins)
+                .setMetricNamesCatalog(metricNamesCatalog)
+                .setQueryResultCache(queryResultCache)
+                .setTagMetadataCache(createTagMetadataCache(configuration, metricsFactory, mapper))
+                .setQueryCoalescer(queryCoalescer)
+                .setCoalescedOrigins(coalescedOrigins)
+                .setQuerySplitter(querySplitter)
+                .setQueryFanOut(queryFanOut)
+                .setRequestScheduler(configuration.getBoolean("kairosdb.scheduler.enabled") ? requestScheduler.get() : null)
+                .setQueryGuardrail(createQueryGuardrail(configuration, mapper))
+                .build();
+    }
+    // CHECKSTYLE.ON: ParameterNumber
+
+    @Nullable
+    private static TagMetadataCache createTagMetadataCache(
+            final Config configuration,
+            final MetricsFactory metricsFactory,
+            final ObjectMapper mapper) {
+        final Config tagCache = configuration.getConfig("kairosdb.proxy.tagCache");
+        if (!tagCache.getBoolean("enabled")) {
+            return null;
+        }
+        return new TagMetadataCache.Builder()
+                .setMetricsFactory(metricsFactory)
+                .setMapper(mapper)
+                .setBucket(tagCache.getDuration("bucket"))
+                .setTtl(tagCache.getDuration("ttl"))
+                .setMaxStale(tagCache.getDuration("maxStale"))
+                .setMaxBytes(tagCache.getBytes("maxSize"))
+                .setMaxEntryBytes(tagCache.getBytes("maxEntrySize"))
+                .build();
+    }
+
+    @Nullable
+    private static QueryGuardrail createQueryGuardrail(final Config configuration, final ObjectMapper mapper) {
+        final ImmutableSet<QueryOrigin> guardedOrigins = configuration.getStringList("kairosdb.proxy.guardrail.enabledOrigins")
+                .stream()
+                .map(QueryOrigin::valueOf)
+                .collect(ImmutableSet.toImmutableSet());
+        if (guardedOrigins.isEmpty()) {
+            return null;
+        }
+        return new QueryGuardrail.Builder()
+                .setEstimator(ConfigurationHelper.toInstanceMapped(
+                        QueryCostEstimator.class,
+                        mapper,
+                        configuration.getConfig("kairosdb.proxy.guardrail.estimator")))
+                .setMaxDataPoints(configuration.getLong("kairosdb.proxy.guardrail.maxDataPoints"))
+                .setAction(configuration.getEnum(QueryGuardrail.Action.class, "kairosdb.proxy.guardrail.action"))
+                .setEnabledOrigins(guardedOrigins)
+                .build();
+    }
+
+    @Singleton
+    @Provides
+    @SuppressFBWarnings("UPM_UNCALLED_PRIVATE_METHOD") // Invoked reflectively by Guice
+    private MetricNamesCatalog provideMetricNamesCatalog(
+            final KairosDbClient kairosDbClient,
+            final MetricsFactory metricsFactory,
+            final ActorSystem actorSystem,
+            final Config configuration
+    ) {
+        final MetricNamesCatalog catalog = new MetricNamesCatalog.Builder()
+                .setKairosDbClient(kairosDbClient)
+                .setMetricsFactory(metricsFactory)
+                .setActorSystem(actorSystem)
+                .setRefreshInterval(configuration.getDuration("kairosdb.proxy.metricNames.refreshInterval"))
                 .build();
+        catalog.start();
+        return catalog;
     }
 
     @Named("RollupGeneratorTagger")
@@ -1025,16 +1318,19 @@ public class MainModule extends AbstractModule {
         private final MetricsFactory _metricsFactory;
         private final RollupPartitioner _partitioner;
         private final ActorRef _consistencyChecker;
+        private final ActorRef _watermarkStore;
         private final Config _config;
         static final String ROLLUP_MANAGER_ROLE = "rollup_manager";
 
         @Inject
+        // CHECKSTYLE.OFF: ParameterNumber
         RollupManagerProvider(
                 final ActorSystem system,
                 final PeriodicMetrics periodicMetrics,
                 final MetricsFactory metricsFactory,
                 final RollupPartitioner partitioner,
                 @Named("RollupConsistencyChecker") final ActorRef consistencyChecker,
+                @Named("RollupWatermarkStore") final ActorRef watermarkStore,
                 final Config config,
                 final Features features
         ) {
@@ -1043,8 +1339,10 @@ public class MainModule extends AbstractModule {
             _metricsFactory = metricsFactory;
             _partitioner = partitioner;
             _consistencyChecker = consistencyChecker;
+            _watermarkStore = watermarkStore;
             _config = config;
         }
+        // CHECKSTYLE.ON: ParameterNumber
 
         @Override
         public Props getProps() {
@@ -1053,7 +1351,37 @@ public class MainModule extends AbstractModule {
                     _metricsFactory,
                     _partitioner,
                     _consistencyChecker,
-                    _config.getDouble("rollup.manager.consistency_check_fraction_of_writes")
+                    _watermarkStore,
+                    _config
+            );
+        }
+    }
+
+    private static final class RollupWatermarkStoreProvider extends ClusterSingletonProvider {
+        private final PeriodicMetrics _periodicMetrics;
+        private final Config _config;
+
+        @Inject
+        RollupWatermarkStoreProvider(
+                final ActorSystem system,
+                final PeriodicMetrics periodicMetrics,
+                final Config config,
+                final Features features
+        ) {
+            super(
+                    system,
+                    features.isRollupsEnabled() && config.getBoolean("rollup.watermarks.enabled"),
+                    RollupManagerProvider.ROLLUP_MANAGER_ROLE,
+                    "rollup-watermark-store");
+            _periodicMetrics = periodicMetrics;
+            _config = config;
+        }
+
+        @Override
+        public Props getProps() {
+            return RollupWatermarkStore.props(
+                    _periodicMetrics,
+                    ConfigurationHelper.getJavaDuration(_config, "rollup.watermarks.snapshotInterval")
             );
         }
     }
@@ -1158,7 +1486,7 @@ public class MainModule extends AbstractModule {
         @Inject
         RollupConsistencyCheckerProvider(
                 final ActorSystem system,
-                final KairosDbClient kairosDbClient,
+                @Named("ConsistencyCheckKairosDbClient") final KairosDbClient kairosDbClient,
                 final MetricsFactory metricsFactory,
                 final PeriodicMetrics periodicMetrics,
                 final Config configuration
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.common.collect.ImmutableList;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.http.javadsl.Http;
+import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.japi.Pair;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KairosDbBackendRouter}.
+ *
+ * @author agent (agent at local)
+ */
+public class KairosDbBackendRouterTest {
+    @Rule
+    public WireMockRule _first = new WireMockRule(wireMockConfig().dynamicPort());
+    @Rule
+    public WireMockRule _second = new WireMockRule(wireMockConfig().dynamicPort());
+
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _metrics = Mockito.mock(Metrics.class);
+        _metricsFactory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(_metricsFactory.create()).thenReturn(_metrics);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testHedgesSlowRead() throws Exception {
+        stub(_first, 200, 3000);
+        stub(_second, 200, 0);
+        final KairosDbBackendRouter router = newRouter(true);
+
+        final long start = System.nanoTime();
+        final Pair<HttpResponse, URI> response = await(router.send(HttpRequest.GET(PATH), true));
+        assertEquals(URI.create(_second.baseUrl()), response.second());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        Mockito.verify(_metrics).incrementCounter("kairosClient/hedge/sent", 1);
+        Mockito.verify(_metrics).incrementCounter("kairosClient/hedge/won", 1);
+    }
+
+    @Test
+    public void testDoesNotHedgeNonIdempotentRequest() throws Exception {
+        stub(_first, 200, 500);
+        stub(_second, 200, 0);
+        final KairosDbBackendRouter router = newRouter(true);
+
+        final Pair<HttpResponse, URI> response = await(router.send(HttpRequest.GET(PATH), false));
+        assertEquals(URI.create(_first.baseUrl()), response.second());
+        _second.verify(0, getRequestedFor(urlEqualTo(PATH)));
+        Mockito.verifyNoInteractions(_metricsFactory);
+    }
+
+    @Test
+    public void testPrefersLeastOutstanding() throws Exception {
+        stub(_first, 200, 500);
+        stub(_second, 200, 500);
+        final KairosDbBackendRouter router = newRouter(false);
+
+        final CompletionStage<Pair<HttpResponse, URI>> first = router.send(HttpRequest.GET(PATH), true);
+        final CompletionStage<Pair<HttpResponse, URI>> second = router.send(HttpRequest.GET(PATH), true);
+        assertEquals(URI.create(_first.baseUrl()), await(first).second());
+        assertEquals(URI.create(_second.baseUrl()), await(second).second());
+    }
+
+    @Test
+    public void testAvoidsUnhealthyNode() throws Exception {
+        stub(_first, 503, 0);
+        stub(_second, 200, 0);
+        final KairosDbBackendRouter router = newRouter(false);
+
+        for (int i = 0; i < KairosDbBackend.FAILURE_THRESHOLD; ++i) {
+            final Pair<HttpResponse, URI> response = await(router.send(HttpRequest.GET(PATH), true));
+            assertEquals(URI.create(_first.baseUrl()), response.second());
+        }
+        final Pair<HttpResponse, URI> response = await(router.send(HttpRequest.GET(PATH), true));
+        assertEquals(URI.create(_second.baseUrl()), response.second());
+        assertEquals(200, response.first().status().intValue());
+    }
+
+    private void stub(final WireMockRule server, final int status, final int delayMillis) {
+        server.givenThat(get(urlEqualTo(PATH))
+                .willReturn(aResponse().withStatus(status).withBody("{\"results\":[]}").withFixedDelay(delayMillis)));
+    }
+
+    private Pair<HttpResponse, URI> await(final CompletionStage<Pair<HttpResponse, URI>> stage) throws Exception {
+        final Pair<HttpResponse, URI> response = stage.toCompletableFuture().get(10, TimeUnit.SECONDS);
+        response.first().discardEntityBytes(_actorSystem);
+        return response;
+    }
+
+    private KairosDbBackendRouter newRouter(final boolean hedgingEnabled) {
+        final Http http = Http.get(_actorSystem);
+        return new KairosDbBackendRouter(
+                ImmutableList.of(
+                        new KairosDbBackend(URI.create(_first.baseUrl()), null, http),
+                        new KairosDbBackend(URI.create(_second.baseUrl()), null, http)),
+                hedgingEnabled,
+                Duration.ofMillis(10),
+                Duration.ofMillis(100),
+                _actorSystem,
+                _metricsFactory);
+    }
+
+    private ActorSystem _actorSystem;
+    private Metrics _metrics;
+    private MetricsFactory _metricsFactory;
+
+    private static final String PATH = "/api/v1/metricnames";
+}
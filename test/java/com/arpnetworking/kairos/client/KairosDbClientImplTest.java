@@ -16,7 +16,9 @@
 package com.arpnetworking.kairos.client;
 
 import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.DataPoint;
 import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
 import com.arpnetworking.kairos.client.models.MetricTags;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
@@ -26,30 +28,40 @@ import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.testing.SerializationTestUtils;
 import com.arpnetworking.utility.test.ResourceHelper;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
 import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.After;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.Mockito;
 import scala.concurrent.duration.FiniteDuration;
 
 import java.net.URI;
 import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 
@@ -137,6 +149,55 @@ public class KairosDbClientImplTest {
         );
     }
 
+    @Test
+    public void testQueryMetricStreamed() throws Exception {
+        _wireMock.givenThat(
+                post(urlEqualTo(KairosDbClientImpl.METRICS_QUERY_PATH.toString()))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBody(ResourceHelper.loadResource(getClass(), "testQueryMetric.response"))
+                        )
+        );
+
+        final KairosDbStreamedResponse response = _kairosDbClient.queryMetricsStreamed(new MetricsQuery.Builder()
+                .setStartTime(Instant.parse("2019-02-01T00:00:00Z"))
+                .setMetrics(ImmutableList.of(new Metric.Builder().setName("metric.name").build()))
+                .build()
+        ).toCompletableFuture().get();
+
+        final ByteString body = response.getDecodedBody()
+                .runFold(ByteString.emptyByteString(), ByteString::concat, Materializer.createMaterializer(_actorSystem))
+                .toCompletableFuture()
+                .get();
+        SerializationTestUtils.assertJsonEquals(
+                ResourceHelper.loadResource(getClass(), "testQueryMetric.response"),
+                body.utf8String()
+        );
+    }
+
+    @Test
+    public void testQueryMetricStreamedFailure() throws Exception {
+        _wireMock.givenThat(
+                post(urlEqualTo(KairosDbClientImpl.METRICS_QUERY_PATH.toString()))
+                        .willReturn(aResponse()
+                                .withStatus(400)
+                                .withBody("bad query"))
+        );
+
+        try {
+            _kairosDbClient.queryMetricsStreamed(new MetricsQuery.Builder()
+                    .setStartTime(Instant.parse("2019-02-01T00:00:00Z"))
+                    .setMetrics(ImmutableList.of(new Metric.Builder().setName("metric.name").build()))
+                    .build()
+            ).toCompletableFuture().get();
+            Assert.fail("Expected exception");
+        } catch (final ExecutionException e) {
+            MatcherAssert.assertThat(
+                    Throwables.getRootCause(e),
+                    Matchers.instanceOf(KairosDbRequestException.class));
+        }
+    }
+
     @Test
     public void testQueryMetricTags() throws Exception {
         _wireMock.givenThat(
@@ -182,4 +243,64 @@ public class KairosDbClientImplTest {
                 OBJECT_MAPPER.writeValueAsString(response)
         );
     }
+
+    @Test
+    public void testAddDataPointsBatched() throws Exception {
+        _wireMock.givenThat(
+                post(urlEqualTo(KairosDbClientImpl.ADD_DATA_POINTS_PATH.toString()))
+                        .willReturn(aResponse().withStatus(204))
+        );
+        final KairosDbClientImpl client = new KairosDbClientImpl.Builder()
+                .setUri(_baseURI)
+                .setActorSystem(_actorSystem)
+                .setMapper(OBJECT_MAPPER)
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setWriteBatchSettings(new KairosDbWriteBatchSettings.Builder().build())
+                .setPeriodicMetrics(Mockito.mock(PeriodicMetrics.class))
+                .build();
+
+        final MetricDataPoints metricDataPoints = new MetricDataPoints.Builder()
+                .setName("metric.name")
+                .setDatapoints(ImmutableList.of(new DataPoint.Builder().setTime(Instant.EPOCH).setValue(1).build()))
+                .build();
+        CompletableFuture.allOf(
+                client.addDataPoints(ImmutableList.of(metricDataPoints)).toCompletableFuture(),
+                client.addDataPoints(ImmutableList.of(metricDataPoints)).toCompletableFuture()
+        ).get(10, TimeUnit.SECONDS);
+
+        _wireMock.verify(1, postRequestedFor(urlEqualTo(KairosDbClientImpl.ADD_DATA_POINTS_PATH.toString()))
+                .withHeader("Content-Type", equalTo("application/gzip")));
+    }
+
+    @Test
+    public void testQueryMetricResponseTooLarge() throws Exception {
+        _wireMock.givenThat(
+                post(urlEqualTo(KairosDbClientImpl.METRICS_QUERY_PATH.toString()))
+                        .willReturn(aResponse()
+                                .withHeader("Content-Type", "application/json")
+                                .withBody(ResourceHelper.loadResource(getClass(), "testQueryMetric.response"))
+                        )
+        );
+        final KairosDbClientImpl client = new KairosDbClientImpl.Builder()
+                .setUri(_baseURI)
+                .setActorSystem(_actorSystem)
+                .setMapper(OBJECT_MAPPER)
+                .setReadTimeout(new FiniteDuration(30, TimeUnit.SECONDS))
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setMaxResponseSize(64L)
+                .build();
+
+        try {
+            client.queryMetrics(new MetricsQuery.Builder()
+                    .setStartTime(Instant.parse("2019-02-01T00:00:00Z"))
+                    .setMetrics(ImmutableList.of(new Metric.Builder().setName("metric.name").build()))
+                    .build()
+            ).toCompletableFuture().get();
+            Assert.fail("Expected exception");
+        } catch (final ExecutionException e) {
+            MatcherAssert.assertThat(
+                    Throwables.getRootCause(e),
+                    Matchers.instanceOf(KairosDbResponseTooLargeException.class));
+        }
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.http.javadsl.model.HttpRequest;
+import org.apache.pekko.http.javadsl.model.HttpResponse;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link KairosDbConnectionPool}.
+ *
+ * @author agent (agent at local)
+ */
+public class KairosDbConnectionPoolTest {
+    @Rule
+    public WireMockRule _wireMock = new WireMockRule(wireMockConfig().dynamicPort());
+
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _periodicMetrics = Mockito.mock(PeriodicMetrics.class);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testSendsAndRecordsMetrics() throws Exception {
+        _wireMock.givenThat(get(urlEqualTo("/api/v1/metricnames")).willReturn(aResponse().withBody("{\"results\":[]}")));
+        final KairosDbConnectionPool pool = newPool(16);
+
+        for (int i = 0; i < 3; ++i) {
+            final HttpResponse response = pool.send(HttpRequest.GET(_wireMock.baseUrl() + "/api/v1/metricnames"))
+                    .toCompletableFuture()
+                    .get(10, TimeUnit.SECONDS);
+            assertEquals(200, response.status().intValue());
+            response.entity().toStrict(10000, Materializer.matFromSystem(_actorSystem)).toCompletableFuture().get();
+        }
+
+        final String prefix = "kairosClient/pool/localhost_" + _wireMock.port();
+        Mockito.verify(_periodicMetrics, Mockito.times(3))
+                .recordTimer(Mockito.eq(prefix + "/queue_wait"), Mockito.anyLong(), Mockito.any());
+
+        final PeriodicMetrics polled = Mockito.mock(PeriodicMetrics.class);
+        pollGauges(polled);
+        Mockito.verify(polled).recordGauge(prefix + "/queued", 0L);
+        Mockito.verify(polled).recordGauge(prefix + "/in_flight", 0L);
+        // Requests are sent one after another so the connection is reused
+        Mockito.verify(polled).recordGauge(prefix + "/open_connections", 1L);
+        Mockito.verify(polled).recordCounter(prefix + "/connections_opened", 1L);
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        _wireMock.givenThat(get(urlEqualTo("/api/v1/metricnames"))
+                .willReturn(aResponse().withBody("{\"results\":[]}").withFixedDelay(500)));
+        final KairosDbConnectionPool pool = newPool(1);
+
+        final List<CompletableFuture<HttpResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            responses.add(pool.send(HttpRequest.GET("/api/v1/metricnames")).toCompletableFuture());
+        }
+
+        int rejected = 0;
+        for (final CompletableFuture<HttpResponse> response : responses) {
+            try {
+                response.get(10, TimeUnit.SECONDS).discardEntityBytes(_actorSystem);
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+                ++rejected;
+            }
+        }
+        assertTrue(rejected > 0);
+        Mockito.verify(_periodicMetrics, Mockito.times(rejected))
+                .recordCounter("kairosClient/pool/localhost_" + _wireMock.port() + "/rejected", 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pollGauges(final PeriodicMetrics polled) {
+        final ArgumentCaptor<Consumer<PeriodicMetrics>> captor = ArgumentCaptor.forClass(Consumer.class);
+        Mockito.verify(_periodicMetrics).registerPolledMetric(captor.capture());
+        captor.getValue().accept(polled);
+    }
+
+    private KairosDbConnectionPool newPool(final int queueSize) {
+        return new KairosDbConnectionPool.Builder()
+                .setActorSystem(_actorSystem)
+                .setUri(URI.create(_wireMock.baseUrl()))
+                .setPeriodicMetrics(_periodicMetrics)
+                .setQueueSize(queueSize)
+                .setMaxConnections(1)
+                .setMaxOpenRequests(1)
+                .setPipeliningLimit(1)
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private PeriodicMetrics _periodicMetrics;
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.kairos.client.models.DataPoint;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link KairosDbWriteBatcher}.
+ *
+ * @author agent (agent at local)
+ */
+public class KairosDbWriteBatcherTest {
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _periodicMetrics = Mockito.mock(PeriodicMetrics.class);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testBatchesWritesAcrossCallers() throws Exception {
+        final List<ByteString> bodies = new CopyOnWriteArrayList<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                new KairosDbWriteBatchSettings.Builder().setMaxBatchDelay(Duration.ofMillis(200)).build(),
+                body -> {
+                    bodies.add(body);
+                    return CompletableFuture.completedFuture(null);
+                });
+
+        final CompletionStage<Void> first = batcher.write(ImmutableList.of(series("a"), series("b")));
+        final CompletionStage<Void> second = batcher.write(ImmutableList.of(series("c")));
+        first.toCompletableFuture().get(10, TimeUnit.SECONDS);
+        second.toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        assertEquals(1, bodies.size());
+        final JsonNode batch = OBJECT_MAPPER.readTree(new GZIPInputStream(new ByteArrayInputStream(bodies.get(0).toArray())));
+        assertEquals(3, batch.size());
+        assertEquals("a", batch.get(0).get("name").asText());
+        assertEquals("c", batch.get(2).get("name").asText());
+        Mockito.verify(_periodicMetrics).recordGauge("kairosClient/write/batch_series", 3);
+    }
+
+    @Test
+    public void testSplitsBatchesBySeries() throws Exception {
+        final List<ByteString> bodies = new CopyOnWriteArrayList<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                new KairosDbWriteBatchSettings.Builder().setMaxBatchSeries(2).setMaxBatchDelay(Duration.ofSeconds(5)).build(),
+                body -> {
+                    bodies.add(body);
+                    return CompletableFuture.completedFuture(null);
+                });
+
+        batcher.write(ImmutableList.of(series("a"), series("b"), series("c"), series("d")))
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(2, bodies.size());
+    }
+
+    @Test
+    public void testRetriesServerErrors() throws Exception {
+        final List<ByteString> bodies = new CopyOnWriteArrayList<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                fastRetries(),
+                body -> {
+                    bodies.add(body);
+                    return bodies.size() == 1
+                            ? CompletableFuture.failedFuture(requestException(503))
+                            : CompletableFuture.completedFuture(null);
+                });
+
+        batcher.write(ImmutableList.of(series("a"))).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertEquals(2, bodies.size());
+        assertEquals(bodies.get(0), bodies.get(1));
+        Mockito.verify(_periodicMetrics).recordCounter("kairosClient/write/retried", 1);
+    }
+
+    @Test
+    public void testDoesNotRetryClientErrors() throws Exception {
+        final List<ByteString> bodies = new CopyOnWriteArrayList<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                fastRetries(),
+                body -> {
+                    bodies.add(body);
+                    return CompletableFuture.failedFuture(requestException(400));
+                });
+
+        try {
+            batcher.write(ImmutableList.of(series("a"), series("b"))).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof KairosDbRequestException);
+        }
+        assertEquals(1, bodies.size());
+        Mockito.verify(_periodicMetrics).recordCounter("kairosClient/write/failed", 2);
+    }
+
+    @Test
+    public void testIsolatesWritesAfterClientError() throws Exception {
+        final List<ByteString> bodies = new CopyOnWriteArrayList<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                new KairosDbWriteBatchSettings.Builder().setMaxBatchDelay(Duration.ofMillis(200)).build(),
+                body -> {
+                    bodies.add(body);
+                    return containsSeries(body, "bad")
+                            ? CompletableFuture.failedFuture(requestException(400))
+                            : CompletableFuture.completedFuture(null);
+                });
+
+        final CompletionStage<Void> good = batcher.write(ImmutableList.of(series("a"), series("b")));
+        final CompletionStage<Void> bad = batcher.write(ImmutableList.of(series("bad")));
+        good.toCompletableFuture().get(10, TimeUnit.SECONDS);
+        try {
+            bad.toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof KairosDbRequestException);
+        }
+
+        assertEquals(3, bodies.size());
+        Mockito.verify(_periodicMetrics).recordCounter("kairosClient/write/isolated", 1);
+        Mockito.verify(_periodicMetrics).recordCounter("kairosClient/write/failed", 1);
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        final CompletableFuture<Void> blocked = new CompletableFuture<>();
+        final KairosDbWriteBatcher batcher = newBatcher(
+                new KairosDbWriteBatchSettings.Builder()
+                        .setQueueSize(1)
+                        .setMaxBatchSeries(1)
+                        .setParallelism(1)
+                        .build(),
+                body -> blocked);
+
+        final List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            writes.add(batcher.write(ImmutableList.of(series("a"))).toCompletableFuture());
+        }
+        int rejected = 0;
+        for (final CompletableFuture<Void> write : writes) {
+            if (write.isCompletedExceptionally()) {
+                try {
+                    write.get();
+                } catch (final ExecutionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    ++rejected;
+                }
+            }
+        }
+        assertTrue(rejected > 0);
+        Mockito.verify(_periodicMetrics, Mockito.times(rejected)).recordCounter("kairosClient/write/dropped", 1);
+        blocked.complete(null);
+    }
+
+    private KairosDbWriteBatcher newBatcher(
+            final KairosDbWriteBatchSettings settings,
+            final Function<ByteString, CompletionStage<Void>> writer) {
+        return new KairosDbWriteBatcher(settings, writer, OBJECT_MAPPER, _actorSystem, _periodicMetrics);
+    }
+
+    private static KairosDbWriteBatchSettings fastRetries() {
+        return new KairosDbWriteBatchSettings.Builder()
+                .setMaxBatchDelay(Duration.ofMillis(10))
+                .setMinBackoff(Duration.ofMillis(10))
+                .setMaxBackoff(Duration.ofMillis(50))
+                .build();
+    }
+
+    private static boolean containsSeries(final ByteString body, final String name) {
+        try {
+            final JsonNode batch = OBJECT_MAPPER.readTree(new GZIPInputStream(new ByteArrayInputStream(body.toArray())));
+            for (final JsonNode series : batch) {
+                if (name.equals(series.get("name").asText())) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static KairosDbRequestException requestException(final int status) {
+        return new KairosDbRequestException(status, "error", URI.create("http://localhost/api/v1/datapoints"), Duration.ZERO);
+    }
+
+    private static MetricDataPoints series(final String name) {
+        return new MetricDataPoints.Builder()
+                .setName(name)
+                .setDatapoints(ImmutableList.of(new DataPoint.Builder().setTime(Instant.EPOCH).setValue(1).build()))
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private PeriodicMetrics _periodicMetrics;
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
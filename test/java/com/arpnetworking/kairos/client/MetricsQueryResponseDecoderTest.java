@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client;
+
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pekko.util.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link MetricsQueryResponseDecoder}.
+ *
+ * @author agent (agent at local)
+ */
+public class MetricsQueryResponseDecoderTest {
+
+    @Test
+    public void testDecodeInSmallChunks() throws IOException {
+        final String json = ResourceHelper.loadResource(KairosDbClientImplTest.class, "testQueryMetric.response");
+        final MetricsQueryResponse response = decode(json, 7);
+
+        SerializationTestUtils.assertJsonEquals(json, OBJECT_MAPPER.writeValueAsString(response));
+        Assert.assertEquals(OBJECT_MAPPER.readValue(json, MetricsQueryResponse.class), response);
+    }
+
+    @Test
+    public void testDecodeTagsResponse() throws IOException {
+        final String json = ResourceHelper.loadResource(KairosDbClientImplTest.class, "testQueryMetricTags.response");
+        final MetricsQueryResponse response = decode(json, 1);
+
+        SerializationTestUtils.assertJsonEquals(json, OBJECT_MAPPER.writeValueAsString(response));
+    }
+
+    @Test
+    public void testDecodeToResultConsumer() throws IOException {
+        final String json = ResourceHelper.loadResource(KairosDbClientImplTest.class, "testQueryMetric.response");
+        final MetricsQueryResponse expected = OBJECT_MAPPER.readValue(json, MetricsQueryResponse.class);
+        final List<MetricsQueryResponse.QueryResult> results = new ArrayList<>();
+        final MetricsQueryResponseDecoder decoder = new MetricsQueryResponseDecoder(OBJECT_MAPPER, Long.MAX_VALUE, results::add);
+        decoder.feed(ByteString.fromString(json, StandardCharsets.UTF_8));
+        final MetricsQueryResponse response = decoder.finish();
+
+        Assert.assertEquals(expected.getQueries().get(0).getResults(), results);
+        Assert.assertTrue(response.getQueries().get(0).getResults().isEmpty());
+    }
+
+    @Test
+    public void testDecodeEmptyBody() throws IOException {
+        Assert.assertNull(decode("", 16));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeTruncated() throws IOException {
+        final String json = ResourceHelper.loadResource(KairosDbClientImplTest.class, "testQueryMetric.response");
+        decode(json.substring(0, json.length() / 2), 16);
+    }
+
+    @Test(expected = KairosDbResponseTooLargeException.class)
+    public void testDecodeTooLarge() throws IOException {
+        final String json = ResourceHelper.loadResource(KairosDbClientImplTest.class, "testQueryMetric.response");
+        final MetricsQueryResponseDecoder decoder = new MetricsQueryResponseDecoder(OBJECT_MAPPER, 32);
+        decoder.feed(ByteString.fromString(json, StandardCharsets.UTF_8));
+    }
+
+    private static MetricsQueryResponse decode(final String json, final int chunkSize) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        final MetricsQueryResponseDecoder decoder = new MetricsQueryResponseDecoder(OBJECT_MAPPER, Long.MAX_VALUE);
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            decoder.feed(ByteString.fromArray(bytes, offset, Math.min(chunkSize, bytes.length - offset)));
+        }
+        return decoder.finish();
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
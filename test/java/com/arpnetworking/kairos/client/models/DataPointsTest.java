@@ -0,0 +1,154 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client.models;
+
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tests for {@link DataPoints}.
+ *
+ * @author agent (agent at local)
+ */
+public final class DataPointsTest {
+
+    @Test
+    public void testTranslationLosesNothing() throws Exception {
+        SerializationTestUtils.assertTranslationLosesNothing(
+                ResourceHelper.loadResource(getClass(), "testTranslationLosesNothing"),
+                DataPoints.class
+        );
+    }
+
+    @Test
+    public void testColumnarMatchesBoxed() throws Exception {
+        final String json = ResourceHelper.loadResource(getClass(), "testTranslationLosesNothing");
+        final DataPoints dataPoints = OBJECT_MAPPER.readValue(json, DataPoints.class);
+        final ImmutableList<DataPoint> boxed = OBJECT_MAPPER.readValue(
+                json,
+                new TypeReference<ImmutableList<DataPoint>>() { });
+
+        Assert.assertEquals(boxed, dataPoints.asList());
+        Assert.assertEquals(DataPoints.of(boxed), dataPoints);
+        Assert.assertEquals(DataPoints.of(boxed).hashCode(), dataPoints.hashCode());
+    }
+
+    @Test
+    public void testAccessors() throws Exception {
+        final DataPoints dataPoints = OBJECT_MAPPER.readValue(
+                ResourceHelper.loadResource(getClass(), "testTranslationLosesNothing"),
+                DataPoints.class);
+
+        Assert.assertEquals(7, dataPoints.size());
+        Assert.assertEquals(1570643795000L, dataPoints.getTimeMillis(0));
+        Assert.assertEquals(Instant.ofEpochMilli(1570643796000L), dataPoints.getTime(1));
+
+        Assert.assertTrue(dataPoints.isNumeric(0));
+        Assert.assertEquals(1.23, dataPoints.getDouble(0), 0.0);
+        Assert.assertEquals(Optional.of(1.23), dataPoints.getValue(0));
+
+        Assert.assertTrue(dataPoints.isNumeric(1));
+        Assert.assertEquals(Optional.of(123), dataPoints.getValue(1));
+
+        Assert.assertTrue(dataPoints.isNumeric(2));
+        Assert.assertEquals(Optional.of(4294967296L), dataPoints.getValue(2));
+
+        Assert.assertFalse(dataPoints.isNumeric(3));
+        Assert.assertEquals(Optional.of(9007199254740993L), dataPoints.getValue(3));
+
+        Assert.assertFalse(dataPoints.isNumeric(4));
+        Assert.assertEquals(Optional.empty(), dataPoints.getValue(4));
+
+        Assert.assertFalse(dataPoints.isNumeric(5));
+        Assert.assertEquals(Optional.of("foo"), dataPoints.getValue(5));
+
+        Assert.assertFalse(dataPoints.isNumeric(6));
+        Assert.assertTrue(dataPoints.getValue(6).get() instanceof Map);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGetDoubleNotNumeric() {
+        new DataPoints.Builder()
+                .addObject(1570643795000L, "foo")
+                .build()
+                .getDouble(0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIndexOutOfBounds() {
+        new DataPoints.Builder()
+                .addDouble(1570643795000L, 1.0)
+                .build()
+                .getTimeMillis(1);
+    }
+
+    @Test
+    public void testBuilderGrows() {
+        final DataPoints.Builder builder = new DataPoints.Builder(1);
+        for (int i = 0; i < 100; ++i) {
+            if (i % 10 == 0) {
+                builder.addObject(i, "value" + i);
+            } else {
+                builder.addLong(i, i);
+            }
+        }
+        final DataPoints dataPoints = builder.build();
+        Assert.assertEquals(100, dataPoints.size());
+        Assert.assertEquals(Optional.of("value90"), dataPoints.getValue(90));
+        Assert.assertEquals(99.0, dataPoints.getDouble(99), 0.0);
+        Assert.assertEquals(99L, dataPoints.getTimeMillis(99));
+    }
+
+    @Test
+    public void testConcat() {
+        final DataPoints first = new DataPoints.Builder()
+                .addLong(1L, 1)
+                .addObject(2L, "two")
+                .build();
+        final DataPoints second = new DataPoints.Builder()
+                .addDouble(3L, 3.5)
+                .addLong(4L, 4)
+                .build();
+
+        final DataPoints dataPoints = DataPoints.concat(ImmutableList.of(first, DataPoints.empty(), second));
+        Assert.assertEquals(
+                ImmutableList.builder().addAll(first.asList()).addAll(second.asList()).build(),
+                dataPoints.asList());
+        Assert.assertTrue(dataPoints.isNumeric(3));
+        Assert.assertFalse(dataPoints.isNumeric(1));
+        Assert.assertEquals(Optional.of(4), dataPoints.getValue(3));
+        Assert.assertEquals(DataPoints.empty(), DataPoints.concat(ImmutableList.of(DataPoints.empty())));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        Assert.assertTrue(DataPoints.empty().isEmpty());
+        Assert.assertEquals(DataPoints.empty(), OBJECT_MAPPER.readValue("[]", DataPoints.class));
+        Assert.assertEquals(DataPoints.empty(), DataPoints.of(ImmutableList.of()));
+        Assert.assertEquals(ImmutableList.of(), DataPoints.empty().asList());
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.client.models;
+
+import com.arpnetworking.commons.test.BuildableTestHelper;
+import com.arpnetworking.commons.test.EqualityTestHelper;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Tests for {@link TagValuesResponse}.
+ *
+ * @author agent (agent at local)
+ */
+public final class TagValuesResponseTest {
+
+    @Test
+    public void testTranslationLosesNothing() throws Exception {
+        SerializationTestUtils.assertTranslationLosesNothing(
+                ResourceHelper.loadResource(getClass(), "testTranslationLosesNothing"),
+                TagValuesResponse.class
+        );
+    }
+
+    @Test
+    public void testBuilder() throws InvocationTargetException, IllegalAccessException {
+        BuildableTestHelper.testBuild(
+                new TagValuesResponse.Builder()
+                        .setResults(ImmutableSet.of("value1"))
+                        .setOtherArgs(ImmutableMap.of("foo", "bar")),
+                TagValuesResponse.class);
+    }
+
+    @Test
+    public void testBuilderReset() throws Exception {
+        com.arpnetworking.commons.test.ThreadLocalBuildableTestHelper.testReset(
+                new TagValuesResponse.Builder()
+                        .setResults(ImmutableSet.of("value1"))
+                        .setOtherArgs(ImmutableMap.of("foo", "bar"))
+        );
+    }
+
+    @Test
+    public void testEquality() throws InvocationTargetException, IllegalAccessException {
+        EqualityTestHelper.testEquality(
+                new TagValuesResponse.Builder()
+                        .setResults(ImmutableSet.of("value1"))
+                        .setOtherArgs(ImmutableMap.of("foo", "bar")),
+                new TagValuesResponse.Builder()
+                        .setResults(ImmutableSet.of("value2"))
+                        .setOtherArgs(ImmutableMap.of("foo2", "bar2")),
+                TagValuesResponse.class);
+    }
+}
@@ -32,6 +32,7 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 
 /**
  * Unit tests for {@link MetricsQueryConfigImpl}.
@@ -124,4 +125,13 @@ public class MetricsQueryConfigImplTest {
         assertThat(config.getQueryEnabledRollups("whitelisted_hourly_foo"), not(empty()));
         assertThat(configWithBlacklist.getQueryEnabledRollups("whitelisted_hourly_foo"), empty());
     }
+
+    @Test
+    public void testQueryEnabledRollupsAreMemoized() {
+        final MetricsQueryConfig queryConfig = new MetricsQueryConfigImpl(VALID_CONFIG);
+
+        final Set<SamplingUnit> enabledRollups = queryConfig.getQueryEnabledRollups("whitelisted_all_foo");
+        assertThat(queryConfig.getQueryEnabledRollups("whitelisted_all_foo"), sameInstance(enabledRollups));
+        assertThat(enabledRollups, equalTo(ALL_SAMPLING_UNITS));
+    }
 }
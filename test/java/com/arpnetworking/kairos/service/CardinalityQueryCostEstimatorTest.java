@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMultimap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link CardinalityQueryCostEstimator}.
+ *
+ * @author agent (agent at local)
+ */
+public class CardinalityQueryCostEstimatorTest {
+
+    @Before
+    public void setUp() {
+        _mocks = MockitoAnnotations.openMocks(this);
+        Mockito.when(_kairosDbClient.queryMetricTags(Mockito.any())).thenReturn(CompletableFuture.completedFuture(
+                new MetricsQueryResponse.Builder()
+                        .setQueries(ImmutableList.of(new MetricsQueryResponse.Query.Builder()
+                                .setSampleSize(0L)
+                                .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                        .setName("foo")
+                                        .setTags(ImmutableListMultimap.of(
+                                                "host", "a", "host", "b", "host", "c",
+                                                "dc", "east", "dc", "west"))
+                                        .build()))
+                                .build()))
+                        .build()));
+        _estimator = new CardinalityQueryCostEstimator.Builder()
+                .setKairosDbClient(_kairosDbClient)
+                .setClock(CLOCK)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _mocks.close();
+    }
+
+    @Test
+    public void testEstimatesRawDataPoints() throws Exception {
+        final Metric metric = newMetric("foo");
+        assertEquals(
+                Long.valueOf(3 * 60),
+                _estimator.estimateDataPoints(metric, NOW.minus(Duration.ofHours(1)), NOW).toCompletableFuture().get());
+
+        final ArgumentCaptor<TagsQuery> captor = ArgumentCaptor.forClass(TagsQuery.class);
+        Mockito.verify(_kairosDbClient).queryMetricTags(captor.capture());
+        assertEquals(NOW.minus(Duration.ofDays(1)), captor.getValue().getStartTime().get());
+        assertEquals("foo", captor.getValue().getMetrics().get(0).getName());
+        assertEquals(metric.getTags(), captor.getValue().getMetrics().get(0).getTags());
+    }
+
+    @Test
+    public void testEstimatesRollupDataPoints() throws Exception {
+        assertEquals(
+                Long.valueOf(3 * 24),
+                _estimator.estimateDataPoints(newMetric("foo_1h"), NOW.minus(Duration.ofDays(1)), NOW)
+                        .toCompletableFuture()
+                        .get());
+    }
+
+    @Test
+    public void testCachesCardinality() throws Exception {
+        _estimator.estimateDataPoints(newMetric("foo"), NOW.minus(Duration.ofHours(1)), NOW).toCompletableFuture().get();
+        _estimator.estimateDataPoints(newMetric("foo"), NOW.minus(Duration.ofDays(1)), NOW).toCompletableFuture().get();
+        Mockito.verify(_kairosDbClient, Mockito.times(1)).queryMetricTags(Mockito.any());
+    }
+
+    @Test
+    public void testDeserialize() throws Exception {
+        final ObjectMapper mapper = ObjectMapperFactory.createInstance();
+        mapper.setInjectableValues(new InjectableValues.Std()
+                .addValue(KairosDbClient.class, _kairosDbClient)
+                .addValue(Clock.class, CLOCK));
+        final QueryCostEstimator estimator = mapper.readValue(
+                "{\"type\":\"com.arpnetworking.kairos.service.CardinalityQueryCostEstimator\",\"rawSamplePeriod\":\"PT10S\"}",
+                QueryCostEstimator.class);
+        assertTrue(estimator instanceof CardinalityQueryCostEstimator);
+        assertEquals(
+                Long.valueOf(3 * 6),
+                estimator.estimateDataPoints(newMetric("foo"), NOW.minus(Duration.ofMinutes(1)), NOW).toCompletableFuture().get());
+    }
+
+    private static Metric newMetric(final String name) {
+        return new Metric.Builder()
+                .setName(name)
+                .setTags(ImmutableMultimap.of("dc", "east"))
+                .build();
+    }
+
+    @Mock
+    private KairosDbClient _kairosDbClient;
+    private AutoCloseable _mocks;
+    private CardinalityQueryCostEstimator _estimator;
+
+    private static final Instant NOW = Instant.parse("2026-03-04T12:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.MetricsQueryResponseCborDecoder;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pekko.util.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Tests for {@link CborResultsEncoder}.
+ *
+ * @author agent (agent at local)
+ */
+public class CborResultsEncoderTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final String json = ResourceHelper.loadResource(getClass(), "testRoundTrip");
+        final MetricsQueryResponse expected = OBJECT_MAPPER.readValue(json, MetricsQueryResponse.class);
+        final MetricsQueryResponseCborDecoder decoder = new MetricsQueryResponseCborDecoder(OBJECT_MAPPER);
+
+        final byte[] encoded = encode(json, 7);
+        Assert.assertArrayEquals(encoded, encode(json, json.length()));
+        Assert.assertTrue(encoded.length < json.getBytes(StandardCharsets.UTF_8).length);
+
+        final MetricsQueryResponse decoded = decoder.decode(encoded);
+        Assert.assertEquals(expected, decoded);
+        final MetricsQueryResponse.QueryResult result = decoded.getQueries().get(0).getResults().get(0);
+        Assert.assertEquals(Optional.of(1.1), result.getValues().get(0).getValue());
+        Assert.assertEquals(Optional.of(9007199254740993L), result.getValues().get(1).getValue());
+    }
+
+    @Test
+    public void testEmptyBody() throws IOException {
+        Assert.assertEquals(0, encode("", 16).length);
+    }
+
+    private static byte[] encode(final String json, final int chunkSize) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        final CborResultsEncoder encoder = new CborResultsEncoder(OBJECT_MAPPER);
+        ByteString output = ByteString.emptyByteString();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            output = output.concat(encoder.encode(ByteString.fromArray(bytes, offset, Math.min(chunkSize, bytes.length - offset))));
+        }
+        return output.concat(encoder.finish()).toArray();
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
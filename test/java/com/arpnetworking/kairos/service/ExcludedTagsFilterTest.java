@@ -0,0 +1,85 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableSet;
+import org.apache.pekko.util.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link ExcludedTagsFilter}.
+ *
+ * @author agent (agent at local)
+ */
+public class ExcludedTagsFilterTest {
+
+    @Test
+    public void testFiltersTags() throws IOException {
+        final String filtered = filter(
+                ResourceHelper.loadResource(getClass(), "testFiltersTags"),
+                ImmutableSet.of("host", "region"),
+                ImmutableSet.of(),
+                5);
+
+        SerializationTestUtils.assertJsonEquals(
+                ResourceHelper.loadResource(getClass(), "testFiltersTags.expected"),
+                filtered);
+        // Data points are copied exactly rather than round tripped through a double
+        Assert.assertTrue(filtered.contains("[1549000000000,1.10]"));
+        Assert.assertTrue(filtered.contains("[1549000001000,9007199254740993]"));
+    }
+
+    @Test
+    public void testRetainsRequestedTags() throws IOException {
+        final String filtered = filter(
+                ResourceHelper.loadResource(getClass(), "testFiltersTags"),
+                ImmutableSet.of("host", "region"),
+                ImmutableSet.of("host", "region"),
+                1);
+
+        SerializationTestUtils.assertJsonEquals(
+                ResourceHelper.loadResource(getClass(), "testFiltersTags"),
+                filtered);
+    }
+
+    @Test
+    public void testEmptyBody() throws IOException {
+        Assert.assertEquals("", filter("", ImmutableSet.of("host"), ImmutableSet.of(), 16));
+    }
+
+    private static String filter(
+            final String json,
+            final ImmutableSet<String> excluded,
+            final ImmutableSet<String> retained,
+            final int chunkSize) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        final ExcludedTagsFilter filter = new ExcludedTagsFilter(OBJECT_MAPPER, excluded, retained);
+        ByteString output = ByteString.emptyByteString();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            output = output.concat(filter.filter(ByteString.fromArray(bytes, offset, Math.min(chunkSize, bytes.length - offset))));
+        }
+        return output.concat(filter.finish()).utf8String();
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
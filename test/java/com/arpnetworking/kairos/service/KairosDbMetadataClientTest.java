@@ -0,0 +1,220 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbRequestException;
+import com.arpnetworking.kairos.client.models.MetricTags;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.pattern.CircuitBreakerOpenException;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link KairosDbMetadataClient}.
+ *
+ * @author agent (agent at local)
+ */
+public class KairosDbMetadataClientTest {
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _mockClient = Mockito.mock(KairosDbClient.class);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testServesPreviousResponseWhileOpen() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofSeconds(10));
+        final TagNamesResponse response = new TagNamesResponse.Builder().setResults(ImmutableSet.of("host")).build();
+        when(_mockClient.listTagNames())
+                .thenReturn(CompletableFuture.completedFuture(response))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("overloaded")));
+
+        assertEquals(response, client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS));
+        for (int i = 0; i < MAX_FAILURES; ++i) {
+            try {
+                client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+
+        // The breaker is open so KairosDB is not called again
+        assertEquals(response, client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS));
+        verify(_mockClient, times(MAX_FAILURES + 1)).listTagNames();
+    }
+
+    @Test
+    public void testSlowCallsOpenBreaker() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofMillis(50));
+        when(_mockClient.listTagNames()).thenReturn(new CompletableFuture<>());
+
+        for (int i = 0; i < MAX_FAILURES; ++i) {
+            try {
+                client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+                fail("Expected exception");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        }
+
+        try {
+            client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+        verify(_mockClient, times(MAX_FAILURES)).listTagNames();
+    }
+
+    @Test
+    public void testClientErrorsDoNotOpenBreaker() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofSeconds(10));
+        when(_mockClient.listTagNames()).thenReturn(CompletableFuture.failedFuture(requestException(400)));
+
+        for (int i = 0; i <= MAX_FAILURES; ++i) {
+            try {
+                client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+                fail("Expected exception");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof KairosDbRequestException);
+            }
+        }
+        verify(_mockClient, times(MAX_FAILURES + 1)).listTagNames();
+    }
+
+    @Test
+    public void testServerErrorsOpenBreaker() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofSeconds(10));
+        when(_mockClient.listTagNames()).thenReturn(CompletableFuture.failedFuture(requestException(503)));
+
+        for (int i = 0; i < MAX_FAILURES; ++i) {
+            try {
+                client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+                fail("Expected exception");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof KairosDbRequestException);
+            }
+        }
+
+        try {
+            client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+        verify(_mockClient, times(MAX_FAILURES)).listTagNames();
+    }
+
+    @Test
+    public void testDoesNotKeepResponsesLargerThanLimit() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofSeconds(10), 100L);
+        final TagNamesResponse response = new TagNamesResponse.Builder().setResults(ImmutableSet.of("host", "dc", "service")).build();
+        when(_mockClient.listTagNames())
+                .thenReturn(CompletableFuture.completedFuture(response))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("overloaded")));
+
+        assertEquals(response, client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS));
+        for (int i = 0; i <= MAX_FAILURES; ++i) {
+            try {
+                client.listTagNames().toCompletableFuture().get(10, TimeUnit.SECONDS);
+                fail("Expected exception");
+            } catch (final ExecutionException e) {
+                // The response was too large to keep, so nothing is served while open
+                assertTrue(e.getCause() instanceof IllegalStateException || e.getCause() instanceof CircuitBreakerOpenException);
+            }
+        }
+    }
+
+    @Test
+    public void testIdenticalCallsShareRequest() throws Exception {
+        final KairosDbMetadataClient client = newClient(Duration.ofSeconds(10));
+        final CompletableFuture<MetricsQueryResponse> pending = new CompletableFuture<>();
+        when(_mockClient.queryMetricTags(Mockito.any())).thenReturn(pending);
+
+        final CompletableFuture<MetricsQueryResponse> first = client.queryMetricTags(tagsQuery("foo")).toCompletableFuture();
+        final CompletableFuture<MetricsQueryResponse> second = client.queryMetricTags(tagsQuery("foo")).toCompletableFuture();
+        client.queryMetricTags(tagsQuery("bar"));
+
+        final MetricsQueryResponse response = new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build();
+        pending.complete(response);
+        assertEquals(response, first.get(10, TimeUnit.SECONDS));
+        assertEquals(response, second.get(10, TimeUnit.SECONDS));
+        verify(_mockClient).queryMetricTags(tagsQuery("foo"));
+        verify(_mockClient).queryMetricTags(tagsQuery("bar"));
+    }
+
+    private KairosDbMetadataClient newClient(final Duration callTimeout) {
+        return newClient(callTimeout, 1024L * 1024);
+    }
+
+    private KairosDbMetadataClient newClient(final Duration callTimeout, final long maxStaleBytes) {
+        return new KairosDbMetadataClient.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setActorSystem(_actorSystem)
+                .setMaxFailures(MAX_FAILURES)
+                .setCallTimeout(callTimeout)
+                .setResetTimeout(Duration.ofMinutes(1))
+                .setMaxStaleBytes(maxStaleBytes)
+                .build();
+    }
+
+    private static KairosDbRequestException requestException(final int status) {
+        return new KairosDbRequestException(status, "error", URI.create("http://kairosdb:8080/api/v1/tagnames"), Duration.ZERO);
+    }
+
+    private static TagsQuery tagsQuery(final String metric) {
+        return new TagsQuery.Builder()
+                .setStartTime(Instant.parse("2026-03-01T00:00:00Z"))
+                .setMetrics(ImmutableList.of(new MetricTags.Builder().setName(metric).build()))
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private KairosDbClient _mockClient;
+
+    private static final int MAX_FAILURES = 2;
+}
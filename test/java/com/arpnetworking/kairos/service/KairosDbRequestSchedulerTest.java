@@ -0,0 +1,168 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link KairosDbRequestScheduler}.
+ *
+ * @author agent (agent at local)
+ */
+public class KairosDbRequestSchedulerTest {
+
+    @Before
+    public void setUp() {
+        _mocks = MockitoAnnotations.openMocks(this);
+        _scheduler = new KairosDbRequestScheduler.Builder()
+                .setKairosDbClient(_kairosDbClient)
+                .setPeriodicMetrics(_periodicMetrics)
+                .setMaxConcurrency(2)
+                .setOriginConcurrency(ImmutableMap.of(QueryOrigin.CONSISTENCY_CHECK, 1))
+                .setOriginQueueSize(ImmutableMap.of(QueryOrigin.ROLLUP, 1))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _mocks.close();
+    }
+
+    @Test
+    public void testAdmitsQueuedRequestsByPriority() {
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-1");
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-2");
+        submit(QueryOrigin.CONSISTENCY_CHECK, "consistency");
+        submit(QueryOrigin.ROLLUP, "rollup");
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-3");
+        submit(QueryOrigin.ALERT_EVALUATION, "alert");
+        assertEquals(ImmutableList.of("external-1", "external-2"), _started);
+
+        complete(0);
+        assertEquals("alert", _started.get(2));
+        complete(1);
+        assertEquals("external-3", _started.get(3));
+        complete(2);
+        assertEquals("rollup", _started.get(4));
+        complete(3);
+        assertEquals("consistency", _started.get(5));
+    }
+
+    @Test
+    public void testLimitsConcurrencyPerOrigin() {
+        submit(QueryOrigin.CONSISTENCY_CHECK, "consistency-1");
+        submit(QueryOrigin.CONSISTENCY_CHECK, "consistency-2");
+        submit(QueryOrigin.ROLLUP, "rollup");
+        assertEquals(ImmutableList.of("consistency-1", "rollup"), _started);
+
+        complete(1);
+        assertEquals(ImmutableList.of("consistency-1", "rollup"), _started);
+        complete(0);
+        assertEquals(ImmutableList.of("consistency-1", "rollup", "consistency-2"), _started);
+    }
+
+    @Test
+    public void testRejectsWhenQueueIsFull() throws Exception {
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-1");
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-2");
+        submit(QueryOrigin.ROLLUP, "rollup-1");
+        final CompletionStage<String> rejected = submit(QueryOrigin.ROLLUP, "rollup-2");
+        try {
+            rejected.toCompletableFuture().get();
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        Mockito.verify(_periodicMetrics).recordCounter("kairosScheduler/rollup/rejected", 1);
+    }
+
+    @Test
+    public void testCompletesWithResponseAndReleasesOnFailure() throws Exception {
+        final CompletionStage<String> failed = _scheduler.submit(QueryOrigin.EXTERNAL_REQUEST, () -> {
+            throw new IllegalStateException("down");
+        });
+        try {
+            failed.toCompletableFuture().get();
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        final CompletionStage<String> first = submit(QueryOrigin.EXTERNAL_REQUEST, "external-1");
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-2");
+        assertEquals(2, _started.size());
+        complete(0);
+        assertEquals("external-1", first.toCompletableFuture().get());
+    }
+
+    @Test
+    public void testSchedulesRequestsToAnotherClient() {
+        final KairosDbClient other = Mockito.mock(KairosDbClient.class);
+        Mockito.when(other.listTagNames()).thenReturn(new CompletableFuture<>());
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-1");
+        submit(QueryOrigin.EXTERNAL_REQUEST, "external-2");
+
+        _scheduler.forOrigin(QueryOrigin.ROLLUP, other).listTagNames();
+        Mockito.verify(other, Mockito.never()).listTagNames();
+        complete(0);
+        Mockito.verify(other).listTagNames();
+        Mockito.verifyNoInteractions(_kairosDbClient);
+    }
+
+    private CompletionStage<String> submit(final QueryOrigin origin, final String name) {
+        final Supplier<CompletionStage<String>> request = () -> {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            _started.add(name);
+            _responses.add(future);
+            return future;
+        };
+        return _scheduler.submit(origin, request);
+    }
+
+    private void complete(final int index) {
+        _responses.get(index).complete(_started.get(index));
+    }
+
+    @Mock
+    private KairosDbClient _kairosDbClient;
+    @Mock
+    private PeriodicMetrics _periodicMetrics;
+    private AutoCloseable _mocks;
+    private KairosDbRequestScheduler _scheduler;
+    private final List<String> _started = new ArrayList<>();
+    private final List<CompletableFuture<String>> _responses = new ArrayList<>();
+}
@@ -17,6 +17,7 @@ package com.arpnetworking.kairos.service;
 
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
 import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
 import com.arpnetworking.kairos.client.models.Aggregator;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
@@ -27,6 +28,7 @@ import com.arpnetworking.kairos.client.models.RelativeDateTime;
 import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagValuesResponse;
 import com.arpnetworking.kairos.client.models.TagsQuery;
 import com.arpnetworking.kairos.client.models.TimeUnit;
 import com.arpnetworking.kairos.config.MetricsQueryConfig;
@@ -40,8 +42,15 @@ import com.arpnetworking.rollups.RollupPeriod;
 import com.arpnetworking.testing.SerializationTestUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.apache.commons.io.IOUtils;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -52,7 +61,10 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.util.EnumSet;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -60,9 +72,12 @@ import java.util.concurrent.CompletionStage;
 import java.util.function.Consumer;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -358,6 +373,25 @@ public class KairosDbServiceImplTest {
                 response.getResults());
     }
 
+    @Test
+    public void testListTagValuesServedFromCache() throws Exception {
+        final KairosDbServiceImpl service = new KairosDbServiceImpl.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMetricsFactory(_mockMetricsFactory)
+                .setMetricsQueryConfig(_mockQueryConfig)
+                .setTagMetadataCache(new TagMetadataCache.Builder()
+                        .setMetricsFactory(_mockMetricsFactory)
+                        .setMapper(OBJECT_MAPPER)
+                        .build())
+                .build();
+        final TagValuesResponse values = new TagValuesResponse.Builder().setResults(ImmutableSet.of("us", "ca")).build();
+        when(_mockClient.listTagValues()).thenReturn(CompletableFuture.completedFuture(values));
+
+        assertEquals(values, service.listTagValues().toCompletableFuture().get());
+        assertEquals(values, service.listTagValues().toCompletableFuture().get());
+        verify(_mockClient, times(1)).listTagValues();
+    }
+
     @Test
     public void testFilterTagNamesOnTagQuery() throws Exception {
         when(_mockClient.queryMetricTags(Mockito.any(TagsQuery.class))).thenReturn(
@@ -397,6 +431,131 @@ public class KairosDbServiceImplTest {
                 response.getQueries().get(0).getResults().get(0).getTags().get("method"));
     }
 
+    @Test
+    public void testQueryMetricsStreamedPassesThroughWhenNoTagsExcluded() throws Exception {
+        final KairosDbStreamedResponse backendResponse = new KairosDbStreamedResponse.Builder()
+                .setBody(Source.empty())
+                .setContentEncoding("gzip")
+                .build();
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(CompletableFuture.completedFuture(backendResponse));
+
+        final KairosDbStreamedResponse response = _service.queryMetricsStreamed(
+                TEST_CONTEXT,
+                newTagsRequestingQuery(ImmutableSet.of("host"))
+        ).toCompletableFuture().get();
+
+        assertSame(backendResponse, response);
+        verify(_mockClient, never()).queryMetrics(any());
+        verify(_mockRewrittenMetricsQueryConsumer).accept(notNull());
+    }
+
+    @Test
+    public void testQueryMetricsStreamedFiltersExcludedTags() throws Exception {
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(
+                CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromString(readResource("testFilterTagNamesOnTagQuery.backend_response"))))
+                        .build())
+        );
+
+        final KairosDbStreamedResponse response = _service.queryMetricsStreamed(
+                TEST_CONTEXT,
+                newTagsRequestingQuery(ImmutableSet.of())
+        ).toCompletableFuture().get();
+
+        verify(_mockClient, never()).queryMetrics(any());
+        assertEquals(Optional.empty(), response.getContentEncoding());
+        final ActorSystem system = ActorSystem.create();
+        try {
+            final ByteString body = response.getBody()
+                    .runFold(ByteString.emptyByteString(), ByteString::concat, Materializer.createMaterializer(system))
+                    .toCompletableFuture()
+                    .get();
+            final MetricsQueryResponse decoded = OBJECT_MAPPER.readValue(body.toArray(), MetricsQueryResponse.class);
+            assertEquals(
+                    ImmutableSet.of("method"),
+                    decoded.getQueries().get(0).getResults().get(0).getTags().keySet());
+        } finally {
+            TestKit.shutdownActorSystem(system);
+        }
+    }
+
+    @Test
+    public void testQueryMetricsStreamedServesCachedResponse() throws Exception {
+        final KairosDbServiceImpl service = new KairosDbServiceImpl.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMetricsFactory(_mockMetricsFactory)
+                .setMetricsQueryConfig(_mockQueryConfig)
+                .setQueryResultCache(new QueryResultCache.Builder()
+                        .setMetricsFactory(_mockMetricsFactory)
+                        .setClock(Clock.fixed(Instant.now(), ZoneOffset.UTC))
+                        .build())
+                .build();
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(
+                CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromString("{\"queries\":[]}")))
+                        .build()));
+
+        final ActorSystem system = ActorSystem.create();
+        try {
+            final Materializer materializer = Materializer.createMaterializer(system);
+            final MetricsQuery query = newTagsRequestingQuery(ImmutableSet.of());
+            for (int i = 0; i < 2; ++i) {
+                final ByteString body = service.queryMetricsStreamed(TEST_CONTEXT, query)
+                        .toCompletableFuture()
+                        .get()
+                        .getBody()
+                        .runFold(ByteString.emptyByteString(), ByteString::concat, materializer)
+                        .toCompletableFuture()
+                        .get();
+                assertEquals("{\"queries\":[]}", body.utf8String());
+            }
+        } finally {
+            TestKit.shutdownActorSystem(system);
+        }
+
+        final ArgumentCaptor<MetricsQuery> captor = ArgumentCaptor.forClass(MetricsQuery.class);
+        verify(_mockClient, times(1)).queryMetricsStreamed(captor.capture());
+        assertTrue(captor.getValue().getEndTime().isPresent());
+    }
+
+    @Test
+    public void testQueryMetricsStreamedSplitsLongRangeQuery() throws Exception {
+        final KairosDbServiceImpl service = new KairosDbServiceImpl.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMetricsFactory(_mockMetricsFactory)
+                .setMetricsQueryConfig(_mockQueryConfig)
+                .setQuerySplitter(new QuerySplitter.Builder().build())
+                .build();
+        when(_mockClient.queryMetrics(any())).thenReturn(
+                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build()));
+
+        final MetricsQuery query = ThreadLocalBuilder.clone(
+                simpleMetricsQuery(
+                        "my_metric",
+                        ImmutableList.of(TestBeanFactory.createAggregatorBuilder()
+                                .setSampling(simpleSampling(1, SamplingUnit.HOURS))
+                                .setAlignSampling(true)
+                                .build())),
+                MetricsQuery.Builder.class,
+                b -> b.setStartTime(Instant.now().minus(Duration.ofDays(3))));
+        final ActorSystem system = ActorSystem.create();
+        try {
+            final ByteString body = service.queryMetricsStreamed(TEST_CONTEXT, query)
+                    .toCompletableFuture()
+                    .get()
+                    .getBody()
+                    .runFold(ByteString.emptyByteString(), ByteString::concat, Materializer.createMaterializer(system))
+                    .toCompletableFuture()
+                    .get();
+            assertEquals("{\"queries\":[]}", body.utf8String());
+        } finally {
+            TestKit.shutdownActorSystem(system);
+        }
+
+        verify(_mockClient, never()).queryMetricsStreamed(any());
+        verify(_mockClient, Mockito.atLeast(4)).queryMetrics(any());
+    }
+
     @Test
     public void testRollupQueryRewritingBasicRewrite() {
         final ImmutableList<Aggregator> aggregators = ImmutableList.of(
@@ -407,7 +566,7 @@ public class KairosDbServiceImplTest {
         );
         final MetricsQuery original = simpleMetricsQuery("my_metric", aggregators);
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_1h")),
                 original,
                 s -> ImmutableSet.of(SamplingUnit.HOURS),
                 new NoOpMetrics()
@@ -426,7 +585,7 @@ public class KairosDbServiceImplTest {
         );
         final MetricsQuery original = simpleMetricsQuery("my_metric", aggregators);
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_with_suffix_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_with_suffix_1h")),
                 original,
                 s -> ImmutableSet.of(SamplingUnit.HOURS),
                 new NoOpMetrics()
@@ -446,7 +605,7 @@ public class KairosDbServiceImplTest {
                 )
         );
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_1h")),
                 original,
                 s -> ImmutableSet.of(SamplingUnit.HOURS),
                 new NoOpMetrics()
@@ -466,7 +625,7 @@ public class KairosDbServiceImplTest {
                 )
         );
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_1h")),
                 original,
                 s -> ImmutableSet.of(SamplingUnit.HOURS),
                 new NoOpMetrics()
@@ -490,7 +649,7 @@ public class KairosDbServiceImplTest {
                 )
         );
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_1h")),
                 original,
                 s -> ImmutableSet.of(SamplingUnit.HOURS),
                 new NoOpMetrics()
@@ -508,7 +667,7 @@ public class KairosDbServiceImplTest {
         );
         final MetricsQuery original = simpleMetricsQuery("my_metric", aggregators);
         final MetricsQuery rewritten = KairosDbServiceImpl.useAvailableRollups(
-                ImmutableList.of("my_metric_1h"),
+                MetricNamesIndex.create(ImmutableList.of("my_metric_1h")),
                 original,
                 s -> ImmutableSet.of(),
                 new NoOpMetrics()
@@ -531,7 +690,7 @@ public class KairosDbServiceImplTest {
                 Optional.of(hourly),
                 KairosDbServiceImpl.getCoarsestUsableRollupMetric(
                         "my_metric",
-                        ImmutableList.of(hourly, daily),
+                        ImmutableMap.of(SamplingUnit.HOURS, hourly, SamplingUnit.DAYS, daily),
                         s -> ImmutableSet.of(SamplingUnit.HOURS),
                         SamplingUnit.HOURS
                 )
@@ -540,7 +699,7 @@ public class KairosDbServiceImplTest {
                 Optional.empty(),
                 KairosDbServiceImpl.getCoarsestUsableRollupMetric(
                         "my_metric",
-                        ImmutableList.of(daily),
+                        ImmutableMap.of(SamplingUnit.DAYS, daily),
                         s -> ImmutableSet.of(SamplingUnit.HOURS),
                         SamplingUnit.HOURS
                 )
@@ -549,7 +708,7 @@ public class KairosDbServiceImplTest {
                 Optional.empty(),
                 KairosDbServiceImpl.getCoarsestUsableRollupMetric(
                         "my_metric",
-                        ImmutableList.of(hourly),
+                        ImmutableMap.of(SamplingUnit.HOURS, hourly),
                         s -> ImmutableSet.of(),
                         SamplingUnit.HOURS
                 )
@@ -572,6 +731,19 @@ public class KairosDbServiceImplTest {
                 .build();
     }
 
+    private static MetricsQuery newTagsRequestingQuery(final ImmutableSet<String> tagNames) {
+        final ImmutableListMultimap.Builder<String, String> tags = ImmutableListMultimap.builder();
+        tagNames.forEach(tag -> tags.put(tag, "value"));
+        return new MetricsQuery.Builder()
+                .setStartTime(Instant.now())
+                .setMetrics(ImmutableList.of(
+                        new Metric.Builder()
+                                .setName("kairosdb.protocol.http_request_count")
+                                .setTags(tags.build())
+                                .build()))
+                .build();
+    }
+
     private String readResource(final String resourceSuffix) {
         try {
             return IOUtils.toString(getClass()
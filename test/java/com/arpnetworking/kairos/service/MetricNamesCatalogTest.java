@@ -0,0 +1,136 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
+import com.google.common.collect.ImmutableList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MetricNamesCatalog}.
+ *
+ * @author agent (agent at local)
+ */
+public class MetricNamesCatalogTest {
+
+    @Mock
+    private KairosDbClient _mockClient;
+    private AutoCloseable _mocks;
+
+    @Before
+    public void setUp() {
+        _mocks = MockitoAnnotations.openMocks(this);
+    }
+
+    @After
+    public void tearDown() {
+        if (_mocks != null) {
+            try {
+                _mocks.close();
+                // CHECKSTYLE.OFF: IllegalCatch - Ignore all errors when closing the mock
+            } catch (final Exception ignored) { }
+                // CHECKSTYLE.ON: IllegalCatch
+        }
+    }
+
+    @Test
+    public void testConcurrentLoadsAreCoalesced() throws Exception {
+        final CompletableFuture<MetricNamesResponse> response = new CompletableFuture<>();
+        when(_mockClient.queryMetricNames()).thenReturn(response);
+        final MetricNamesCatalog catalog = createCatalog(Duration.ofMinutes(1));
+
+        final CompletionStage<MetricNamesIndex> first = catalog.getIndex();
+        final CompletionStage<MetricNamesIndex> second = catalog.getIndex();
+        assertFalse(first.toCompletableFuture().isDone());
+        response.complete(namesResponse("foo", "bar"));
+
+        assertSame(first.toCompletableFuture().get(), second.toCompletableFuture().get());
+        assertEquals(ImmutableList.of("foo", "bar"), first.toCompletableFuture().get().getNames());
+        verify(_mockClient, times(1)).queryMetricNames();
+    }
+
+    @Test
+    public void testServesCurrentIndexWhileStale() throws Exception {
+        final CompletableFuture<MetricNamesResponse> refreshed = new CompletableFuture<>();
+        when(_mockClient.queryMetricNames())
+                .thenReturn(CompletableFuture.completedFuture(namesResponse("foo")))
+                .thenReturn(refreshed);
+        final MetricNamesCatalog catalog = createCatalog(Duration.ZERO);
+
+        final MetricNamesIndex loaded = catalog.getIndex().toCompletableFuture().get();
+        Thread.sleep(5);
+        // The index is stale so this starts a refresh but returns the loaded index
+        assertSame(loaded, catalog.getIndex().toCompletableFuture().get());
+        refreshed.complete(namesResponse("foo", "bar"));
+        assertEquals(ImmutableList.of("foo", "bar"), catalog.getIndex().toCompletableFuture().get().getNames());
+        verify(_mockClient, times(3)).queryMetricNames();
+    }
+
+    @Test
+    public void testFailedLoadCanBeRetried() throws Exception {
+        when(_mockClient.queryMetricNames())
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(namesResponse("foo")));
+        final MetricNamesCatalog catalog = createCatalog(Duration.ofMinutes(1));
+
+        try {
+            catalog.getIndex().toCompletableFuture().get();
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(ImmutableList.of("foo"), catalog.getIndex().toCompletableFuture().get().getNames());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStartRequiresActorSystem() {
+        createCatalog(Duration.ofMinutes(1)).start();
+    }
+
+    private MetricNamesCatalog createCatalog(final Duration refreshInterval) {
+        return new MetricNamesCatalog.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setRefreshInterval(refreshInterval)
+                .build();
+    }
+
+    private static MetricNamesResponse namesResponse(final String... names) {
+        return new MetricNamesResponse.Builder()
+                .setResults(ImmutableList.copyOf(names))
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.rollups.RollupMetric;
+import com.arpnetworking.rollups.RollupPeriod;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link MetricNamesIndex}.
+ *
+ * @author agent (agent at local)
+ */
+public class MetricNamesIndexTest {
+
+    @Test
+    public void testFindAll() {
+        assertEquals(
+                ImmutableList.of("Foo.Bar", "foo.baz", "foo.baz_1h", "foo.baz_1d", "bar.foo", "barfoo_1d"),
+                INDEX.find(Optional.empty(), Optional.empty(), false));
+        assertEquals(
+                ImmutableList.of("Foo.Bar", "foo.baz", "bar.foo"),
+                INDEX.find(Optional.of(""), Optional.of(""), true));
+    }
+
+    @Test
+    public void testFindByPrefix() {
+        assertEquals(
+                ImmutableList.of("Foo.Bar", "foo.baz", "foo.baz_1h", "foo.baz_1d"),
+                INDEX.find(Optional.empty(), Optional.of("FOO."), false));
+        assertEquals(
+                ImmutableList.of("foo.baz"),
+                INDEX.find(Optional.empty(), Optional.of("foo.baz"), true));
+        assertEquals(ImmutableList.of(), INDEX.find(Optional.empty(), Optional.of("zzz"), false));
+    }
+
+    @Test
+    public void testFindContaining() {
+        assertEquals(
+                ImmutableList.of("Foo.Bar", "foo.baz", "foo.baz_1h", "foo.baz_1d", "bar.foo", "barfoo_1d"),
+                INDEX.find(Optional.of("foo"), Optional.empty(), false));
+        assertEquals(
+                ImmutableList.of("Foo.Bar", "foo.baz"),
+                INDEX.find(Optional.of("o.b"), Optional.empty(), true));
+        assertEquals(
+                ImmutableList.of("foo.baz", "foo.baz_1h", "foo.baz_1d"),
+                INDEX.find(Optional.of("Z"), Optional.empty(), false));
+        assertEquals(ImmutableList.of(), INDEX.find(Optional.of("qux"), Optional.empty(), false));
+    }
+
+    @Test
+    public void testFindContainingAndPrefix() {
+        assertEquals(
+                ImmutableList.of("bar.foo", "barfoo_1d"),
+                INDEX.find(Optional.of("foo"), Optional.of("bar"), false));
+    }
+
+    @Test
+    public void testExcludesPerMinuteNames() {
+        assertEquals(ImmutableList.of(), INDEX.find(Optional.of("PT1M"), Optional.empty(), false));
+        assertEquals(ImmutableList.of(), INDEX.find(Optional.empty(), Optional.of("pt1m/"), false));
+        assertEquals(ImmutableMap.of(), INDEX.getRollups("PT1M/foo.baz"));
+    }
+
+    @Test
+    public void testGetRollups() {
+        assertEquals(
+                ImmutableMap.of(
+                        SamplingUnit.HOURS, rollup("foo.baz", RollupPeriod.HOURLY),
+                        SamplingUnit.DAYS, rollup("foo.baz", RollupPeriod.DAILY)),
+                INDEX.getRollups("foo.baz"));
+        assertEquals(
+                ImmutableMap.of(SamplingUnit.DAYS, rollup("barfoo", RollupPeriod.DAILY)),
+                INDEX.getRollups("barfoo"));
+        assertEquals(ImmutableMap.of(), INDEX.getRollups("foo"));
+        assertEquals(ImmutableMap.of(), MetricNamesIndex.empty().getRollups("foo.baz"));
+    }
+
+    private static RollupMetric rollup(final String baseName, final RollupPeriod period) {
+        return new RollupMetric.Builder()
+                .setBaseMetricName(baseName)
+                .setPeriod(period)
+                .build();
+    }
+
+    private static final MetricNamesIndex INDEX = MetricNamesIndex.create(ImmutableList.of(
+            "Foo.Bar",
+            "foo.baz",
+            "foo.baz_1h",
+            "foo.baz_1d",
+            "PT1M/foo.baz_1h",
+            "bar.foo",
+            "barfoo_1d"));
+}
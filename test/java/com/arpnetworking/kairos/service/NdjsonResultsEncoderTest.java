@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.arpnetworking.utility.test.ResourceHelper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pekko.util.ByteString;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for {@link NdjsonResultsEncoder}.
+ *
+ * @author agent (agent at local)
+ */
+public class NdjsonResultsEncoderTest {
+
+    @Test
+    public void testEncodesResults() throws IOException {
+        final String expected = "{\"query\":0,\"result\":{\"name\":\"foo\",\"group_by\":[{\"name\":\"type\",\"type\":\"number\"}],"
+                + "\"tags\":{\"host\":[\"a\"]},\"values\":[[1549000000000,1.10],[1549000001000,9007199254740993]]}}\n"
+                + "{\"query\":0,\"result\":{\"name\":\"foo\",\"tags\":{\"host\":[\"b\"]},\"values\":[[1549000000000,2]]}}\n"
+                + "{\"query\":0,\"sample_size\":3}\n"
+                + "{\"query\":1,\"sample_size\":0}\n";
+        final String json = ResourceHelper.loadResource(getClass(), "testEncodesResults");
+        Assert.assertEquals(expected, encode(json, 7));
+        Assert.assertEquals(expected, encode(json, json.length()));
+    }
+
+    @Test
+    public void testEmitsResultsAsTheyComplete() throws IOException {
+        final NdjsonResultsEncoder encoder = new NdjsonResultsEncoder(OBJECT_MAPPER);
+        // Results are written through as they are parsed rather than buffered until complete
+        final ByteString partial = encoder.encode(ByteString.fromString("{\"queries\":[{\"results\":[{\"name\":\"a\","));
+        Assert.assertEquals("{\"query\":0,\"result\":{\"name\":\"a\"", partial.utf8String());
+        Assert.assertEquals(
+                "{\"query\":0,\"result\":{\"name\":\"a\",\"values\":[]}}\n{\"query\":0,\"result\":{\"name\"",
+                partial.concat(encoder.encode(ByteString.fromString("\"values\":[]},{\"name\":"))).utf8String());
+    }
+
+    @Test
+    public void testEmptyBody() throws IOException {
+        Assert.assertEquals("", encode("", 16));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedBody() throws IOException {
+        encode("{\"queries\":[{\"results\":[{\"name\":\"a\"}", 16);
+    }
+
+    private static String encode(final String json, final int chunkSize) throws IOException {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        final NdjsonResultsEncoder encoder = new NdjsonResultsEncoder(OBJECT_MAPPER);
+        ByteString output = ByteString.emptyByteString();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            output = output.concat(encoder.encode(ByteString.fromArray(bytes, offset, Math.min(chunkSize, bytes.length - offset))));
+        }
+        return output.concat(encoder.finish()).utf8String();
+    }
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.metrics.impl.NoOpMetrics;
+import com.google.common.collect.ImmutableList;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link QueryCoalescer}.
+ *
+ * @author agent (agent at local)
+ */
+public class QueryCoalescerTest {
+
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _materializer = Materializer.createMaterializer(_actorSystem);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testCoalescesInFlightQueries() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().build();
+        final CompletableFuture<MetricsQueryResponse> response = new CompletableFuture<>();
+        final AtomicInteger executions = new AtomicInteger();
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute = query -> {
+            executions.incrementAndGet();
+            return response;
+        };
+
+        final CompletionStage<MetricsQueryResponse> first = coalescer.queryMetrics(newQuery("foo"), execute, new NoOpMetrics());
+        final CompletionStage<MetricsQueryResponse> second = coalescer.queryMetrics(newQuery("foo"), execute, new NoOpMetrics());
+        final MetricsQueryResponse expected = new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build();
+        response.complete(expected);
+
+        assertSame(expected, first.toCompletableFuture().get());
+        assertSame(expected, second.toCompletableFuture().get());
+        assertEquals(1, executions.get());
+
+        // Once complete the query is executed again
+        coalescer.queryMetrics(newQuery("foo"), execute, new NoOpMetrics()).toCompletableFuture().get();
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testDoesNotCoalesceDifferentQueries() {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().build();
+        final AtomicInteger executions = new AtomicInteger();
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute = query -> {
+            executions.incrementAndGet();
+            return new CompletableFuture<>();
+        };
+
+        coalescer.queryMetrics(newQuery("foo"), execute, new NoOpMetrics());
+        coalescer.queryMetrics(newQuery("bar"), execute, new NoOpMetrics());
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testSharesFailure() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().build();
+        final CompletableFuture<MetricsQueryResponse> response = new CompletableFuture<>();
+
+        final CompletionStage<MetricsQueryResponse> first = coalescer.queryMetrics(newQuery("foo"), query -> response, new NoOpMetrics());
+        final CompletionStage<MetricsQueryResponse> second = coalescer.queryMetrics(newQuery("foo"), query -> response, new NoOpMetrics());
+        response.completeExceptionally(new IllegalStateException("failed"));
+
+        for (final CompletionStage<MetricsQueryResponse> stage : ImmutableList.of(first, second)) {
+            try {
+                stage.toCompletableFuture().get();
+                fail("Expected exception");
+            } catch (final ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    @Test
+    public void testSharesStreamedBody() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().build();
+        final AtomicInteger executions = new AtomicInteger();
+        final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> execute = query -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(newResponse("{\"queries\":", "[]}"));
+        };
+
+        final KairosDbStreamedResponse first = coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+        final CompletionStage<KairosDbStreamedResponse> second =
+                coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics());
+        assertFalse(second.toCompletableFuture().isDone());
+
+        assertEquals("{\"queries\":[]}", read(first));
+        assertEquals("gzip", second.toCompletableFuture().get().getContentEncoding().get());
+        assertEquals("{\"queries\":[]}", read(second.toCompletableFuture().get()));
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void testExecutesWhenStreamedBodyTooLarge() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().setMaxSharedBytes(4L).build();
+        final AtomicInteger executions = new AtomicInteger();
+        final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> execute = query -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(newResponse("{\"queries\":", "[]}"));
+        };
+
+        final KairosDbStreamedResponse first = coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+        final CompletionStage<KairosDbStreamedResponse> second =
+                coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics());
+
+        assertEquals("{\"queries\":[]}", read(first));
+        assertEquals("{\"queries\":[]}", read(second.toCompletableFuture().get()));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void testExecutesWhenStreamedBodyNotRead() throws Exception {
+        final QueryCoalescer coalescer = new QueryCoalescer.Builder().setMaxWait(Duration.ofMillis(10)).build();
+        final AtomicInteger executions = new AtomicInteger();
+        final Function<MetricsQuery, CompletionStage<KairosDbStreamedResponse>> execute = query -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture(newResponse("{}"));
+        };
+
+        coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics()).toCompletableFuture().get();
+        final KairosDbStreamedResponse second = coalescer.queryMetricsStreamed(newQuery("foo"), execute, new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+
+        assertEquals("{}", read(second));
+        assertEquals(2, executions.get());
+    }
+
+    private String read(final KairosDbStreamedResponse response) throws Exception {
+        return response.getBody()
+                .runFold(ByteString.emptyByteString(), ByteString::concat, _materializer)
+                .toCompletableFuture()
+                .get()
+                .utf8String();
+    }
+
+    private static KairosDbStreamedResponse newResponse(final String... chunks) {
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(Source.from(ImmutableList.copyOf(chunks)).map(ByteString::fromString))
+                .setContentEncoding("gzip")
+                .build();
+    }
+
+    private static MetricsQuery newQuery(final String metricName) {
+        return new MetricsQuery.Builder()
+                .setStartTime(START)
+                .setMetrics(ImmutableList.of(new Metric.Builder().setName(metricName).build()))
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private Materializer _materializer;
+
+    private static final Instant START = Instant.parse("2026-03-01T12:00:00Z");
+}
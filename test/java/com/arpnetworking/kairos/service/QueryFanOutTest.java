@@ -0,0 +1,161 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.metrics.impl.NoOpMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link QueryFanOut}.
+ *
+ * @author agent (agent at local)
+ */
+public class QueryFanOutTest {
+
+    @Test
+    public void testCanFanOut() {
+        assertTrue(_fanOut.canFanOut(QueryOrigin.EXTERNAL_REQUEST, newQuery("a", "b")));
+        assertFalse(_fanOut.canFanOut(QueryOrigin.EXTERNAL_REQUEST, newQuery("a")));
+        assertFalse(_fanOut.canFanOut(QueryOrigin.ALERT_EVALUATION, newQuery("a", "b")));
+    }
+
+    @Test
+    public void testReassemblesInOriginalOrderWithBoundedParallelism() throws Exception {
+        final Map<String, CompletableFuture<MetricsQueryResponse>> pending = new LinkedHashMap<>();
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute = query -> {
+            final CompletableFuture<MetricsQueryResponse> future = new CompletableFuture<>();
+            pending.put(query.getMetrics().get(0).getName(), future);
+            return future;
+        };
+
+        final CompletionStage<MetricsQueryResponse> response = _fanOut.queryMetrics(
+                QueryOrigin.EXTERNAL_REQUEST,
+                newQuery("a", "b", "c"),
+                execute,
+                new NoOpMetrics());
+        assertEquals(ImmutableList.of("a", "b"), ImmutableList.copyOf(pending.keySet()));
+
+        pending.get("b").complete(newResponse("b"));
+        assertEquals(ImmutableList.of("a", "b", "c"), ImmutableList.copyOf(pending.keySet()));
+        pending.get("c").complete(newResponse("c"));
+        pending.get("a").complete(newResponse("a"));
+
+        assertEquals(
+                ImmutableList.of("a", "b", "c"),
+                response.toCompletableFuture()
+                        .get()
+                        .getQueries()
+                        .stream()
+                        .map(query -> query.getResults().get(0).getName())
+                        .collect(ImmutableList.toImmutableList()));
+    }
+
+    @Test
+    public void testReportsFailurePerMetric() throws Exception {
+        final MetricsQueryResponse response = _fanOut.queryMetrics(
+                QueryOrigin.EXTERNAL_REQUEST,
+                newQuery("a", "b"),
+                query -> "a".equals(query.getMetrics().get(0).getName())
+                        ? CompletableFuture.failedFuture(new IllegalStateException("too large"))
+                        : CompletableFuture.completedFuture(newResponse("b")),
+                new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+
+        assertEquals(2, response.getQueries().size());
+        assertEquals("a", response.getQueries().get(0).getResults().get(0).getName());
+        assertEquals("too large", response.getQueries().get(0).getOtherArgs().get("error"));
+        assertEquals(newResponse("b").getQueries().get(0), response.getQueries().get(1));
+    }
+
+    @Test
+    public void testFailsWhenAllMetricsFail() throws Exception {
+        try {
+            _fanOut.queryMetrics(
+                    QueryOrigin.EXTERNAL_REQUEST,
+                    newQuery("a", "b"),
+                    query -> CompletableFuture.failedFuture(new IllegalStateException("down")),
+                    new NoOpMetrics())
+                    .toCompletableFuture()
+                    .get();
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testExecutesQueryAsIsWhenDisabled() throws Exception {
+        final MetricsQuery query = newQuery("a", "b");
+        final MetricsQueryResponse response = new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build();
+        assertEquals(
+                response,
+                _fanOut.queryMetrics(
+                        QueryOrigin.ALERT_EVALUATION,
+                        query,
+                        executed -> {
+                            assertEquals(query, executed);
+                            return CompletableFuture.completedFuture(response);
+                        },
+                        new NoOpMetrics())
+                        .toCompletableFuture()
+                        .get());
+    }
+
+    private static MetricsQueryResponse newResponse(final String name) {
+        return new MetricsQueryResponse.Builder()
+                .setQueries(ImmutableList.of(new MetricsQueryResponse.Query.Builder()
+                        .setSampleSize(1L)
+                        .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                .setName(name)
+                                .build()))
+                        .build()))
+                .build();
+    }
+
+    private static MetricsQuery newQuery(final String... names) {
+        final ImmutableList.Builder<Metric> metrics = ImmutableList.builder();
+        for (final String name : names) {
+            metrics.add(new Metric.Builder().setName(name).build());
+        }
+        return new MetricsQuery.Builder()
+                .setStartTime(Instant.EPOCH)
+                .setMetrics(metrics.build())
+                .build();
+    }
+
+    private final QueryFanOut _fanOut = new QueryFanOut.Builder()
+            .setParallelism(ImmutableMap.of(QueryOrigin.EXTERNAL_REQUEST, 2))
+            .build();
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.config.MetricsQueryConfig;
+import com.arpnetworking.metrics.impl.NoOpMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link QueryGuardrail}.
+ *
+ * @author agent (agent at local)
+ */
+public class QueryGuardrailTest {
+
+    @Test
+    public void testIsEnabled() {
+        final QueryGuardrail guardrail = newGuardrail(QueryGuardrail.Action.REJECT);
+        assertTrue(guardrail.isEnabled(QueryOrigin.EXTERNAL_REQUEST));
+        assertFalse(guardrail.isEnabled(QueryOrigin.ALERT_EVALUATION));
+    }
+
+    @Test
+    public void testPassesAffordableQuery() throws Exception {
+        final MetricsQuery query = newQuery(NOW.minus(Duration.ofHours(1)), "foo");
+        assertSame(query, apply(newGuardrail(QueryGuardrail.Action.REJECT), query));
+    }
+
+    @Test
+    public void testRejectsExpensiveQuery() throws Exception {
+        try {
+            apply(newGuardrail(QueryGuardrail.Action.REJECT), newQuery(NOW.minus(Duration.ofDays(30)), "foo"));
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueryCostExceededException);
+            assertEquals(30L * 24 * 60 * SERIES, ((QueryCostExceededException) e.getCause()).getEstimatedDataPoints());
+        }
+    }
+
+    @Test
+    public void testRewritesToCoarserRollup() throws Exception {
+        // 30 days is 43200 raw points or 720 hourly points per series
+        final MetricsQuery rewritten = apply(
+                newGuardrail(QueryGuardrail.Action.REWRITE),
+                newQuery(NOW.minus(Duration.ofDays(30)), "foo"));
+
+        final Metric metric = rewritten.getMetrics().get(0);
+        assertEquals("foo_1h", metric.getName());
+        final Aggregator aggregator = metric.getAggregators().get(0);
+        assertEquals(new Sampling.Builder().setValue(1).setUnit(SamplingUnit.HOURS).build(), aggregator.getSampling().get());
+        assertTrue(aggregator.getAlignSampling().get());
+    }
+
+    @Test
+    public void testRewritesUntilQueryFits() throws Exception {
+        // The hourly rollup of foo is not enough alongside bar, so foo moves to the daily rollup
+        final MetricsQuery rewritten = apply(
+                newGuardrail(QueryGuardrail.Action.REWRITE),
+                newQuery(NOW.minus(Duration.ofDays(30)), "foo", "bar_1h"));
+
+        assertEquals("foo_1d", rewritten.getMetrics().get(0).getName());
+        assertEquals("bar_1h", rewritten.getMetrics().get(1).getName());
+        assertEquals(
+                new Sampling.Builder().setValue(1).setUnit(SamplingUnit.DAYS).build(),
+                rewritten.getMetrics().get(0).getAggregators().get(0).getSampling().get());
+    }
+
+    @Test
+    public void testRejectsWhenNoCoarserRollupFits() throws Exception {
+        try {
+            apply(newGuardrail(QueryGuardrail.Action.REWRITE), newQuery(NOW.minus(Duration.ofDays(3650)), "foo"));
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueryCostExceededException);
+        }
+    }
+
+    @Test
+    public void testDoesNotRewriteRawMetric() throws Exception {
+        try {
+            apply(
+                    newGuardrail(QueryGuardrail.Action.REWRITE),
+                    newQuery(NOW.minus(Duration.ofDays(30)), ImmutableList.of(), "foo"));
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueryCostExceededException);
+        }
+        assertFalse(QueryGuardrail.findCoarserRollup(
+                new Metric.Builder().setName("foo").build(),
+                METRIC_NAMES,
+                QUERY_CONFIG).isPresent());
+    }
+
+    @Test
+    public void testDoesNotRewriteUnalignedMetric() throws Exception {
+        final Aggregator unaligned = new Aggregator.Builder()
+                .setName("avg")
+                .setSampling(new Sampling.Builder().setValue(5).setUnit(SamplingUnit.MINUTES).build())
+                .build();
+        try {
+            apply(
+                    newGuardrail(QueryGuardrail.Action.REWRITE),
+                    newQuery(NOW.minus(Duration.ofDays(30)), ImmutableList.of(unaligned), "foo"));
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof QueryCostExceededException);
+        }
+
+        // Only the aligned metric is moved to a coarser rollup
+        final Instant start = NOW.minus(Duration.ofHours(12));
+        final MetricsQuery rewritten = apply(
+                newGuardrail(QueryGuardrail.Action.REWRITE),
+                ThreadLocalBuilder.clone(newQuery(start, "foo"), MetricsQuery.Builder.class, b -> b.setMetrics(ImmutableList.of(
+                        newQuery(start, "foo").getMetrics().get(0),
+                        newQuery(start, ImmutableList.of(unaligned), "bar").getMetrics().get(0)))));
+        assertEquals("foo_1h", rewritten.getMetrics().get(0).getName());
+        assertEquals("bar", rewritten.getMetrics().get(1).getName());
+    }
+
+    private static MetricsQuery apply(final QueryGuardrail guardrail, final MetricsQuery query) throws Exception {
+        return guardrail.apply(query, METRIC_NAMES, QUERY_CONFIG, "queryMetrics", new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+    }
+
+    private static QueryGuardrail newGuardrail(final QueryGuardrail.Action action) {
+        // Raw data points every minute; rollups hold one point per period
+        final QueryCostEstimator estimator = (metric, start, end) -> {
+            final Duration interval;
+            if (metric.getName().endsWith("_1h")) {
+                interval = Duration.ofHours(1);
+            } else if (metric.getName().endsWith("_1d")) {
+                interval = Duration.ofDays(1);
+            } else {
+                interval = Duration.ofMinutes(1);
+            }
+            return CompletableFuture.completedFuture(SERIES * (Duration.between(start, end).toMillis() / interval.toMillis()));
+        };
+        return new QueryGuardrail.Builder()
+                .setEstimator(estimator)
+                .setClock(Clock.fixed(NOW, ZoneOffset.UTC))
+                .setMaxDataPoints(10_000L)
+                .setAction(action)
+                .setEnabledOrigins(ImmutableSet.of(QueryOrigin.EXTERNAL_REQUEST))
+                .build();
+    }
+
+    private static MetricsQuery newQuery(final Instant start, final String... names) {
+        return newQuery(
+                start,
+                ImmutableList.of(new Aggregator.Builder()
+                        .setName("avg")
+                        .setSampling(new Sampling.Builder().setValue(5).setUnit(SamplingUnit.MINUTES).build())
+                        .setAlignSampling(true)
+                        .build()),
+                names);
+    }
+
+    private static MetricsQuery newQuery(final Instant start, final ImmutableList<Aggregator> aggregators, final String... names) {
+        final ImmutableList.Builder<Metric> metrics = ImmutableList.builder();
+        for (final String name : names) {
+            metrics.add(new Metric.Builder()
+                    .setName(name)
+                    .setAggregators(aggregators)
+                    .build());
+        }
+        return new MetricsQuery.Builder()
+                .setStartTime(start)
+                .setMetrics(metrics.build())
+                .build();
+    }
+
+    private static final long SERIES = 10;
+    private static final Instant NOW = Instant.parse("2026-03-04T12:00:00Z");
+    private static final MetricNamesIndex METRIC_NAMES = MetricNamesIndex.create(ImmutableList.of(
+            "foo", "foo_1h", "foo_1d", "bar", "bar_1h"));
+    private static final MetricsQueryConfig QUERY_CONFIG = name -> EnumSet.of(SamplingUnit.HOURS, SamplingUnit.DAYS);
+}
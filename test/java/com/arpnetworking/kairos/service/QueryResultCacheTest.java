@@ -0,0 +1,240 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.java.time.ManualClock;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.RelativeDateTime;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.client.models.TimeUnit;
+import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
+import com.google.common.collect.ImmutableList;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Sink;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link QueryResultCache}.
+ *
+ * @author agent (agent at local)
+ */
+public class QueryResultCacheTest {
+
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _materializer = Materializer.createMaterializer(_actorSystem);
+        _clock = new ManualClock(NOW, Duration.ofMinutes(1), ZoneOffset.UTC);
+        _cache = createCache(_clock);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testNormalizeResolvesAndAlignsRelativeTimes() {
+        final MetricsQuery normalized = _cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+
+        assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:00Z")), normalized.getStartTime());
+        assertEquals(Optional.of(Instant.parse("2026-03-01T12:10:59.999Z")), normalized.getEndTime());
+        assertEquals(Optional.empty(), normalized.getStartTimeRelative());
+        assertEquals(Optional.empty(), normalized.getEndTimeRelative());
+    }
+
+    @Test
+    public void testNormalizeAlignsToFinerSampling() {
+        final MetricsQuery normalized = _cache.normalize(newQuery(aligned(10, SamplingUnit.SECONDS)));
+
+        assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:20Z")), normalized.getStartTime());
+        assertEquals(Optional.of(Instant.parse("2026-03-01T12:10:29.999Z")), normalized.getEndTime());
+    }
+
+    @Test
+    public void testNormalizeDoesNotAlignRawQuery() {
+        final MetricsQuery normalized = _cache.normalize(newQuery(new Aggregator.Builder().setName("filter").build()));
+
+        assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:25Z")), normalized.getStartTime());
+        assertEquals(Optional.of(Instant.parse("2026-03-01T12:10:25Z")), normalized.getEndTime());
+        assertEquals(Optional.empty(), normalized.getStartTimeRelative());
+    }
+
+    @Test
+    public void testNormalizeDoesNotAlignUnalignedSampling() {
+        final MetricsQuery normalized = _cache.normalize(newQuery(new Aggregator.Builder()
+                .setName("avg")
+                .setSampling(simpleSampling(1, SamplingUnit.MINUTES))
+                .build()));
+
+        assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:25Z")), normalized.getStartTime());
+        assertEquals(Optional.of(Instant.parse("2026-03-01T12:10:25Z")), normalized.getEndTime());
+    }
+
+    @Test
+    public void testNormalizeDoesNotAlignSamplingOffTheAlignment() {
+        final MetricsQuery normalized = _cache.normalize(newQuery(
+                aligned(1, SamplingUnit.MINUTES),
+                aligned(90, SamplingUnit.SECONDS)));
+
+        assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:25Z")), normalized.getStartTime());
+        assertEquals(Optional.of(Instant.parse("2026-03-01T12:10:25Z")), normalized.getEndTime());
+    }
+
+    @Test
+    public void testNormalizedQueriesWithinPeriodAreEqual() {
+        final MetricsQuery later = createCache(Clock.fixed(NOW.plusSeconds(20), ZoneOffset.UTC))
+                .normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+        assertEquals(_cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES))), later);
+    }
+
+    @Test
+    public void testServesCompletedResponse() throws Exception {
+        final MetricsQuery query = _cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+        assertFalse(_cache.get(query).isPresent());
+
+        final KairosDbStreamedResponse response = _cache.put(query, newResponse("{}", "[]"));
+        assertFalse(_cache.get(query).isPresent());
+        assertEquals("{}[]", read(response));
+
+        final Optional<KairosDbStreamedResponse> cached = _cache.get(query);
+        assertTrue(cached.isPresent());
+        assertEquals(Optional.of("gzip"), cached.get().getContentEncoding());
+        assertEquals("{}[]", read(cached.get()));
+    }
+
+    @Test
+    public void testDoesNotCacheLargeResponse() throws Exception {
+        final MetricsQuery query = _cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+
+        assertEquals("{\"a\":1}[1,2]", read(_cache.put(query, newResponse("{\"a\":1}", "[1,2]"))));
+        assertFalse(_cache.get(query).isPresent());
+    }
+
+    @Test
+    public void testDoesNotCacheFailedResponse() throws Exception {
+        final MetricsQuery query = _cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+        final KairosDbStreamedResponse failing = new KairosDbStreamedResponse.Builder()
+                .setBody(Source.single(ByteString.fromString("{")).concat(Source.failed(new IllegalStateException("failed"))))
+                .build();
+
+        _cache.put(query, failing).getBody().runWith(Sink.ignore(), _materializer).exceptionally(e -> null)
+                .toCompletableFuture().get();
+        assertFalse(_cache.get(query).isPresent());
+    }
+
+    @Test
+    public void testLiveResponsesExpire() throws Exception {
+        final MetricsQuery query = _cache.normalize(newQuery(aligned(1, SamplingUnit.MINUTES)));
+        read(_cache.put(query, newResponse("{}")));
+        assertTrue(_cache.get(query).isPresent());
+
+        _clock.tick();
+        assertFalse(_cache.get(query).isPresent());
+    }
+
+    @Test
+    public void testHistoricalResponsesAreRetained() throws Exception {
+        final MetricsQuery query = _cache.normalize(new MetricsQuery.Builder()
+                .setStartTime(NOW.minus(Duration.ofHours(2)))
+                .setEndTime(NOW.minus(Duration.ofHours(1)))
+                .setMetrics(ImmutableList.of(new Metric.Builder().setName("foo").build()))
+                .build());
+        read(_cache.put(query, newResponse("{}")));
+
+        _clock.tick();
+        assertTrue(_cache.get(query).isPresent());
+    }
+
+    private static QueryResultCache createCache(final Clock clock) {
+        return new QueryResultCache.Builder()
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setClock(clock)
+                .setLiveTtl(Duration.ofSeconds(30))
+                .setHistoricalTtl(Duration.ofHours(1))
+                .setHistoricalAfter(Duration.ofMinutes(5))
+                .setMaxEntryBytes(8L)
+                .build();
+    }
+
+    private String read(final KairosDbStreamedResponse response) throws Exception {
+        return response.getBody()
+                .runFold(ByteString.emptyByteString(), ByteString::concat, _materializer)
+                .toCompletableFuture()
+                .get()
+                .utf8String();
+    }
+
+    private static KairosDbStreamedResponse newResponse(final String... chunks) {
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(Source.from(ImmutableList.copyOf(chunks)).map(ByteString::fromString))
+                .setContentEncoding("gzip")
+                .build();
+    }
+
+    private static MetricsQuery newQuery(final Aggregator... aggregators) {
+        return new MetricsQuery.Builder()
+                .setStartTimeRelative(new RelativeDateTime.Builder()
+                        .setUnit(TimeUnit.HOURS)
+                        .setValue(1)
+                        .build())
+                .setMetrics(ImmutableList.of(
+                        new Metric.Builder()
+                                .setName("foo")
+                                .setAggregators(ImmutableList.copyOf(aggregators))
+                                .build()))
+                .build();
+    }
+
+    private static Aggregator aligned(final int value, final SamplingUnit unit) {
+        return new Aggregator.Builder()
+                .setName("avg")
+                .setSampling(simpleSampling(value, unit))
+                .setAlignSampling(true)
+                .build();
+    }
+
+    private static Sampling simpleSampling(final int value, final SamplingUnit unit) {
+        return new Sampling.Builder().setValue(value).setUnit(unit).build();
+    }
+
+    private ActorSystem _actorSystem;
+    private Materializer _materializer;
+    private ManualClock _clock;
+    private QueryResultCache _cache;
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:10:25Z");
+}
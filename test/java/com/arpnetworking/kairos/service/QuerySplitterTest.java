@@ -0,0 +1,236 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.DataPoint;
+import com.arpnetworking.kairos.client.models.DataPoints;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.metrics.impl.NoOpMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link QuerySplitter}.
+ *
+ * @author agent (agent at local)
+ */
+public class QuerySplitterTest {
+
+    @Test
+    public void testCanSplitAlignedQuery() {
+        assertTrue(_splitter.canSplit(newQuery(START, aggregator(1, SamplingUnit.HOURS, true))));
+        assertTrue(_splitter.canSplit(newQuery(START, aggregator(15, SamplingUnit.MINUTES, true))));
+        assertTrue(_splitter.canSplit(newQuery(START, aggregator(1, SamplingUnit.DAYS, true))));
+    }
+
+    @Test
+    public void testCannotSplitIneligibleQuery() {
+        // Not sampling aligned
+        assertFalse(_splitter.canSplit(newQuery(START, aggregator(1, SamplingUnit.HOURS, false))));
+        // Buckets do not line up with the chunks
+        assertFalse(_splitter.canSplit(newQuery(START, aggregator(6, SamplingUnit.HOURS, true))));
+        assertFalse(_splitter.canSplit(newQuery(START, aggregator(7, SamplingUnit.MINUTES, true))));
+        assertFalse(_splitter.canSplit(newQuery(START, aggregator(1, SamplingUnit.WEEKS, true))));
+        // Non-range aggregators may depend on neighboring chunks
+        assertFalse(_splitter.canSplit(newQuery(
+                START,
+                aggregator(1, SamplingUnit.HOURS, true),
+                new Aggregator.Builder().setName("diff").build())));
+        // No whole chunk has closed
+        assertFalse(_splitter.canSplit(newQuery(NOW.minus(Duration.ofHours(6)), aggregator(1, SamplingUnit.HOURS, true))));
+    }
+
+    @Test
+    public void testCannotSplitLimitedQuery() {
+        final MetricsQuery query = newQuery(START, aggregator(1, SamplingUnit.HOURS, true));
+        final MetricsQuery limited = MetricsQuery.Builder.<MetricsQuery, MetricsQuery.Builder>clone(query)
+                .setMetrics(ImmutableList.of(Metric.Builder.<Metric, Metric.Builder>clone(query.getMetrics().get(0))
+                        .setLimit(10)
+                        .build()))
+                .build();
+        assertFalse(_splitter.canSplit(limited));
+    }
+
+    @Test
+    public void testQueriesOnlyOpenChunks() throws Exception {
+        final MetricsQuery query = newQuery(START, aggregator(1, SamplingUnit.HOURS, true));
+        final List<MetricsQuery> executed = new ArrayList<>();
+        final Function<MetricsQuery, CompletionStage<MetricsQueryResponse>> execute = chunk -> {
+            executed.add(chunk);
+            return CompletableFuture.completedFuture(newResponse(chunk.getStartTime().get()));
+        };
+
+        final MetricsQueryResponse response = _splitter.queryMetrics(query, execute, new NoOpMetrics())
+                .toCompletableFuture()
+                .get();
+        assertEquals(
+                ImmutableList.of(
+                        Instant.parse("2026-03-01T06:00:00Z"),
+                        Instant.parse("2026-03-02T00:00:00Z"),
+                        Instant.parse("2026-03-03T00:00:00Z"),
+                        Instant.parse("2026-03-04T00:00:00Z")),
+                executed.stream().map(chunk -> chunk.getStartTime().get()).collect(ImmutableList.toImmutableList()));
+        assertEquals(Instant.parse("2026-03-01T23:59:59.999Z"), executed.get(0).getEndTime().get());
+        assertEquals(NOW, executed.get(3).getEndTime().get());
+
+        final MetricsQueryResponse.Query merged = response.getQueries().get(0);
+        assertEquals(4, merged.getSampleSize());
+        assertEquals(1, merged.getResults().size());
+        assertEquals(
+                executed.stream().map(chunk -> chunk.getStartTime().get()).collect(ImmutableList.toImmutableList()),
+                merged.getResults().get(0).getValues().stream().map(DataPoint::getTime).collect(ImmutableList.toImmutableList()));
+        assertEquals(4, merged.getResults().get(0).getTags().get("host").size());
+
+        executed.clear();
+        assertEquals(response, _splitter.queryMetrics(query, execute, new NoOpMetrics()).toCompletableFuture().get());
+        assertEquals(
+                ImmutableList.of(Instant.parse("2026-03-01T06:00:00Z"), Instant.parse("2026-03-04T00:00:00Z")),
+                executed.stream().map(chunk -> chunk.getStartTime().get()).collect(ImmutableList.toImmutableList()));
+    }
+
+    @Test
+    public void testLimitsChunksInFlight() throws Exception {
+        final QuerySplitter splitter = new QuerySplitter.Builder()
+                .setClock(Clock.fixed(NOW, ZoneOffset.UTC))
+                .setMaxInFlight(2)
+                .build();
+        final List<CompletableFuture<MetricsQueryResponse>> pending = new ArrayList<>();
+        final List<Instant> started = new ArrayList<>();
+        final CompletableFuture<MetricsQueryResponse> response = splitter.queryMetrics(
+                newQuery(START, aggregator(1, SamplingUnit.HOURS, true)),
+                chunk -> {
+                    final CompletableFuture<MetricsQueryResponse> future = new CompletableFuture<>();
+                    pending.add(future);
+                    started.add(chunk.getStartTime().get());
+                    return future;
+                },
+                new NoOpMetrics()).toCompletableFuture();
+
+        assertEquals(2, started.size());
+        for (int i = 0; i < 4; ++i) {
+            assertFalse(response.isDone());
+            pending.get(i).complete(newResponse(started.get(i)));
+            assertEquals(Math.min(4, i + 3), started.size());
+        }
+        assertEquals(4, response.get().getQueries().get(0).getResults().get(0).getDataPoints().size());
+    }
+
+    @Test
+    public void testFailedChunkSkipsRemainingChunks() {
+        final QuerySplitter splitter = new QuerySplitter.Builder()
+                .setClock(Clock.fixed(NOW, ZoneOffset.UTC))
+                .setMaxInFlight(1)
+                .build();
+        final List<MetricsQuery> executed = new ArrayList<>();
+        final CompletableFuture<MetricsQueryResponse> response = splitter.queryMetrics(
+                newQuery(START, aggregator(1, SamplingUnit.HOURS, true)),
+                chunk -> {
+                    executed.add(chunk);
+                    return CompletableFuture.failedFuture(new IllegalStateException("failed"));
+                },
+                new NoOpMetrics()).toCompletableFuture();
+
+        assertTrue(response.isCompletedExceptionally());
+        assertEquals(1, executed.size());
+    }
+
+    @Test
+    public void testMergeDropsEmptyResults() {
+        final MetricsQueryResponse empty = new MetricsQueryResponse.Builder()
+                .setQueries(ImmutableList.of(new MetricsQueryResponse.Query.Builder()
+                        .setSampleSize(0L)
+                        .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                .setName("foo")
+                                .setGroupBy(ImmutableList.of(TYPE_GROUP_BY))
+                                .build()))
+                        .build()))
+                .build();
+        final MetricsQueryResponse data = newResponse(START);
+
+        final MetricsQueryResponse merged = QuerySplitter.merge(ImmutableList.of(empty, data, empty));
+        assertEquals(data.getQueries().get(0).getResults(), merged.getQueries().get(0).getResults());
+        assertEquals(empty, QuerySplitter.merge(ImmutableList.of(empty, empty)));
+    }
+
+    private static MetricsQueryResponse newResponse(final Instant time) {
+        return new MetricsQueryResponse.Builder()
+                .setQueries(ImmutableList.of(new MetricsQueryResponse.Query.Builder()
+                        .setSampleSize(1L)
+                        .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                .setName("foo")
+                                .setDataPoints(new DataPoints.Builder().addLong(time.toEpochMilli(), 1).build())
+                                .setTags(ImmutableListMultimap.of("host", "host-" + time))
+                                .setGroupBy(ImmutableList.of(
+                                        new MetricsQueryResponse.QueryTagGroupBy.Builder()
+                                                .setTags(ImmutableList.of("host"))
+                                                .setGroup(ImmutableMap.of("host", "host"))
+                                                .build(),
+                                        TYPE_GROUP_BY))
+                                .build()))
+                        .build()))
+                .build();
+    }
+
+    private static MetricsQuery newQuery(final Instant start, final Aggregator... aggregators) {
+        return new MetricsQuery.Builder()
+                .setStartTime(start)
+                .setMetrics(ImmutableList.of(new Metric.Builder()
+                        .setName("foo")
+                        .setTags(ImmutableSetMultimap.of())
+                        .setAggregators(ImmutableList.copyOf(aggregators))
+                        .build()))
+                .build();
+    }
+
+    private static Aggregator aggregator(final int value, final SamplingUnit unit, final boolean aligned) {
+        return new Aggregator.Builder()
+                .setName("avg")
+                .setSampling(new Sampling.Builder().setValue(value).setUnit(unit).build())
+                .setAlignSampling(aligned)
+                .build();
+    }
+
+    private final QuerySplitter _splitter = new QuerySplitter.Builder()
+            .setClock(Clock.fixed(NOW, ZoneOffset.UTC))
+            .build();
+
+    private static final Instant NOW = Instant.parse("2026-03-04T12:10:25Z");
+    private static final Instant START = Instant.parse("2026-03-01T06:00:00Z");
+    private static final MetricsQueryResponse.QueryGroupBy TYPE_GROUP_BY =
+            new MetricsQueryResponse.QueryTypeGroupBy.Builder().setType("number").build();
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.kairos.config.MetricsQueryConfig;
+import com.arpnetworking.kairos.config.MetricsQueryConfigImpl;
+import com.arpnetworking.rollups.RollupMetric;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks choosing the rollup a proxied query is rewritten to use.
+ * <p>
+ * {@code indexed} uses the per-metric rollup map of {@link MetricNamesIndex}
+ * and the memoized enabled periods of {@link MetricsQueryConfigImpl}.
+ * {@code scan} is the approach they replaced: scan the metric names for the
+ * rollups of the metric, order them in a {@link TreeMap} and match the
+ * configured patterns on every lookup.
+ * <p>
+ * Run with:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main RollupSelectionBenchmark
+ * </pre>
+ *
+ * @author agent (agent at local)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RollupSelectionBenchmark {
+
+    /**
+     * Builds the metric names, each with an hourly and a daily rollup.
+     */
+    @Setup
+    public void setUp() {
+        final ImmutableList.Builder<String> names = ImmutableList.builder();
+        for (int i = 0; i < metricCount; ++i) {
+            names.add("metric" + i, "metric" + i + "_1h", "metric" + i + "_1d");
+        }
+        _names = names.build();
+        _index = MetricNamesIndex.create(_names);
+        _config = new MetricsQueryConfigImpl(ConfigFactory.parseMap(ImmutableMap.of(
+                "rollup.metric.whitelist", ImmutableList.of("^metric.*"),
+                "rollup.metric.blacklist", ImmutableList.of("^excluded.*"),
+                "kairosdb.proxy.rollups.whitelist", ImmutableList.of(ImmutableMap.of("pattern", "^metric.*")))));
+        _metricName = "metric" + (metricCount / 2);
+    }
+
+    /**
+     * Selects the rollup from the index with the memoized configuration.
+     *
+     * @return the selected rollup
+     */
+    @Benchmark
+    public Optional<RollupMetric> indexed() {
+        return KairosDbServiceImpl.getCoarsestUsableRollupMetric(
+                _metricName,
+                _index.getRollups(_metricName),
+                _config,
+                SamplingUnit.DAYS);
+    }
+
+    /**
+     * Selects the rollup by scanning the metric names.
+     *
+     * @return the selected rollup
+     */
+    @Benchmark
+    public Optional<RollupMetric> scan() {
+        final List<RollupMetric> rollupMetrics = _names.stream()
+                .filter(name -> name.startsWith(_metricName))
+                .map(RollupMetric::fromRollupMetricName)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .filter(rollup -> rollup.getBaseMetricName().equals(_metricName))
+                .collect(ImmutableList.toImmutableList());
+
+        final Set<SamplingUnit> enabledRollups = WHITELIST.matcher(_metricName).matches()
+                && !BLACKLIST.matcher(_metricName).matches()
+                && QUERY_WHITELIST.matcher(_metricName).matches()
+                ? ALL_SAMPLING_UNITS
+                : ImmutableSet.of();
+        final TreeMap<SamplingUnit, RollupMetric> orderedRollups = new TreeMap<>();
+        rollupMetrics.forEach(rollupMetric -> {
+            final SamplingUnit rollupUnit = rollupMetric.getPeriod().getSamplingUnit();
+            if (enabledRollups.contains(rollupUnit)) {
+                orderedRollups.put(rollupUnit, rollupMetric);
+            }
+        });
+        return Optional.ofNullable(orderedRollups.floorEntry(SamplingUnit.DAYS)).map(Map.Entry::getValue);
+    }
+
+    /**
+     * The number of base metrics in the index.
+     */
+    @Param({"1000", "100000"})
+    public int metricCount;
+
+    private ImmutableList<String> _names;
+    private MetricNamesIndex _index;
+    private MetricsQueryConfig _config;
+    private String _metricName;
+
+    private static final Pattern WHITELIST = Pattern.compile("^metric.*");
+    private static final Pattern BLACKLIST = Pattern.compile("^excluded.*");
+    private static final Pattern QUERY_WHITELIST = Pattern.compile("^metric.*");
+    private static final ImmutableSet<SamplingUnit> ALL_SAMPLING_UNITS = ImmutableSet.copyOf(SamplingUnit.values());
+}
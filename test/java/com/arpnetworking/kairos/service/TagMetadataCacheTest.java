@@ -0,0 +1,200 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.kairos.service;
+
+import com.arpnetworking.commons.java.time.ManualClock;
+import com.arpnetworking.kairos.client.models.MetricTags;
+import com.arpnetworking.kairos.client.models.MetricsQueryResponse;
+import com.arpnetworking.kairos.client.models.RelativeDateTime;
+import com.arpnetworking.kairos.client.models.TagNamesResponse;
+import com.arpnetworking.kairos.client.models.TagsQuery;
+import com.arpnetworking.kairos.client.models.TimeUnit;
+import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TagMetadataCache}.
+ *
+ * @author agent (agent at local)
+ */
+public class TagMetadataCacheTest {
+
+    @Before
+    public void setUp() {
+        // Each tick ages entries past the time to live but not the maximum staleness
+        _clock = new ManualClock(NOW, Duration.ofMinutes(2), ZoneOffset.UTC);
+        _cache = createCache(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testServesFreshEntry() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final Supplier<CompletionStage<TagNamesResponse>> loader = () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(tagNames("foo"));
+        };
+
+        assertEquals(tagNames("foo"), _cache.getTagNames(loader).toCompletableFuture().get());
+        assertEquals(tagNames("foo"), _cache.getTagNames(loader).toCompletableFuture().get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testServesStaleEntryWhileRevalidating() throws Exception {
+        _cache.getTagNames(() -> CompletableFuture.completedFuture(tagNames("foo"))).toCompletableFuture().get();
+        _clock.tick();
+
+        final CompletableFuture<TagNamesResponse> refresh = new CompletableFuture<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final Supplier<CompletionStage<TagNamesResponse>> loader = () -> {
+            loads.incrementAndGet();
+            return refresh;
+        };
+        final CompletableFuture<TagNamesResponse> stale = _cache.getTagNames(loader).toCompletableFuture();
+        assertTrue(stale.isDone());
+        assertEquals(tagNames("foo"), stale.get());
+        // The refresh in progress is shared rather than repeated
+        assertEquals(tagNames("foo"), _cache.getTagNames(loader).toCompletableFuture().get());
+        assertEquals(1, loads.get());
+
+        refresh.complete(tagNames("bar"));
+        assertEquals(tagNames("bar"), _cache.getTagNames(loader).toCompletableFuture().get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsStaleEntry() throws Exception {
+        _cache.getTagNames(() -> CompletableFuture.completedFuture(tagNames("foo"))).toCompletableFuture().get();
+        _clock.tick();
+
+        final TagNamesResponse response = _cache.getTagNames(
+                () -> CompletableFuture.failedFuture(new IllegalStateException("unavailable")))
+                .toCompletableFuture()
+                .get();
+        assertEquals(tagNames("foo"), response);
+    }
+
+    @Test
+    public void testExpiredEntryIsLoaded() throws Exception {
+        _cache.getTagNames(() -> CompletableFuture.completedFuture(tagNames("foo"))).toCompletableFuture().get();
+        for (int i = 0; i < 6; ++i) {
+            _clock.tick();
+        }
+
+        final CompletableFuture<TagNamesResponse> refresh = new CompletableFuture<>();
+        final CompletableFuture<TagNamesResponse> response = _cache.getTagNames(() -> refresh).toCompletableFuture();
+        assertFalse(response.isDone());
+        refresh.complete(tagNames("bar"));
+        assertEquals(tagNames("bar"), response.get());
+    }
+
+    @Test
+    public void testConcurrentMissesShareLoad() {
+        final CompletableFuture<TagNamesResponse> load = new CompletableFuture<>();
+        final AtomicInteger loads = new AtomicInteger();
+        final Supplier<CompletionStage<TagNamesResponse>> loader = () -> {
+            loads.incrementAndGet();
+            return load;
+        };
+
+        final CompletableFuture<TagNamesResponse> first = _cache.getTagNames(loader).toCompletableFuture();
+        final CompletableFuture<TagNamesResponse> second = _cache.getTagNames(loader).toCompletableFuture();
+        load.complete(tagNames("foo"));
+        assertEquals(tagNames("foo"), first.join());
+        assertEquals(tagNames("foo"), second.join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testTagQueriesWithinBucketShareEntry() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final MetricsQueryResponse response = new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build();
+
+        _cache.getTags(tagsQuery("foo"), query -> {
+            loads.incrementAndGet();
+            assertEquals(Optional.of(Instant.parse("2026-03-01T11:10:00Z")), query.getStartTime());
+            assertEquals(Optional.of(Instant.parse("2026-03-01T12:14:59.999Z")), query.getEndTime());
+            return CompletableFuture.completedFuture(response);
+        }).toCompletableFuture().get();
+        assertEquals(response, _cache.getTags(tagsQuery("foo"), query -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(response);
+        }).toCompletableFuture().get());
+        _cache.getTags(tagsQuery("bar"), query -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(response);
+        }).toCompletableFuture().get();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testDoesNotCacheOversizedEntry() throws Exception {
+        final TagMetadataCache cache = createCache(8L);
+        final AtomicInteger loads = new AtomicInteger();
+        final Supplier<CompletionStage<TagNamesResponse>> loader = () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(tagNames("foo"));
+        };
+
+        cache.getTagNames(loader).toCompletableFuture().get();
+        cache.getTagNames(loader).toCompletableFuture().get();
+        assertEquals(2, loads.get());
+    }
+
+    private TagMetadataCache createCache(final long maxEntryBytes) {
+        return new TagMetadataCache.Builder()
+                .setMetricsFactory(new NoOpMetricsFactory())
+                .setMapper(SerializationTestUtils.getApiObjectMapper())
+                .setClock(_clock)
+                .setTtl(Duration.ofMinutes(1))
+                .setMaxStale(Duration.ofMinutes(10))
+                .setMaxEntryBytes(maxEntryBytes)
+                .build();
+    }
+
+    private static TagNamesResponse tagNames(final String name) {
+        return new TagNamesResponse.Builder().setResults(ImmutableSet.of(name)).build();
+    }
+
+    private static TagsQuery tagsQuery(final String metric) {
+        return new TagsQuery.Builder()
+                .setStartTimeRelative(new RelativeDateTime.Builder().setValue(1).setUnit(TimeUnit.HOURS).build())
+                .setMetrics(ImmutableList.of(new MetricTags.Builder().setName(metric).build()))
+                .build();
+    }
+
+    private ManualClock _clock;
+    private TagMetadataCache _cache;
+
+    private static final Instant NOW = Instant.parse("2026-03-01T12:10:25Z");
+}
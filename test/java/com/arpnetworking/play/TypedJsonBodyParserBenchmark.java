@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import org.apache.pekko.util.ByteString;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import play.http.HttpErrorHandler;
+import play.mvc.Http;
+import play.test.Helpers;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks binding a query body with {@link TypedJsonBodyParser} against
+ * parsing it into a {@code JsonNode} and converting the tree, as the JSON
+ * body parser followed by {@code treeToValue} does.
+ * <p>
+ * Run with the GC profiler to compare the bytes allocated per request:
+ * <pre>
+ * ./mvnw test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main TypedJsonBodyParserBenchmark -prof gc
+ * </pre>
+ *
+ * @author agent (agent at local)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypedJsonBodyParserBenchmark {
+
+    /**
+     * Serializes a query with the configured number of metrics.
+     *
+     * @throws IOException if the query cannot be serialized
+     */
+    @Setup
+    public void setUp() throws IOException {
+        final ImmutableList.Builder<Metric> metrics = ImmutableList.builder();
+        for (int i = 0; i < metricCount; ++i) {
+            metrics.add(new Metric.Builder()
+                    .setName("metric" + i)
+                    .setTags(ImmutableMultimap.of("host", "host" + i, "dc", "east", "dc", "west"))
+                    .setAggregators(ImmutableList.of(new Aggregator.Builder()
+                            .setName("avg")
+                            .setSampling(new Sampling.Builder().setValue(1).setUnit(SamplingUnit.MINUTES).build())
+                            .build()))
+                    .build());
+        }
+        _body = ByteString.fromArray(OBJECT_MAPPER.writeValueAsBytes(new MetricsQuery.Builder()
+                .setStartTime(Instant.ofEpochMilli(1549000000000L))
+                .setMetrics(metrics.build())
+                .build()));
+        _parser = new MetricsQueryParser();
+        _request = Helpers.fakeRequest().build();
+    }
+
+    /**
+     * Binds the body directly to the query.
+     *
+     * @return the query
+     * @throws IOException if the body cannot be parsed
+     */
+    @Benchmark
+    public MetricsQuery typed() throws IOException {
+        return _parser.parse(_request, _body);
+    }
+
+    /**
+     * Parses the body into a tree and converts the tree to the query.
+     *
+     * @return the query
+     * @throws IOException if the body cannot be parsed
+     */
+    @Benchmark
+    public MetricsQuery tree() throws IOException {
+        return OBJECT_MAPPER.treeToValue(OBJECT_MAPPER.readTree(_body.iterator().asInputStream()), MetricsQuery.class);
+    }
+
+    /**
+     * The number of metrics in the query.
+     */
+    @Param({"1", "50"})
+    public int metricCount;
+
+    private ByteString _body;
+    private MetricsQueryParser _parser;
+    private Http.RequestHeader _request;
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+
+    private static final class MetricsQueryParser extends TypedJsonBodyParser<MetricsQuery> {
+        MetricsQueryParser() {
+            super(1024 * 1024, Mockito.mock(HttpErrorHandler.class), OBJECT_MAPPER, MetricsQuery.class);
+        }
+    }
+}
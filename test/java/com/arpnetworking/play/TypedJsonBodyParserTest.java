@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.play;
+
+import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.Metric;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.kairos.client.models.Sampling;
+import com.arpnetworking.kairos.client.models.SamplingUnit;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import play.http.HttpErrorHandler;
+import play.libs.F;
+import play.mvc.Http;
+import play.mvc.Result;
+import play.test.Helpers;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TypedJsonBodyParser}.
+ *
+ * @author agent (agent at local)
+ */
+public class TypedJsonBodyParserTest {
+
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _materializer = Materializer.createMaterializer(_actorSystem);
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testParsesChunkedBody() throws Exception {
+        final MetricsQuery query = newQuery(3);
+        final byte[] bytes = OBJECT_MAPPER.writeValueAsBytes(query);
+        final F.Either<Result, MetricsQuery> parsed = new MetricsQueryParser()
+                .apply(Helpers.fakeRequest().header(Http.HeaderNames.CONTENT_TYPE, "application/json").build())
+                .run(Source.from(ImmutableList.of(
+                        ByteString.fromArray(bytes, 0, 10),
+                        ByteString.fromArray(bytes, 10, bytes.length - 10))), _materializer)
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertTrue(parsed.right.isPresent());
+        assertEquals(query, parsed.right.get());
+    }
+
+    @Test
+    public void testRejectsMissingContentType() throws Exception {
+        final F.Either<Result, MetricsQuery> parsed = new MetricsQueryParser()
+                .apply(Helpers.fakeRequest().header(Http.HeaderNames.CONTENT_TYPE, "text/plain").build())
+                .run(Source.single(ByteString.fromString("{}")), _materializer)
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertTrue(parsed.left.isPresent());
+        assertEquals(Http.Status.BAD_REQUEST, parsed.left.get().status());
+    }
+
+    private static MetricsQuery newQuery(final int metricCount) {
+        final ImmutableList.Builder<Metric> metrics = ImmutableList.builder();
+        for (int i = 0; i < metricCount; ++i) {
+            metrics.add(new Metric.Builder()
+                    .setName("metric" + i)
+                    .setTags(ImmutableMultimap.of("host", "host" + i, "dc", "east", "dc", "west"))
+                    .setAggregators(ImmutableList.of(new Aggregator.Builder()
+                            .setName("avg")
+                            .setSampling(new Sampling.Builder().setValue(1).setUnit(SamplingUnit.MINUTES).build())
+                            .build()))
+                    .build());
+        }
+        return new MetricsQuery.Builder()
+                .setStartTime(Instant.ofEpochMilli(1549000000000L))
+                .setMetrics(metrics.build())
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private Materializer _materializer;
+
+    private static final ObjectMapper OBJECT_MAPPER = SerializationTestUtils.getApiObjectMapper();
+
+    private static final class MetricsQueryParser extends TypedJsonBodyParser<MetricsQuery> {
+        MetricsQueryParser() {
+            super(1024 * 1024, Mockito.mock(HttpErrorHandler.class), OBJECT_MAPPER, MetricsQuery.class);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link HistogramAccumulator}.
+ *
+ * @author agent (agent at local)
+ */
+public class HistogramAccumulatorTest {
+
+    @Test
+    public void testMergesHistograms() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(histogram(ImmutableMap.of("1.0", 2, "2.0", 1), 1.0, 2.0, 4.0));
+        accumulator.add(histogram(ImmutableMap.of("2.0", 3, "8.0", 1), 2.0, 8.0, 14.0));
+
+        final Map<String, Object> merged = accumulator.toHistogram();
+        assertEquals(ImmutableMap.of("1.0", 2L, "2.0", 4L, "8.0", 1L), merged.get("bins"));
+        assertEquals(1.0, merged.get("min"));
+        assertEquals(8.0, merged.get("max"));
+        assertEquals(18.0, merged.get("sum"));
+        assertEquals(18.0 / 7, merged.get("mean"));
+        assertEquals(7L, accumulator.getCount());
+    }
+
+    @Test
+    public void testAddsNumbersAsSamples() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(3.0);
+        accumulator.add(Integer.valueOf(3));
+        accumulator.add(-1.5);
+
+        final Map<String, Object> merged = accumulator.toHistogram();
+        assertEquals(ImmutableMap.of("-1.5", 1L, "3.0", 2L), merged.get("bins"));
+        assertEquals(-1.5, merged.get("min"));
+        assertEquals(3.0, merged.get("max"));
+        assertEquals(4.5, merged.get("sum"));
+        assertEquals(7, merged.get("precision"));
+    }
+
+    @Test
+    public void testTruncatesToLowestPrecision() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(1.75);
+        accumulator.add(ImmutableMap.of(
+                "bins", ImmutableMap.of("1.5", 1),
+                "min", 1.5,
+                "max", 1.5,
+                "sum", 1.5,
+                "precision", 1));
+
+        final Map<String, Object> merged = accumulator.toHistogram();
+        // With one bit of mantissa 1.75 falls into the 1.5 bin
+        assertEquals(ImmutableMap.of("1.5", 2L), merged.get("bins"));
+        assertEquals(1, merged.get("precision"));
+    }
+
+    @Test
+    public void testKeepsPrecisionFinerThanDefault() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(ImmutableMap.of("bins", ImmutableMap.of("1.0009765625", 1), "sum", 1.0009765625, "precision", 10));
+        accumulator.add(ImmutableMap.of("bins", ImmutableMap.of("1.0009765625", 2), "sum", 2.001953125, "precision", 12));
+
+        final Map<String, Object> merged = accumulator.toHistogram();
+        // 1 + 2^-10 needs ten bits of mantissa and would be truncated to 1.0 at the default precision
+        assertEquals(ImmutableMap.of("1.0009765625", 3L), merged.get("bins"));
+        assertEquals(10, merged.get("precision"));
+    }
+
+    @Test
+    public void testIgnoresMissingMinAndMax() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(ImmutableMap.of("bins", ImmutableMap.of("2.0", 1), "sum", 2.0, "precision", 7));
+        final Map<String, Object> withoutMinMax = accumulator.toHistogram();
+        assertFalse(withoutMinMax.containsKey("min"));
+        assertFalse(withoutMinMax.containsKey("max"));
+
+        accumulator.add(histogram(ImmutableMap.of("4.0", 1), 4.0, 4.0, 4.0));
+        final Map<String, Object> merged = accumulator.toHistogram();
+        assertEquals(4.0, merged.get("min"));
+        assertEquals(4.0, merged.get("max"));
+        assertEquals(6.0, merged.get("sum"));
+        assertEquals(2L, accumulator.getCount());
+    }
+
+    @Test
+    public void testOmitsSumAndMeanWhenAnInputHasNoSum() {
+        final HistogramAccumulator accumulator = new HistogramAccumulator();
+        accumulator.add(histogram(ImmutableMap.of("4.0", 1), 4.0, 4.0, 4.0));
+        accumulator.add(ImmutableMap.of("bins", ImmutableMap.of("2.0", 1), "min", 2.0, "max", 2.0, "precision", 7));
+
+        final Map<String, Object> merged = accumulator.toHistogram();
+        assertFalse(merged.containsKey("sum"));
+        assertFalse(merged.containsKey("mean"));
+        assertEquals(ImmutableMap.of("2.0", 1L, "4.0", 1L), merged.get("bins"));
+        assertEquals(2.0, merged.get("min"));
+        assertEquals(2L, accumulator.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnsupportedValue() {
+        new HistogramAccumulator().add("foo");
+    }
+
+    private static Map<String, Object> histogram(
+            final Map<String, Integer> bins,
+            final double min,
+            final double max,
+            final double sum) {
+        return ImmutableMap.of("bins", bins, "min", min, "max", max, "sum", sum, "precision", 7);
+    }
+}
@@ -18,6 +18,8 @@ package com.arpnetworking.rollups;
 import com.arpnetworking.commons.pekko.GuiceActorCreator;
 import com.arpnetworking.kairos.client.KairosDbClient;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
+import com.arpnetworking.kairos.service.MetricNamesCatalog;
+import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.metrics.portal.PekkoClusteringConfigFactory;
 import com.google.common.collect.ImmutableList;
@@ -73,7 +75,10 @@ public final class MetricsDiscoveryTest {
         _injector = Guice.createInjector(new AbstractModule() {
             @Override
             protected void configure() {
-                bind(KairosDbClient.class).toInstance(_kairosDbClient);
+                bind(MetricNamesCatalog.class).toInstance(new MetricNamesCatalog.Builder()
+                        .setKairosDbClient(_kairosDbClient)
+                        .setMetricsFactory(new NoOpMetricsFactory())
+                        .build());
                 bind(Config.class).toInstance(_config);
                 bind(PeriodicMetrics.class).toInstance(_periodicMetrics);
                 bind(Features.class).toInstance(_features);
@@ -158,6 +163,30 @@ public final class MetricsDiscoveryTest {
         }};
     }
 
+    @Test
+    public void testBatchFetch() {
+        when(_kairosDbClient.queryMetricNames())
+                .thenReturn(CompletableFuture
+                        .completedFuture(new MetricNamesResponse.Builder()
+                                .setResults(ImmutableList.of("metric1", "metric2", "metric3"))
+                                .build()));
+        new TestKit(_system) {{
+            final ActorRef actor = createActor();
+            final ActorRef testActor = getTestActor();
+            awaitAssert(() -> {
+                actor.tell(new MetricBatchFetch(2), testActor);
+                assertEquals(ImmutableList.of("metric1", "metric2"), expectMsgClass(MetricBatch.class).getMetricNames());
+                return null;
+            });
+
+            actor.tell(new MetricBatchFetch(2), testActor);
+            assertEquals(ImmutableList.of("metric3"), expectMsgClass(MetricBatch.class).getMetricNames());
+
+            actor.tell(new MetricBatchFetch(2), testActor);
+            expectMsgClass(NoMoreMetrics.class);
+        }};
+    }
+
     @Test
     public void testMetricsFiltering() {
         when(_kairosDbClient.queryMetricNames())
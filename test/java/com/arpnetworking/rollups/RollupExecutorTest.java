@@ -27,6 +27,8 @@ import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.metrics.portal.TestBeanFactory;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
@@ -98,12 +100,15 @@ public class RollupExecutorTest {
         _injector = Guice.createInjector(new AbstractModule() {
             @Override
             protected void configure() {
-                bind(KairosDbClient.class).toInstance(_kairosDbClient);
+                bind(KairosDbClient.class)
+                        .annotatedWith(Names.named("RollupKairosDbClient"))
+                        .toInstance(_kairosDbClient);
                 bind(Config.class).toInstance(_config);
                 bind(ActorRef.class)
                         .annotatedWith(Names.named("RollupManager"))
                         .toInstance(_probe.getRef());
                 bind(PeriodicMetrics.class).toInstance(_periodicMetrics);
+                bind(ObjectMapper.class).toInstance(SerializationTestUtils.getApiObjectMapper());
             }
         });
     }
@@ -330,9 +335,10 @@ public class RollupExecutorTest {
         public TestRollupExecutor(
                 final Config configuration,
                 @Named("RollupManager") final ActorRef testActor,
-                final KairosDbClient kairosDbClient,
+                @Named("RollupKairosDbClient") final KairosDbClient kairosDbClient,
+                final ObjectMapper mapper,
                 final PeriodicMetrics metrics) {
-            super(configuration, testActor, kairosDbClient, metrics);
+            super(configuration, testActor, kairosDbClient, mapper, metrics);
             _self = testActor;
         }
 
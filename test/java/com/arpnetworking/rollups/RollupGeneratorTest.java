@@ -94,6 +94,7 @@ public class RollupGeneratorTest {
     private Metrics _metrics;
 
     private TestKit _probe;
+    private TestKit _watermarkStore;
     private ActorRef _testManager;
 
     private Clock _clock;
@@ -119,13 +120,16 @@ public class RollupGeneratorTest {
                 ConfigFactory.parseMap(PekkoClusteringConfigFactory.generateConfiguration()));
 
         _probe = new TestKit(_system);
+        _watermarkStore = new TestKit(_system);
 
         _clock = Clock.fixed(Instant.now(), ZoneId.of("UTC"));
 
         _injector = Guice.createInjector(new AbstractModule() {
             @Override
             protected void configure() {
-                bind(KairosDbClient.class).toInstance(_kairosDbClient);
+                bind(KairosDbClient.class)
+                        .annotatedWith(Names.named("RollupKairosDbClient"))
+                        .toInstance(_kairosDbClient);
                 bind(Config.class).toInstance(_config);
                 bind(ActorRef.class)
                         .annotatedWith(Names.named("RollupMetricsDiscovery"))
@@ -133,6 +137,9 @@ public class RollupGeneratorTest {
                 bind(ActorRef.class)
                         .annotatedWith(Names.named("RollupManager"))
                         .toInstance(_probe.getRef());
+                bind(ActorRef.class)
+                        .annotatedWith(Names.named("RollupWatermarkStore"))
+                        .toInstance(_watermarkStore.getRef());
                 bind(Clock.class).toInstance(_clock);
                 bind(PeriodicMetrics.class).toInstance(_periodicMetrics);
                 bind(MetricsFactory.class).toInstance(_metricsFactory);
@@ -167,6 +174,18 @@ public class RollupGeneratorTest {
         _probe.expectMsg(RollupGenerator.FETCH_METRIC);
     }
 
+    @Test
+    public void testBacksOffWhenQueueFull() {
+        final ActorRef actor = createActor();
+        _probe.expectMsg(RollupGenerator.FETCH_METRIC);
+        actor.tell(RollupGenerator.FETCH_METRIC, ActorRef.noSender());
+        _probe.expectMsg(MetricFetch.getInstance());
+
+        actor.tell(RollupManager.QueueFull.getInstance(), ActorRef.noSender());
+        actor.tell(RollupGenerator.FETCH_METRIC, ActorRef.noSender());
+        _probe.expectNoMessage();
+    }
+
     @Test
     public void testFetchesTagNames() {
         when(_kairosDbClient.queryMetricTags(any())).thenReturn(
@@ -769,6 +788,151 @@ public class RollupGeneratorTest {
         _probe.expectMsgClass(FinishRollupMessage.class);
     }
 
+    @Test
+    public void testUsesWatermarks() {
+        enableWatermarks();
+        final Instant sourceLastDataPoint = _clock.instant().truncatedTo(ChronoUnit.MILLIS);
+        mockKairosDbLastDatapoints(ImmutableMap.of("metric", sourceLastDataPoint));
+        final Instant hourlyWatermark = RollupPeriod.HOURLY.recentEndTime(_clock.instant())
+                .minus(RollupPeriod.HOURLY.periodCountToDuration(2));
+        final Instant dailyWatermark = RollupPeriod.DAILY.recentEndTime(_clock.instant())
+                .minus(RollupPeriod.DAILY.periodCountToDuration(1));
+
+        final ActorRef actor = createActor();
+        _probe.expectMsg(RollupGenerator.FETCH_METRIC);
+        actor.tell(
+                new TagNamesMessage.Builder()
+                        .setMetricName("metric")
+                        .setTags(ImmutableMultimap.of("tag1", "val1"))
+                        .build(),
+                ActorRef.noSender());
+
+        // The raw metric has no watermark so only the rollup ones are requested
+        assertEquals(ImmutableSet.of("metric_1h"), _watermarkStore.expectMsgClass(RollupWatermarkStore.Get.class).getMetricNames());
+        final ActorRef hourlySender = _watermarkStore.getLastSender();
+        assertEquals(
+                ImmutableSet.of("metric_1h", "metric_1d"),
+                _watermarkStore.expectMsgClass(RollupWatermarkStore.Get.class).getMetricNames());
+        final ActorRef dailySender = _watermarkStore.getLastSender();
+        hourlySender.tell(watermarks(ImmutableMap.of("metric_1h", hourlyWatermark)), ActorRef.noSender());
+        dailySender.tell(
+                watermarks(ImmutableMap.of("metric_1h", hourlyWatermark, "metric_1d", dailyWatermark)),
+                ActorRef.noSender());
+
+        final Map<RollupPeriod, LastDataPointsMessage> messages = receiveLastDataPoints();
+        final LastDataPointsMessage hourly = messages.get(RollupPeriod.HOURLY);
+        assertEquals(Optional.of(sourceLastDataPoint), hourly.getSourceLastDataPointTime());
+        assertEquals(Optional.of(hourlyWatermark), hourly.getRollupLastDataPointTime());
+        final LastDataPointsMessage daily = messages.get(RollupPeriod.DAILY);
+        assertEquals(Optional.of(hourlyWatermark), daily.getSourceLastDataPointTime());
+        assertEquals(Optional.of(dailyWatermark), daily.getRollupLastDataPointTime());
+
+        // Only the raw source is queried and only since the watermark
+        final ArgumentCaptor<MetricsQuery> captor = ArgumentCaptor.forClass(MetricsQuery.class);
+        verify(_kairosDbClient, times(1)).queryMetrics(captor.capture());
+        assertEquals(ImmutableList.of("metric"), captor.getValue().getMetrics().stream().map(Metric::getName).toList());
+        assertEquals(Optional.of(hourlyWatermark), captor.getValue().getStartTime());
+    }
+
+    @Test
+    public void testSeedsWatermarksOnColdStart() {
+        enableWatermarks();
+        when(_config.hasPath(eq("rollup.maxBackFill.periods.daily"))).thenReturn(false);
+        final Instant hourlyLastDataPoint = RollupPeriod.HOURLY.recentEndTime(_clock.instant())
+                .minus(RollupPeriod.HOURLY.periodCountToDuration(1));
+        mockKairosDbLastDatapoints(ImmutableMap.of(
+                "metric", _clock.instant(),
+                "metric_1h", hourlyLastDataPoint
+        ));
+
+        final ActorRef actor = createActor();
+        _probe.expectMsg(RollupGenerator.FETCH_METRIC);
+        actor.tell(
+                new TagNamesMessage.Builder()
+                        .setMetricName("metric")
+                        .setTags(ImmutableMultimap.of("tag1", "val1"))
+                        .build(),
+                ActorRef.noSender());
+
+        _watermarkStore.expectMsgClass(RollupWatermarkStore.Get.class);
+        _watermarkStore.reply(watermarks(ImmutableMap.of()));
+        final RollupWatermarkStore.Update update = _watermarkStore.expectMsgClass(RollupWatermarkStore.Update.class);
+        assertEquals("metric_1h", update.getMetricName());
+        assertEquals(hourlyLastDataPoint, update.getWatermark());
+
+        final LastDataPointsMessage hourly = _probe.expectMsgClass(LastDataPointsMessage.class);
+        assertEquals(Optional.of(hourlyLastDataPoint), hourly.getRollupLastDataPointTime());
+        verify(_kairosDbClient, times(1)).queryMetrics(any());
+    }
+
+    @Test
+    public void testBatchedDiscovery() {
+        when(_config.hasPath(eq("rollup.generator.batchSize"))).thenReturn(true);
+        when(_config.getInt(eq("rollup.generator.batchSize"))).thenReturn(10);
+        when(_kairosDbClient.queryMetricTags(any())).thenReturn(
+                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder()
+                        .setQueries(Stream.of("metric", "other")
+                                .map(name -> new MetricsQueryResponse.Query.Builder()
+                                        .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                                .setName(name)
+                                                .setTags(ImmutableMultimap.of("tag1", name))
+                                                .build()))
+                                        .build())
+                                .collect(ImmutableList.toImmutableList()))
+                        .build()));
+        final Instant now = _clock.instant().truncatedTo(ChronoUnit.MILLIS);
+        final Instant hourlyEnd = RollupPeriod.HOURLY.recentEndTime(now);
+        final Instant dailyEnd = RollupPeriod.DAILY.recentEndTime(now);
+        mockKairosDbLastDatapoints(ImmutableMap.of(
+                "metric", now,
+                "metric_1h", hourlyEnd.minus(Duration.ofHours(2)),
+                "metric_1d", dailyEnd.minus(Duration.ofDays(1)),
+                "other", now,
+                "other_1h", hourlyEnd.minus(Duration.ofHours(1)),
+                "other_1d", dailyEnd.minus(Duration.ofDays(1))
+        ));
+
+        final ActorRef actor = createActor();
+        _probe.expectMsg(RollupGenerator.FETCH_METRIC);
+        actor.tell(RollupGenerator.FETCH_METRIC, ActorRef.noSender());
+        assertEquals(10, _probe.expectMsgClass(MetricBatchFetch.class).getMaxMetrics());
+
+        actor.tell(new MetricBatch(ImmutableList.of("metric", "other")), ActorRef.noSender());
+        final LastDataPointsBatchMessage batchMessage = _probe.expectMsgClass(LastDataPointsBatchMessage.class);
+        assertFalse(batchMessage.isFailure());
+        assertEquals(4, batchMessage.getLastDataPoints().size());
+
+        // One tags query and one last data point query for the whole batch
+        final ArgumentCaptor<MetricsQuery> captor = ArgumentCaptor.forClass(MetricsQuery.class);
+        verify(_kairosDbClient, times(1)).queryMetricTags(any());
+        verify(_kairosDbClient, times(1)).queryMetrics(captor.capture());
+        assertEquals(6, captor.getValue().getMetrics().size());
+
+        actor.tell(batchMessage, ActorRef.noSender());
+        final RollupDefinition rollupDef = _probe.expectMsgClass(RollupDefinition.class);
+        assertEquals("metric", rollupDef.getSourceMetricName());
+        assertEquals("metric_1h", rollupDef.getDestinationMetricName());
+        assertEquals(hourlyEnd.minus(Duration.ofHours(1)), rollupDef.getStartTime());
+        assertEquals(ImmutableMultimap.of("tag1", "metric"), rollupDef.getAllMetricTags());
+        _probe.expectMsg(RollupGenerator.FETCH_METRIC);
+        _probe.expectNoMessage();
+    }
+
+    private void enableWatermarks() {
+        when(_config.getBoolean(eq("rollup.watermarks.enabled"))).thenReturn(true);
+        when(_config.getString(eq("rollup.watermarks.timeout"))).thenReturn("10s");
+    }
+
+    private Map<RollupPeriod, LastDataPointsMessage> receiveLastDataPoints() {
+        final LastDataPointsMessage first = _probe.expectMsgClass(LastDataPointsMessage.class);
+        final LastDataPointsMessage second = _probe.expectMsgClass(LastDataPointsMessage.class);
+        return ImmutableMap.of(first.getPeriod(), first, second.getPeriod(), second);
+    }
+
+    private static RollupWatermarkStore.Watermarks watermarks(final ImmutableMap<String, Instant> watermarks) {
+        return new RollupWatermarkStore.Watermarks.Builder().setWatermarks(watermarks).build();
+    }
+
     private void mockKairosDbLastDatapoints(final Map<String, Instant> metricToLastTime) {
         when(_kairosDbClient.queryMetrics(any())).thenAnswer(invocation -> {
             final Object arg0 = invocation.getArguments()[0];
@@ -807,13 +971,14 @@ public class RollupGeneratorTest {
                 final Config configuration,
                 @Named("RollupMetricsDiscovery") final ActorRef testActor,
                 @Named("RollupManager") final ActorRef rollupManager,
-                final KairosDbClient kairosDbClient,
+                @Named("RollupKairosDbClient") final KairosDbClient kairosDbClient,
+                @Named("RollupWatermarkStore") final ActorRef watermarkStore,
                 final Clock clock,
                 final PeriodicMetrics metrics,
                 final MetricsFactory metricsFactory,
                 @Named("RollupGeneratorTagger") final Tagger tagger
         ) {
-            super(configuration, testActor, rollupManager, kairosDbClient, clock, metrics, metricsFactory, tagger);
+            super(configuration, testActor, rollupManager, kairosDbClient, watermarkStore, clock, metrics, metricsFactory, tagger);
             _self = testActor;
         }
         // CHECKSTYLE.ON: ParameterNumber
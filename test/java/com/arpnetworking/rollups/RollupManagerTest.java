@@ -16,10 +16,13 @@
 package com.arpnetworking.rollups;
 
 import com.arpnetworking.commons.builder.ThreadLocalBuilder;
+import com.arpnetworking.commons.jackson.databind.ObjectMapperFactory;
 import com.arpnetworking.kairos.client.KairosDbRequestException;
 import com.arpnetworking.metrics.impl.NoOpMetricsFactory;
 import com.arpnetworking.metrics.incubator.PeriodicMetrics;
 import com.arpnetworking.metrics.portal.PekkoClusteringConfigFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
@@ -27,7 +30,7 @@ import com.typesafe.config.ConfigFactory;
 import models.internal.Features;
 import org.apache.pekko.actor.ActorRef;
 import org.apache.pekko.actor.ActorSystem;
-import org.apache.pekko.testkit.TestActorRef;
+import org.apache.pekko.actor.PoisonPill;
 import org.apache.pekko.testkit.javadsl.TestKit;
 import org.junit.After;
 import org.junit.Before;
@@ -42,6 +45,8 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 /**
@@ -59,6 +64,7 @@ public final class RollupManagerTest {
     private ActorSystem _system;
 
     private TestKit _consistencyChecker;
+    private TestKit _watermarkStore;
 
     private static final AtomicLong SYSTEM_NAME_NONCE = new AtomicLong(0);
     private AutoCloseable _mocks;
@@ -68,12 +74,14 @@ public final class RollupManagerTest {
         _mocks = MockitoAnnotations.openMocks(this);
         when(_features.isRollupsEnabled()).thenReturn(true);
         when(_partitioner.mightSplittingFixFailure(Mockito.any())).thenReturn(false);
+        when(_partitioner.partition(Mockito.any())).thenAnswer(invocation -> ImmutableSet.of(invocation.getArgument(0)));
 
         _system = ActorSystem.create(
                 "test-" + SYSTEM_NAME_NONCE.getAndIncrement(),
                 ConfigFactory.parseMap(PekkoClusteringConfigFactory.generateConfiguration()));
 
         _consistencyChecker = new TestKit(_system);
+        _watermarkStore = new TestKit(_system);
 
     }
 
@@ -90,14 +98,31 @@ public final class RollupManagerTest {
         }
     }
 
-    private TestActorRef<RollupManager> createActor() {
-        return TestActorRef.create(_system, RollupManager.props(
+    private ActorRef createActor() {
+        return createActor(100, Duration.ofHours(1));
+    }
+
+    private ActorRef createActor(final int maxQueueSize, final Duration leaseTimeout) {
+        return _system.actorOf(RollupManager.props(
                 _periodicMetrics,
                 new NoOpMetricsFactory(),
                 _partitioner,
                 _consistencyChecker.getRef(),
-                1
-        ));
+                _watermarkStore.getRef(),
+                ConfigFactory.parseMap(ImmutableMap.of(
+                        "rollup.manager.consistency_check_fraction_of_writes", 1,
+                        "rollup.manager.consistencyCheckDelay", "0s",
+                        "rollup.manager.maxQueueSize", maxQueueSize,
+                        "rollup.manager.leaseTimeout", leaseTimeout.toMillis() + "ms",
+                        "rollup.manager.snapshotEvery", 2))));
+    }
+
+    private static void finish(final ActorRef actor, final RollupDefinition definition, final Throwable failure) {
+        actor.tell(
+                ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b
+                        .setRollupDefinition(definition)
+                        .setFailure(failure)),
+                ActorRef.noSender());
     }
 
     @Test
@@ -210,8 +235,7 @@ public final class RollupManagerTest {
 
     @Test
     public void testRequestsConsistencyCheck() {
-        final TestActorRef<RollupManager> actor = createActor();
-        actor.underlyingActor().setConsistencyCheckDelay(Duration.ZERO);
+        final ActorRef actor = createActor();
 
         actor.tell(
                 ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b
@@ -236,4 +260,312 @@ public final class RollupManagerTest {
         ));
 
     }
+
+    @Test
+    public void testAdvancesWatermark() {
+        final ActorRef actor = createActor();
+        final Instant startTime = Instant.EPOCH.plus(Duration.ofHours(3));
+
+        actor.tell(
+                ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b
+                        .setRollupDefinition(new RollupDefinition.Builder()
+                                .setSourceMetricName("my_metric")
+                                .setDestinationMetricName("my_metric_1h")
+                                .setPeriod(RollupPeriod.HOURLY)
+                                .setStartTime(startTime)
+                                .setAllMetricTags(ImmutableMultimap.of("tag", "val1"))
+                                .build()
+                )),
+                ActorRef.noSender()
+        );
+        final RollupWatermarkStore.Update update = _watermarkStore.expectMsgClass(RollupWatermarkStore.Update.class);
+        assertEquals("my_metric_1h", update.getMetricName());
+        assertEquals(startTime, update.getWatermark());
+
+        actor.tell(
+                ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b
+                        .setRollupDefinition(new RollupDefinition.Builder()
+                                .setSourceMetricName("my_metric")
+                                .setDestinationMetricName("my_metric_1h")
+                                .setPeriod(RollupPeriod.HOURLY)
+                                .setStartTime(startTime.plus(Duration.ofHours(1)))
+                                .setAllMetricTags(ImmutableMultimap.of("tag", "val1"))
+                                .build())
+                        .setFailure(new RuntimeException("Failure"))
+                ),
+                ActorRef.noSender()
+        );
+        _watermarkStore.expectNoMessage();
+    }
+
+    @Test
+    public void testAdvancesWatermarkOnceAllPartitionsFinish() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor();
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition rollupDef = new RollupDefinition.Builder()
+                .setSourceMetricName("my_metric")
+                .setDestinationMetricName("my_metric_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setStartTime(Instant.EPOCH)
+                .setAllMetricTags(ImmutableMultimap.of("tag", "val1", "tag", "val2", "tag", "val3"))
+                .build();
+        final ImmutableList<RollupDefinition> partitions = ImmutableList.of("val1", "val2", "val3").stream()
+                .map(tag -> RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(rollupDef)
+                        .setFilterTags(ImmutableMap.of("tag", tag))
+                        .build())
+                .collect(ImmutableList.toImmutableList());
+        when(_partitioner.partition(rollupDef)).thenReturn(ImmutableSet.copyOf(partitions));
+
+        actor.tell(rollupDef, testActor);
+        for (int i = 0; i < partitions.size(); ++i) {
+            actor.tell(RollupFetch.getInstance(), testActor);
+            testKit.expectMsgClass(RollupDefinition.class);
+        }
+
+        finish(actor, partitions.get(0), null);
+        finish(actor, partitions.get(1), null);
+        _watermarkStore.expectNoMessage(Duration.ofMillis(500));
+        finish(actor, partitions.get(2), null);
+        final RollupWatermarkStore.Update update = _watermarkStore.expectMsgClass(RollupWatermarkStore.Update.class);
+        assertEquals("my_metric_1h", update.getMetricName());
+        assertEquals(Instant.EPOCH, update.getWatermark());
+    }
+
+    @Test
+    public void testDoesNotAdvanceWatermarkAfterFailedPartition() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor();
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition rollupDef = new RollupDefinition.Builder()
+                .setSourceMetricName("my_metric")
+                .setDestinationMetricName("my_metric_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setStartTime(Instant.EPOCH)
+                .setAllMetricTags(ImmutableMultimap.of("tag", "val1", "tag", "val2"))
+                .build();
+        final ImmutableList<RollupDefinition> partitions = ImmutableList.of("val1", "val2").stream()
+                .map(tag -> RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(rollupDef)
+                        .setFilterTags(ImmutableMap.of("tag", tag))
+                        .build())
+                .collect(ImmutableList.toImmutableList());
+        when(_partitioner.partition(rollupDef)).thenReturn(ImmutableSet.copyOf(partitions));
+
+        actor.tell(rollupDef, testActor);
+        for (int i = 0; i < partitions.size(); ++i) {
+            actor.tell(RollupFetch.getInstance(), testActor);
+            testKit.expectMsgClass(RollupDefinition.class);
+        }
+
+        finish(actor, partitions.get(0), new RuntimeException("Failure"));
+        finish(actor, partitions.get(1), null);
+        _watermarkStore.expectNoMessage(Duration.ofMillis(500));
+    }
+
+    @Test
+    public void testRejectsWhenFull() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor(1, Duration.ofHours(1));
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition.Builder rollupDefBuilder = new RollupDefinition.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("bar", "val"))
+                .setStartTime(Instant.EPOCH);
+        final RollupDefinition rollupDef = rollupDefBuilder.build();
+        final RollupDefinition rollupDef2 = rollupDefBuilder.setStartTime(Instant.EPOCH.plus(1, ChronoUnit.HOURS)).build();
+
+        actor.tell(rollupDef, testActor);
+        actor.tell(rollupDef2, testActor);
+        testKit.expectMsg(RollupManager.QueueFull.getInstance());
+
+        // A leased definition still counts against the bound
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef);
+        actor.tell(rollupDef2, testActor);
+        testKit.expectMsg(RollupManager.QueueFull.getInstance());
+
+        actor.tell(ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b.setRollupDefinition(rollupDef)),
+                testActor);
+        actor.tell(rollupDef2, testActor);
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef2);
+    }
+
+    @Test
+    public void testRequeuesExpiredLeases() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor(100, Duration.ZERO);
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition rollupDef = new RollupDefinition.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("bar", "val"))
+                .setStartTime(Instant.EPOCH)
+                .build();
+
+        actor.tell(rollupDef, testActor);
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef);
+
+        testKit.awaitAssert(Duration.ofSeconds(5), () -> {
+            actor.tell(RollupFetch.getInstance(), testActor);
+            testKit.expectMsg(rollupDef);
+            return null;
+        });
+    }
+
+    @Test
+    public void testRecoversQueue() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor();
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition.Builder rollupDefBuilder = new RollupDefinition.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("bar", "val"))
+                .setStartTime(Instant.EPOCH);
+        final RollupDefinition rollupDef = rollupDefBuilder.build();
+        final RollupDefinition rollupDef2 = rollupDefBuilder.setStartTime(Instant.EPOCH.plus(1, ChronoUnit.HOURS)).build();
+        final RollupDefinition rollupDef3 = rollupDefBuilder.setStartTime(Instant.EPOCH.plus(2, ChronoUnit.HOURS)).build();
+
+        actor.tell(rollupDef, testActor);
+        actor.tell(rollupDef2, testActor);
+        actor.tell(rollupDef3, testActor);
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef);
+        actor.tell(ThreadLocalBuilder.build(RollupExecutor.FinishRollupMessage.Builder.class, b -> b.setRollupDefinition(rollupDef)),
+                testActor);
+        // Leased but unfinished, so queued again after recovery
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef2);
+
+        testKit.watch(actor);
+        actor.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        testKit.expectTerminated(actor);
+
+        final ActorRef recovered = createActor();
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef2);
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef3);
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsgClass(NoMoreRollups.class);
+    }
+
+    @Test
+    public void testRecoversQueueFromSnapshot() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor();
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition.Builder rollupDefBuilder = new RollupDefinition.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("bar", "val"))
+                .setStartTime(Instant.EPOCH);
+        final RollupDefinition rollupDef = rollupDefBuilder.build();
+        final RollupDefinition rollupDef2 = rollupDefBuilder
+                .setAllMetricTags(ImmutableMultimap.of("bar", "val", "bar", "val2"))
+                .setStartTime(Instant.EPOCH.plus(1, ChronoUnit.HOURS))
+                .build();
+        final RollupDefinition rollupDef3 = new RollupDefinition.Builder()
+                .setSourceMetricName("baz")
+                .setDestinationMetricName("baz_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("qux", "val"))
+                .setStartTime(Instant.EPOCH)
+                .build();
+
+        actor.tell(rollupDef, testActor);
+        actor.tell(rollupDef2, testActor);
+        actor.tell(rollupDef3, testActor);
+        // The snapshot is taken on the next periodic tick
+        testKit.expectNoMessage(Duration.ofMillis(1500));
+
+        testKit.watch(actor);
+        actor.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        testKit.expectTerminated(actor);
+
+        // The later tags of a metric apply to all of its queued definitions
+        final ActorRef recovered = createActor();
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef3);
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(rollupDef)
+                .setAllMetricTags(rollupDef2.getAllMetricTags())
+                .build());
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsg(rollupDef2);
+        recovered.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsgClass(NoMoreRollups.class);
+    }
+
+    @Test
+    public void testRejectsPartitionedJobsBeyondBound() {
+        final TestKit testKit = new TestKit(_system);
+        final ActorRef actor = createActor(2, Duration.ofHours(1));
+        final ActorRef testActor = testKit.getTestActor();
+        final RollupDefinition rollupDef = new RollupDefinition.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setAllMetricTags(ImmutableMultimap.of("tag", "val1", "tag", "val2", "tag", "val3"))
+                .setStartTime(Instant.EPOCH)
+                .build();
+        when(_partitioner.partition(rollupDef)).thenReturn(ImmutableSet.of("val1", "val2", "val3").stream()
+                .map(tag -> RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(rollupDef)
+                        .setFilterTags(ImmutableMap.of("tag", tag))
+                        .build())
+                .collect(ImmutableSet.toImmutableSet()));
+
+        actor.tell(rollupDef, testActor);
+        testKit.expectMsg(RollupManager.QueueFull.getInstance());
+        actor.tell(RollupFetch.getInstance(), testActor);
+        testKit.expectMsgClass(NoMoreRollups.class);
+    }
+
+    @Test
+    public void testSerializesQueueEvents() throws Exception {
+        final ObjectMapper mapper = ObjectMapperFactory.getInstance();
+        final RollupManager.QueuedRollup rollup = new RollupManager.QueuedRollup.Builder()
+                .setSourceMetricName("foo")
+                .setDestinationMetricName("foo_1h")
+                .setPeriod(RollupPeriod.HOURLY)
+                .setFilterTags(ImmutableMap.of("tag", "val1"))
+                .setStartTime(Instant.EPOCH)
+                .build();
+        final ImmutableMultimap<String, String> tags = ImmutableMultimap.of("tag", "val1", "tag", "val2");
+
+        final RollupManager.QueueSnapshot snapshot = new RollupManager.QueueSnapshot.Builder()
+                .setRollups(ImmutableList.of(rollup))
+                .setMetricTags(ImmutableMap.of("foo", tags))
+                .setFailedPeriods(ImmutableList.of(rollup))
+                .build();
+        final RollupManager.QueueSnapshot deserializedSnapshot = mapper.readValue(
+                mapper.writeValueAsString(snapshot),
+                RollupManager.QueueSnapshot.class);
+        assertEquals(snapshot.getRollups(), deserializedSnapshot.getRollups());
+        assertEquals(snapshot.getMetricTags(), deserializedSnapshot.getMetricTags());
+        assertEquals(snapshot.getFailedPeriods(), deserializedSnapshot.getFailedPeriods());
+
+        final RollupManager.RollupCompleted completed = new RollupManager.RollupCompleted.Builder()
+                .setRollup(rollup)
+                .setFailed(true)
+                .build();
+        assertTrue(mapper.readValue(mapper.writeValueAsString(completed), RollupManager.RollupCompleted.class).isFailed());
+
+        final RollupManager.RollupEnqueued enqueued = new RollupManager.RollupEnqueued.Builder()
+                .setRollup(rollup)
+                .setMetricTags(tags)
+                .build();
+        final RollupManager.RollupEnqueued deserializedEnqueued = mapper.readValue(
+                mapper.writeValueAsString(enqueued),
+                RollupManager.RollupEnqueued.class);
+        assertEquals(enqueued.getRollup(), deserializedEnqueued.getRollup());
+        assertEquals(enqueued.getMetricTags(), deserializedEnqueued.getMetricTags());
+    }
 }
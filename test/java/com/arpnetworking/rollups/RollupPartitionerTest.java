@@ -75,6 +75,88 @@ public final class RollupPartitionerTest {
         }
     }
 
+    @Test
+    public void testPartitionsJobsOverBudget() {
+        final RollupPartitioner partitioner = new RollupPartitioner(4, 100);
+        final RollupDefinition job = TestBeanFactory.createRollupDefinitionBuilder()
+                .setAllMetricTags(ImmutableMultimap.of(
+                        "twoValues", "1/2", "twoValues", "2/2",
+                        "threeValues", "1/3", "threeValues", "2/3", "threeValues", "3/3"
+                ))
+                .setFilterTags(ImmutableMap.of())
+                .build();
+
+        // 6 series; splitting on the two-valued tag leaves 3 per job
+        assertEquals(
+                ImmutableSet.of(
+                        RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(job)
+                                .setFilterTags(ImmutableMap.of("twoValues", "1/2"))
+                                .build(),
+                        RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(job)
+                                .setFilterTags(ImmutableMap.of("twoValues", "2/2"))
+                                .build()
+                ),
+                partitioner.partition(job)
+        );
+
+        assertEquals(ImmutableSet.of(job), new RollupPartitioner(6, 100).partition(job));
+        assertEquals(6, new RollupPartitioner(1, 100).partition(job).size());
+    }
+
+    @Test
+    public void testCapsPartitionsOfHighCardinalityJobs() {
+        final ImmutableMultimap.Builder<String, String> tags = ImmutableMultimap.builder();
+        for (int i = 0; i < 100; ++i) {
+            tags.put("host", "host" + i);
+            tags.put("container", "container" + i);
+        }
+        for (int i = 0; i < 50; ++i) {
+            tags.put("region", "region" + i);
+        }
+        final RollupDefinition job = TestBeanFactory.createRollupDefinitionBuilder()
+                .setAllMetricTags(tags.build())
+                .setFilterTags(ImmutableMap.of())
+                .build();
+
+        // 500000 series; splitting on host and then on region reaches a budget of 100 with 5000 jobs
+        assertEquals(5000, new RollupPartitioner(100, Integer.MAX_VALUE).partition(job).size());
+
+        final ImmutableSet<RollupDefinition> partitions = new RollupPartitioner(100, 1000).partition(job);
+        assertTrue(partitions.size() <= 1000);
+        assertTrue(partitions.size() > 900);
+        // The first split covers every host and no host is split further than the cap allows
+        assertEquals(
+                ImmutableSet.copyOf(job.getAllMetricTags().get("host")),
+                partitions.stream().map(partition -> partition.getFilterTags().get("host")).collect(ImmutableSet.toImmutableSet()));
+        partitions.forEach(partition -> assertTrue(partition.getFilterTags().size() <= 2));
+    }
+
+    @Test
+    public void testPartitionsJobsAfterFailures() {
+        final RollupPartitioner partitioner = new RollupPartitioner();
+        final RollupDefinition job = TestBeanFactory.createRollupDefinitionBuilder()
+                .setAllMetricTags(ImmutableMultimap.of(
+                        "twoValues", "1/2", "twoValues", "2/2",
+                        "threeValues", "1/3", "threeValues", "2/3", "threeValues", "3/3"
+                ))
+                .setFilterTags(ImmutableMap.of())
+                .build();
+        assertEquals(ImmutableSet.of(job), partitioner.partition(job));
+
+        partitioner.recordFailure(job);
+        final ImmutableSet<RollupDefinition> children = partitioner.partition(job);
+        assertEquals(3, children.size());
+        children.forEach(child -> assertEquals(1, child.getFilterTags().size()));
+
+        partitioner.recordFailure(children.iterator().next());
+        assertEquals(6, partitioner.partition(job).size());
+
+        final RollupDefinition otherMetric = RollupDefinition.Builder.<RollupDefinition, RollupDefinition.Builder>clone(job)
+                .setDestinationMetricName(job.getDestinationMetricName() + "_other")
+                .build();
+        assertEquals(ImmutableSet.of(otherMetric), partitioner.partition(otherMetric));
+    }
+
     @Test
     public void testRetryabilityChecking() {
         final RollupPartitioner partitioner = new RollupPartitioner();
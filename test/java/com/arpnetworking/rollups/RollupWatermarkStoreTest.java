@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.metrics.portal.PekkoClusteringConfigFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.typesafe.config.ConfigFactory;
+import org.apache.pekko.actor.ActorRef;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.actor.PoisonPill;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link RollupWatermarkStore}.
+ *
+ * @author agent (agent at local)
+ */
+public final class RollupWatermarkStoreTest {
+
+    @Before
+    public void setUp() {
+        _system = ActorSystem.create(
+                "test-" + SYSTEM_NAME_NONCE.getAndIncrement(),
+                ConfigFactory.parseMap(PekkoClusteringConfigFactory.generateConfiguration()));
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_system);
+    }
+
+    @Test
+    public void testWatermarksOnlyAdvance() throws Exception {
+        final ActorRef store = createStore();
+        RollupWatermarkStore.advance(store, "foo_1h", HOUR);
+        RollupWatermarkStore.advance(store, "foo_1h", HOUR.plus(Duration.ofHours(1)));
+        RollupWatermarkStore.advance(store, "foo_1h", HOUR);
+        RollupWatermarkStore.advance(store, "foo_1d", DAY);
+
+        assertEquals(
+                ImmutableMap.of("foo_1h", HOUR.plus(Duration.ofHours(1))),
+                get(store, "foo_1h", "bar_1h"));
+        assertEquals(
+                ImmutableMap.of("foo_1h", HOUR.plus(Duration.ofHours(1)), "foo_1d", DAY),
+                get(store, "foo_1h", "foo_1d"));
+    }
+
+    @Test
+    public void testRecoversWatermarks() throws Exception {
+        final ActorRef store = createStore();
+        RollupWatermarkStore.advance(store, "foo_1h", HOUR);
+        assertEquals(ImmutableMap.of("foo_1h", HOUR), get(store, "foo_1h"));
+
+        final TestKit probe = new TestKit(_system);
+        probe.watch(store);
+        store.tell(PoisonPill.getInstance(), ActorRef.noSender());
+        probe.expectTerminated(store);
+
+        assertEquals(ImmutableMap.of("foo_1h", HOUR), get(createStore(), "foo_1h"));
+    }
+
+    private ActorRef createStore() {
+        return _system.actorOf(RollupWatermarkStore.props(Mockito.mock(PeriodicMetrics.class), Duration.ofHours(1)));
+    }
+
+    private static ImmutableMap<String, Instant> get(final ActorRef store, final String... metricNames) throws Exception {
+        return RollupWatermarkStore.get(store, ImmutableList.copyOf(metricNames), Duration.ofSeconds(10))
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+    }
+
+    private ActorSystem _system;
+
+    private static final Instant HOUR = Instant.parse("2026-03-01T10:00:00Z");
+    private static final Instant DAY = Instant.parse("2026-03-01T00:00:00Z");
+    private static final AtomicLong SYSTEM_NAME_NONCE = new AtomicLong(0);
+}
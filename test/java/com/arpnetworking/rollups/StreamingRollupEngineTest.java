@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026 Dropbox, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.rollups;
+
+import com.arpnetworking.kairos.client.KairosDbClient;
+import com.arpnetworking.kairos.client.KairosDbResponseTooLargeException;
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.models.DataPoint;
+import com.arpnetworking.kairos.client.models.MetricDataPoints;
+import com.arpnetworking.kairos.client.models.MetricsQuery;
+import com.arpnetworking.metrics.incubator.PeriodicMetrics;
+import com.arpnetworking.testing.SerializationTestUtils;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StreamingRollupEngine}.
+ *
+ * @author agent (agent at local)
+ */
+public class StreamingRollupEngineTest {
+    @Before
+    public void setUp() {
+        _actorSystem = ActorSystem.create();
+        _mockClient = Mockito.mock(KairosDbClient.class);
+        _periodicMetrics = Mockito.mock(PeriodicMetrics.class);
+        _engine = new StreamingRollupEngine.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMapper(SerializationTestUtils.getApiObjectMapper())
+                .setActorSystem(_actorSystem)
+                .setPeriodicMetrics(_periodicMetrics)
+                .setTtlSeconds(3600L)
+                .setWriteBatchSize(1)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
+    }
+
+    @Test
+    public void testBuildsRawGroupedQuery() {
+        final MetricsQuery query = StreamingRollupEngine.buildQuery(DEFINITION);
+        assertEquals(Instant.parse("2026-03-01T10:00:00Z"), query.getStartTime().get());
+        assertEquals(Instant.parse("2026-03-01T10:59:59.999Z"), query.getEndTime().get());
+        assertEquals("metric", query.getMetrics().get(0).getName());
+        assertTrue(query.getMetrics().get(0).getAggregators().isEmpty());
+        assertEquals(1, query.getMetrics().get(0).getGroupBy().size());
+    }
+
+    @Test
+    public void testRollsUpEachTagGroup() throws Exception {
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(CompletableFuture.completedFuture(response(
+                "{\"queries\":[{\"sample_size\":3,\"results\":["
+                        + "{\"name\":\"metric\",\"tags\":{\"host\":[\"a\"]},\"values\":[[1772359200000,1],[1772359260000,3]]},"
+                        + "{\"name\":\"metric\",\"tags\":{\"host\":[\"b\"]},\"values\":[[1772359200000,"
+                        + "{\"bins\":{\"2.0\":2},\"min\":2.0,\"max\":2.0,\"sum\":4.0,\"precision\":7}]]}"
+                        + "]}]}")));
+        final List<MetricDataPoints> written = new ArrayList<>();
+        when(_mockClient.addDataPoints(any())).thenAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertEquals(Long.valueOf(2), _engine.rollup(DEFINITION).toCompletableFuture().get(10, TimeUnit.SECONDS));
+
+        assertEquals(2, written.size());
+        final MetricDataPoints first = written.get(0);
+        assertEquals("metric_1h", first.getName());
+        assertEquals(ImmutableMap.of("host", "a"), first.getTags());
+        assertEquals(Integer.valueOf(3600), first.getTtl().get());
+        final DataPoint dataPoint = first.getDatapoints().get(0);
+        assertEquals(DEFINITION.getStartTime(), dataPoint.getTime());
+        final Map<?, ?> histogram = (Map<?, ?>) dataPoint.getValue().get();
+        assertEquals(4.0, histogram.get("sum"));
+        assertEquals(ImmutableMap.of("1.0", 1L, "3.0", 1L), histogram.get("bins"));
+        assertEquals(ImmutableMap.of("host", "b"), written.get(1).getTags());
+        verify(_mockClient, times(2)).addDataPoints(any());
+        verify(_periodicMetrics).recordCounter("rollup/streaming/data_points_read", 3);
+        verify(_periodicMetrics).recordCounter("rollup/streaming/series_written", 2);
+    }
+
+    @Test
+    public void testFailsWhenWriteFails() throws Exception {
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(CompletableFuture.completedFuture(response(
+                "{\"queries\":[{\"results\":[{\"name\":\"metric\",\"tags\":{},\"values\":[[1772359200000,1]]}]}]}")));
+        when(_mockClient.addDataPoints(any())).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("down")));
+
+        try {
+            _engine.rollup(DEFINITION).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        verify(_mockClient).addDataPoints(any());
+    }
+
+    @Test
+    public void testFailsWhenResponseIsTooLarge() throws Exception {
+        final StreamingRollupEngine engine = new StreamingRollupEngine.Builder()
+                .setKairosDbClient(_mockClient)
+                .setMapper(SerializationTestUtils.getApiObjectMapper())
+                .setMaxResponseSize(32L)
+                .setActorSystem(_actorSystem)
+                .setPeriodicMetrics(_periodicMetrics)
+                .build();
+        when(_mockClient.queryMetricsStreamed(any())).thenReturn(CompletableFuture.completedFuture(response(
+                "{\"queries\":[{\"results\":[{\"name\":\"metric\",\"tags\":{},\"values\":[[1772359200000,1]]}]}]}")));
+
+        try {
+            engine.rollup(DEFINITION).toCompletableFuture().get(10, TimeUnit.SECONDS);
+            fail("Expected exception");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof KairosDbResponseTooLargeException);
+        }
+        verify(_mockClient, never()).addDataPoints(any());
+    }
+
+    private static KairosDbStreamedResponse response(final String json) {
+        final byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        // Deliver the body in small chunks so results span chunk boundaries
+        final List<ByteString> chunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += CHUNK_SIZE) {
+            chunks.add(ByteString.fromArray(bytes, i, Math.min(CHUNK_SIZE, bytes.length - i)));
+        }
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(Source.from(chunks))
+                .build();
+    }
+
+    private ActorSystem _actorSystem;
+    private KairosDbClient _mockClient;
+    private PeriodicMetrics _periodicMetrics;
+    private StreamingRollupEngine _engine;
+
+    private static final int CHUNK_SIZE = 16;
+    private static final RollupDefinition DEFINITION = new RollupDefinition.Builder()
+            .setSourceMetricName("metric")
+            .setDestinationMetricName("metric_1h")
+            .setPeriod(RollupPeriod.HOURLY)
+            .setStartTime(Instant.parse("2026-03-01T10:00:00Z"))
+            .setAllMetricTags(ImmutableMultimap.of("host", "a", "host", "b"))
+            .build();
+}
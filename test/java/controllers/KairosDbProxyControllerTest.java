@@ -15,7 +15,10 @@
  */
 package controllers;
 
+import com.arpnetworking.kairos.client.KairosDbStreamedResponse;
+import com.arpnetworking.kairos.client.MetricsQueryResponseCborDecoder;
 import com.arpnetworking.kairos.client.models.Aggregator;
+import com.arpnetworking.kairos.client.models.DataPoint;
 import com.arpnetworking.kairos.client.models.Metric;
 import com.arpnetworking.kairos.client.models.MetricNamesResponse;
 import com.arpnetworking.kairos.client.models.MetricsQuery;
@@ -24,12 +27,19 @@ import com.arpnetworking.kairos.client.models.Sampling;
 import com.arpnetworking.kairos.client.models.SamplingUnit;
 import com.arpnetworking.kairos.service.KairosDbService;
 import com.arpnetworking.kairos.service.QueryContext;
+import com.arpnetworking.kairos.service.QueryCostExceededException;
 import com.arpnetworking.kairos.service.QueryOrigin;
 import com.arpnetworking.testing.SerializationTestUtils;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.typesafe.config.Config;
+import org.apache.pekko.actor.ActorSystem;
+import org.apache.pekko.stream.Materializer;
+import org.apache.pekko.stream.javadsl.Source;
+import org.apache.pekko.testkit.javadsl.TestKit;
+import org.apache.pekko.util.ByteString;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -41,14 +51,22 @@ import play.mvc.Http;
 import play.mvc.Result;
 import play.test.Helpers;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -71,10 +89,14 @@ public class KairosDbProxyControllerTest {
 
     private KairosDbProxyController _controller;
     private AutoCloseable _mocks;
+    private ActorSystem _actorSystem;
+    private Materializer _materializer;
 
     @Before
     public void setUp() {
         _mocks = MockitoAnnotations.openMocks(this);
+        _actorSystem = ActorSystem.create();
+        _materializer = Materializer.createMaterializer(_actorSystem);
         when(_mockConfig.getString(eq("kairosdb.uri"))).thenReturn("http://example.com/");
         when(_mockConfig.getBoolean(eq("kairosdb.proxy.requireAggregators"))).thenReturn(true);
         when(_mockConfig.getBoolean(eq("kairosdb.proxy.addMergeAggregator"))).thenReturn(true);
@@ -93,6 +115,7 @@ public class KairosDbProxyControllerTest {
 
     @After
     public void tearDown() {
+        TestKit.shutdownActorSystem(_actorSystem);
         if (_mocks != null) {
             try {
                 _mocks.close();
@@ -145,10 +168,8 @@ public class KairosDbProxyControllerTest {
                 .header("Content-Type", "application/json")
                 .bodyJson(OBJECT_MAPPER.<JsonNode>valueToTree(builder.build()));
 
-        when(_mockKairosDbService.queryMetrics(any(), any())).thenReturn(
-                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder()
-                        .setQueries(ImmutableList.of()).build())
-        );
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse("{\"queries\":[]}", null)));
 
         try {
             result = _controller.queryMetrics(request.build()).toCompletableFuture().get(10, TimeUnit.SECONDS);
@@ -157,7 +178,165 @@ public class KairosDbProxyControllerTest {
         }
 
         assertEquals(Http.Status.OK, result.status());
-        assertEquals("{\"queries\":[]}", Helpers.contentAsString(result));
+        assertEquals("{\"queries\":[]}", Helpers.contentAsString(result, _materializer));
+    }
+
+    @Test
+    public void testQueryForwardsAcceptedEncoding() throws ExecutionException, InterruptedException, TimeoutException, IOException {
+        final byte[] compressed = gzip("{\"queries\":[]}");
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromArray(compressed)))
+                        .setContentEncoding("gzip")
+                        .build()));
+
+        final Result result = _controller.queryMetrics(newQueryRequest().header("Accept-Encoding", "deflate, gzip").build())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.OK, result.status());
+        assertEquals(Optional.of("gzip"), result.header(Http.HeaderNames.CONTENT_ENCODING));
+        assertArrayEquals(compressed, Helpers.contentAsBytes(result, _materializer).toArray());
+    }
+
+    @Test
+    public void testQueryDecodesUnacceptedEncoding() throws ExecutionException, InterruptedException, TimeoutException, IOException {
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromArray(gzip("{\"queries\":[]}"))))
+                        .setContentEncoding("gzip")
+                        .build()));
+
+        final Result result = _controller.queryMetrics(newQueryRequest().header("Accept-Encoding", "gzip;q=0").build())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.OK, result.status());
+        assertEquals(Optional.empty(), result.header(Http.HeaderNames.CONTENT_ENCODING));
+        assertEquals("{\"queries\":[]}", Helpers.contentAsString(result, _materializer));
+    }
+
+    @Test
+    public void testQueryStreamsNdjson() throws ExecutionException, InterruptedException, TimeoutException, IOException {
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.completedFuture(new KairosDbStreamedResponse.Builder()
+                        .setBody(Source.single(ByteString.fromArray(gzip(
+                                "{\"queries\":[{\"sample_size\":1,\"results\":[{\"name\":\"metric1\",\"values\":[[1,2]]}]}]}"))))
+                        .setContentEncoding("gzip")
+                        .build()));
+
+        final Result result = _controller.queryMetrics(newQueryRequest()
+                        .header("Accept", "application/x-ndjson")
+                        .header("Accept-Encoding", "gzip")
+                        .build())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.OK, result.status());
+        assertEquals(Optional.of("application/x-ndjson"), result.contentType());
+        assertEquals(Optional.empty(), result.header(Http.HeaderNames.CONTENT_ENCODING));
+        assertEquals(
+                "{\"query\":0,\"result\":{\"name\":\"metric1\",\"values\":[[1,2]]}}\n{\"query\":0,\"sample_size\":1}\n",
+                Helpers.contentAsString(result, _materializer));
+    }
+
+    @Test
+    public void testQueryEncodesCbor() throws ExecutionException, InterruptedException, TimeoutException, IOException {
+        final MetricsQueryResponse response = new MetricsQueryResponse.Builder()
+                .setQueries(ImmutableList.of(new MetricsQueryResponse.Query.Builder()
+                        .setSampleSize(2L)
+                        .setResults(ImmutableList.of(new MetricsQueryResponse.QueryResult.Builder()
+                                .setName("metric1")
+                                .setTags(ImmutableListMultimap.of("host", "a"))
+                                .setValues(ImmutableList.of(
+                                        new DataPoint.Builder().setTime(Instant.ofEpochMilli(1000)).setValue(1.5).build(),
+                                        new DataPoint.Builder().setTime(Instant.ofEpochMilli(2000)).setValue(2L).build()))
+                                .build()))
+                        .build()))
+                .build();
+        final String json = OBJECT_MAPPER.writeValueAsString(response);
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse(json, null)));
+
+        final Result result = _controller.queryMetrics(newQueryRequest().header("Accept", "application/cbor").build())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.OK, result.status());
+        assertEquals(Optional.of("application/cbor"), result.contentType());
+        final MetricsQueryResponse decoded = new MetricsQueryResponseCborDecoder(OBJECT_MAPPER)
+                .decode(Helpers.contentAsBytes(result, _materializer).toArray());
+        assertEquals(OBJECT_MAPPER.readValue(json, MetricsQueryResponse.class), decoded);
+        assertEquals(Optional.of(1.5), decoded.getQueries().get(0).getResults().get(0).getValues().get(0).getValue());
+    }
+
+    @Test
+    public void testAcceptsFormat() {
+        assertTrue(KairosDbProxyController.acceptsFormat(
+                Helpers.fakeRequest().header("Accept", "application/json, application/x-ndjson").build(),
+                "ndjson",
+                "application/x-ndjson"));
+        assertTrue(KairosDbProxyController.acceptsFormat(
+                Helpers.fakeRequest("POST", "/api/v1/datapoints/query?format=cbor").build(),
+                "cbor",
+                "application/cbor"));
+        assertFalse(KairosDbProxyController.acceptsFormat(
+                Helpers.fakeRequest().header("Accept", "*/*").build(),
+                "ndjson",
+                "application/x-ndjson"));
+        assertFalse(KairosDbProxyController.acceptsFormat(Helpers.fakeRequest().build(), "cbor", "application/cbor"));
+    }
+
+    @Test
+    public void testQueryUsesTypedBody() throws ExecutionException, InterruptedException, TimeoutException {
+        final MetricsQuery query = new MetricsQuery.Builder()
+                .setStartTime(Instant.now())
+                .setMetrics(ImmutableList.of(new Metric.Builder()
+                        .setName("metric1")
+                        .setAggregators(ImmutableList.of(new Aggregator.Builder().setName("count").build()))
+                        .build()))
+                .build();
+        final ArgumentCaptor<MetricsQuery> queryCaptor = ArgumentCaptor.forClass(MetricsQuery.class);
+        when(_mockKairosDbService.queryMetricsStreamed(any(), queryCaptor.capture())).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse("{\"queries\":[]}", null)));
+
+        final Result result = _controller.queryMetrics(Helpers.fakeRequest()
+                        .method(Helpers.POST)
+                        .uri("/api/v1/datapoints/query")
+                        .build()
+                        .withBody(new Http.RequestBody(query)))
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.OK, result.status());
+        assertEquals("metric1", queryCaptor.getValue().getMetrics().get(0).getName());
+    }
+
+    @Test
+    public void testQueryRejectsExpensiveQuery() throws ExecutionException, InterruptedException, TimeoutException {
+        when(_mockKairosDbService.queryMetricsStreamed(any(), any())).thenReturn(
+                CompletableFuture.failedFuture(new QueryCostExceededException(1000, 10)));
+
+        final Result result = _controller.queryMetrics(newQueryRequest().build())
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(Http.Status.BAD_REQUEST, result.status());
+    }
+
+    @Test
+    public void testAcceptsEncoding() {
+        assertTrue(KairosDbProxyController.acceptsEncoding(
+                Helpers.fakeRequest().header("Accept-Encoding", "gzip, deflate").build(), "gzip"));
+        assertTrue(KairosDbProxyController.acceptsEncoding(
+                Helpers.fakeRequest().header("Accept-Encoding", "*").build(), "gzip"));
+        assertTrue(KairosDbProxyController.acceptsEncoding(
+                Helpers.fakeRequest().header("Accept-Encoding", "GZIP;q=0.5").build(), "gzip"));
+        assertFalse(KairosDbProxyController.acceptsEncoding(
+                Helpers.fakeRequest().header("Accept-Encoding", "gzip;q=0").build(), "gzip"));
+        assertFalse(KairosDbProxyController.acceptsEncoding(
+                Helpers.fakeRequest().header("Accept-Encoding", "deflate").build(), "gzip"));
+        assertFalse(KairosDbProxyController.acceptsEncoding(Helpers.fakeRequest().build(), "gzip"));
     }
 
     @Test
@@ -192,8 +371,8 @@ public class KairosDbProxyControllerTest {
 
         final ArgumentCaptor<MetricsQuery> queryCaptor = ArgumentCaptor.forClass(MetricsQuery.class);
 
-        when(_mockKairosDbService.queryMetrics(any(), queryCaptor.capture())).thenReturn(
-                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build()));
+        when(_mockKairosDbService.queryMetricsStreamed(any(), queryCaptor.capture())).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse("{\"queries\":[]}", null)));
 
         _controller.queryMetrics(request.build()).toCompletableFuture().get(10, TimeUnit.SECONDS);
 
@@ -243,8 +422,8 @@ public class KairosDbProxyControllerTest {
 
         final ArgumentCaptor<MetricsQuery> queryCaptor = ArgumentCaptor.forClass(MetricsQuery.class);
 
-        when(_mockKairosDbService.queryMetrics(any(), queryCaptor.capture())).thenReturn(
-                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder().setQueries(ImmutableList.of()).build()));
+        when(_mockKairosDbService.queryMetricsStreamed(any(), queryCaptor.capture())).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse("{\"queries\":[]}", null)));
 
 
         _controller.queryMetrics(request.build()).toCompletableFuture().get(10, TimeUnit.SECONDS);
@@ -351,10 +530,8 @@ public class KairosDbProxyControllerTest {
         final MetricsQuery converted = OBJECT_MAPPER.convertValue(newMetricsQuery, MetricsQuery.class);
 
         final ArgumentCaptor<QueryContext> contextCaptor = ArgumentCaptor.forClass(QueryContext.class);
-        when(_mockKairosDbService.queryMetrics(contextCaptor.capture(), eq(converted))).thenReturn(
-                CompletableFuture.completedFuture(new MetricsQueryResponse.Builder()
-                        .setQueries(ImmutableList.of()).build())
-        );
+        when(_mockKairosDbService.queryMetricsStreamed(contextCaptor.capture(), eq(converted))).thenReturn(
+                CompletableFuture.completedFuture(streamedResponse("{\"queries\":[]}", null)));
 
         final Result result;
         try {
@@ -364,7 +541,7 @@ public class KairosDbProxyControllerTest {
         }
 
         assertEquals(Http.Status.OK, result.status());
-        assertEquals("{\"queries\":[]}", Helpers.contentAsString(result));
+        assertEquals("{\"queries\":[]}", Helpers.contentAsString(result, _materializer));
         assertEquals(contextCaptor.getValue().getOrigin(), QueryOrigin.EXTERNAL_REQUEST);
     }
 
@@ -423,4 +600,34 @@ public class KairosDbProxyControllerTest {
         assertEquals(newMetricsQuery.getMetrics().get(3).getAggregators().get(1).getSampling().get().getUnit(),
                 newMetricsQuery.getMetrics().get(3).getAggregators().get(0).getSampling().get().getUnit());
     }
+
+    private static Http.RequestBuilder newQueryRequest() {
+        final MetricsQuery query = new MetricsQuery.Builder()
+                .setStartTime(Instant.now())
+                .setMetrics(ImmutableList.of(new Metric.Builder()
+                        .setName("metric1")
+                        .setAggregators(ImmutableList.of(new Aggregator.Builder().setName("count").build()))
+                        .build()))
+                .build();
+        return Helpers.fakeRequest()
+                .method(Helpers.POST)
+                .uri("/api/v1/datapoints/query")
+                .header("Content-Type", "application/json")
+                .bodyJson(OBJECT_MAPPER.<JsonNode>valueToTree(query));
+    }
+
+    private static KairosDbStreamedResponse streamedResponse(final String body, @Nullable final String contentEncoding) {
+        return new KairosDbStreamedResponse.Builder()
+                .setBody(Source.single(ByteString.fromString(body)))
+                .setContentEncoding(contentEncoding)
+                .build();
+    }
+
+    private static byte[] gzip(final String body) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream stream = new GZIPOutputStream(bytes)) {
+            stream.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
 }